@@ -0,0 +1,94 @@
+package com.github.manevolent.atlas;
+
+import com.github.manevolent.atlas.connection.MemoryFrame;
+import com.github.manevolent.atlas.datalog.DatalogStore;
+import com.github.manevolent.atlas.model.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Computes what a datalog graph draws: the range of values under each pixel across the view, once from the
+ * column's pyramid and once by scanning every sample.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class DatalogRenderBenchmark {
+    private static final int WIDTH = 1000;
+
+    /**
+     * Number of samples in view
+     */
+    @Param({"10000", "130000"})
+    public int samples;
+
+    private DatalogStore.Snapshot snapshot;
+    private DatalogStore.Column column;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        MemorySection section = MemorySection.builder()
+                .withName("RAM")
+                .withBaseAddress(0xFF000000L)
+                .withLength(0x1000)
+                .withByteOrder(MemoryByteOrder.BIG_ENDIAN)
+                .withType(MemoryType.RAM)
+                .build();
+        MemoryParameter parameter = MemoryParameter.builder()
+                .withName("RPM")
+                .withAddress(section, 0xFF000000)
+                .withScale(Scale.builder().withName("RPM").withFormat(DataFormat.USHORT).withUnit(Unit.RPM))
+                .build();
+
+        DatalogStore store = new DatalogStore();
+        column = store.addColumn(parameter);
+
+        Random random = new Random(0xDA7A);
+        Instant start = Instant.ofEpochSecond(1_700_000_000L);
+        for (int i = 0; i < samples; i ++) {
+            MemoryFrame frame = new MemoryFrame(start.plusMillis(i * 10L));
+            frame.setData(parameter, new byte[] { (byte) random.nextInt(), (byte) random.nextInt() });
+            store.append(frame);
+        }
+
+        snapshot = store.snapshot();
+    }
+
+    @Benchmark
+    public float pyramid() {
+        DatalogStore.Statistics pixel = new DatalogStore.Statistics();
+        float total = 0f;
+        int from = 0;
+        for (int x = 0; x < WIDTH; x ++) {
+            int to = (int) ((long) snapshot.size() * (x + 1) / WIDTH);
+            pixel.reset();
+            snapshot.getStatistics(column, from, to, pixel);
+            total += pixel.getMaximum() - pixel.getMinimum();
+            from = to;
+        }
+        return total;
+    }
+
+    @Benchmark
+    public float scan() {
+        DatalogStore.Statistics pixel = new DatalogStore.Statistics();
+        float total = 0f;
+        int from = 0;
+        for (int x = 0; x < WIDTH; x ++) {
+            int to = (int) ((long) snapshot.size() * (x + 1) / WIDTH);
+            pixel.reset();
+            for (int i = from; i < to; i ++) {
+                pixel.add(snapshot.getValue(column, i));
+            }
+            total += pixel.getMaximum() - pixel.getMinimum();
+            from = to;
+        }
+        return total;
+    }
+}
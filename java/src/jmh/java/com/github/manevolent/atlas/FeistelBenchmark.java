@@ -0,0 +1,73 @@
+package com.github.manevolent.atlas;
+
+import com.github.manevolent.atlas.ssm4.SubaruDITFlashEncryption;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the stream-based Feistel implementation against the in-place, table-driven one over a whole ROM image.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FeistelBenchmark {
+    @Param({"4194304", "8388608"})
+    public int size;
+
+    private byte[] image;
+    private byte[] work;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        image = new byte[size];
+        new Random(0xF315731).nextBytes(image);
+        work = new byte[size];
+    }
+
+    @Setup(Level.Invocation)
+    public void reset() {
+        System.arraycopy(image, 0, work, 0, size);
+    }
+
+    @Benchmark
+    public byte[] decryptStream() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(size);
+        SubaruDITFlashEncryption.feistel_decrypt(new ByteArrayInputStream(work), outputStream,
+                SubaruDITFlashEncryption.ENGINE_ECU_KEYS_DECRYPTION);
+        return outputStream.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] decryptSerial() {
+        SubaruDITFlashEncryption.feistel_decrypt(work, 0, size,
+                SubaruDITFlashEncryption.ENGINE_ECU_KEYS_DECRYPTION, false);
+        return work;
+    }
+
+    @Benchmark
+    public byte[] decryptParallel() {
+        SubaruDITFlashEncryption.feistel_decrypt(work, 0, size,
+                SubaruDITFlashEncryption.ENGINE_ECU_KEYS_DECRYPTION, true);
+        return work;
+    }
+
+    @Benchmark
+    public byte[] encryptStream() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(size);
+        SubaruDITFlashEncryption.feistel_encrypt(new ByteArrayInputStream(work), outputStream,
+                SubaruDITFlashEncryption.ENGINE_ECU_KEYS_ENCRYPTION);
+        return outputStream.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] encryptParallel() {
+        SubaruDITFlashEncryption.feistel_encrypt(work, 0, size,
+                SubaruDITFlashEncryption.ENGINE_ECU_KEYS_ENCRYPTION, true);
+        return work;
+    }
+}
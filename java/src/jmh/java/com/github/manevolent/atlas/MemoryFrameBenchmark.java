@@ -0,0 +1,97 @@
+package com.github.manevolent.atlas;
+
+import com.github.manevolent.atlas.connection.BufferedMemoryFrame;
+import com.github.manevolent.atlas.connection.MemoryFrame;
+import com.github.manevolent.atlas.connection.MemoryFrameLayout;
+import com.github.manevolent.atlas.model.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes a datalog response of 32 parameters and reads every value back, as the datalog store does for each sample:
+ * once by copying each parameter's data into its own array, as frames were read before, and once in place from the
+ * response through a precomputed layout.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class MemoryFrameBenchmark {
+    private static final int PARAMETERS = 32;
+
+    private MemoryParameter[] parameters;
+    private MemoryFrameLayout layout;
+    private byte[] response;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        MemorySection section = MemorySection.builder()
+                .withName("RAM")
+                .withBaseAddress(0xFF000000L)
+                .withLength(0x1000)
+                .withByteOrder(MemoryByteOrder.BIG_ENDIAN)
+                .withType(MemoryType.RAM)
+                .build();
+
+        Random random = new Random(0xF3);
+        parameters = new MemoryParameter[PARAMETERS];
+        MemoryFrameLayout.Builder builder = MemoryFrameLayout.builder();
+        int offset = 0;
+        for (int i = 0; i < PARAMETERS; i ++) {
+            DataFormat format = DataFormat.values()[random.nextInt(DataFormat.values().length)];
+            parameters[i] = MemoryParameter.builder()
+                    .withName("Parameter " + i)
+                    .withAddress(section, 0xFF000000 + offset)
+                    .withScale(Scale.builder()
+                            .withName("Parameter " + i)
+                            .withFormat(format)
+                            .withUnit(Unit.NONE)
+                            .withOperation(ArithmeticOperation.MULTIPLY, 0.25f))
+                    .build();
+            builder.withParameter(parameters[i], offset, ByteOrder.LITTLE_ENDIAN);
+            offset += format.getSize();
+        }
+
+        layout = builder.build();
+        response = new byte[offset];
+        random.nextBytes(response);
+    }
+
+    @Benchmark
+    public void copy(Blackhole blackhole) throws EOFException {
+        MemoryFrame frame = new MemoryFrame();
+        ByteArrayInputStream bais = new ByteArrayInputStream(response);
+        for (MemoryParameter parameter : parameters) {
+            byte[] data = parameter.newBuffer();
+            if (bais.read(data, 0, data.length) != data.length) {
+                throw new EOFException();
+            }
+            for (int i = 0; i < data.length / 2; i ++) {
+                byte temp = data[i];
+                data[i] = data[data.length - 1 - i];
+                data[data.length - 1 - i] = temp;
+            }
+            frame.setData(parameter, data);
+        }
+
+        for (MemoryParameter parameter : parameters) {
+            blackhole.consume(frame.getValue(parameter, Float.NaN));
+        }
+    }
+
+    @Benchmark
+    public void buffered(Blackhole blackhole) {
+        MemoryFrame frame = new BufferedMemoryFrame(layout, response);
+        for (MemoryParameter parameter : parameters) {
+            blackhole.consume(frame.getValue(parameter, Float.NaN));
+        }
+    }
+}
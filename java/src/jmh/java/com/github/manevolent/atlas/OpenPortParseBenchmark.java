@@ -0,0 +1,113 @@
+package com.github.manevolent.atlas;
+
+import com.github.manevolent.atlas.protocol.can.CANFrame;
+import com.github.manevolent.atlas.protocol.j2534.tactrix.OpenPort2Decoder;
+import com.github.manevolent.atlas.protocol.j2534.tactrix.OpenPort2IO;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a synthetic OpenPort CAN stream through the decoder, and through the device's reader thread to a
+ * subscriber, in reads of the size a serial port tends to give back, to measure parsing without a device attached.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class OpenPortParseBenchmark {
+    private static final int FRAMES = 1000;
+
+    @Param({"1", "64"})
+    public int chunkSize;
+
+    private byte[] stream;
+    private OpenPort2IO io;
+    private FrameReader<CANFrame> reader;
+
+    private static class ChunkedInputStream extends InputStream {
+        private final byte[] stream;
+        private final int chunkSize;
+        private int position;
+
+        private ChunkedInputStream(byte[] stream, int chunkSize) {
+            this.stream = stream;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public int read() {
+            return position < stream.length ? stream[position ++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (position >= stream.length) {
+                return -1;
+            }
+
+            int read = Math.min(Math.min(len, chunkSize), stream.length - position);
+            System.arraycopy(stream, position, b, off, read);
+            position += read;
+            return read;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(0x0D5);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < FRAMES; i ++) {
+            byte[] data = new byte[8];
+            random.nextBytes(data);
+
+            int arbitrationId = 0x7E0 + random.nextInt(16);
+            out.writeBytes(new byte[] { 'a', 'r', '5', (byte) (5 + 4 + data.length), 0, 0, 0, 0, 0 });
+            out.writeBytes(new byte[] { 0, 0, (byte) (arbitrationId >> 8), (byte) arbitrationId });
+            out.writeBytes(data);
+        }
+        stream = out.toByteArray();
+    }
+
+    @Setup(Level.Invocation)
+    public void open() {
+        // Room for every frame, so a subscriber that falls behind doesn't lose any
+        io = new OpenPort2IO(new OpenPort2Decoder(new ChunkedInputStream(stream, chunkSize)),
+                OutputStream.nullOutputStream(), OpenPort2IO.DEFAULT_WRITE_QUEUE_SIZE, FRAMES);
+        reader = io.subscribeCAN();
+    }
+
+    @TearDown(Level.Invocation)
+    public void close() throws IOException {
+        io.close();
+    }
+
+    @Benchmark
+    public int readFrames() throws IOException {
+        io.start();
+
+        int n = 0;
+        CANFrame frame;
+        while ((frame = reader.read()) != null) {
+            n += frame.getArbitrationId();
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int decode() throws IOException {
+        OpenPort2Decoder decoder = new OpenPort2Decoder(new ChunkedInputStream(stream, chunkSize));
+        int n = 0;
+        while (decoder.next() != null) {
+            n += decoder.getArbitrationId() + decoder.getLength();
+        }
+        return n;
+    }
+}
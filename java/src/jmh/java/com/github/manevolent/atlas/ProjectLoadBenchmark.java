@@ -0,0 +1,107 @@
+package com.github.manevolent.atlas;
+
+import com.github.manevolent.atlas.model.*;
+import com.github.manevolent.atlas.model.source.ArraySource;
+import com.github.manevolent.atlas.model.storage.ZipProjectStorage;
+import com.github.manevolent.atlas.ui.behavior.ProgressListener;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares opening a project from its binary snapshot against opening it from its YAML entries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ProjectLoadBenchmark {
+    private static final ProgressListener listener = (message, progress) -> { };
+
+    @Param({"2000", "10000"})
+    public int tables;
+
+    private File file;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        MemorySection section = MemorySection.builder()
+                .withName("Code")
+                .withBaseAddress(0)
+                .withLength(0x100000)
+                .withByteOrder(MemoryByteOrder.BIG_ENDIAN)
+                .withType(MemoryType.CODE)
+                .build();
+
+        Project project = Project.builder()
+                .withSection(section)
+                .withCalibration(Calibration.builder()
+                        .withName("Stock")
+                        .withSection(section)
+                        .withSource(new ArraySource(0, new byte[0x100000], 0, 0x100000))
+                        .build())
+                .build();
+
+        Scale[] scales = new Scale[64];
+        for (int i = 0; i < scales.length; i ++) {
+            scales[i] = Scale.builder()
+                    .withName("Scale " + i)
+                    .withFormat(DataFormat.USHORT)
+                    .withUnit(Unit.NONE)
+                    .withOperation(ArithmeticOperation.MULTIPLY, i + 1)
+                    .withOperation(ArithmeticOperation.ADD, -i)
+                    .build();
+            project.getScales().add(scales[i]);
+        }
+
+        for (int i = 0; i < tables; i ++) {
+            project.addTable(Table.builder()
+                    .withName("Table " + i)
+                    .withData(Series.builder()
+                            .withAddress(section, i * 64)
+                            .withScale(scales[i % scales.length]))
+                    .withAxis(Axis.X, Series.builder()
+                            .withName("RPM")
+                            .withAddress(section, 0x80000 + (i % 100) * 32)
+                            .withLength(16)
+                            .withScale(scales[(i + 1) % scales.length]))
+                    .withAxis(Axis.Y, Series.builder()
+                            .withName("Load")
+                            .withAddress(section, 0x90000 + (i % 100) * 32)
+                            .withLength(16)
+                            .withScale(scales[(i + 2) % scales.length]))
+                    .build());
+        }
+
+        for (int i = 0; i < tables / 4; i ++) {
+            project.addParameter(MemoryParameter.builder()
+                    .withName("Parameter " + i)
+                    .withAddress(section, 0xA0000 + i * 2)
+                    .withScale(scales[i % scales.length])
+                    .build());
+        }
+
+        file = File.createTempFile("atlas-benchmark", ".atlas");
+        file.delete();
+        new ZipProjectStorage(listener).save(project, file);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public Project loadSnapshot() throws IOException {
+        return new ZipProjectStorage(listener, true).load(file);
+    }
+
+    @Benchmark
+    public Project loadYaml() throws IOException {
+        return new ZipProjectStorage(listener, false).load(file);
+    }
+}
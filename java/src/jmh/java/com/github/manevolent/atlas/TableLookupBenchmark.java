@@ -0,0 +1,75 @@
+package com.github.manevolent.atlas;
+
+import com.github.manevolent.atlas.arduino.Integration;
+import com.github.manevolent.atlas.model.TableLookup;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a datalog's worth of random (RPM, load) points through a 16x16 table, one at a time and as a batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TableLookupBenchmark {
+    private static final int AXIS_LENGTH = 16;
+    private static final int POINTS = 1_000_000;
+
+    @Param({"LINEAR", "FLOOR"})
+    public Integration integration;
+
+    private TableLookup lookup;
+    private float[] x, y, results;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(0x7AB1E);
+
+        float[] rpm = new float[AXIS_LENGTH], load = new float[AXIS_LENGTH];
+        for (int i = 0; i < AXIS_LENGTH; i ++) {
+            rpm[i] = 500 + (i * 500);
+            load[i] = 0.1f + (i * 0.1f);
+        }
+
+        float[] data = new float[AXIS_LENGTH * AXIS_LENGTH];
+        for (int i = 0; i < data.length; i ++) {
+            data[i] = random.nextFloat() * 50;
+        }
+
+        lookup = new TableLookup(new float[][] { rpm, load }, new Integration[] { integration, integration }, data);
+
+        x = new float[POINTS];
+        y = new float[POINTS];
+        results = new float[POINTS];
+        for (int i = 0; i < POINTS; i ++) {
+            x[i] = random.nextFloat() * 9000;
+            y[i] = random.nextFloat() * 1.8f;
+        }
+    }
+
+    @Benchmark
+    public float single() {
+        float sum = 0f;
+        for (int i = 0; i < POINTS; i ++) {
+            sum += lookup.get(x[i], y[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public float[] batch() {
+        lookup.get(x, y, results, 0, POINTS);
+        return results;
+    }
+
+    @Benchmark
+    public float generic() {
+        float sum = 0f;
+        for (int i = 0; i < POINTS; i ++) {
+            sum += lookup.get(new float[] { x[i], y[i] });
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,110 @@
+package com.github.manevolent.atlas;
+
+import com.github.manevolent.atlas.protocol.uds.UDSBody;
+import com.github.manevolent.atlas.protocol.uds.UDSFrame;
+import com.github.manevolent.atlas.protocol.uds.UDSProtocol;
+import com.github.manevolent.atlas.protocol.uds.request.UDSReadDataByIDRequest;
+import com.github.manevolent.atlas.protocol.uds.request.UDSReadMemoryByAddressRequest;
+import com.github.manevolent.atlas.protocol.uds.request.UDSTesterPresentRequest;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses and builds a recorded mix of UDS traffic through BitReader and BitWriter: datalog DID reads, memory reads
+ * and tester present, along with their responses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class UDSParseBenchmark {
+    private static final int FRAMES = 1000;
+
+    private final UDSProtocol protocol = UDSProtocol.STANDARD;
+    private byte[][] recorded;
+    private UDSBody[] requests;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Random random = new Random(0x0D5);
+        List<byte[]> frames = new ArrayList<>();
+        List<UDSBody> bodies = new ArrayList<>();
+
+        while (frames.size() < FRAMES) {
+            switch (random.nextInt(4)) {
+                case 0 -> {
+                    // A datalog frame, and its response
+                    UDSReadDataByIDRequest request = new UDSReadDataByIDRequest(0xF300);
+                    bodies.add(request);
+                    frames.add(BasicFrame.from(new UDSFrame(protocol, request)).getData());
+                    frames.add(response(random, 0x62, new byte[] { (byte) 0xF3, 0x00 }, 48));
+                }
+                case 1 -> {
+                    // A block of a memory dump, and its response
+                    UDSReadMemoryByAddressRequest request = new UDSReadMemoryByAddressRequest(4,
+                            0xFE000000L + random.nextInt(0x10000), 1, 0xFF);
+                    bodies.add(request);
+                    frames.add(BasicFrame.from(new UDSFrame(protocol, request)).getData());
+                    frames.add(response(random, 0x63, new byte[0], 0xFF));
+                }
+                case 2 -> {
+                    UDSTesterPresentRequest request = new UDSTesterPresentRequest(new byte[] { (byte) 0x80 });
+                    bodies.add(request);
+                    frames.add(BasicFrame.from(new UDSFrame(protocol, request)).getData());
+                }
+                case 3 -> frames.add(new byte[] { 0x7F, 0x22, 0x78 });
+            }
+        }
+
+        recorded = frames.toArray(new byte[0][]);
+        requests = bodies.toArray(new UDSBody[0]);
+    }
+
+    private static byte[] response(Random random, int sid, byte[] header, int length) {
+        byte[] frame = new byte[1 + header.length + length];
+        random.nextBytes(frame);
+        frame[0] = (byte) sid;
+        System.arraycopy(header, 0, frame, 1, header.length);
+        return frame;
+    }
+
+    @Benchmark
+    public int parse() throws IOException {
+        int n = 0;
+        for (byte[] frame : recorded) {
+            UDSFrame udsFrame = new UDSFrame(protocol);
+            udsFrame.read(new BitReader(frame));
+            n += udsFrame.getServiceId();
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int build() throws IOException {
+        int n = 0;
+        for (UDSBody request : requests) {
+            n += new UDSFrame(protocol, request).write().length;
+        }
+        return n;
+    }
+
+    @Benchmark
+    public long readWords() throws IOException {
+        long n = 0;
+        for (byte[] frame : recorded) {
+            BitReader reader = new BitReader(frame);
+            while (reader.remainingBytes() >= 4) {
+                n += reader.readInt();
+            }
+            n += reader.readRemaining().length;
+        }
+        return n;
+    }
+}
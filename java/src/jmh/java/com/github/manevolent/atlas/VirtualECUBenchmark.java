@@ -0,0 +1,163 @@
+package com.github.manevolent.atlas;
+
+import com.github.manevolent.atlas.connection.ConnectionMode;
+import com.github.manevolent.atlas.connection.MemoryDump;
+import com.github.manevolent.atlas.connection.MemoryFrame;
+import com.github.manevolent.atlas.connection.SubaruDIConnection;
+import com.github.manevolent.atlas.model.*;
+import com.github.manevolent.atlas.model.source.ArraySource;
+import com.github.manevolent.atlas.model.uds.SecurityAccessProperty;
+import com.github.manevolent.atlas.protocol.can.VirtualCANBus;
+import com.github.manevolent.atlas.protocol.j2534.J2534Device;
+import com.github.manevolent.atlas.protocol.j2534.VirtualJ2534Device;
+import com.github.manevolent.atlas.protocol.subaru.SubaruProtocols;
+import com.github.manevolent.atlas.protocol.subaru.uds.command.SubaruClearFlashCommand;
+import com.github.manevolent.atlas.protocol.uds.AsyncUDSSession;
+import com.github.manevolent.atlas.protocol.uds.debug.VirtualECU;
+import com.github.manevolent.atlas.protocol.uds.request.UDSDownloadRequest;
+import com.github.manevolent.atlas.protocol.uds.request.UDSTransferRequest;
+import com.github.manevolent.atlas.protocol.uds.response.UDSDownloadResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.manevolent.atlas.protocol.subaru.SubaruDITComponent.*;
+
+/**
+ * Runs the whole stack, from the Subaru DI connection down through UDS, ISO-TP and CAN, against a virtual ECU: one
+ * datalog frame, a dump of 16 KiB and programming 16 KiB of flash. A bitrate of 0 leaves only the cost of the stack
+ * itself; 500 kbit/s is what a car's powertrain bus allows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class VirtualECUBenchmark {
+    private static final int RAM_BASE = 0x20000000;
+    private static final int LENGTH = 0x4000;
+    private static final int PARAMETERS = 32;
+    private static final int LEVEL = 0x3;
+    private static final byte[] KEY = new byte[16];
+
+    @Param({"0", "500000"})
+    public int bitrate;
+
+    private VirtualCANBus bus;
+    private VirtualECU ecu;
+    private SubaruDIConnection connection;
+    private MemorySection flashSection;
+    private final List<MemoryParameter> parameters = new ArrayList<>();
+    private final byte[] image = new byte[LENGTH];
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        Random random = new Random(0xEC0);
+        byte[] ram = new byte[LENGTH], flash = new byte[LENGTH];
+        random.nextBytes(ram);
+        random.nextBytes(flash);
+        random.nextBytes(image);
+
+        bus = new VirtualCANBus();
+        bus.setBitrate(bitrate);
+
+        ecu = VirtualECU.builder()
+                .withProtocol(SubaruProtocols.DIT)
+                .withComponents(ENGINE_1, ENGINE_2)
+                .withFunctionalAddress(BROADCAST.getSendAddress())
+                .withMemory(RAM_BASE, ram)
+                .withFlash(0, flash)
+                .withSecurityKey(LEVEL, KEY)
+                .build();
+        ecu.start(bus);
+
+        Project.Builder project = Project.builder();
+        for (String mode : List.of("memory_read", "flash_write", "datalog")) {
+            project.withProperty("subaru.dit.securityaccess." + mode, new SecurityAccessProperty(LEVEL, KEY));
+        }
+
+        connection = new SubaruDIConnection(null) {
+            @Override
+            protected J2534Device findDevice() {
+                return new VirtualJ2534Device(bus);
+            }
+        };
+        connection.setProject(project.build());
+
+        MemorySection ramSection = MemorySection.builder().withName("RAM").withBaseAddress(RAM_BASE)
+                .withLength(LENGTH).withByteOrder(MemoryByteOrder.BIG_ENDIAN).withType(MemoryType.RAM).build();
+        flashSection = MemorySection.builder().withName("Flash").withBaseAddress(0)
+                .withLength(LENGTH).withByteOrder(MemoryByteOrder.BIG_ENDIAN).withType(MemoryType.CODE).build();
+
+        for (int i = 0; i < PARAMETERS; i ++) {
+            parameters.add(MemoryParameter.builder()
+                    .withName("Parameter " + i)
+                    .withAddress(ramSection, RAM_BASE + (i * 8))
+                    .withScale(Scale.builder().withFormat(DataFormat.USHORT).withUnit(Unit.NONE))
+                    .build());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        connection.disconnect();
+        ecu.close();
+        bus.close();
+    }
+
+    private void changeMode(ConnectionMode mode) throws Exception {
+        if (connection.getConnectionMode() != mode) {
+            connection.changeConnectionMode(ConnectionMode.IDLE);
+            connection.changeConnectionMode(mode);
+        }
+    }
+
+    @Benchmark
+    public MemoryFrame datalog() throws Exception {
+        changeMode(ConnectionMode.DATALOG);
+        return connection.readFrame(parameters);
+    }
+
+    @Benchmark
+    public byte[] dump() throws Exception {
+        changeMode(ConnectionMode.READ_MEMORY);
+
+        byte[] dumped = new byte[LENGTH];
+        MemoryDump.builder()
+                .withConnection(connection)
+                .withSection(flashSection)
+                .withTarget(new ArraySource(0, dumped, 0, LENGTH))
+                .withBlockSize(0xF0)
+                .build()
+                .run();
+        return dumped;
+    }
+
+    @Benchmark
+    public void flash() throws Exception {
+        changeMode(ConnectionMode.FLASH_ROM);
+        AsyncUDSSession session = (AsyncUDSSession) connection.getSession();
+
+        new SubaruClearFlashCommand(ENGINE_1, 0, LENGTH).execute(session);
+
+        UDSDownloadResponse download;
+        try (var transaction = session.request(ENGINE_1.getSendAddress(), new UDSDownloadRequest(0, LENGTH))) {
+            download = transaction.get();
+        }
+
+        int length = (int) download.getBlockLength() - 6;
+        int index = 1;
+        for (int offset = 0; offset < LENGTH; offset += length, index ++) {
+            byte[] block = Arrays.copyOfRange(image, offset, Math.min(LENGTH, offset + length));
+            try (var transaction = session.request(ENGINE_1.getSendAddress(),
+                    new UDSTransferRequest(index & 0xFF, offset, block))) {
+                transaction.get();
+            }
+        }
+    }
+}
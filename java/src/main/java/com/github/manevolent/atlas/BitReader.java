@@ -1,65 +1,104 @@
 package com.github.manevolent.atlas;
 
-import java.io.ByteArrayInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
+/**
+ * Reads big-endian, most significant bit first values from a byte array or stream. Reads that begin on a byte
+ * boundary take whole bytes at a time; only reads that begin mid-byte fall back to shifting bits.
+ */
 public class BitReader {
-    private InputStream is;
-    private long totalSize = -1;
+    private final InputStream is;
 
-    private Byte frame;
-    private int pos, offs;
+    // Set when reading from an array; "index" is the next byte to fetch and "limit" is one past the last
+    private final byte[] array;
+    private final int limit;
+    private int index;
+
+    // The byte currently being read, and how many of its bits have been consumed (8 means none remain)
+    private int frame;
+    private int pos = 8;
 
     public BitReader(byte[] frame) {
-        this.is = new ByteArrayInputStream(frame);
-        this.totalSize = frame.length;
+        this(frame, 0, frame.length);
+    }
+
+    public BitReader(byte[] frame, long offs) {
+        this(frame, (int) offs, frame.length);
     }
 
-    public BitReader(byte[] frame, long offs) throws IOException {
-        this.is = new ByteArrayInputStream(frame);
-        assert this.is.skip(offs) == offs;
-        this.totalSize = frame.length;
+    /**
+     * Creates a reader over a range of an array
+     * @param frame array to read from
+     * @param offs index of the first byte to read
+     * @param limit index one past the last byte to read
+     */
+    public BitReader(byte[] frame, int offs, int limit) {
+        if (offs < 0 || offs > limit || limit > frame.length) {
+            throw new ArrayIndexOutOfBoundsException(offs);
+        }
+
+        this.is = null;
+        this.array = frame;
+        this.index = offs;
+        this.limit = limit;
+    }
+
+    /**
+     * Creates a reader over the remaining bytes of a buffer. The buffer's position is not changed.
+     * @param buffer buffer to read from
+     */
+    public BitReader(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            this.array = buffer.array();
+            this.index = buffer.arrayOffset() + buffer.position();
+            this.limit = buffer.arrayOffset() + buffer.limit();
+        } else {
+            this.array = new byte[buffer.remaining()];
+            buffer.duplicate().get(array);
+            this.index = 0;
+            this.limit = array.length;
+        }
+
+        this.is = null;
     }
 
     public BitReader(InputStream is) {
         this.is = is;
+        this.array = null;
+        this.limit = 0;
     }
 
     public boolean readBoolean() throws IOException {
-        int read = read();
-        if (read == 1) {
-            return true;
-        } else if (read == 0) {
-            return false;
-        } else {
-            throw new EOFException();
-        }
+        return read() == 1;
     }
 
-    private byte readNextFrame() throws IOException {
-        int symbol = is.read();
-        if (symbol < 0) throw new EOFException();
-        byte frame = (byte)(symbol & 0xFF);
-        this.frame = frame;
-        return frame;
+    private boolean isAligned() {
+        return pos == 8;
     }
 
-    public int read() throws IOException {
-        if (frame == null) {
-            readNextFrame();
-        } else if (this.pos >= 8){
-            readNextFrame();
-            this.offs ++;
-            this.pos = 0;
+    private int nextByte() throws IOException {
+        if (array != null) {
+            if (index >= limit) {
+                throw new EOFException();
+            }
+            return array[index++] & 0xFF;
+        } else {
+            int symbol = is.read();
+            if (symbol < 0) throw new EOFException();
+            return symbol;
         }
+    }
 
-        int b = (frame >> (8 - this.pos - 1)) & 0x1;
-
-        this.pos++;
+    public int read() throws IOException {
+        if (pos >= 8) {
+            frame = nextByte();
+            pos = 0;
+        }
 
-        return b;
+        return (frame >>> (7 - pos++)) & 0x1;
     }
 
     public int read(boolean[] bits) throws IOException {
@@ -75,56 +114,74 @@ public class BitReader {
             throw new IllegalArgumentException(Integer.toString(nbits));
         }
 
-        boolean[] bits = new boolean[nbits];
-        int n = read(bits);
-        if (n != nbits) {
-            throw new EOFException();
+        if (isAligned() && (nbits & 0x7) == 0 && array != null) {
+            int n = nbits >> 3;
+            if (limit - index < n) {
+                index = limit;
+                throw new EOFException();
+            }
+
+            long value = 0L;
+            for (int i = 0; i < n; i ++) {
+                value = (value << 8) | (array[index++] & 0xFF);
+            }
+            return value;
         }
 
-        long value = 0x00;
-        for (int i = 0; i < nbits; i ++) {
-            boolean bit = bits[i];
-            if (bit) {
-                long ovalue = 0x1;
-                ovalue <<= nbits-i-1;
-                value |= ovalue;
+        long value = 0L;
+        int needed = nbits;
+        while (needed > 0) {
+            if (pos >= 8) {
+                frame = nextByte();
+                pos = 0;
             }
+
+            int take = Math.min(8 - pos, needed);
+            int bits = (frame >>> (8 - pos - take)) & ((1 << take) - 1);
+            value = (value << take) | bits;
+            pos += take;
+            needed -= take;
         }
 
         return value;
     }
 
-
     public long read(int nbits, boolean swapOrder) throws IOException {
-        if (nbits > 64 || nbits < 1) {
-            throw new IllegalArgumentException(Integer.toString(nbits));
-        }
-
-        boolean[] bits = new boolean[nbits];
-        int n = read(bits);
-        if (n != nbits) {
-            throw new EOFException();
+        return read(nbits);
+    }
+
+    /**
+     * Reads whole bytes into an array. When the reader is on a byte boundary the bytes are copied directly.
+     * @param bytes array to fill
+     * @param offs index of the first byte to fill
+     * @param len number of bytes to read
+     * @return number of bytes read, always len
+     * @throws EOFException if fewer than len bytes remain
+     */
+    public int read(byte[] bytes, int offs, int len) throws IOException {
+        if (!isAligned()) {
+            for (int i = 0; i < len; i ++) {
+                bytes[offs + i] = (byte) read(8);
+            }
+            return len;
         }
 
-        long value = 0x00;
-        for (int i = 0; i < nbits; i ++) {
-            boolean bit = bits[i];
-            if (bit) {
-                long ovalue = 0x1;
-                ovalue <<= nbits-i-1;
-                value |= ovalue;
+        if (array != null) {
+            if (limit - index < len) {
+                index = limit;
+                throw new EOFException();
             }
+            System.arraycopy(array, index, bytes, offs, len);
+            index += len;
+        } else if (is.readNBytes(bytes, offs, len) != len) {
+            throw new EOFException();
         }
 
-        return value;
+        return len;
     }
 
     public int read(byte[] bytes) throws IOException {
-        int i = 0;
-        for (; i < bytes.length; i ++) {
-            bytes[i] = (byte) read(8);
-        }
-        return i;
+        return read(bytes, 0, bytes.length);
     }
 
     public byte readByte() throws IOException {
@@ -148,17 +205,17 @@ public class BitReader {
     }
 
     public long readLong() throws IOException {
-        return (long) read(64);
+        return read(64);
     }
 
-
     public int remaining() {
+        int buffered = 8 - pos;
+        if (array != null) {
+            return ((limit - index) * 8) + buffered;
+        }
+
         try {
-            if (totalSize >= 0) {
-                return (((int)totalSize - offs)*8) - pos;
-            } else {
-                return (is.available()*8) - pos;
-            }
+            return (is.available() * 8) + buffered;
         } catch (IOException e) {
             return -1;
         }
@@ -181,6 +238,9 @@ public class BitReader {
     }
 
     public int available() throws IOException {
+        if (array != null) {
+            return limit - index;
+        }
         return is.available();
     }
-}
\ No newline at end of file
+}
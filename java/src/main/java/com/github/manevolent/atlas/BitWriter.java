@@ -5,6 +5,10 @@ import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
+/**
+ * Writes big-endian, most significant bit first values to a stream. Whole bytes written on a byte boundary go
+ * straight to the stream; only writes that begin mid-byte are shifted into place.
+ */
 public class BitWriter extends OutputStream implements AutoCloseable {
     private OutputStream outputStream;
 
@@ -35,22 +39,53 @@ public class BitWriter extends OutputStream implements AutoCloseable {
         }
     }
 
-    public void writeNibble(byte nibble) throws IOException {
-        boolean[] bits = new boolean[4];
-        for (int n = 0; n < bits.length; n ++) {
-            bits[bits.length - n - 1] = (nibble>>n & 0x1) == 0x1;
+    /**
+     * Writes the low bits of a value, most significant bit first
+     * @param value value to write
+     * @param nbits number of low bits of the value to write, from 0 to 64
+     */
+    public void writeBits(long value, int nbits) throws IOException {
+        if (nbits > 64 || nbits < 0) {
+            throw new IllegalArgumentException(Integer.toString(nbits));
+        }
+
+        while (nbits > 0) {
+            int take = Math.min(8 - offs, nbits);
+            int bits = (int) (value >>> (nbits - take)) & ((1 << take) - 1);
+            buffer = (byte) (buffer | (bits << (8 - offs - take)));
+            offs += take;
+            nbits -= take;
+
+            if (offs >= 8) {
+                outputStream.write(buffer & 0xFF);
+                offs = 0;
+                buffer = 0x00;
+            }
         }
-        write(bits);
+    }
+
+    public void writeNibble(byte nibble) throws IOException {
+        writeBits(nibble, 4);
     }
 
     @Override
     public void write(int i) throws IOException {
-        byte b = (byte) (0xFF & i);
-        boolean[] bits = new boolean[8];
-        for (int n = 0; n < bits.length; n ++) {
-            bits[bits.length - n - 1] = (b>>n & 0x1) == 0x1;
+        if (offs == 0) {
+            outputStream.write(i & 0xFF);
+        } else {
+            writeBits(i, 8);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (offs == 0) {
+            outputStream.write(b, off, len);
+        } else {
+            for (int i = 0; i < len; i ++) {
+                writeBits(b[off + i], 8);
+            }
         }
-        write(bits);
     }
 
     public void writeShort(short s) throws IOException {
@@ -83,11 +118,7 @@ public class BitWriter extends OutputStream implements AutoCloseable {
     }
 
     public void writeLSB(int data, int nbits) throws IOException {
-        boolean[] bits = new boolean[nbits];
-        for (int n = 0; n < bits.length; n ++) {
-            bits[bits.length - n - 1] = (data>>n & 0x1) == 0x1;
-        }
-        write(bits);
+        writeBits(data, nbits);
     }
 
     @Override
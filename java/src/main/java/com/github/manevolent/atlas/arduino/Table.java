@@ -1,6 +1,7 @@
 package com.github.manevolent.atlas.arduino;
 
 import com.github.manevolent.atlas.BitWriter;
+import com.github.manevolent.atlas.model.TableLookup;
 
 import java.io.IOException;
 import java.util.List;
@@ -10,6 +11,7 @@ public class Table extends AbstractValue implements Writable {
     private final TableType type;
     private final List<Dimension> dimensions;
     private final float[] data;
+    private TableLookup lookup;
 
     public Table(String name, TableType type, List<Dimension> dimensions, float[] data) {
         super(name, dimensions.stream().allMatch(d -> d.getSource().isStatic()));
@@ -24,9 +26,33 @@ public class Table extends AbstractValue implements Writable {
         this(name, TableType.ARITHMETIC, dimensions, data);
     }
 
+    private TableLookup getLookup() {
+        if (lookup == null) {
+            float[][] anchors = new float[dimensions.size()][];
+            Integration[] integrations = new Integration[dimensions.size()];
+            for (int i = 0; i < dimensions.size(); i ++) {
+                anchors[i] = dimensions.get(i).getAnchors();
+                integrations[i] = dimensions.get(i).getIntegration();
+            }
+            lookup = new TableLookup(anchors, integrations, data);
+        }
+        return lookup;
+    }
+
     @Override
     public float get() {
-        return 0;
+        return switch (dimensions.size()) {
+            case 0 -> data.length > 0 ? data[0] : 0f;
+            case 1 -> getLookup().get(dimensions.get(0).getSource().get());
+            case 2 -> getLookup().get(dimensions.get(0).getSource().get(), dimensions.get(1).getSource().get());
+            default -> {
+                float[] coordinates = new float[dimensions.size()];
+                for (int i = 0; i < coordinates.length; i ++) {
+                    coordinates[i] = dimensions.get(i).getSource().get();
+                }
+                yield getLookup().get(coordinates);
+            }
+        };
     }
 
     @Override
@@ -0,0 +1,108 @@
+package com.github.manevolent.atlas.connection;
+
+import com.github.manevolent.atlas.model.MemoryParameter;
+
+import java.nio.ByteOrder;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * A frame that keeps the data it was read in, and decodes values from it when they're asked for using a
+ * {@link MemoryFrameLayout}. Reading a frame this way costs no allocations for each parameter.
+ *
+ * Data set on the frame afterwards is kept as in any other frame, and takes the place of what was read.
+ */
+public class BufferedMemoryFrame extends MemoryFrame {
+    private final MemoryFrameLayout layout;
+    private final byte[] buffer;
+
+    public BufferedMemoryFrame(Instant instant, MemoryFrameLayout layout, byte[] buffer) {
+        super(instant);
+
+        if (buffer.length < layout.getLength()) {
+            throw new IllegalArgumentException("Frame data is shorter than its layout: "
+                    + buffer.length + " < " + layout.getLength());
+        }
+
+        this.layout = layout;
+        this.buffer = buffer;
+    }
+
+    public BufferedMemoryFrame(MemoryFrameLayout layout, byte[] buffer) {
+        this(Instant.now(), layout, buffer);
+    }
+
+    public MemoryFrameLayout getLayout() {
+        return layout;
+    }
+
+    @Override
+    public Collection<MemoryParameter> getParameters() {
+        Collection<MemoryParameter> set = super.getParameters();
+        if (set.isEmpty()) {
+            return layout.getParameters();
+        }
+
+        Set<MemoryParameter> parameters = new LinkedHashSet<>(layout.getParameters());
+        parameters.addAll(set);
+        return parameters;
+    }
+
+    @Override
+    public boolean contains(MemoryParameter parameter) {
+        return super.contains(parameter) || layout.indexOf(parameter) >= 0;
+    }
+
+    /**
+     * Copies a parameter's data out of the frame, in the byte order of the parameter's memory section
+     * @param parameter parameter
+     * @return copy of the data, or null if the frame has no data for the parameter
+     */
+    @Override
+    public byte[] getData(MemoryParameter parameter) {
+        if (super.contains(parameter)) {
+            return super.getData(parameter);
+        }
+
+        int index = layout.indexOf(parameter);
+        if (index < 0) {
+            return null;
+        }
+
+        byte[] data = parameter.newBuffer();
+        System.arraycopy(buffer, layout.getOffset(index), data, 0, data.length);
+
+        ByteOrder byteOrder = parameter.getAddress().getSection().getByteOrder().getByteOrder();
+        if (byteOrder != layout.getByteOrder(index)) {
+            for (int i = 0; i < data.length / 2; i ++) {
+                byte temp = data[i];
+                data[i] = data[data.length - 1 - i];
+                data[data.length - 1 - i] = temp;
+            }
+        }
+
+        return data;
+    }
+
+    @Override
+    public Float getValue(MemoryParameter parameter) {
+        if (super.contains(parameter)) {
+            return super.getValue(parameter);
+        }
+
+        int index = layout.indexOf(parameter);
+        return index < 0 ? null : layout.getValue(buffer, index);
+    }
+
+    @Override
+    public float getValue(MemoryParameter parameter, float defaultValue) {
+        if (super.contains(parameter)) {
+            return super.getValue(parameter, defaultValue);
+        }
+
+        int index = layout.indexOf(parameter);
+        return index < 0 ? defaultValue : layout.getValue(buffer, index);
+    }
+}
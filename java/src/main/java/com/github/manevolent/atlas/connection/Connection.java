@@ -9,7 +9,9 @@ import com.github.manevolent.atlas.protocol.uds.UDSSession;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
 public interface Connection {
 
@@ -25,6 +27,15 @@ public interface Connection {
 
     MemoryFrame readFrame(Collection<MemoryParameter> parameters);
 
+    /**
+     * Adds a listener for every memory frame this connection reads. Listeners are called on the thread that read
+     * the frame, so they should hand anything slow off elsewhere.
+     * @param listener listener
+     */
+    void addMemoryFrameListener(Consumer<MemoryFrame> listener);
+
+    void removeMemoryFrameListener(Consumer<MemoryFrame> listener);
+
     UDSSession getSession() throws IOException, TimeoutException;
 
     UDSSession connect() throws IOException, TimeoutException;
@@ -64,6 +75,20 @@ public interface Connection {
         return readMemory(address, getMaximumReadSize());
     }
 
+    /**
+     * Reads a block of memory without waiting for it, so that several reads can be in flight at once
+     * @param address address to start the memory read from
+     * @param length number of bytes to read, up to the maximum memory read size
+     * @return future completed with the bytes read
+     */
+    default CompletableFuture<byte[]> readMemoryAsync(MemoryAddress address, int length) {
+        try {
+            return CompletableFuture.completedFuture(readMemory(address, length));
+        } catch (IOException | TimeoutException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
     /**
      * Resets the ECU
      * @param mode reset mode to perform.
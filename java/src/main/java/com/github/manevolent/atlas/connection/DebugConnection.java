@@ -60,6 +60,7 @@ public class DebugConnection extends UDSConnection {
             memoryFrame.setData(parameter, data);
         }
 
+        onMemoryFrame(memoryFrame);
         return memoryFrame;
     }
 
@@ -0,0 +1,317 @@
+package com.github.manevolent.atlas.connection;
+
+import com.github.manevolent.atlas.model.MemoryParameter;
+
+import java.util.*;
+
+/**
+ * Packs datalog parameters into a fixed range of dynamically defined data identifiers (DIDs), so that any set of
+ * parameters can be read with one ReadDataByIdentifier request naming the DIDs that hold them.
+ *
+ * Parameters stay where they were placed for as long as there's room, so a datalog that adds parameters or rotates
+ * between sets of them only defines what is new. New parameters go into a DID that was already changed this time,
+ * then an unused DID, then a DID with room (idle ones first, so DIDs being read now are left alone), and finally
+ * replace the DID read least recently. Adding to a DID relies on the ISO 14229 rule that defining an already defined
+ * DID appends to it; where the ECU doesn't allow that, the DID is cleared and defined again with everything it holds.
+ */
+public class DynamicDIDPacker {
+    private final int maximumLength;
+    private final Definition[] definitions;
+    private final Map<MemoryParameter, Definition> placements = new HashMap<>();
+    private volatile boolean appendSupported = true;
+    private long tick;
+
+    /**
+     * Creates a packer
+     * @param firstDid first DID in the range that may be defined
+     * @param count number of DIDs in the range
+     * @param maximumLength most bytes to put in each DID
+     */
+    public DynamicDIDPacker(int firstDid, int count, int maximumLength) {
+        if (count < 1 || maximumLength < 1) {
+            throw new IllegalArgumentException();
+        }
+
+        this.maximumLength = maximumLength;
+        this.definitions = new Definition[count];
+        for (int i = 0; i < count; i ++) {
+            definitions[i] = new Definition(firstDid + i);
+        }
+    }
+
+    private static int getSize(MemoryParameter parameter) {
+        return parameter.getScale().getFormat().getSize();
+    }
+
+    public boolean isAppendSupported() {
+        return appendSupported;
+    }
+
+    /**
+     * Sets whether the ECU appends to a DID that is defined again. If not, DIDs are only ever cleared and then
+     * defined with everything they hold.
+     * @param appendSupported true if definitions can be appended to
+     */
+    public void setAppendSupported(boolean appendSupported) {
+        this.appendSupported = appendSupported;
+    }
+
+    /**
+     * Places any parameters that aren't already held by a DID
+     * @param parameters parameters about to be read
+     * @return changes to make on the ECU, in order, before the parameters can be read
+     * @throws IllegalArgumentException if the parameters can't all fit at once
+     */
+    public List<Change> plan(Collection<MemoryParameter> parameters) {
+        tick ++;
+
+        // Most reads are of parameters that are already placed, so check for that without allocating
+        boolean placed = true;
+        for (MemoryParameter parameter : parameters) {
+            Definition definition = placements.get(parameter);
+            if (definition != null) {
+                definition.lastUsed = tick;
+            } else {
+                placed = false;
+            }
+        }
+
+        if (placed) {
+            return Collections.emptyList();
+        }
+
+        Set<MemoryParameter> needed = new LinkedHashSet<>(parameters);
+        List<MemoryParameter> missing = new ArrayList<>();
+        for (MemoryParameter parameter : needed) {
+            int size = getSize(parameter);
+            if (size > maximumLength) {
+                throw new IllegalArgumentException(parameter.getName() + " is too large to datalog");
+            }
+
+            Definition definition = placements.get(parameter);
+            if (definition != null) {
+                definition.lastUsed = tick;
+            } else {
+                missing.add(parameter);
+            }
+        }
+
+        Map<Definition, Change> changes = new LinkedHashMap<>();
+        for (MemoryParameter parameter : missing) {
+            Definition definition = find(getSize(parameter), changes.keySet());
+            if (definition == null) {
+                // Fragmented, or full of parameters that aren't read any more: start over with what's needed
+                return repack(needed);
+            }
+
+            Change change = changes.computeIfAbsent(definition, this::newChange);
+            change.parameters.add(parameter);
+            place(definition, parameter);
+        }
+
+        return new ArrayList<>(changes.values());
+    }
+
+    private Definition find(int size, Set<Definition> changed) {
+        for (Definition definition : changed) {
+            if (definition.length + size <= maximumLength) {
+                return definition;
+            }
+        }
+
+        for (Definition definition : definitions) {
+            if (definition.parameters.isEmpty()) {
+                return definition;
+            }
+        }
+
+        Definition idle = null, active = null;
+        for (Definition definition : definitions) {
+            if (definition.length + size > maximumLength) {
+                continue;
+            }
+
+            if (definition.lastUsed != tick) {
+                if (idle == null || definition.lastUsed < idle.lastUsed) {
+                    idle = definition;
+                }
+            } else if (active == null) {
+                active = definition;
+            }
+        }
+
+        if (idle != null) {
+            return idle;
+        } else if (active != null) {
+            return active;
+        }
+
+        Definition eldest = null;
+        for (Definition definition : definitions) {
+            if (definition.lastUsed != tick && !changed.contains(definition)
+                    && (eldest == null || definition.lastUsed < eldest.lastUsed)) {
+                eldest = definition;
+            }
+        }
+
+        if (eldest != null) {
+            evict(eldest);
+        }
+
+        return eldest;
+    }
+
+    private Change newChange(Definition definition) {
+        if (definition.parameters.isEmpty()) {
+            return new Change(definition, true, new ArrayList<>());
+        } else if (appendSupported) {
+            return new Change(definition, false, new ArrayList<>());
+        } else {
+            return new Change(definition, true, new ArrayList<>(definition.parameters));
+        }
+    }
+
+    private List<Change> repack(Set<MemoryParameter> needed) {
+        reset();
+        tick ++;
+
+        List<Change> changes = new ArrayList<>();
+        int index = 0;
+        for (MemoryParameter parameter : needed) {
+            int size = getSize(parameter);
+            while (definitions[index].length + size > maximumLength) {
+                if (++ index >= definitions.length) {
+                    reset();
+                    throw new IllegalArgumentException("Too many parameters to datalog at once");
+                }
+            }
+
+            Definition definition = definitions[index];
+            if (changes.isEmpty() || changes.getLast().definition != definition) {
+                changes.add(new Change(definition, true, new ArrayList<>()));
+            }
+
+            changes.getLast().parameters.add(parameter);
+            place(definition, parameter);
+        }
+
+        return changes;
+    }
+
+    private void place(Definition definition, MemoryParameter parameter) {
+        definition.parameters.add(parameter);
+        definition.length += getSize(parameter);
+        definition.lastUsed = tick;
+        placements.put(parameter, definition);
+    }
+
+    private void evict(Definition definition) {
+        definition.parameters.forEach(placements::remove);
+        definition.parameters.clear();
+        definition.length = 0;
+    }
+
+    /**
+     * Gets the DIDs holding a set of parameters
+     * @param parameters parameters to read
+     * @return DIDs to read, in order
+     */
+    public List<Definition> getDefinitions(Collection<MemoryParameter> parameters) {
+        List<Definition> found = new ArrayList<>();
+        for (Definition definition : definitions) {
+            for (MemoryParameter parameter : parameters) {
+                if (placements.get(parameter) == definition) {
+                    found.add(definition);
+                    break;
+                }
+            }
+        }
+        return found;
+    }
+
+    public Definition getDefinition(MemoryParameter parameter) {
+        return placements.get(parameter);
+    }
+
+    /**
+     * Forgets every placement, such as after the ECU has dropped its definitions
+     */
+    public void reset() {
+        placements.clear();
+        for (Definition definition : definitions) {
+            evict(definition);
+            definition.lastUsed = 0;
+        }
+    }
+
+    public static class Definition {
+        private final int did;
+        private final List<MemoryParameter> parameters = new ArrayList<>();
+        private int length;
+        private long lastUsed;
+
+        private Definition(int did) {
+            this.did = did;
+        }
+
+        public int getDid() {
+            return did;
+        }
+
+        /**
+         * Gets the parameters held by this DID, in the order they appear in its data
+         * @return parameters
+         */
+        public List<MemoryParameter> getParameters() {
+            return Collections.unmodifiableList(parameters);
+        }
+
+        /**
+         * Gets the length of this DID's data
+         * @return length in bytes
+         */
+        public int getLength() {
+            return length;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%04X", did);
+        }
+    }
+
+    /**
+     * A definition to send to the ECU
+     */
+    public static class Change {
+        private final Definition definition;
+        private final boolean clear;
+        private final List<MemoryParameter> parameters;
+
+        private Change(Definition definition, boolean clear, List<MemoryParameter> parameters) {
+            this.definition = definition;
+            this.clear = clear;
+            this.parameters = parameters;
+        }
+
+        public Definition getDefinition() {
+            return definition;
+        }
+
+        /**
+         * Finds if the DID should be cleared before it is defined
+         * @return true to clear the DID first, false to append to it
+         */
+        public boolean isClear() {
+            return clear;
+        }
+
+        /**
+         * Gets the parameters to define, in order
+         * @return parameters
+         */
+        public List<MemoryParameter> getParameters() {
+            return Collections.unmodifiableList(parameters);
+        }
+    }
+}
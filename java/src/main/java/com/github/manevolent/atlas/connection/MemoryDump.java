@@ -0,0 +1,443 @@
+package com.github.manevolent.atlas.connection;
+
+import com.github.manevolent.atlas.logging.Log;
+import com.github.manevolent.atlas.model.MemoryAddress;
+import com.github.manevolent.atlas.model.MemorySection;
+import com.github.manevolent.atlas.model.MemorySource;
+import com.github.manevolent.atlas.ui.behavior.ProgressListener;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Dumps a memory section from a connection as quickly as the ECU allows.
+ *
+ * Unless a block size is given, the dump first negotiates the largest read the ECU accepts. Blocks are then read one
+ * at a time, and a block that fails is retried before the dump gives up. Each block is written to the output as soon
+ * as it arrives. Reads aren't pipelined: responses to memory reads don't say which address they are for, so a lost
+ * response would leave the reads behind it holding each other's data.
+ *
+ * If a checkpoint file is given, the dump records how much of the section has been written there. A dump that is
+ * canceled or fails can then be resumed by running it again with the same output and checkpoint. The checkpoint is
+ * deleted once the dump completes.
+ */
+public class MemoryDump {
+    public static final int DEFAULT_RETRIES = 3;
+
+    /**
+     * The smallest block size that negotiation will settle on
+     */
+    public static final int MINIMUM_BLOCK_SIZE = 0x10;
+
+    private static final int CHECKPOINT_MAGIC = 0x41544444; // "ATDD"
+    private static final long CHECKPOINT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private Connection connection;
+    private MemorySection section;
+    private MemorySource target;
+    private File file;
+    private File checkpoint;
+    private int retries = DEFAULT_RETRIES;
+    private int blockSize;
+    private ProgressListener listener = (message, progress) -> { };
+
+    private volatile boolean canceled;
+    private volatile long startTime, endTime;
+    private volatile long bytesRead;
+    private volatile int retryCount;
+    private volatile int completed;
+
+    private MemoryDump() {
+
+    }
+
+    public MemorySection getSection() {
+        return section;
+    }
+
+    /**
+     * Gets the size of each read, which is only known once negotiated if it wasn't given
+     * @return block size, in bytes, or 0 if it isn't known yet
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Gets how many bytes have been read from the ECU during this run, not including any resumed from a checkpoint
+     * @return bytes read
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Gets how many bytes at the start of the section have been written to the output
+     * @return bytes completed
+     */
+    public int getCompleted() {
+        return completed;
+    }
+
+    /**
+     * Gets how many reads have been retried during this run
+     * @return retries
+     */
+    public int getRetries() {
+        return retryCount;
+    }
+
+    /**
+     * Gets how long this run has taken
+     * @return elapsed time, in nanoseconds
+     */
+    public long getElapsedNanos() {
+        if (startTime == 0L) {
+            return 0L;
+        }
+
+        return (endTime != 0L ? endTime : System.nanoTime()) - startTime;
+    }
+
+    /**
+     * Gets the read throughput of this run
+     * @return bytes per second
+     */
+    public double getBytesPerSecond() {
+        long elapsed = getElapsedNanos();
+        return elapsed == 0L ? 0D : bytesRead / (elapsed / 1_000_000_000D);
+    }
+
+    /**
+     * Stops the dump once the read in progress completes
+     */
+    public void cancel() {
+        canceled = true;
+    }
+
+    public boolean isCanceled() {
+        return canceled;
+    }
+
+    /**
+     * Runs the dump
+     * @return true if the dump completed, false if it was canceled
+     * @throws IOException if a block could not be read after retrying, or the output could not be written
+     */
+    public boolean run() throws IOException {
+        startTime = System.nanoTime();
+        endTime = 0L;
+
+        int resumeFrom = 0;
+        if (checkpoint != null && checkpoint.exists()) {
+            resumeFrom = readCheckpoint();
+        }
+
+        if (blockSize <= 0) {
+            listener.updateProgress("Negotiating block size...", 0f);
+            blockSize = negotiateBlockSize();
+        }
+
+        completed = resumeFrom;
+
+        try (Output output = openOutput(resumeFrom == 0)) {
+            boolean finished = dump(output, resumeFrom);
+            output.flush();
+
+            if (checkpoint != null) {
+                if (finished) {
+                    Files.deleteIfExists(checkpoint.toPath());
+                } else {
+                    writeCheckpoint();
+                }
+            }
+
+            return finished;
+        } finally {
+            endTime = System.nanoTime();
+
+            Log.can().log(Level.INFO, String.format("Read %d bytes of %s in %.1fs (%.0f B/s, block size 0x%X, " +
+                            "%d retries)", bytesRead, section.getName(), getElapsedNanos() / 1_000_000_000D,
+                    getBytesPerSecond(), blockSize, retryCount));
+        }
+    }
+
+    private boolean dump(Output output, int resumeFrom) throws IOException {
+        int length = section.getDataLength();
+
+        long lastCheckpoint = System.nanoTime();
+        int offset = resumeFrom;
+        int attempts = 0;
+
+        while (offset < length) {
+            if (canceled) {
+                return false;
+            }
+
+            int blockLength = Math.min(blockSize, length - offset);
+            byte[] data = null;
+            Throwable error = null;
+            try {
+                data = connection.readMemoryAsync(getAddress(offset), blockLength).get();
+                if (data == null || data.length != blockLength) {
+                    error = new EOFException("Expected " + blockLength + " bytes, read "
+                            + (data == null ? 0 : data.length));
+                }
+            } catch (ExecutionException e) {
+                error = e.getCause();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(e.getMessage());
+            }
+
+            if (error != null) {
+                if (++attempts > retries) {
+                    if (checkpoint != null) {
+                        output.flush();
+                        writeCheckpoint();
+                    }
+                    throw new IOException("Problem reading memory at " + getAddress(offset), error);
+                }
+
+                Log.can().log(Level.FINE, "Retrying memory read at " + getAddress(offset), error);
+                retryCount++;
+                continue;
+            }
+
+            output.write(offset, data, blockLength);
+            bytesRead += blockLength;
+            attempts = 0;
+
+            int blockOffset = offset;
+            offset += blockLength;
+            completed = offset;
+
+            long now = System.nanoTime();
+            if (checkpoint != null && now - lastCheckpoint >= CHECKPOINT_INTERVAL_NANOS) {
+                output.flush();
+                writeCheckpoint();
+                lastCheckpoint = now;
+            }
+
+            listener.updateProgress(String.format("Reading 0x%08X (%.1f KB/s)...",
+                    section.getBaseAddress() + blockOffset, getBytesPerSecond() / 1024D),
+                    (float) completed / (float) length);
+        }
+
+        return true;
+    }
+
+    /**
+     * Finds the largest block size that the ECU will read, from the start of the section. Sizes are halved until a
+     * read succeeds, and then narrowed in on between the largest size that worked and the smallest that didn't.
+     * @return block size
+     */
+    private int negotiateBlockSize() throws IOException {
+        int largest = Math.min(connection.getMaximumReadSize(), section.getDataLength());
+        int minimum = Math.min(MINIMUM_BLOCK_SIZE, largest);
+        int good = 0, bad = largest + 1;
+        int size = largest;
+
+        while (true) {
+            if (probe(size)) {
+                good = size;
+            } else {
+                bad = size;
+            }
+
+            if (good == 0) {
+                if (size <= minimum) {
+                    throw new IOException("Unable to read " + size + " bytes from " + section.getName());
+                }
+                size = Math.max(minimum, size / 2);
+            } else if (bad - good <= Math.max(1, good / 8)) {
+                // Close enough; each probe that fails may cost a timeout
+                return good;
+            } else {
+                size = (good + bad) / 2;
+            }
+        }
+    }
+
+    private boolean probe(int size) throws IOException {
+        try {
+            byte[] data = connection.readMemoryAsync(getAddress(0), size).get();
+            return data != null && data.length == size;
+        } catch (ExecutionException e) {
+            Log.can().log(Level.FINE, "Read of " + size + " bytes rejected", e.getCause());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        }
+    }
+
+    private MemoryAddress getAddress(int offset) {
+        return MemoryAddress.builder()
+                .withSection(section)
+                .withOffset(section.getBaseAddress() + offset)
+                .build();
+    }
+
+    private int readCheckpoint() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(checkpoint)))) {
+            if (in.readInt() != CHECKPOINT_MAGIC) {
+                throw new IOException("Not a memory dump checkpoint: " + checkpoint);
+            }
+
+            long baseAddress = in.readLong();
+            int length = in.readInt();
+            int checkpointBlockSize = in.readInt();
+            int checkpointCompleted = in.readInt();
+
+            if (baseAddress != section.getBaseAddress() || length != section.getDataLength()) {
+                throw new IOException("Checkpoint " + checkpoint + " is for a different memory section");
+            }
+
+            if (blockSize <= 0) {
+                blockSize = checkpointBlockSize;
+            }
+
+            return Math.max(0, Math.min(length, checkpointCompleted));
+        }
+    }
+
+    private void writeCheckpoint() throws IOException {
+        File temporary = new File(checkpoint.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+            out.writeInt(CHECKPOINT_MAGIC);
+            out.writeLong(section.getBaseAddress());
+            out.writeInt(section.getDataLength());
+            out.writeInt(blockSize);
+            out.writeInt(completed);
+        }
+
+        Files.move(temporary.toPath(), checkpoint.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Output openOutput(boolean truncate) throws IOException {
+        if (file != null) {
+            FileChannel channel = truncate ?
+                    FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                            StandardOpenOption.TRUNCATE_EXISTING) :
+                    FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            return new Output() {
+                @Override
+                public void write(int offset, byte[] data, int length) throws IOException {
+                    ByteBuffer buffer = ByteBuffer.wrap(data, 0, length);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer, offset + buffer.position());
+                    }
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    channel.force(false);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    channel.close();
+                }
+            };
+        } else {
+            return (offset, data, length) -> target.write(data, section.getBaseAddress() + offset, 0, length);
+        }
+    }
+
+    private interface Output extends Closeable {
+        void write(int offset, byte[] data, int length) throws IOException;
+
+        default void flush() throws IOException {
+
+        }
+
+        @Override
+        default void close() throws IOException {
+
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private final MemoryDump dump = new MemoryDump();
+
+        public Builder withConnection(Connection connection) {
+            dump.connection = connection;
+            return this;
+        }
+
+        public Builder withSection(MemorySection section) {
+            dump.section = section;
+            return this;
+        }
+
+        /**
+         * Writes the dump into a memory source, such as a calibration, covering the section being dumped
+         * @param target target source
+         * @return builder
+         */
+        public Builder withTarget(MemorySource target) {
+            dump.target = target;
+            return this;
+        }
+
+        /**
+         * Writes the dump into a file, where the section's base address is written at the start of the file
+         * @param file target file
+         * @return builder
+         */
+        public Builder withFile(File file) {
+            dump.file = file;
+            return this;
+        }
+
+        public Builder withCheckpoint(File checkpoint) {
+            dump.checkpoint = checkpoint;
+            return this;
+        }
+
+        public Builder withRetries(int retries) {
+            dump.retries = retries;
+            return this;
+        }
+
+        /**
+         * Reads blocks of a given size, instead of negotiating one
+         * @param blockSize block size
+         * @return builder
+         */
+        public Builder withBlockSize(int blockSize) {
+            dump.blockSize = blockSize;
+            return this;
+        }
+
+        public Builder withListener(ProgressListener listener) {
+            dump.listener = listener;
+            return this;
+        }
+
+        public MemoryDump build() {
+            if (dump.connection == null) {
+                throw new NullPointerException("connection");
+            } else if (dump.section == null) {
+                throw new NullPointerException("section");
+            } else if ((dump.target == null) == (dump.file == null)) {
+                throw new IllegalArgumentException("Either a target or a file must be given");
+            }
+
+            return dump;
+        }
+    }
+}
@@ -4,15 +4,15 @@ import com.github.manevolent.atlas.model.MemoryParameter;
 
 import java.time.Instant;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 
 public class MemoryFrame {
     private final Instant instant;
-    private final LinkedHashMap<MemoryParameter, byte[]> data;
+    private LinkedHashMap<MemoryParameter, byte[]> data;
 
     public MemoryFrame(Instant instant) {
         this.instant = instant;
-        this.data = new LinkedHashMap<>();
     }
 
     public MemoryFrame() {
@@ -20,15 +20,22 @@ public class MemoryFrame {
     }
 
     public void setData(MemoryParameter parameter, byte[] data) {
+        if (this.data == null) {
+            this.data = new LinkedHashMap<>();
+        }
         this.data.put(parameter, data);
     }
 
     public Collection<MemoryParameter> getParameters() {
-        return data.keySet();
+        return data == null ? Collections.emptySet() : data.keySet();
+    }
+
+    public boolean contains(MemoryParameter parameter) {
+        return data != null && data.containsKey(parameter);
     }
 
     public byte[] getData(MemoryParameter parameter) {
-        return data.get(parameter);
+        return data == null ? null : data.get(parameter);
     }
 
     public Float getValue(MemoryParameter parameter) {
@@ -39,6 +46,20 @@ public class MemoryFrame {
         return parameter.getValue(data);
     }
 
+    /**
+     * Gets the value of a parameter without boxing it
+     * @param parameter parameter
+     * @param defaultValue value to return if the frame has no data for the parameter
+     * @return value
+     */
+    public float getValue(MemoryParameter parameter, float defaultValue) {
+        byte[] data = getData(parameter);
+        if (data == null || data.length == 0) {
+            return defaultValue;
+        }
+        return parameter.getValue(data);
+    }
+
     public Instant getInstant() {
         return instant;
     }
@@ -0,0 +1,122 @@
+package com.github.manevolent.atlas.connection;
+
+import com.github.manevolent.atlas.model.CompiledScale;
+import com.github.manevolent.atlas.model.DataFormat;
+import com.github.manevolent.atlas.model.MemoryParameter;
+import com.github.manevolent.atlas.model.Scale;
+
+import java.nio.ByteOrder;
+import java.util.*;
+
+/**
+ * Where each parameter's value sits in a block of data read from the ECU, such as the response to a read of one
+ * or more dynamic DIDs. A layout is worked out once for each definition, so frames read with it can decode values
+ * straight out of the response (see {@link BufferedMemoryFrame}).
+ *
+ * Each parameter's scale is compiled when it is added to the layout, so changes made to a scale afterwards aren't
+ * seen by the layout.
+ */
+public class MemoryFrameLayout {
+    private final List<MemoryParameter> parameters = new ArrayList<>();
+    private final Map<MemoryParameter, Integer> indices = new HashMap<>();
+    private int[] offsets = new int[0];
+    private ByteOrder[] byteOrders = new ByteOrder[0];
+    private DataFormat[] formats = new DataFormat[0];
+    private CompiledScale[] scales = new CompiledScale[0];
+    private int length;
+
+    private MemoryFrameLayout() {
+
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public List<MemoryParameter> getParameters() {
+        return Collections.unmodifiableList(parameters);
+    }
+
+    /**
+     * Finds a parameter in this layout
+     * @param parameter parameter to find
+     * @return index of the parameter, or -1 if it isn't in this layout
+     */
+    public int indexOf(MemoryParameter parameter) {
+        Integer index = indices.get(parameter);
+        return index == null ? -1 : index;
+    }
+
+    public int getOffset(int index) {
+        return offsets[index];
+    }
+
+    public ByteOrder getByteOrder(int index) {
+        return byteOrders[index];
+    }
+
+    /**
+     * Gets the least amount of data this layout can be read from
+     * @return length in bytes
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Decodes a value in place
+     * @param data data laid out as described by this layout
+     * @param index index of the parameter
+     * @return scaled value
+     */
+    public float getValue(byte[] data, int index) {
+        float unscaled = formats[index].convertFromBytes(data, offsets[index], byteOrders[index]);
+        return scales[index].forward(unscaled);
+    }
+
+    public static class Builder {
+        private final MemoryFrameLayout layout = new MemoryFrameLayout();
+
+        /**
+         * Adds a parameter to the layout
+         * @param parameter parameter
+         * @param offset offset of the parameter's value in the data
+         * @param byteOrder byte order of the parameter's value in the data
+         * @return this builder
+         */
+        public Builder withParameter(MemoryParameter parameter, int offset, ByteOrder byteOrder) {
+            int index = layout.parameters.size();
+            if (layout.indices.putIfAbsent(parameter, index) != null) {
+                throw new IllegalArgumentException(parameter.getName() + " is already in the layout");
+            }
+
+            layout.parameters.add(parameter);
+            layout.offsets = Arrays.copyOf(layout.offsets, index + 1);
+            layout.offsets[index] = offset;
+            layout.byteOrders = Arrays.copyOf(layout.byteOrders, index + 1);
+            layout.byteOrders[index] = byteOrder;
+
+            Scale scale = parameter.getScale();
+            layout.formats = Arrays.copyOf(layout.formats, index + 1);
+            layout.formats[index] = scale.getFormat();
+            layout.scales = Arrays.copyOf(layout.scales, index + 1);
+            layout.scales[index] = scale.compile();
+            layout.length = Math.max(layout.length, offset + scale.getFormat().getSize());
+            return this;
+        }
+
+        /**
+         * Sets the least amount of data the layout can be read from, if there is more than its parameters need
+         * @param length length in bytes
+         * @return this builder
+         */
+        public Builder withLength(int length) {
+            layout.length = Math.max(layout.length, length);
+            return this;
+        }
+
+        public MemoryFrameLayout build() {
+            return layout;
+        }
+    }
+}
@@ -1,6 +1,6 @@
 package com.github.manevolent.atlas.connection;
 
-import com.github.manevolent.atlas.BitWriter;
+import com.github.manevolent.atlas.logging.Log;
 import com.github.manevolent.atlas.model.MemoryAddress;
 import com.github.manevolent.atlas.model.MemoryParameter;
 import com.github.manevolent.atlas.model.PropertyDefinition;
@@ -19,13 +19,19 @@ import com.github.manevolent.atlas.protocol.uds.request.*;
 import com.github.manevolent.atlas.protocol.uds.response.UDSReadDataByIDResponse;
 import com.github.manevolent.atlas.protocol.uds.response.UDSReadMemoryByAddressResponse;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
 
 import static com.github.manevolent.atlas.protocol.subaru.SubaruDITComponent.*;
 import static com.github.manevolent.atlas.protocol.subaru.SubaruDITComponent.CENTRAL_GATEWAY;
@@ -40,6 +46,16 @@ public class SubaruDIConnection extends UDSConnection {
 
     private static final UDSProtocol protocol = SubaruProtocols.DIT;
 
+    /**
+     * Requests kept in flight at once for each service, such as when defining and reading datalog DIDs
+     */
+    private static final int REQUEST_WINDOW = 4;
+
+    /**
+     * Size of the reads a span of memory is split into when it isn't dumped with a negotiated block size
+     */
+    private static final int DEFAULT_READ_SIZE = 0x32;
+
     /**
      * ECU orders things in non-native order
      * @param array array to reverse
@@ -53,13 +69,47 @@ public class SubaruDIConnection extends UDSConnection {
     }
 
     private static final int DEFAULT_DID = 0xF300;
-    private final Set<MemoryParameter> activeParameters = new LinkedHashSet<>();
 
-    private final int did;
+    /**
+     * How many dynamic DIDs datalog parameters are spread across, starting at DEFAULT_DID
+     */
+    private static final int DYNAMIC_DID_COUNT = 8;
+
+    /**
+     * Most bytes of data to put in each dynamic DID. Keeping DIDs small means adding a parameter only changes a
+     * small part of what is being read.
+     */
+    private static final int DYNAMIC_DID_LENGTH = 0x40;
+
+    private final DynamicDIDPacker packer = new DynamicDIDPacker(DEFAULT_DID, DYNAMIC_DID_COUNT, DYNAMIC_DID_LENGTH);
+
+    /**
+     * Definitions sent to the ECU that haven't been answered yet, by DID
+     */
+    private final Map<Integer, CompletableFuture<?>> pendingDefinitions = new HashMap<>();
+
+    private volatile boolean multipleReadSupported = true;
+
+    /**
+     * Negative responses that mean the ECU can't read several DIDs in one request
+     */
+    private static final Set<NegativeResponseCode> MULTIPLE_READ_REFUSALS = EnumSet.of(
+            NegativeResponseCode.SERVICE_NOT_SUPPORTED,
+            NegativeResponseCode.REQUEST_OUT_OF_RANGE,
+            NegativeResponseCode.INVALID_MESSAGE_LEN_OR_FORMAT);
+
+    /**
+     * Most frame layouts to keep at once. A datalog only rotates between a few sets of parameters.
+     */
+    private static final int MAXIMUM_LAYOUTS = 16;
+
+    /**
+     * Layouts of recent reads, by the parameters read. Cleared whenever a definition changes.
+     */
+    private final Map<List<MemoryParameter>, FrameLayout> layouts = new HashMap<>();
 
     public SubaruDIConnection(J2534DeviceProvider provider) {
         super(provider);
-        did = DEFAULT_DID;
     }
 
     @Override
@@ -77,7 +127,11 @@ public class SubaruDIConnection extends UDSConnection {
         }
 
         ISOTPDevice isotpDevice = device.openISOTOP(ENGINE_1, ENGINE_2, BODY_CONTROL, CENTRAL_GATEWAY);
-        AsyncUDSSession session = new AsyncUDSSession(isotpDevice, protocol);
+        AsyncUDSSession session = new AsyncUDSSession(isotpDevice, protocol, REQUEST_WINDOW);
+
+        // A memory read's response carries no address, so after a lost response the reads behind it would be
+        // handed each other's data with nothing to show for it but a matching length
+        session.setWindow(UDSReadMemoryByAddressRequest.class, 1);
         session.start();
 
         setConnectionMode(ConnectionMode.IDLE);
@@ -99,36 +153,67 @@ public class SubaruDIConnection extends UDSConnection {
         return session;
     }
 
+    /**
+     * The largest read that can be expressed with a one byte size
+     */
     @Override
     public int getMaximumReadSize() {
-        return 0x32;
+        return 0xFF;
     }
 
     @Override
     public byte[] readMemory(MemoryAddress address, int length) throws IOException, TimeoutException {
         long offset = address.getOffset();
-        int maxReadSize = getMaximumReadSize();
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        BitWriter bitWriter = new BitWriter(baos);
-        bitWriter.write(0x14);
-        bitWriter.writeInt((int) (offset & 0xFFFFFFFF));
-        bitWriter.write((byte) Math.min(0xFF, length));
+        // Queue up the reads for each block; the session sends them as its window for memory reads allows
+        List<CompletableFuture<byte[]>> blocks = new ArrayList<>();
+        for (int position = 0; position < length; position += DEFAULT_READ_SIZE) {
+            MemoryAddress blockAddress = MemoryAddress.builder()
+                    .withSection(address.getSection())
+                    .withOffset(offset + position)
+                    .build();
+            blocks.add(readMemoryAsync(blockAddress, Math.min(DEFAULT_READ_SIZE, length - position)));
+        }
 
-        AsyncUDSSession session = (AsyncUDSSession) getSession();
-        try (UDSTransaction<UDSReadMemoryByAddressRequest, UDSReadMemoryByAddressResponse>
-                     transaction = session.request(getECUComponent().getSendAddress(),
-                new UDSReadMemoryByAddressRequest(4, offset, 1, length))) {
-            byte[] data = transaction.get().getData();
-            reverse(data);
-            return data;
-        } catch (Exception e) {
-            throw new IOException(e);
+        ByteArrayOutputStream data = new ByteArrayOutputStream(length);
+        try {
+            for (CompletableFuture<byte[]> block : blocks) {
+                data.write(block.get());
+            }
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
         }
+
+        return data.toByteArray();
+    }
+
+    @Override
+    public CompletableFuture<byte[]> readMemoryAsync(MemoryAddress address, int length) {
+        AsyncUDSSession session;
+        try {
+            session = (AsyncUDSSession) getSession();
+        } catch (IOException | TimeoutException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return session.<UDSReadMemoryByAddressRequest, UDSReadMemoryByAddressResponse>requestAsync(
+                getECUComponent(), new UDSReadMemoryByAddressRequest(4, address.getOffset(), 1, length))
+                .thenApply(response -> {
+                    byte[] data = response.getData();
+                    reverse(data);
+                    return data;
+                });
     }
 
     @Override
     protected void change(ConnectionMode newMode) throws IOException, TimeoutException {
+        // Dynamic DIDs don't outlive the diagnostic session
+        resetDefinitions();
+        multipleReadSupported = true;
+
         if (newMode == ConnectionMode.DISCONNECTED) {
             setSession(null);
             return;
@@ -246,68 +331,272 @@ public class SubaruDIConnection extends UDSConnection {
             return null;
         }
 
-        boolean changed = parameters.size() != activeParameters.size() ||
-                parameters.stream().anyMatch(x -> !activeParameters.contains(x)) ||
-                activeParameters.stream().anyMatch(x -> !parameters.contains(x));
+        MemoryFrame frame;
+        synchronized (packer) {
+            try {
+                AsyncUDSSession session = (AsyncUDSSession) getSession();
+
+                // Send any new definitions without waiting for them, so parameters that are already defined can
+                // still be read while they're answered
+                List<DynamicDIDPacker.Change> changes = packer.plan(parameters);
+                if (!changes.isEmpty()) {
+                    layouts.clear();
+                    for (DynamicDIDPacker.Change change : changes) {
+                        define(session, change);
+                    }
+                }
+
+                List<DynamicDIDPacker.Definition> definitions = packer.getDefinitions(parameters);
+                List<DynamicDIDPacker.Definition> ready = new ArrayList<>(definitions.size());
+                for (DynamicDIDPacker.Definition definition : definitions) {
+                    CompletableFuture<?> pending = pendingDefinitions.get(definition.getDid());
+                    if (pending == null || pending.isDone()) {
+                        awaitDefinition(definition);
+                        ready.add(definition);
+                    }
+                }
+
+                // Nothing is defined yet, so there's nothing to do but wait
+                if (ready.isEmpty()) {
+                    for (DynamicDIDPacker.Definition definition : definitions) {
+                        awaitDefinition(definition);
+                    }
+                    ready = definitions;
+                }
 
-        if (changed) {
-            // Delete any prior DID
-            try (var transaction = getSession().request(ENGINE_1.getSendAddress(),
-                    new UDSDefineDataIdentifierRequest(0x3, did))) {
-                // Do nothing
-                transaction.get();
+                frame = read(session, parameters, ready);
             } catch (Exception e) {
-                // Ignore
-                e.printStackTrace();
+                // The ECU's definitions are no longer known, so define everything again next time
+                resetDefinitions();
+                throw new RuntimeException(e);
             }
+        }
+
+        onMemoryFrame(frame);
+        return frame;
+    }
+
+    private void define(AsyncUDSSession session, DynamicDIDPacker.Change change) {
+        int did = change.getDefinition().getDid();
+
+        List<CompletableFuture<?>> requests = new ArrayList<>(2);
+        CompletableFuture<?> prior = pendingDefinitions.get(did);
+        if (prior != null) {
+            requests.add(prior);
+        }
+
+        if (change.isClear()) {
+            // Delete any prior definition of the DID; the ECU may refuse if there wasn't one
+            requests.add(session.requestAsync(ENGINE_1.getSendAddress(), new UDSDefineDataIdentifierRequest(0x3, did))
+                    .exceptionally(ex -> null));
+        }
 
-            ByteBuffer buffer = ByteBuffer.allocate(1 + (parameters.size() * 5));
+        List<MemoryParameter> parameters = change.getParameters();
+        ByteBuffer buffer = ByteBuffer.allocate(1 + (parameters.size() * 5));
 
-            // Length and data length
-            // 0x1 - data length, length (i.e. 0xFF = 255 bytes at address)
-            // 0x4 - address length (i.e. 32 bit memory address / 0xFFFFFFFF)
-            buffer.put((byte) 0x14);
+        // Length and data length
+        // 0x1 - data length, length (i.e. 0xFF = 255 bytes at address)
+        // 0x4 - address length (i.e. 32 bit memory address / 0xFFFFFFFF)
+        buffer.put((byte) 0x14);
 
-            // Watch out - the order switches here from data length and memory to vice versa:
-            for (MemoryParameter parameter : parameters) {
-                buffer.putInt((int) (parameter.getAddress().getOffset() & 0xFFFFFFFFL));
-                buffer.put((byte) (parameter.getScale().getFormat().getSize() & 0xFF));
+        // Watch out - the order switches here from data length and memory to vice versa:
+        for (MemoryParameter parameter : parameters) {
+            buffer.putInt((int) (parameter.getAddress().getOffset() & 0xFFFFFFFFL));
+            buffer.put((byte) (parameter.getScale().getFormat().getSize() & 0xFF));
+        }
+
+        CompletableFuture<?> definition = session.requestAsync(ENGINE_1.getSendAddress(),
+                new UDSDefineDataIdentifierRequest(0x2, did, buffer.array()));
+        if (!change.isClear()) {
+            definition = definition.whenComplete((response, ex) -> {
+                if (ex != null && packer.isAppendSupported()) {
+                    Log.can().log(Level.WARNING, "ECU refused to append to DID " + Integer.toHexString(did)
+                            + "; DIDs will be redefined in full", ex);
+                    packer.setAppendSupported(false);
+                }
+            });
+        }
+        requests.add(definition);
+
+        pendingDefinitions.put(did, CompletableFuture.allOf(requests.toArray(new CompletableFuture<?>[0])));
+    }
+
+    private void awaitDefinition(DynamicDIDPacker.Definition definition)
+            throws IOException, InterruptedException, TimeoutException {
+        CompletableFuture<?> pending = pendingDefinitions.remove(definition.getDid());
+        if (pending == null) {
+            return;
+        }
+
+        try {
+            pending.get(UDSTransaction.TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException ? e.getCause().getCause() : e.getCause();
+            throw new IOException("Failed to define DID " + definition, cause);
+        }
+    }
+
+    private MemoryFrame read(AsyncUDSSession session, Collection<MemoryParameter> parameters,
+                             List<DynamicDIDPacker.Definition> definitions) throws Exception {
+        if (definitions.size() > 1 && multipleReadSupported) {
+            FrameLayout frameLayout = getLayout(parameters, definitions, true);
+            MemoryFrameLayout layout = frameLayout.layout;
+
+            UDSReadDataByIDResponse response;
+            try (UDSTransaction<UDSReadDataByIDRequest, UDSReadDataByIDResponse> transaction =
+                         session.request(ENGINE_1.getSendAddress(), new UDSReadDataByIDRequest(frameLayout.dids))) {
+                response = transaction.get();
+            } catch (UDSNegativeResponseException e) {
+                // Only a refusal means the ECU can't do it; a lost or late response says nothing about that
+                if (!MULTIPLE_READ_REFUSALS.contains(e.getResponseCode())) {
+                    throw e;
+                }
+
+                Log.can().log(Level.WARNING, "ECU refused to read several DIDs at once; reading them one at a time", e);
+                multipleReadSupported = false;
+                return read(session, parameters, definitions);
             }
 
-            // Set up new DID
-            try (var transaction = getSession().request(ENGINE_1.getSendAddress(), new UDSDefineDataIdentifierRequest(
-                    0x2, did, buffer.array()))) {
-                // Do nothing
-                transaction.get();
-            } catch (Exception e) {
-                throw new RuntimeException(e);
+            byte[] data = response.getData();
+            if (data.length < layout.getLength()) {
+                throw new EOFException("Unexpected end of data");
             }
 
-            // Ensure the order is preserved
-            this.activeParameters.clear();
-            this.activeParameters.addAll(new LinkedHashSet<>(parameters));
+            if (response.getDid() != frameLayout.dids[0]) {
+                throw new IOException("Unexpected DID " + Integer.toHexString(response.getDid()));
+            }
+
+            for (int i = 1; i < frameLayout.dids.length; i ++) {
+                int position = frameLayout.positions[i] - 2;
+                int did = ((data[position] & 0xFF) << 8) | (data[position + 1] & 0xFF);
+                if (did != frameLayout.dids[i]) {
+                    throw new IOException("Unexpected DID " + Integer.toHexString(did));
+                }
+            }
+
+            return new BufferedMemoryFrame(layout, data);
+        } else {
+            FrameLayout frameLayout = getLayout(parameters, definitions, false);
+
+            // Keep a request for each DID in flight together
+            List<CompletableFuture<UDSReadDataByIDResponse>> responses = new ArrayList<>(definitions.size());
+            for (int did : frameLayout.dids) {
+                responses.add(session.requestAsync(ENGINE_1.getSendAddress(), new UDSReadDataByIDRequest(did)));
+            }
+
+            // Gather the responses into one buffer, so the frame can still decode from it in place
+            byte[] data = new byte[frameLayout.layout.getLength()];
+            try {
+                for (int i = 0; i < definitions.size(); i ++) {
+                    UDSReadDataByIDResponse response = responses.get(i).get();
+                    if (response.getDid() != frameLayout.dids[i]) {
+                        throw new IOException("Unexpected DID " + Integer.toHexString(response.getDid()));
+                    }
+
+                    byte[] part = response.getData();
+                    int length = definitions.get(i).getLength();
+                    if (part.length < length) {
+                        throw new EOFException("Unexpected end of data in DID " + definitions.get(i));
+                    }
+                    System.arraycopy(part, 0, data, frameLayout.positions[i], length);
+                }
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            }
+
+            return new BufferedMemoryFrame(frameLayout.layout, data);
         }
+    }
 
-        try (UDSTransaction<UDSReadDataByIDRequest, UDSReadDataByIDResponse> transaction =
-                     getSession().request(ENGINE_1.getSendAddress(), new UDSReadDataByIDRequest(did))) {
-            UDSReadDataByIDResponse response = transaction.get();
+    /**
+     * Gets the layout of a read of some DIDs, working it out if it hasn't been used since the DIDs last changed
+     * @param parameters parameters to include in the layout
+     * @param definitions DIDs being read
+     * @param interleaved true if the DIDs are read in one request, so each DID after the first is preceded by its
+     *                    identifier
+     * @return layout
+     */
+    private FrameLayout getLayout(Collection<MemoryParameter> parameters, List<DynamicDIDPacker.Definition> definitions,
+                                  boolean interleaved) {
+        List<MemoryParameter> key = parameters instanceof List<MemoryParameter> list ? list : new ArrayList<>(parameters);
+        FrameLayout frameLayout = layouts.get(key);
+        if (frameLayout != null && frameLayout.matches(definitions, interleaved)) {
+            return frameLayout;
+        }
 
-            MemoryFrame frame = new MemoryFrame();
+        Set<MemoryParameter> wanted = new HashSet<>(parameters);
+        MemoryFrameLayout.Builder builder = MemoryFrameLayout.builder();
+        int[] dids = new int[definitions.size()];
+        int[] positions = new int[definitions.size()];
+        int position = 0;
+        for (int i = 0; i < definitions.size(); i ++) {
+            DynamicDIDPacker.Definition definition = definitions.get(i);
+            if (i > 0 && interleaved) {
+                position += 2;
+            }
 
-            ByteArrayInputStream bais = new ByteArrayInputStream(response.getData());
+            dids[i] = definition.getDid();
+            positions[i] = position;
+
+            for (MemoryParameter parameter : definition.getParameters()) {
+                if (wanted.contains(parameter)) {
+                    builder.withParameter(parameter, position, getResponseByteOrder(parameter));
+                }
+                position += parameter.getScale().getFormat().getSize();
+            }
+        }
+
+        frameLayout = new FrameLayout(dids, positions, interleaved, builder.withLength(position).build());
+        if (layouts.size() >= MAXIMUM_LAYOUTS) {
+            layouts.clear();
+        }
+        layouts.put(new ArrayList<>(key), frameLayout);
+        return frameLayout;
+    }
+
+    /**
+     * ECU orders things in non-native order, so values in a response are in the opposite order to their section
+     * @param parameter parameter
+     * @return byte order of the parameter's value in a response
+     */
+    private static ByteOrder getResponseByteOrder(MemoryParameter parameter) {
+        ByteOrder byteOrder = parameter.getAddress().getSection().getByteOrder().getByteOrder();
+        return byteOrder == ByteOrder.BIG_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+    }
+
+    private void resetDefinitions() {
+        synchronized (packer) {
+            packer.reset();
+            pendingDefinitions.clear();
+            layouts.clear();
+        }
+    }
+
+    private static class FrameLayout {
+        private final int[] dids;
+        private final int[] positions;
+        private final boolean interleaved;
+        private final MemoryFrameLayout layout;
+
+        private FrameLayout(int[] dids, int[] positions, boolean interleaved, MemoryFrameLayout layout) {
+            this.dids = dids;
+            this.positions = positions;
+            this.interleaved = interleaved;
+            this.layout = layout;
+        }
+
+        private boolean matches(List<DynamicDIDPacker.Definition> definitions, boolean interleaved) {
+            if (this.interleaved != interleaved || definitions.size() != dids.length) {
+                return false;
+            }
 
-            for (MemoryParameter parameter : activeParameters) {
-                byte[] data = parameter.newBuffer();
-                if (bais.read(data) != data.length) {
-                    throw new EOFException("Unexpected end of data");
+            for (int i = 0; i < dids.length; i ++) {
+                if (definitions.get(i).getDid() != dids[i]) {
+                    return false;
                 }
-                reverse(data);
-                frame.setData(parameter, data);
             }
 
-            return frame;
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+            return true;
         }
     }
 
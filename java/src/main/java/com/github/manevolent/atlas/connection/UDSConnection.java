@@ -17,6 +17,7 @@ import com.github.manevolent.atlas.ui.util.Devices;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
 import java.util.logging.Level;
@@ -25,7 +26,7 @@ public abstract class UDSConnection implements Connection, UDSListener {
     private final J2534DeviceProvider deviceProvider;
     private ConnectionMode connectionMode = ConnectionMode.DISCONNECTED;
     private Set<MemoryParameter> parameters = new LinkedHashSet<>();
-    private LinkedList<Consumer<MemoryFrame>> listeners = new LinkedList<>();
+    private final List<Consumer<MemoryFrame>> listeners = new CopyOnWriteArrayList<>();
     private UDSSession session;
     private KeepAliveThread keepAliveThread ;
     private final Object stateObject = new Object();
@@ -116,8 +117,29 @@ public abstract class UDSConnection implements Connection, UDSListener {
 
     protected abstract UDSComponent getECUComponent();
 
+    @Override
+    public void addMemoryFrameListener(Consumer<MemoryFrame> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeMemoryFrameListener(Consumer<MemoryFrame> listener) {
+        listeners.remove(listener);
+    }
+
     protected void onMemoryFrame(MemoryFrame frame) {
-        listeners.forEach(listener -> listener.accept(frame));
+        if (frame == null) {
+            return;
+        }
+
+        for (Consumer<MemoryFrame> listener : listeners) {
+            try {
+                listener.accept(frame);
+            } catch (RuntimeException e) {
+                // Don't let one listener stop the frame reaching the others, or whoever is reading it
+                Log.can().log(Level.WARNING, "Problem handling memory frame", e);
+            }
+        }
     }
 
     @Override
@@ -0,0 +1,73 @@
+package com.github.manevolent.atlas.datalog;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.zip.CRC32;
+
+/**
+ * Layout of a recorded datalog file. A file is a header followed by records:
+ *
+ * header:  magic (int), version (short)
+ * record:  magic (int), type (byte), payload length (int), payload, CRC-32 of type, length and payload (int)
+ *
+ * A parameter record defines a column: id (short), name (UTF), unit (UTF). A chunk record holds a run of samples:
+ * sample count (int), first time (long), last time (long), column count (short), column ids (short each), the
+ * delta from each sample's time to the next (varlong each, count - 1 of them), then each column's values in turn
+ * (float each). Times are epoch nanoseconds; a missing value is NaN.
+ *
+ * Records are only ever appended, so a crash can at worst leave a torn record at the end of the file, which readers
+ * discard.
+ */
+final class DatalogFormat {
+    static final int FILE_MAGIC = 0x4154444C; // ATDL
+    static final short VERSION = 1;
+    static final int FILE_HEADER_SIZE = 6;
+
+    static final int RECORD_MAGIC = 0x52454344; // RECD
+    static final int RECORD_HEADER_SIZE = 9;
+    static final int RECORD_TRAILER_SIZE = 4;
+
+    static final byte TYPE_PARAMETER = 'P';
+    static final byte TYPE_CHUNK = 'C';
+
+    /**
+     * Size of the fixed part of a chunk's payload: count, first time and last time
+     */
+    static final int CHUNK_SUMMARY_SIZE = 20;
+
+    private DatalogFormat() {
+
+    }
+
+    static int checksum(byte type, byte[] payload, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(length >>> 24);
+        crc.update(length >>> 16);
+        crc.update(length >>> 8);
+        crc.update(length);
+        crc.update(payload, 0, length);
+        return (int) crc.getValue();
+    }
+
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varlong");
+    }
+}
@@ -0,0 +1,39 @@
+package com.github.manevolent.atlas.datalog;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How often a parameter is sampled while datalogging
+ */
+public enum DatalogRate {
+    FULL("Full rate", 0),
+    HZ_20("20 Hz", 20),
+    HZ_10("10 Hz", 10),
+    HZ_5("5 Hz", 5),
+    HZ_1("1 Hz", 1);
+
+    private final String text;
+    private final int frequency;
+
+    DatalogRate(String text, int frequency) {
+        this.text = text;
+        this.frequency = frequency;
+    }
+
+    /**
+     * Gets the target frequency of this rate
+     * @return frequency in Hz, or 0 to sample as often as possible
+     */
+    public int getFrequency() {
+        return frequency;
+    }
+
+    public long getPeriodNanos() {
+        return frequency == 0 ? 0L : TimeUnit.SECONDS.toNanos(1) / frequency;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
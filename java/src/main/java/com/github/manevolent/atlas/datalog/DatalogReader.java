@@ -0,0 +1,308 @@
+package com.github.manevolent.atlas.datalog;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.github.manevolent.atlas.datalog.DatalogFormat.*;
+
+/**
+ * Reads a file written by {@link DatalogRecorder}. Opening a file only reads its parameters and the summary of each
+ * chunk; samples are read a chunk at a time, on demand. A torn record at the end of the file, left behind if the
+ * recorder was interrupted, is ignored.
+ */
+public class DatalogReader implements Closeable {
+    public static DatalogReader open(Path path) throws IOException {
+        return new DatalogReader(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    private final FileChannel channel;
+    private final List<Parameter> parameters = new ArrayList<>();
+    private final List<ChunkIndex> chunks = new ArrayList<>();
+    private long sampleCount;
+    private long validLength;
+
+    private DatalogReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+
+        try {
+            index();
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    private void index() throws IOException {
+        ByteBuffer header = read(0, FILE_HEADER_SIZE);
+        if (header.getInt() != FILE_MAGIC) {
+            throw new IOException("Not a datalog file");
+        }
+
+        short version = header.getShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported datalog version " + version);
+        }
+
+        long size = channel.size();
+        long position = FILE_HEADER_SIZE;
+        while (position + RECORD_HEADER_SIZE + RECORD_TRAILER_SIZE <= size) {
+            ByteBuffer recordHeader = read(position, RECORD_HEADER_SIZE);
+            if (recordHeader.getInt() != RECORD_MAGIC) {
+                break;
+            }
+
+            byte type = recordHeader.get();
+            int length = recordHeader.getInt();
+            long end = position + RECORD_HEADER_SIZE + length + RECORD_TRAILER_SIZE;
+            if (length < 0 || end > size) {
+                break;
+            }
+
+            if (type == TYPE_CHUNK) {
+                if (length < CHUNK_SUMMARY_SIZE) {
+                    break;
+                }
+
+                ByteBuffer summary = read(position + RECORD_HEADER_SIZE, CHUNK_SUMMARY_SIZE);
+                int count = summary.getInt();
+                chunks.add(new ChunkIndex(position, length, count, summary.getLong(), summary.getLong()));
+                sampleCount += count;
+            } else {
+                // Parameters are small, so these are checked as they're read
+                byte[] payload;
+                try {
+                    payload = readRecord(position, type, length);
+                } catch (IOException ex) {
+                    break;
+                }
+
+                if (type == TYPE_PARAMETER) {
+                    DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+                    int id = in.readShort();
+                    if (id != parameters.size()) {
+                        throw new IOException("Parameter " + id + " out of order");
+                    }
+                    parameters.add(new Parameter(id, in.readUTF(), in.readUTF()));
+                }
+            }
+
+            position = end;
+        }
+
+        // The last chunk is the one a crash could have torn, so check it now rather than on first read
+        if (!chunks.isEmpty()) {
+            ChunkIndex last = chunks.getLast();
+            try {
+                readRecord(last.position, TYPE_CHUNK, last.length);
+            } catch (IOException ex) {
+                chunks.removeLast();
+                sampleCount -= last.count;
+                position = last.position;
+            }
+        }
+
+        validLength = position;
+    }
+
+    public List<Parameter> getParameters() {
+        return Collections.unmodifiableList(parameters);
+    }
+
+    public int getChunkCount() {
+        return chunks.size();
+    }
+
+    public int getChunkSize(int index) {
+        return chunks.get(index).count;
+    }
+
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * Gets the length of the file up to the end of the last intact record
+     * @return length in bytes
+     */
+    public long getValidLength() {
+        return validLength;
+    }
+
+    public long getStartTime() {
+        return chunks.isEmpty() ? 0L : chunks.getFirst().firstTime;
+    }
+
+    public long getEndTime() {
+        return chunks.isEmpty() ? 0L : chunks.getLast().lastTime;
+    }
+
+    /**
+     * Finds the chunk holding the first sample at or after a time
+     * @param nanos time in epoch nanoseconds
+     * @return index of the chunk, or getChunkCount() if every sample is before the time
+     */
+    public int findChunk(long nanos) {
+        int low = 0, high = chunks.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (chunks.get(mid).lastTime < nanos) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public Chunk readChunk(int index) throws IOException {
+        ChunkIndex chunkIndex = chunks.get(index);
+        byte[] payload = readRecord(chunkIndex.position, TYPE_CHUNK, chunkIndex.length);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+
+        int count = in.readInt();
+        if (count < 1) {
+            throw new IOException("Chunk " + index + " is empty");
+        }
+
+        long[] times = new long[count];
+        times[0] = in.readLong();
+        in.readLong(); // last time, already indexed
+
+        int columns = in.readShort();
+        int[] ids = new int[columns];
+        for (int i = 0; i < columns; i ++) {
+            ids[i] = in.readShort();
+        }
+
+        for (int i = 1; i < count; i ++) {
+            times[i] = times[i - 1] + readVarLong(in);
+        }
+
+        float[][] values = new float[parameters.size()][];
+        for (int id : ids) {
+            if (id < 0 || id >= values.length) {
+                throw new IOException("Chunk " + index + " refers to unknown parameter " + id);
+            }
+
+            float[] column = new float[count];
+            for (int i = 0; i < count; i ++) {
+                column[i] = in.readFloat();
+            }
+            values[id] = column;
+        }
+
+        return new Chunk(times, values);
+    }
+
+    private byte[] readRecord(long position, byte type, int length) throws IOException {
+        ByteBuffer record = read(position + RECORD_HEADER_SIZE, length + RECORD_TRAILER_SIZE);
+        byte[] payload = new byte[length];
+        record.get(payload);
+        if (record.getInt() != checksum(type, payload, length)) {
+            throw new IOException("Checksum mismatch in record at " + position);
+        }
+        return payload;
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        return buffer.flip();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public static class Parameter {
+        private final int id;
+        private final String name;
+        private final String unit;
+
+        private Parameter(int id, String name, String unit) {
+            this.id = id;
+            this.name = name;
+            this.unit = unit;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the name of the parameter's unit when it was recorded
+         * @return name of a {@link com.github.manevolent.atlas.model.Unit}
+         */
+        public String getUnit() {
+            return unit;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    public static class Chunk {
+        private final long[] times;
+        private final float[][] values;
+
+        private Chunk(long[] times, float[][] values) {
+            this.times = times;
+            this.values = values;
+        }
+
+        public int size() {
+            return times.length;
+        }
+
+        public long getTime(int index) {
+            return times[index];
+        }
+
+        /**
+         * Gets a recorded value
+         * @param parameter id of the parameter
+         * @param index index of the sample in this chunk
+         * @return value, or NaN if the sample has no value for the parameter
+         */
+        public float getValue(int parameter, int index) {
+            float[] column = values[parameter];
+            return column == null ? Float.NaN : column[index];
+        }
+    }
+
+    private static class ChunkIndex {
+        private final long position;
+        private final int length;
+        private final int count;
+        private final long firstTime, lastTime;
+
+        private ChunkIndex(long position, int length, int count, long firstTime, long lastTime) {
+            this.position = position;
+            this.length = length;
+            this.count = count;
+            this.firstTime = firstTime;
+            this.lastTime = lastTime;
+        }
+    }
+}
@@ -0,0 +1,435 @@
+package com.github.manevolent.atlas.datalog;
+
+import com.github.manevolent.atlas.connection.MemoryFrame;
+import com.github.manevolent.atlas.logging.Log;
+import com.github.manevolent.atlas.model.MemoryParameter;
+import com.github.manevolent.atlas.model.Unit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import static com.github.manevolent.atlas.datalog.DatalogFormat.*;
+
+/**
+ * Streams datalog samples to a file as they are recorded, a chunk at a time. A chunk is written once it fills up,
+ * or once it has been held for the flush interval, so at most that much recording is lost if the application dies.
+ * The interval is kept on a timer, so a chunk is written on time even if sampling stops, such as when the connection
+ * drops.
+ *
+ * Appending only fills in the chunk in memory. A finished chunk is handed to the recorder's own thread, which encodes
+ * it, writes it and forces it to the storage device while the next chunk fills, so a slow disk never holds up
+ * sampling. Every write to the file happens on that thread, in the order it was asked for.
+ *
+ * See {@link DatalogFormat} for the layout of the file, and {@link DatalogReader} to read it back.
+ */
+public class DatalogRecorder implements Closeable {
+    public static final int DEFAULT_CHUNK_SIZE = 256;
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1_000L;
+
+    public static DatalogRecorder create(Path path) throws IOException {
+        return new DatalogRecorder(path, DEFAULT_CHUNK_SIZE, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    private final FileChannel channel;
+    private final int chunkSize;
+    private final long flushIntervalNanos;
+    private final List<MemoryParameter> parameters = new ArrayList<>();
+    private final ScheduledExecutorService flusher;
+
+    /**
+     * Only used on the flusher thread
+     */
+    private final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+
+    private Chunk pending;
+
+    /**
+     * A written chunk, cleared and ready to take over from the pending chunk; null while both are in use
+     */
+    private Chunk spare;
+
+    private long pendingSince;
+
+    /**
+     * Number of chunks handed to the flusher, so a timed flush can tell if the chunk it was set for has gone already
+     */
+    private long chunks;
+
+    private ScheduledFuture<?> scheduledFlush;
+
+    private long samples;
+    private boolean closed;
+
+    /**
+     * The first write that failed; nothing is written after it
+     */
+    private volatile IOException failure;
+
+    /**
+     * Creates a new recording. An existing file is never replaced; if one is already at the path, this fails with a
+     * {@link java.nio.file.FileAlreadyExistsException}.
+     * @param path file to record to
+     * @param chunkSize maximum number of samples in each chunk
+     * @param flushIntervalMillis longest time a sample is held before its chunk is written
+     */
+    public DatalogRecorder(Path path, int chunkSize, long flushIntervalMillis) throws IOException {
+        this(open(path, chunkSize), chunkSize, flushIntervalMillis);
+    }
+
+    private static FileChannel open(Path path, int chunkSize) throws IOException {
+        // Checked before the file is created, so a bad size doesn't leave an empty recording behind
+        checkChunkSize(chunkSize);
+        return FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    private static void checkChunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException(Integer.toString(chunkSize));
+        }
+    }
+
+    /**
+     * Creates a new recording on a channel that is already open, starting at its current position. The recorder
+     * closes the channel when it is closed.
+     * @param channel channel to record to
+     * @param chunkSize maximum number of samples in each chunk
+     * @param flushIntervalMillis longest time a sample is held before its chunk is written
+     */
+    public DatalogRecorder(FileChannel channel, int chunkSize, long flushIntervalMillis) throws IOException {
+        this.channel = channel;
+
+        try {
+            checkChunkSize(chunkSize);
+
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+            header.putInt(FILE_MAGIC).putShort(VERSION).flip();
+            write(header);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+
+        this.chunkSize = chunkSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.pending = new Chunk(chunkSize, 0);
+        this.spare = new Chunk(chunkSize, 0);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Datalog/Flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Adds a parameter to the recording. Samples appended before it was added have no value for it.
+     * @param parameter parameter to add
+     */
+    public synchronized void addParameter(MemoryParameter parameter) throws IOException {
+        ensureOpen();
+
+        if (parameters.contains(parameter)) {
+            return;
+        }
+
+        int id = parameters.size();
+        if (id > Short.MAX_VALUE) {
+            throw new IllegalStateException("Too many parameters");
+        }
+
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(record);
+        out.writeShort(id);
+        Unit unit = parameter.getScale().getUnit();
+        out.writeUTF(parameter.getName() == null ? "" : parameter.getName());
+        out.writeUTF(unit == null ? "" : unit.name());
+        byte[] bytes = record.toByteArray();
+        flusher.execute(() -> writeParameter(bytes));
+
+        parameters.add(parameter);
+        pending.ensureColumns(parameters.size());
+        if (spare != null) {
+            spare.ensureColumns(parameters.size());
+        }
+    }
+
+    /**
+     * Appends a sample, decoding the value of each recorded parameter from the frame. Parameters in the frame that
+     * weren't added to the recording are ignored. This never waits on the file.
+     * @param frame frame to append
+     */
+    public synchronized void append(MemoryFrame frame) throws IOException {
+        ensureOpen();
+
+        Chunk chunk = pending;
+        if (chunk.size == 0) {
+            pendingSince = System.nanoTime();
+
+            long number = chunks;
+            scheduledFlush = flusher.schedule(() -> flushChunk(number), flushIntervalNanos, TimeUnit.NANOSECONDS);
+        }
+
+        int index = chunk.size;
+        chunk.times[index] = DatalogStore.toNanos(frame.getInstant());
+        for (int id = 0; id < parameters.size(); id ++) {
+            chunk.values[id][index] = frame.getValue(parameters.get(id), Float.NaN);
+        }
+
+        chunk.size ++;
+        samples ++;
+
+        if (chunk.size >= chunkSize || System.nanoTime() - pendingSince >= flushIntervalNanos) {
+            handOff();
+        }
+    }
+
+    /**
+     * Hands the pending chunk to the flusher, and starts filling the spare one
+     */
+    private void handOff() {
+        Chunk full = pending;
+        if (full.size == 0) {
+            return;
+        }
+
+        if (spare != null) {
+            pending = spare;
+            spare = null;
+        } else {
+            // The flusher is still busy with the last chunk
+            pending = new Chunk(chunkSize, parameters.size());
+        }
+
+        chunks ++;
+
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+
+        flusher.execute(() -> writeChunk(full));
+    }
+
+    /**
+     * Hands off a chunk that has been held for the flush interval, unless it was handed off in the meantime
+     * @param chunk number of the chunk
+     */
+    private synchronized void flushChunk(long chunk) {
+        if (closed || chunks != chunk) {
+            return;
+        }
+
+        handOff();
+    }
+
+    /**
+     * Writes any samples held in memory to the file and forces them to the storage device, waiting until they are
+     */
+    public void flush() throws IOException {
+        Future<?> written;
+        synchronized (this) {
+            ensureOpen();
+            handOff();
+            written = flusher.submit(() -> {});
+        }
+
+        try {
+            written.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for datalog flush");
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+
+        ensureWritten();
+    }
+
+    public synchronized long getSampleCount() {
+        return samples;
+    }
+
+    public long getSize() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * Encodes, writes and forces a chunk, then clears it to be filled again. Runs on the flusher thread.
+     * @param chunk chunk to write
+     */
+    private void writeChunk(Chunk chunk) {
+        if (failure == null) {
+            try {
+                payload.reset();
+                DataOutputStream out = new DataOutputStream(payload);
+                int size = chunk.size;
+                out.writeInt(size);
+                out.writeLong(chunk.times[0]);
+                out.writeLong(chunk.times[size - 1]);
+                out.writeShort(chunk.values.length);
+                for (int id = 0; id < chunk.values.length; id ++) {
+                    out.writeShort(id);
+                }
+                for (int i = 1; i < size; i ++) {
+                    writeVarLong(out, chunk.times[i] - chunk.times[i - 1]);
+                }
+                for (float[] column : chunk.values) {
+                    for (int i = 0; i < size; i ++) {
+                        out.writeFloat(column[i]);
+                    }
+                }
+
+                writeRecord(TYPE_CHUNK, payload.toByteArray());
+                channel.force(false);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        chunk.clear();
+        synchronized (this) {
+            if (spare == null) {
+                chunk.ensureColumns(parameters.size());
+                spare = chunk;
+            }
+        }
+    }
+
+    /**
+     * Writes a parameter record. Runs on the flusher thread.
+     * @param bytes encoded parameter
+     */
+    private void writeParameter(byte[] bytes) {
+        if (failure != null) {
+            return;
+        }
+
+        try {
+            writeRecord(TYPE_PARAMETER, bytes);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void writeRecord(byte type, byte[] bytes) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + bytes.length + RECORD_TRAILER_SIZE);
+        record.putInt(RECORD_MAGIC);
+        record.put(type);
+        record.putInt(bytes.length);
+        record.put(bytes);
+        record.putInt(checksum(type, bytes, bytes.length));
+        record.flip();
+        write(record);
+    }
+
+    private void fail(IOException e) {
+        if (failure == null) {
+            Log.get().log(Level.WARNING, "Problem writing datalog", e);
+            failure = e;
+        }
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Recorder is closed");
+        }
+
+        ensureWritten();
+    }
+
+    private void ensureWritten() throws IOException {
+        IOException failure = this.failure;
+        if (failure != null) {
+            throw new IOException("Problem writing datalog", failure);
+        }
+    }
+
+    /**
+     * Writes the last chunk and closes the file, waiting for every chunk handed off before it to be written
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+
+            handOff();
+            closed = true;
+
+            // A timed flush already waiting on the lock finds the recorder closed and does nothing
+            flusher.shutdown();
+        }
+
+        try {
+            while (!flusher.awaitTermination(1, TimeUnit.SECONDS)) {
+                Log.get().log(Level.FINE, "Waiting for datalog chunks to be written");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted writing the last datalog chunks");
+        } finally {
+            channel.close();
+        }
+
+        ensureWritten();
+    }
+
+    /**
+     * Samples held in memory, a column of values for each parameter
+     */
+    private static class Chunk {
+        private final long[] times;
+        private float[][] values;
+        private int size;
+
+        private Chunk(int capacity, int parameters) {
+            this.times = new long[capacity];
+            this.values = new float[0][];
+            ensureColumns(parameters);
+        }
+
+        private void ensureColumns(int parameters) {
+            int columns = values.length;
+            if (columns >= parameters) {
+                return;
+            }
+
+            values = Arrays.copyOf(values, parameters);
+            for (int id = columns; id < parameters; id ++) {
+                float[] column = new float[times.length];
+                Arrays.fill(column, Float.NaN);
+                values[id] = column;
+            }
+        }
+
+        private void clear() {
+            for (float[] column : values) {
+                Arrays.fill(column, 0, size, Float.NaN);
+            }
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package com.github.manevolent.atlas.datalog;
+
+import com.github.manevolent.atlas.connection.MemoryFrame;
+import com.github.manevolent.atlas.logging.Log;
+import com.github.manevolent.atlas.model.MemoryParameter;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+/**
+ * Samples datalog parameters as fast as the connection answers. Each cycle starts as soon as the last one's
+ * response arrives, unless a maximum frequency is set.
+ *
+ * Parameters at {@link DatalogRate#FULL} are read every cycle. Parameters at a slower rate are grouped by rate, and
+ * at most one due group rides along with the full-rate parameters in each cycle: the one holding the highest
+ * priority parameter, then the one that is most overdue. This keeps the number of distinct parameter sets read small,
+ * so connections can reuse the DIDs they define for each set, and keeps slow parameters from stretching every cycle.
+ * A group that falls behind picks up from the current time rather than bursting to catch up.
+ */
+public class DatalogScheduler implements AutoCloseable {
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long FAILURE_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+    /**
+     * Reads one sample of a set of parameters
+     */
+    public interface Sampler {
+        /**
+         * Reads one sample of a set of parameters
+         * @param parameters parameters to read, in a consistent order for the same set
+         * @return sample, or null if nothing should be sampled right now
+         */
+        MemoryFrame sample(List<MemoryParameter> parameters) throws Exception;
+    }
+
+    private final Sampler sampler;
+    private final Consumer<MemoryFrame> consumer;
+
+    private final Map<MemoryParameter, Entry> entries = new LinkedHashMap<>();
+    private volatile Entry[] schedule = new Entry[0];
+    private final long[] nextDue = new long[DatalogRate.values().length];
+
+    private volatile long minimumPeriodNanos;
+    private volatile boolean running;
+    private Thread thread;
+
+    private final Meter cycles = new Meter();
+    private final Map<MemoryParameter, Meter> parameterMeters = new HashMap<>();
+    private volatile double roundTripNanos;
+    private volatile long failures;
+
+    public DatalogScheduler(Sampler sampler, Consumer<MemoryFrame> consumer) {
+        this.sampler = sampler;
+        this.consumer = consumer;
+    }
+
+    /**
+     * Adds a parameter to the schedule, or changes how an already scheduled parameter is sampled
+     * @param parameter parameter to sample
+     * @param rate how often to sample the parameter
+     * @param priority priority of the parameter against other slow parameters; higher goes first
+     */
+    public synchronized void setParameter(MemoryParameter parameter, DatalogRate rate, int priority) {
+        entries.put(parameter, new Entry(parameter, rate, priority));
+        schedule = entries.values().toArray(new Entry[0]);
+    }
+
+    public synchronized void removeParameter(MemoryParameter parameter) {
+        entries.remove(parameter);
+        schedule = entries.values().toArray(new Entry[0]);
+    }
+
+    /**
+     * Sets the most cycles to run each second
+     * @param frequency maximum frequency in Hz, or 0 to run as fast as the connection answers
+     */
+    public void setMaximumFrequency(int frequency) {
+        minimumPeriodNanos = frequency <= 0 ? 0L : TimeUnit.SECONDS.toNanos(1) / frequency;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+
+        running = true;
+        thread = new Thread(this::run, "Datalog");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        Thread thread;
+        synchronized (this) {
+            running = false;
+            thread = this.thread;
+            this.thread = null;
+        }
+
+        if (thread != null && thread != Thread.currentThread()) {
+            thread.interrupt();
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+
+    /**
+     * Gets the number of cycles completed each second, on average
+     * @return frequency in Hz
+     */
+    public double getFrequency() {
+        return cycles.getFrequency();
+    }
+
+    /**
+     * Gets the standard deviation of the time between cycles
+     * @return jitter in milliseconds
+     */
+    public double getJitterMillis() {
+        return cycles.getJitterNanos() / 1_000_000D;
+    }
+
+    public double getRoundTripMillis() {
+        return roundTripNanos / 1_000_000D;
+    }
+
+    /**
+     * Gets how often a parameter has been sampled, on average
+     * @param parameter parameter
+     * @return frequency in Hz, or 0 if the parameter hasn't been sampled enough to tell
+     */
+    public double getFrequency(MemoryParameter parameter) {
+        Meter meter;
+        synchronized (parameterMeters) {
+            meter = parameterMeters.get(parameter);
+        }
+        return meter == null ? 0D : meter.getFrequency();
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
+    /**
+     * Chooses the parameters to read in a cycle
+     * @param now time the cycle starts
+     * @param parameters list to fill
+     * @return time to wait until something is due, if nothing is due now
+     */
+    long plan(long now, List<MemoryParameter> parameters) {
+        Entry[] schedule = this.schedule;
+
+        DatalogRate best = null;
+        int bestPriority = Integer.MIN_VALUE;
+        long bestDue = Long.MAX_VALUE;
+        long wait = Long.MAX_VALUE;
+
+        // Find the due group to take this cycle
+        for (Entry entry : schedule) {
+            if (entry.rate == DatalogRate.FULL) {
+                continue;
+            }
+
+            long due = nextDue[entry.rate.ordinal()];
+            if (due - now > 0) {
+                wait = Math.min(wait, due - now);
+                continue;
+            }
+
+            if (entry.priority > bestPriority || (entry.priority == bestPriority && due - bestDue < 0)) {
+                best = entry.rate;
+                bestPriority = entry.priority;
+                bestDue = due;
+            }
+        }
+
+        for (Entry entry : schedule) {
+            if (entry.rate == DatalogRate.FULL || entry.rate == best) {
+                parameters.add(entry.parameter);
+            }
+        }
+
+        if (best != null) {
+            long period = best.getPeriodNanos();
+            long next = nextDue[best.ordinal()] + period;
+            nextDue[best.ordinal()] = next - now > 0 ? next : now + period;
+        }
+
+        return parameters.isEmpty() ? Math.min(wait, IDLE_NANOS) : 0L;
+    }
+
+    private void run() {
+        List<MemoryParameter> parameters = new ArrayList<>();
+        Arrays.fill(nextDue, System.nanoTime());
+
+        while (running) {
+            long start = System.nanoTime();
+
+            parameters.clear();
+            long wait = plan(start, parameters);
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+                continue;
+            }
+
+            MemoryFrame frame;
+            try {
+                frame = sampler.sample(Collections.unmodifiableList(parameters));
+            } catch (Exception ex) {
+                if (!running) {
+                    break;
+                }
+
+                failures ++;
+                Log.can().log(Level.WARNING, "Problem reading datalog frame", ex);
+                LockSupport.parkNanos(FAILURE_BACKOFF_NANOS);
+                continue;
+            }
+
+            long end = System.nanoTime();
+
+            if (frame == null) {
+                LockSupport.parkNanos(IDLE_NANOS);
+                continue;
+            }
+
+            double roundTrip = end - start;
+            roundTripNanos = roundTripNanos == 0D ? roundTrip : roundTripNanos + (roundTrip - roundTripNanos) / 8D;
+            cycles.update(start);
+
+            synchronized (parameterMeters) {
+                for (MemoryParameter parameter : parameters) {
+                    // A connection may leave out a parameter it's still setting up
+                    if (frame.contains(parameter)) {
+                        parameterMeters.computeIfAbsent(parameter, p -> new Meter()).update(start);
+                    }
+                }
+            }
+
+            try {
+                consumer.accept(frame);
+            } catch (Exception ex) {
+                Log.can().log(Level.SEVERE, "Problem handling datalog frame", ex);
+            }
+
+            long minimumPeriod = minimumPeriodNanos;
+            long remaining = start + minimumPeriod - System.nanoTime();
+            if (remaining > 0) {
+                LockSupport.parkNanos(remaining);
+            }
+        }
+    }
+
+    private static class Entry {
+        private final MemoryParameter parameter;
+        private final DatalogRate rate;
+        private final int priority;
+
+        private Entry(MemoryParameter parameter, DatalogRate rate, int priority) {
+            this.parameter = parameter;
+            this.rate = rate;
+            this.priority = priority;
+        }
+    }
+
+    /**
+     * Tracks the mean and deviation of the interval between events, weighted towards recent events
+     */
+    private static class Meter {
+        private static final double WEIGHT = 1D / 16D;
+
+        private boolean started;
+        private long last;
+        private double mean, variance;
+
+        private synchronized void update(long nanos) {
+            if (started) {
+                double interval = nanos - last;
+                if (mean == 0D) {
+                    mean = interval;
+                } else {
+                    double delta = interval - mean;
+                    mean += WEIGHT * delta;
+                    variance = (1D - WEIGHT) * (variance + WEIGHT * delta * delta);
+                }
+            }
+            started = true;
+            last = nanos;
+        }
+
+        private synchronized double getFrequency() {
+            return mean == 0D ? 0D : TimeUnit.SECONDS.toNanos(1) / mean;
+        }
+
+        private synchronized double getJitterNanos() {
+            return Math.sqrt(variance);
+        }
+    }
+}
@@ -0,0 +1,434 @@
+package com.github.manevolent.atlas.datalog;
+
+import com.github.manevolent.atlas.connection.MemoryFrame;
+import com.github.manevolent.atlas.model.MemoryParameter;
+
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * Stores datalog samples column by column in fixed-size ring buffers: one shared column of timestamps, and one
+ * column of decoded values per parameter. Once the store is full, each new sample replaces the oldest one.
+ *
+ * Each column also keeps a pyramid of min/max/sum buckets over its values, each level's buckets holding
+ * {@link #FAN_OUT} of the level below's, so statistics over any range of samples take a bounded amount of work.
+ *
+ * Samples are appended by a single writer thread without locking. Readers take a {@link Snapshot}, which sees
+ * every sample appended before it was taken.
+ */
+public class DatalogStore {
+    public static final int DEFAULT_CAPACITY = 1 << 17;
+
+    /**
+     * Number of buckets at one level of a column's pyramid that make up a bucket at the next level
+     */
+    public static final int FAN_OUT = 4;
+    private static final int FAN_OUT_BITS = 2;
+
+    private final int capacity;
+    private final int mask;
+    private final long[] times;
+    private volatile Column[] columns = new Column[0];
+
+    /**
+     * Total number of samples ever appended; only written by the writer, after the sample itself is in place
+     */
+    private volatile long count;
+
+    public DatalogStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new store
+     * @param capacity number of samples retained, rounded up to a power of two
+     */
+    public DatalogStore(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException(Integer.toString(capacity));
+        }
+
+        int rounded = Integer.highestOneBit(capacity);
+        this.capacity = rounded < capacity ? rounded << 1 : rounded;
+        this.mask = this.capacity - 1;
+        this.times = new long[this.capacity];
+    }
+
+    public static long toNanos(Instant instant) {
+        return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), 1_000_000_000L), instant.getNano());
+    }
+
+    public static Instant toInstant(long nanos) {
+        return Instant.ofEpochSecond(Math.floorDiv(nanos, 1_000_000_000L), Math.floorMod(nanos, 1_000_000_000L));
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the total number of samples appended to this store, including any that have since been replaced
+     * @return sample count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    public Column getColumn(MemoryParameter parameter) {
+        for (Column column : columns) {
+            if (column.parameter == parameter) {
+                return column;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds a column for a parameter, if there isn't one already. Samples appended before the column existed
+     * have no value for it.
+     * @param parameter parameter to add
+     * @return column for the parameter
+     */
+    public synchronized Column addColumn(MemoryParameter parameter) {
+        Column column = getColumn(parameter);
+        if (column != null) {
+            return column;
+        }
+
+        column = new Column(parameter, capacity);
+        Column[] columns = Arrays.copyOf(this.columns, this.columns.length + 1);
+        columns[columns.length - 1] = column;
+        this.columns = columns;
+        return column;
+    }
+
+    /**
+     * Appends a sample, decoding the value of each column's parameter from the frame. Columns whose parameter
+     * isn't in the frame get no value for this sample. Must only be called from one thread at a time.
+     * @param frame frame to append
+     */
+    public void append(MemoryFrame frame) {
+        long sequence = count;
+        int slot = (int) (sequence & mask);
+
+        times[slot] = toNanos(frame.getInstant());
+        for (Column column : columns) {
+            column.put(sequence, slot, frame.getValue(column.parameter, Float.NaN));
+        }
+
+        count = sequence + 1;
+    }
+
+    /**
+     * Appends a sample of values that have already been decoded. Must only be called from one thread at a time.
+     * @param nanos time of the sample, as returned by {@link #toNanos(Instant)}
+     * @param columns columns the values belong to
+     * @param values value for each column, or NaN if there is none
+     */
+    public void append(long nanos, Column[] columns, float[] values) {
+        long sequence = count;
+        int slot = (int) (sequence & mask);
+
+        times[slot] = nanos;
+        for (Column column : this.columns) {
+            float value = Float.NaN;
+            for (int i = 0; i < columns.length; i ++) {
+                if (columns[i] == column) {
+                    value = values[i];
+                    break;
+                }
+            }
+            column.put(sequence, slot, value);
+        }
+
+        count = sequence + 1;
+    }
+
+    public Snapshot snapshot() {
+        long end = count;
+        return new Snapshot(Math.max(0L, end - capacity), end);
+    }
+
+    public static class Column {
+        private final MemoryParameter parameter;
+        private final float[] values;
+
+        // Pyramid levels above the values themselves; level n (from 1) has buckets of FAN_OUT^n samples
+        private final float[][] minimums, maximums;
+        private final double[][] sums;
+        private final int[][] counts;
+
+        private Column(MemoryParameter parameter, int capacity) {
+            this.parameter = parameter;
+            this.values = new float[capacity];
+            Arrays.fill(values, Float.NaN);
+
+            int levels = 0;
+            while (capacity >>> ((levels + 1) * FAN_OUT_BITS) > 0) {
+                levels ++;
+            }
+
+            minimums = new float[levels][];
+            maximums = new float[levels][];
+            sums = new double[levels][];
+            counts = new int[levels][];
+            for (int level = 0; level < levels; level ++) {
+                int buckets = capacity >>> ((level + 1) * FAN_OUT_BITS);
+                minimums[level] = new float[buckets];
+                maximums[level] = new float[buckets];
+                sums[level] = new double[buckets];
+                counts[level] = new int[buckets];
+
+                // A column added mid-stream joins buckets that already started; they must start out empty
+                Arrays.fill(minimums[level], Float.MAX_VALUE);
+                Arrays.fill(maximums[level], -Float.MAX_VALUE);
+            }
+        }
+
+        public MemoryParameter getParameter() {
+            return parameter;
+        }
+
+        private void put(long sequence, int slot, float value) {
+            values[slot] = value;
+
+            for (int level = 0; level < minimums.length; level ++) {
+                int shift = (level + 1) * FAN_OUT_BITS;
+                int bucket = (int) ((sequence >>> shift) & (counts[level].length - 1));
+
+                // The first sample of a bucket replaces whatever the bucket held a lap ago
+                if ((sequence & ((1L << shift) - 1)) == 0) {
+                    minimums[level][bucket] = Float.MAX_VALUE;
+                    maximums[level][bucket] = -Float.MAX_VALUE;
+                    sums[level][bucket] = 0D;
+                    counts[level][bucket] = 0;
+                }
+
+                if (!Float.isNaN(value)) {
+                    minimums[level][bucket] = Math.min(minimums[level][bucket], value);
+                    maximums[level][bucket] = Math.max(maximums[level][bucket], value);
+                    sums[level][bucket] += value;
+                    counts[level][bucket] ++;
+                }
+            }
+        }
+
+        /**
+         * Adds a bucket to a set of statistics
+         * @param level level of the bucket; 0 is a single value
+         * @param sequence sequence number of the first sample in the bucket
+         * @param statistics statistics to add to
+         */
+        private void merge(int level, long sequence, Statistics statistics) {
+            if (level == 0) {
+                statistics.add(values[(int) (sequence & (values.length - 1))]);
+            } else {
+                int index = level - 1;
+                int bucket = (int) ((sequence >>> (level * FAN_OUT_BITS)) & (counts[index].length - 1));
+                statistics.add(minimums[index][bucket], maximums[index][bucket], sums[index][bucket],
+                        counts[index][bucket]);
+            }
+        }
+    }
+
+    /**
+     * The minimum, maximum, sum and count of the values in a range of samples; missing values aren't counted
+     */
+    public static class Statistics {
+        private float minimum, maximum;
+        private double sum;
+        private int count;
+
+        public Statistics() {
+            reset();
+        }
+
+        public void reset() {
+            minimum = Float.MAX_VALUE;
+            maximum = -Float.MAX_VALUE;
+            sum = 0D;
+            count = 0;
+        }
+
+        public void add(float value) {
+            if (!Float.isNaN(value)) {
+                add(value, value, value, 1);
+            }
+        }
+
+        private void add(float minimum, float maximum, double sum, int count) {
+            if (count > 0) {
+                this.minimum = Math.min(this.minimum, minimum);
+                this.maximum = Math.max(this.maximum, maximum);
+                this.sum += sum;
+                this.count += count;
+            }
+        }
+
+        public boolean isEmpty() {
+            return count == 0;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public float getMinimum() {
+            return count == 0 ? Float.NaN : minimum;
+        }
+
+        public float getMaximum() {
+            return count == 0 ? Float.NaN : maximum;
+        }
+
+        public double getSum() {
+            return sum;
+        }
+
+        public float getAverage() {
+            return count == 0 ? Float.NaN : (float) (sum / count);
+        }
+    }
+
+    /**
+     * A view of the samples in the store at one point in time, oldest first. Samples appended after the snapshot
+     * was taken aren't visible in it. If the writer laps the snapshot, the oldest samples in it are replaced;
+     * {@link #getValidIndex()} reports where the unaffected samples begin.
+     */
+    public class Snapshot {
+        private final long start, end;
+
+        private Snapshot(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public int size() {
+            return (int) (end - start);
+        }
+
+        public boolean isEmpty() {
+            return end == start;
+        }
+
+        /**
+         * Gets the sequence number of the first sample in this snapshot; the first sample ever appended is 0
+         * @return sequence number
+         */
+        public long getSequence() {
+            return start;
+        }
+
+        /**
+         * Gets the index of the oldest sample in this snapshot that has not since been replaced by the writer
+         * @return index, or size() if every sample has been replaced
+         */
+        public int getValidIndex() {
+            long first = count - capacity;
+            return (int) Math.min(end - start, Math.max(0L, first - start));
+        }
+
+        public long getTime(int index) {
+            return times[slot(index)];
+        }
+
+        public Instant getInstant(int index) {
+            return toInstant(getTime(index));
+        }
+
+        public long getFirstTime() {
+            return getTime(0);
+        }
+
+        public long getLastTime() {
+            return getTime(size() - 1);
+        }
+
+        /**
+         * Gets a value from a column
+         * @param column column to read
+         * @param index index of the sample
+         * @return value, or NaN if the sample has no value for the column
+         */
+        public float getValue(Column column, int index) {
+            return column.values[slot(index)];
+        }
+
+        public float getValue(MemoryParameter parameter, int index) {
+            Column column = getColumn(parameter);
+            return column == null ? Float.NaN : getValue(column, index);
+        }
+
+        /**
+         * Adds the values of a range of samples to a set of statistics. Whole buckets of the column's pyramid are
+         * used wherever they fit in the range, so the work done depends only on the store's capacity, not on the
+         * length of the range.
+         * @param column column to read
+         * @param from index of the first sample in the range
+         * @param to index one past the last sample in the range
+         * @param statistics statistics to add to
+         * @return statistics
+         */
+        public Statistics getStatistics(Column column, int from, int to, Statistics statistics) {
+            if (from < 0 || to > end - start || from > to) {
+                throw new IndexOutOfBoundsException(from + " to " + to);
+            }
+
+            long low = start + from, high = start + to;
+            int level = 0;
+            long size = 1;
+            while (low < high) {
+                if (level == column.minimums.length) {
+                    for (; low < high; low += size) {
+                        column.merge(level, low, statistics);
+                    }
+                    break;
+                }
+
+                long next = size << FAN_OUT_BITS;
+                while (low < high && (low & (next - 1)) != 0) {
+                    column.merge(level, low, statistics);
+                    low += size;
+                }
+                while (high > low && (high & (next - 1)) != 0) {
+                    high -= size;
+                    column.merge(level, high, statistics);
+                }
+
+                level ++;
+                size = next;
+            }
+
+            return statistics;
+        }
+
+        public Statistics getStatistics(Column column, int from, int to) {
+            return getStatistics(column, from, to, new Statistics());
+        }
+
+        /**
+         * Finds the first sample at or after a time
+         * @param nanos time, as returned by {@link DatalogStore#toNanos(Instant)}
+         * @return index of the sample, or size() if every sample is before the time
+         */
+        public int indexOf(long nanos) {
+            int low = 0, high = size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (getTime(mid) < nanos) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private int slot(int index) {
+            if (index < 0 || index >= end - start) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return (int) ((start + index) & mask);
+        }
+    }
+}
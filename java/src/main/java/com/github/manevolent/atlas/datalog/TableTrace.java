@@ -0,0 +1,271 @@
+package com.github.manevolent.atlas.datalog;
+
+import com.github.manevolent.atlas.connection.MemoryFrame;
+import com.github.manevolent.atlas.model.*;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Follows where the ECU is in a table as datalog frames arrive: the cells it is blending between right now, a trail
+ * of recently visited cells that fades out, and how often each cell has been visited.
+ *
+ * Frames can be taken on whichever thread reads them; each costs an axis search and a few array writes. Cells whose
+ * appearance changed are collected until {@link #drain(long, IntConsumer)} hands them to whoever paints the table,
+ * so a painter can catch up with any number of frames in one pass and repaint only those cells.
+ */
+public class TableTrace implements Consumer<MemoryFrame> {
+    private static final long NEVER = Long.MIN_VALUE;
+
+    private final TableLookup lookup;
+    private final MemoryParameter x, y;
+    private final int columns, size;
+    private final long trailNanos;
+
+    private final int[] hits;
+    private final long[] visited;
+    private final BitSet dirty;
+    private final BitSet fading;
+    private final int[] active = new int[4];
+    private final float[] weights = new float[4];
+    private int activeCount;
+    private int current = -1;
+    private int maxHits;
+    private int heatScale = 1;
+    private long samples;
+
+    /**
+     * Creates a trace
+     * @param table table to trace
+     * @param source memory to read the table's axes from
+     * @param parameters parameter feeding each of the table's axes
+     * @param trailNanos how long a visited cell takes to fade out of the trail
+     */
+    public TableTrace(Table table, MemorySource source, Map<Axis, MemoryParameter> parameters, long trailNanos)
+            throws IOException {
+        for (Axis axis : Axis.values()) {
+            if (table.hasAxis(axis) && !parameters.containsKey(axis)) {
+                throw new IllegalArgumentException("No parameter for the " + axis + " axis of " + table.getName());
+            }
+        }
+
+        TableLayout layout = table.getLayout();
+        this.lookup = TableLookup.of(table, source);
+        this.x = table.hasAxis(Axis.X) ? parameters.get(Axis.X) : null;
+        this.y = table.hasAxis(Axis.Y) ? parameters.get(Axis.Y) : null;
+        this.columns = layout.getLength(Axis.X);
+        this.size = layout.getSize();
+        this.trailNanos = trailNanos;
+
+        this.hits = new int[size];
+        this.visited = new long[size];
+        Arrays.fill(visited, NEVER);
+        this.dirty = new BitSet(size);
+        this.fading = new BitSet(size);
+    }
+
+    /**
+     * Finds the parameters feeding a table's axes among a set of parameters. A parameter feeds an axis if it has the
+     * axis's name, or failing that, if it is the only parameter with the axis's unit.
+     * @param table table
+     * @param parameters parameters to choose from
+     * @return parameter for each axis one was found for
+     */
+    public static Map<Axis, MemoryParameter> findParameters(Table table, Collection<MemoryParameter> parameters) {
+        Map<Axis, MemoryParameter> found = new EnumMap<>(Axis.class);
+        for (Axis axis : Axis.values()) {
+            Series series = table.getSeries(axis);
+            if (series == null) {
+                continue;
+            }
+
+            MemoryParameter byName = null, byUnit = null;
+            int unitMatches = 0;
+            for (MemoryParameter parameter : parameters) {
+                if (series.getName() != null && series.getName().equalsIgnoreCase(parameter.getName())) {
+                    byName = parameter;
+                    break;
+                }
+
+                Unit unit = series.getUnit();
+                if (unit != null && unit != Unit.NONE && unit == parameter.getScale().getUnit()) {
+                    byUnit = parameter;
+                    unitMatches ++;
+                }
+            }
+
+            if (byName != null) {
+                found.put(axis, byName);
+            } else if (unitMatches == 1) {
+                found.put(axis, byUnit);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public void accept(MemoryFrame frame) {
+        float xValue = x == null ? 0f : frame.getValue(x, Float.NaN);
+        float yValue = y == null ? 0f : frame.getValue(y, Float.NaN);
+        if (Float.isNaN(xValue) || Float.isNaN(yValue)) {
+            // This frame didn't sample the table's axes
+            return;
+        }
+
+        int i = lookup.getIndex(0, xValue), j = lookup.getIndex(1, yValue);
+        float tx = lookup.getFraction(0, i, xValue), ty = lookup.getFraction(1, j, yValue);
+        long now = System.nanoTime();
+
+        synchronized (this) {
+            for (int n = 0; n < activeCount; n ++) {
+                dirty.set(active[n]);
+            }
+
+            activeCount = 0;
+            addActive(i, j, (1f - tx) * (1f - ty));
+            addActive(i + 1, j, tx * (1f - ty));
+            addActive(i, j + 1, (1f - tx) * ty);
+            addActive(i + 1, j + 1, tx * ty);
+
+            // The cell the ECU is closest to is the one that counts as visited
+            int closest = Math.min(i + (tx >= 0.5f ? 1 : 0), columns - 1)
+                    + (Math.min(j + (ty >= 0.5f ? 1 : 0), lookup.getLength(1) - 1) * columns);
+            if (current >= 0) {
+                dirty.set(current);
+            }
+            current = closest;
+            visited[closest] = now;
+            fading.set(closest);
+            dirty.set(closest);
+
+            maxHits = Math.max(maxHits, ++ hits[closest]);
+            if (maxHits > heatScale) {
+                // Heat is relative to the busiest cell; rescale in steps so every cell isn't repainted each frame
+                heatScale = Integer.highestOneBit(maxHits - 1) << 1;
+                for (int cell = 0; cell < size; cell ++) {
+                    if (hits[cell] > 0) {
+                        dirty.set(cell);
+                    }
+                }
+            }
+
+            samples ++;
+        }
+    }
+
+    private void addActive(int i, int j, float weight) {
+        if (weight <= 0f || i >= columns || j >= lookup.getLength(1)) {
+            return;
+        }
+
+        int cell = i + (j * columns);
+        active[activeCount] = cell;
+        weights[activeCount] = weight;
+        activeCount ++;
+        dirty.set(cell);
+    }
+
+    /**
+     * Hands over every cell that needs repainting since the last drain, including cells still fading out of the trail
+     * @param now current {@link System#nanoTime()}
+     * @param cells called with the data index of each cell to repaint
+     * @return true if the trail is still fading, so cells will need repainting again even without new frames
+     */
+    public synchronized boolean drain(long now, IntConsumer cells) {
+        for (int cell = fading.nextSetBit(0); cell >= 0; cell = fading.nextSetBit(cell + 1)) {
+            if (now - visited[cell] >= trailNanos) {
+                fading.clear(cell);
+            }
+            dirty.set(cell);
+        }
+
+        for (int cell = dirty.nextSetBit(0); cell >= 0; cell = dirty.nextSetBit(cell + 1)) {
+            cells.accept(cell);
+        }
+        dirty.clear();
+
+        return !fading.isEmpty();
+    }
+
+    public synchronized boolean isDirty() {
+        return !dirty.isEmpty();
+    }
+
+    /**
+     * Forgets every visit, marking the cells that showed one as needing repainting
+     */
+    public synchronized void clear() {
+        for (int cell = 0; cell < size; cell ++) {
+            if (hits[cell] > 0 || visited[cell] != NEVER) {
+                dirty.set(cell);
+            }
+        }
+        for (int n = 0; n < activeCount; n ++) {
+            dirty.set(active[n]);
+        }
+
+        Arrays.fill(hits, 0);
+        Arrays.fill(visited, NEVER);
+        fading.clear();
+        activeCount = 0;
+        current = -1;
+        maxHits = 0;
+        heatScale = 1;
+        samples = 0;
+    }
+
+    /**
+     * Gets how much a cell is contributing to the value the ECU is looking up right now
+     * @param cell data index
+     * @return interpolation weight, 0 if the cell isn't one of those being blended
+     */
+    public synchronized float getWeight(int cell) {
+        for (int n = 0; n < activeCount; n ++) {
+            if (active[n] == cell) {
+                return weights[n];
+            }
+        }
+        return 0f;
+    }
+
+    /**
+     * Gets how recently a cell was visited
+     * @param cell data index
+     * @param now current {@link System#nanoTime()}
+     * @return 1 if just visited, fading to 0 over the length of the trail
+     */
+    public synchronized float getTrail(int cell, long now) {
+        long visited = this.visited[cell];
+        if (visited == NEVER || now - visited >= trailNanos) {
+            return 0f;
+        }
+        return 1f - ((float) (now - visited) / trailNanos);
+    }
+
+    /**
+     * Gets how often a cell has been visited, relative to the busiest cell
+     * @param cell data index
+     * @return 0 if never visited, up to 1
+     */
+    public synchronized float getHeat(int cell) {
+        return (float) hits[cell] / heatScale;
+    }
+
+    public synchronized int getHits(int cell) {
+        return hits[cell];
+    }
+
+    /**
+     * Gets the cell the ECU is closest to
+     * @return data index, or -1 if nothing has been traced
+     */
+    public synchronized int getCurrent() {
+        return current;
+    }
+
+    public synchronized long getSamples() {
+        return samples;
+    }
+}
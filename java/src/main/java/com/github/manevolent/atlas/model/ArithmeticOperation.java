@@ -1,7 +1,5 @@
 package com.github.manevolent.atlas.model;
 
-import java.util.function.BiFunction;
-
 public enum ArithmeticOperation {
     ADD("+", (a, x) -> {
         return a + x;
@@ -35,24 +33,24 @@ public enum ArithmeticOperation {
 
 
     RSHIFT(">>", (a, x) -> {
-        return a / (float)Math.pow(2, x.intValue());
+        return a / (float)Math.pow(2, (int) x);
     }, (a, x) -> {
-        return a * (float)Math.pow(2, x.intValue());
+        return a * (float)Math.pow(2, (int) x);
     }),
 
     LSHIFT("<<", (a, x) -> {
-        return a * (float)Math.pow(2, x.intValue());
+        return a * (float)Math.pow(2, (int) x);
     }, (a, x) -> {
-        return a / (float)Math.pow(2, x.intValue());
+        return a / (float)Math.pow(2, (int) x);
     }),;
 
-    private final BiFunction<Float, Float, Float> forwardOperation;
-    private final BiFunction<Float, Float, Float> reverseOperation;
+    private final Function forwardOperation;
+    private final Function reverseOperation;
     private final String text;
 
     ArithmeticOperation(String text,
-                        BiFunction<Float, Float, Float> forwardOperation,
-                        BiFunction<Float, Float, Float> reverseOperation) {
+                        Function forwardOperation,
+                        Function reverseOperation) {
         this.forwardOperation = forwardOperation;
         this.reverseOperation = reverseOperation;
         this.text = text;
@@ -70,4 +68,12 @@ public enum ArithmeticOperation {
     public String toString() {
         return text;
     }
+
+    /**
+     * Primitive (unboxed) form of an arithmetic operation.
+     */
+    @FunctionalInterface
+    public interface Function {
+        float apply(float a, float x);
+    }
 }
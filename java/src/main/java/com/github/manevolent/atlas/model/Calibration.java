@@ -2,6 +2,7 @@ package com.github.manevolent.atlas.model;
 
 
 import com.github.manevolent.atlas.model.source.ArraySource;
+import com.github.manevolent.atlas.model.source.DecryptedSource;
 import com.github.manevolent.atlas.model.source.LazySource;
 
 import java.io.ByteArrayOutputStream;
@@ -15,6 +16,7 @@ public class Calibration implements MemorySource {
     private boolean readonly;
     private MemorySource source;
     private MemorySection section;
+    private transient DecryptedSource decrypted;
 
     public Calibration() {
         this.uuid = UUID.randomUUID();
@@ -40,6 +42,7 @@ public class Calibration implements MemorySource {
 
     public void updateSource(MemorySource source) {
         this.source = source;
+        this.decrypted = null;
     }
 
     public MemorySource getSource() {
@@ -50,7 +53,37 @@ public class Calibration implements MemorySource {
         return getSource() != null;
     }
 
+    /**
+     * Gets a cached, decrypted view of this calibration's data. The same view is shared by copies of this
+     * calibration, and is replaced if the encryption changes (for example, when keys are changed).
+     * @param encryption encryption used by this calibration's memory section
+     * @return decrypted source
+     */
+    public DecryptedSource getDecryptedSource(MemoryEncryption encryption) throws IOException {
+        DecryptedSource decrypted = this.decrypted;
+        if (decrypted == null || decrypted.getEncryption() != encryption || decrypted.getSource() != source) {
+            if (decrypted != null && decrypted.getSource() == source) {
+                decrypted.flush();
+            }
+
+            this.decrypted = decrypted = new DecryptedSource(source, encryption);
+        }
+
+        return decrypted;
+    }
+
+    /**
+     * Writes any cached decrypted changes back into the underlying (encrypted) source.
+     */
+    public void flush() throws IOException {
+        if (decrypted != null) {
+            decrypted.flush();
+        }
+    }
+
     public int copyTo(OutputStream outputStream) throws IOException {
+        flush();
+
         int length = source.getLength();
         long base = source.getBaseAddress();
         for (int i = 0; i < length; i ++) {
@@ -104,6 +137,7 @@ public class Calibration implements MemorySource {
         copy.setName(getName());
         copy.setSection(getSection());
         copy.source = source;
+        copy.decrypted = decrypted;
         return copy;
     }
 
@@ -113,6 +147,7 @@ public class Calibration implements MemorySource {
         this.setReadonly(other.isReadonly());
         if (other.source != null && other.source != source) {
             source = other.source;
+            decrypted = other.decrypted;
         }
     }
 
@@ -128,11 +163,13 @@ public class Calibration implements MemorySource {
 
     @Override
     public int read(byte[] dst, long memoryBase, int offs, int len) throws IOException {
+        flush();
         return source.read(dst, memoryBase, offs, len);
     }
 
     @Override
     public int read(long position) throws IOException {
+        flush();
         return source.read(position);
     }
 
@@ -142,6 +179,12 @@ public class Calibration implements MemorySource {
             throw new IOException(getName() + " is read-only");
         }
 
+        if (decrypted != null) {
+            // Raw writes bypass the decrypted view, so anything cached there is now stale
+            decrypted.flush();
+            decrypted.invalidate();
+        }
+
         source.write(bytes, memoryBase, offs, len);
     }
 
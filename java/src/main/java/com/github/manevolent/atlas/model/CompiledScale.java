@@ -0,0 +1,209 @@
+package com.github.manevolent.atlas.model;
+
+import java.util.List;
+
+/**
+ * A compiled, allocation-free form of a Scale's list of scaling operations.
+ *
+ * Each operation becomes one stage of a flat program: add, multiply, divide or power by a float constant. Stages are
+ * evaluated in float, in the same order as the operations, so the results are bit-for-bit those of applying each
+ * {@link ArithmeticOperation} in turn; raw values written back through {@link DataFormat} are floored, and folding
+ * operations together would change which integer some values land on. Only constants that are exact are worked
+ * out ahead of time, such as the power of two for a shift.
+ */
+public final class CompiledScale {
+    private static final byte STAGE_ADD = 0;
+    private static final byte STAGE_MULTIPLY = 1;
+    private static final byte STAGE_DIVIDE = 2;
+    private static final byte STAGE_POWER = 3;
+
+    private final ArithmeticOperation[] operations;
+    private final float[] coefficients;
+
+    private final Program forward;
+    private final Program reverse;
+
+    private CompiledScale(ArithmeticOperation[] operations, float[] coefficients) {
+        this.operations = operations;
+        this.coefficients = coefficients;
+        this.forward = compileForward(operations, coefficients);
+        this.reverse = compileReverse(operations, coefficients);
+    }
+
+    public static CompiledScale compile(List<ScalingOperation> operations) {
+        int size = operations.size();
+        ArithmeticOperation[] ops = new ArithmeticOperation[size];
+        float[] coefficients = new float[size];
+        for (int i = 0; i < size; i ++) {
+            ScalingOperation operation = operations.get(i);
+            ops[i] = operation.getOperation();
+            coefficients[i] = operation.getCoefficient();
+        }
+        return new CompiledScale(ops, coefficients);
+    }
+
+    /**
+     * Checks if this compiled scale still matches a list of scaling operations. Scaling operations are mutable,
+     * so this is used to detect edits made to operations after they were compiled.
+     * @param operations operations to check
+     * @return true if this compiled form is equivalent to the given operations
+     */
+    public boolean isCompiledFrom(List<ScalingOperation> operations) {
+        int size = operations.size();
+        if (size != this.operations.length) {
+            return false;
+        }
+
+        for (int i = 0; i < size; i ++) {
+            ScalingOperation operation = operations.get(i);
+            if (operation.getOperation() != this.operations[i] ||
+                    Float.floatToRawIntBits(operation.getCoefficient()) !=
+                            Float.floatToRawIntBits(this.coefficients[i])) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public float forward(float a) {
+        return forward.evaluate(a);
+    }
+
+    public float reverse(float a) {
+        return reverse.evaluate(a);
+    }
+
+    public void forward(float[] values, int offs, int len) {
+        forward.evaluate(values, offs, len);
+    }
+
+    public void reverse(float[] values, int offs, int len) {
+        reverse.evaluate(values, offs, len);
+    }
+
+    /**
+     * Gets the number of stages this scale was compiled into.
+     * @return number of forward stages
+     */
+    public int getStageCount() {
+        return forward.kinds.length;
+    }
+
+    private static float shift(float x) {
+        return (float) Math.pow(2, (int) x);
+    }
+
+    private static Program compileForward(ArithmeticOperation[] operations, float[] coefficients) {
+        Program.Builder builder = new Program.Builder(operations.length);
+        for (int i = 0; i < operations.length; i ++) {
+            float x = coefficients[i];
+
+            // a - x is a + -x exactly, in float as in any IEEE 754 arithmetic
+            switch (operations[i]) {
+                case ADD -> builder.stage(STAGE_ADD, x);
+                case SUBTRACT -> builder.stage(STAGE_ADD, -x);
+                case MULTIPLY -> builder.stage(STAGE_MULTIPLY, x);
+                case DIVIDE -> builder.stage(STAGE_DIVIDE, x);
+                case LSHIFT -> builder.stage(STAGE_MULTIPLY, shift(x));
+                case RSHIFT -> builder.stage(STAGE_DIVIDE, shift(x));
+                case EXPONENT -> builder.stage(STAGE_POWER, x);
+            }
+        }
+        return builder.build();
+    }
+
+    private static Program compileReverse(ArithmeticOperation[] operations, float[] coefficients) {
+        Program.Builder builder = new Program.Builder(operations.length);
+        for (int i = operations.length - 1; i >= 0; i --) {
+            float x = coefficients[i];
+
+            switch (operations[i]) {
+                case ADD -> builder.stage(STAGE_ADD, -x);
+                case SUBTRACT -> builder.stage(STAGE_ADD, x);
+                case MULTIPLY -> builder.stage(STAGE_DIVIDE, x);
+                case DIVIDE -> builder.stage(STAGE_MULTIPLY, x);
+                case LSHIFT -> builder.stage(STAGE_DIVIDE, shift(x));
+                case RSHIFT -> builder.stage(STAGE_MULTIPLY, shift(x));
+                case EXPONENT -> builder.stage(STAGE_POWER, 1f / x);
+            }
+        }
+        return builder.build();
+    }
+
+    private static final class Program {
+        private final byte[] kinds;
+        private final float[] constants;
+
+        private Program(byte[] kinds, float[] constants) {
+            this.kinds = kinds;
+            this.constants = constants;
+        }
+
+        private float evaluate(float a) {
+            for (int i = 0; i < kinds.length; i ++) {
+                float x = constants[i];
+                a = switch (kinds[i]) {
+                    case STAGE_ADD -> a + x;
+                    case STAGE_MULTIPLY -> a * x;
+                    case STAGE_DIVIDE -> a / x;
+                    default -> (float) Math.pow(a, x);
+                };
+            }
+
+            return a;
+        }
+
+        private void evaluate(float[] values, int offs, int len) {
+            int end = offs + len;
+
+            // One stage at a time over the whole range; each value still sees the stages in order
+            for (int s = 0; s < kinds.length; s ++) {
+                float x = constants[s];
+                switch (kinds[s]) {
+                    case STAGE_ADD -> {
+                        for (int i = offs; i < end; i ++) {
+                            values[i] += x;
+                        }
+                    }
+                    case STAGE_MULTIPLY -> {
+                        for (int i = offs; i < end; i ++) {
+                            values[i] *= x;
+                        }
+                    }
+                    case STAGE_DIVIDE -> {
+                        for (int i = offs; i < end; i ++) {
+                            values[i] /= x;
+                        }
+                    }
+                    default -> {
+                        for (int i = offs; i < end; i ++) {
+                            values[i] = (float) Math.pow(values[i], x);
+                        }
+                    }
+                }
+            }
+        }
+
+        private static final class Builder {
+            private final byte[] kinds;
+            private final float[] constants;
+            private int size = 0;
+
+            private Builder(int capacity) {
+                this.kinds = new byte[capacity];
+                this.constants = new float[capacity];
+            }
+
+            private void stage(byte kind, float x) {
+                kinds[size] = kind;
+                constants[size] = x;
+                size ++;
+            }
+
+            private Program build() {
+                return new Program(kinds, constants);
+            }
+        }
+    }
+}
@@ -123,6 +123,127 @@ public enum DataFormat {
         return convertFromBytes.apply(data, byteOrder);
     }
 
+    /**
+     * Converts one encoded value into a float, reading it in place.
+     * @param data source data
+     * @param offs offset in the source data of the value
+     * @param byteOrder byte order of the source data
+     * @return value
+     */
+    public float convertFromBytes(byte[] data, int offs, ByteOrder byteOrder) {
+        if (offs < 0 || offs + size > data.length) {
+            throw new ArrayIndexOutOfBoundsException(offs + size);
+        }
+
+        boolean littleEndian = byteOrder == ByteOrder.LITTLE_ENDIAN;
+        return switch (this) {
+            case UBYTE -> data[offs] & 0xFF;
+            case SBYTE -> data[offs];
+            case USHORT -> readShort(data, offs, littleEndian) & 0xFFFF;
+            case SSHORT -> (short) readShort(data, offs, littleEndian);
+        };
+    }
+
+    /**
+     * Converts a contiguous run of encoded values into floats.
+     * @param data source data
+     * @param offs offset in the source data to begin reading
+     * @param dst destination array
+     * @param dstOffs offset in the destination array to begin writing
+     * @param count number of values to convert
+     * @param byteOrder byte order of the source data
+     */
+    public void convertFromBytes(byte[] data, int offs, float[] dst, int dstOffs, int count, ByteOrder byteOrder) {
+        if (offs < 0 || offs + (count * size) > data.length) {
+            throw new ArrayIndexOutOfBoundsException(offs + (count * size));
+        }
+
+        boolean littleEndian = byteOrder == ByteOrder.LITTLE_ENDIAN;
+        switch (this) {
+            case UBYTE -> {
+                for (int i = 0; i < count; i ++) {
+                    dst[dstOffs + i] = data[offs + i] & 0xFF;
+                }
+            }
+            case SBYTE -> {
+                for (int i = 0; i < count; i ++) {
+                    dst[dstOffs + i] = data[offs + i];
+                }
+            }
+            case USHORT -> {
+                for (int i = 0, j = offs; i < count; i ++, j += 2) {
+                    dst[dstOffs + i] = readShort(data, j, littleEndian) & 0xFFFF;
+                }
+            }
+            case SSHORT -> {
+                for (int i = 0, j = offs; i < count; i ++, j += 2) {
+                    dst[dstOffs + i] = (short) readShort(data, j, littleEndian);
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts a contiguous run of floats into their encoded form, clamping as the single-value conversion does.
+     * @param src source values
+     * @param srcOffs offset in the source values to begin reading
+     * @param data destination data
+     * @param offs offset in the destination data to begin writing
+     * @param count number of values to convert
+     * @param byteOrder byte order of the destination data
+     */
+    public void convertToBytes(float[] src, int srcOffs, byte[] data, int offs, int count, ByteOrder byteOrder) {
+        if (offs < 0 || offs + (count * size) > data.length) {
+            throw new ArrayIndexOutOfBoundsException(offs + (count * size));
+        }
+
+        boolean littleEndian = byteOrder == ByteOrder.LITTLE_ENDIAN;
+        switch (this) {
+            case UBYTE -> {
+                for (int i = 0; i < count; i ++) {
+                    float f = Math.min(255, Math.max(0, src[srcOffs + i]));
+                    data[offs + i] = (byte) (int) Math.floor(f);
+                }
+            }
+            case SBYTE -> {
+                for (int i = 0; i < count; i ++) {
+                    float f = Math.min(Byte.MAX_VALUE, Math.max(Byte.MIN_VALUE, src[srcOffs + i]));
+                    data[offs + i] = (byte) (int) Math.floor(f);
+                }
+            }
+            case USHORT -> {
+                for (int i = 0, j = offs; i < count; i ++, j += 2) {
+                    float f = Math.min(65535, Math.max(0, src[srcOffs + i]));
+                    writeShort(data, j, ((int) Math.floor(f)) & 0xFFFF, littleEndian);
+                }
+            }
+            case SSHORT -> {
+                for (int i = 0, j = offs; i < count; i ++, j += 2) {
+                    float f = Math.min(Short.MAX_VALUE, Math.max(Short.MIN_VALUE, src[srcOffs + i]));
+                    writeShort(data, j, (short) Math.floor(f), littleEndian);
+                }
+            }
+        }
+    }
+
+    private static int readShort(byte[] data, int offs, boolean littleEndian) {
+        if (littleEndian) {
+            return (data[offs] & 0xFF) | ((data[offs + 1] & 0xFF) << 8);
+        } else {
+            return (data[offs + 1] & 0xFF) | ((data[offs] & 0xFF) << 8);
+        }
+    }
+
+    private static void writeShort(byte[] data, int offs, int s, boolean littleEndian) {
+        if (littleEndian) {
+            data[offs] = (byte) (s & 0xFF);
+            data[offs + 1] = (byte) (s >> 8 & 0xFF);
+        } else {
+            data[offs + 1] = (byte) (s & 0xFF);
+            data[offs] = (byte) (s >> 8 & 0xFF);
+        }
+    }
+
     public int getSize() {
         return size;
     }
@@ -34,6 +34,28 @@ public class MemoryAddress {
         return format.convertFromBytes(data, getSection().getByteOrder().getByteOrder());
     }
 
+    /**
+     * Reads a contiguous run of values in one source read.
+     * @param source memory source to read from
+     * @param index index of the first value to read
+     * @param dst destination array for the unscaled values
+     * @param offs offset in the destination array
+     * @param len number of values to read
+     * @param format data format of the values
+     * @return number of values read
+     */
+    public int read(MemorySource source, int index, float[] dst, int offs, int len, DataFormat format)
+            throws IOException {
+        if (len <= 0) {
+            return 0;
+        }
+
+        byte[] data = new byte[len * format.getSize()];
+        getSection().read(source, data, offset + ((long) index * format.getSize()), 0, data.length);
+        format.convertFromBytes(data, 0, dst, offs, len, getSection().getByteOrder().getByteOrder());
+        return len;
+    }
+
     public static Builder builder() {
         return new Builder();
     }
@@ -43,6 +65,26 @@ public class MemoryAddress {
         getSection().write(source, bytes, offset + (index * format.getSize()), 0, bytes.length);
     }
 
+    /**
+     * Writes a contiguous run of values in one source write.
+     * @param source memory source to write to
+     * @param index index of the first value to write
+     * @param src unscaled values to write
+     * @param offs offset in the source array
+     * @param len number of values to write
+     * @param format data format of the values
+     */
+    public void write(MemorySource source, int index, float[] src, int offs, int len, DataFormat format)
+            throws IOException {
+        if (len <= 0) {
+            return;
+        }
+
+        byte[] bytes = new byte[len * format.getSize()];
+        format.convertToBytes(src, offs, bytes, 0, len, getSection().getByteOrder().getByteOrder());
+        getSection().write(source, bytes, offset + ((long) index * format.getSize()), 0, bytes.length);
+    }
+
     public static class Builder {
         private final MemoryAddress address;
 
@@ -71,12 +71,13 @@ public class MemoryParameter {
     }
 
     public float getValue(byte[] data) {
-        float unscaled = getScale().getFormat().convertFromBytes(
+        Scale scale = getScale();
+        float unscaled = scale.getFormat().convertFromBytes(
                 data,
                 getAddress().getSection().getByteOrder().getByteOrder()
         );
 
-        return getScale().forward(unscaled);
+        return scale.compile().forward(unscaled);
     }
 
     public static class Builder {
@@ -3,8 +3,10 @@ package com.github.manevolent.atlas.model;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.HexFormat;
+import java.util.UUID;
 
 public class MemorySection {
+    private UUID uuid;
     private String name;
     private MemoryType memoryType;
     private MemoryEncryptionType encryptionType;
@@ -13,6 +15,18 @@ public class MemorySection {
     private long baseAddress;
     private int dataLength;
 
+    public MemorySection() {
+        this.uuid = UUID.randomUUID();
+    }
+
+    public UUID getUuid() {
+        return uuid;
+    }
+
+    public void setUuid(UUID uuid) {
+        this.uuid = uuid;
+    }
+
     public String getName() {
         return name;
     }
@@ -74,7 +88,9 @@ public class MemorySection {
             throw new ArrayIndexOutOfBoundsException(Long.toString(memoryOffs));
         }
 
-        if (encryption != null) {
+        if (encryption != null && source instanceof Calibration calibration) {
+            return calibration.getDecryptedSource(encryption).read(dst, memoryOffs, offs, len);
+        } else if (encryption != null) {
             return encryption.read(source, memoryOffs, dst, offs, len);
         } else {
             return source.read(dst, memoryOffs, offs, len);
@@ -86,7 +102,13 @@ public class MemorySection {
             throw new ArrayIndexOutOfBoundsException(Long.toString(memoryOffs));
         }
 
-        if (encryption != null) {
+        if (encryption != null && source instanceof Calibration calibration) {
+            if (calibration.isReadonly()) {
+                throw new IOException(calibration.getName() + " is read-only");
+            }
+
+            calibration.getDecryptedSource(encryption).write(src, memoryOffs, offs, len);
+        } else if (encryption != null) {
             encryption.write(source, memoryOffs, src, offs, len);
         } else {
             source.write(src, memoryOffs, offs, len);
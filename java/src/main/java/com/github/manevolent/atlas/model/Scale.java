@@ -9,11 +9,26 @@ public class Scale {
             .withUnit(Unit.NONE)
             .build();
 
+    private UUID uuid;
     private List<ScalingOperation> operations;
     private Unit unit;
     private DataFormat format;
     private String name;
 
+    private transient CompiledScale compiled;
+
+    public Scale() {
+        this.uuid = UUID.randomUUID();
+    }
+
+    public UUID getUuid() {
+        return uuid;
+    }
+
+    public void setUuid(UUID uuid) {
+        this.uuid = uuid;
+    }
+
     public String getName() {
         return name;
     }
@@ -23,27 +38,33 @@ public class Scale {
     }
 
     public float forward(float a) {
-        for (ScalingOperation operation : operations) {
-            a = operation.getOperation().forward(a, operation.getCoefficient());
-        }
-
-        return a;
+        return compile().forward(a);
     }
 
     public float reverse(float a) {
-        ListIterator<ScalingOperation> listIterator =
-                operations.listIterator(operations.size());
+        return compile().reverse(a);
+    }
 
-        while (listIterator.hasPrevious()) {
-            ScalingOperation operation = listIterator.previous();
-            a = operation.getOperation().reverse(a, operation.getCoefficient());
+    /**
+     * Gets the compiled form of this scale's operations, compiling them if they have changed since they were
+     * last compiled.
+     * @return compiled scale
+     */
+    public CompiledScale compile() {
+        CompiledScale compiled = this.compiled;
+        if (compiled == null || !compiled.isCompiledFrom(operations)) {
+            this.compiled = compiled = CompiledScale.compile(operations);
         }
+        return compiled;
+    }
 
-        return a;
+    private void invalidate() {
+        this.compiled = null;
     }
 
     public void setOperations(List<ScalingOperation> operations) {
         this.operations = operations;
+        invalidate();
     }
 
     public Unit getUnit() {
@@ -72,6 +93,7 @@ public class Scale {
     public void apply(Scale other) {
         operations.clear();
         operations.addAll(other.getOperations());
+        invalidate();
 
         unit = other.unit;
         name = other.name;
@@ -116,6 +138,7 @@ public class Scale {
 
     public void removeOperation(ScalingOperation operation) {
         operations.remove(operation);
+        invalidate();
     }
 
     public void addOperation(ScalingOperation after, ScalingOperation operation) {
@@ -124,6 +147,7 @@ public class Scale {
         } else {
             operations.add(operations.indexOf(after) + 1, operation);
         }
+        invalidate();
     }
 
     public void addOperation(ScalingOperation operation) {
@@ -138,6 +162,7 @@ public class Scale {
 
         operations.remove(operation);
         operations.add(index+1, operation);
+        invalidate();
     }
 
     public void moveOperationUp(ScalingOperation operation) {
@@ -148,6 +173,7 @@ public class Scale {
 
         operations.remove(operation);
         operations.add(index-1, operation);
+        invalidate();
     }
 
     public static class Builder {
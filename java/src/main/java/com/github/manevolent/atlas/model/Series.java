@@ -18,11 +18,24 @@ public class Series {
     }
 
     public int get(MemorySource source, float[] floats, int offs, int len) throws IOException {
-        int i = 0;
-        for (; i < len; i ++) {
-            floats[offs + i] = get(source, i);
-        }
-        return i;
+        return get(source, 0, floats, offs, len);
+    }
+
+    /**
+     * Reads a contiguous range of cells in this series with a single source read.
+     * @param source memory source to read from
+     * @param index index of the first cell to read
+     * @param floats destination array for the scaled values
+     * @param offs offset in the destination array
+     * @param len number of cells to read
+     * @return number of cells read
+     */
+    public int get(MemorySource source, int index, float[] floats, int offs, int len) throws IOException {
+        checkRange(index, len);
+
+        int read = address.read(source, index, floats, offs, len, scale.getFormat());
+        scale.compile().forward(floats, offs, read);
+        return read;
     }
 
     public float[] getNum(MemorySource source, int numCells) throws IOException {
@@ -85,6 +98,35 @@ public class Series {
         return get(source, index);
     }
 
+    /**
+     * Writes a contiguous range of cells in this series with a single source write.
+     * @param source memory source to write to
+     * @param index index of the first cell to write
+     * @param values scaled values to write
+     * @param offs offset in the values array
+     * @param len number of cells to write
+     */
+    public void set(MemorySource source, int index, float[] values, int offs, int len) throws IOException {
+        checkRange(index, len);
+
+        float[] data = new float[len];
+        System.arraycopy(values, offs, data, 0, len);
+        scale.compile().reverse(data, 0, len);
+        address.write(source, index, data, 0, len, scale.getFormat());
+    }
+
+    public void setAll(MemorySource source, float[] values) throws IOException {
+        set(source, 0, values, 0, values.length);
+    }
+
+    private void checkRange(int index, int len) {
+        if (index < 0 || len < 0) {
+            throw new ArrayIndexOutOfBoundsException(Math.min(index, len));
+        } else if (length > 0 && index + len > length) {
+            throw new ArrayIndexOutOfBoundsException(index + len);
+        }
+    }
+
     public Series copy() {
         Series copy = new Series();
         copy.scale = scale;
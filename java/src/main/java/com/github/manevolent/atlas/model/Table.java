@@ -14,6 +14,7 @@ public class Table {
     private String name;
     private Series data;
     private Map<Axis, Series> axes;
+    private TableLayout layout;
 
     public Table(String name) {
         this.name = name;
@@ -27,58 +28,86 @@ public class Table {
         return axes;
     }
 
+    /**
+     * Gets the layout of this table's cells in its data, kept until the table's axes change
+     * @return layout
+     */
+    public TableLayout getLayout() {
+        TableLayout layout = this.layout;
+        if (layout == null || !layout.isCurrent()) {
+            this.layout = layout = new TableLayout(axes);
+        }
+        return layout;
+    }
+
+    public float getCell(MemorySource source, int x, int y) throws IOException {
+        return data.get(source, getLayout().getIndex(x, y));
+    }
+
+    public float getCell(MemorySource source, int x) throws IOException {
+        return data.get(source, getLayout().getIndex(x));
+    }
+
+    public float getCell(MemorySource source, int... coordinates) throws IOException {
+        return data.get(source, getLayout().getIndex(coordinates));
+    }
+
     public float getCell(MemorySource source, Map<Axis, Integer> coordinates) throws IOException {
         return data.get(source, getDataIndex(coordinates));
     }
 
-    public float getCell(MemorySource source, Integer... coordinates) throws IOException {
-        Map<Axis, Integer> coordinatesMap = new HashMap<>();
-
-        for (int n = 0; n < coordinates.length; n ++) {
-            int finalN = n;
-            Axis axis = Arrays.stream(Axis.values())
-                    .filter(a -> a.getIndex() == finalN)
-                    .findFirst().orElseThrow();
+    public float setCell(MemorySource source, float value, int x, int y) throws IOException {
+        return data.set(source, getLayout().getIndex(x, y), value);
+    }
 
-            coordinatesMap.put(axis, coordinates[n]);
-        }
+    public float setCell(MemorySource source, float value, int x) throws IOException {
+        return data.set(source, getLayout().getIndex(x), value);
+    }
 
-        return getCell(source, coordinatesMap);
+    public float setCell(MemorySource source, float value, int... coordinates) throws IOException {
+        return data.set(source, getLayout().getIndex(coordinates), value);
     }
 
     public float setCell(MemorySource source, float value, Map<Axis, Integer> coordinates) throws IOException {
         return data.set(source, getDataIndex(coordinates), value);
     }
 
-    public float setCell(MemorySource source, float value, Integer... coordinates) throws IOException {
-        Map<Axis, Integer> coordinatesMap = new HashMap<>();
-
-        for (int n = 0; n < coordinates.length; n ++) {
-            int finalN = n;
-            Axis axis = Arrays.stream(Axis.values())
-                    .filter(a -> a.getIndex() == finalN)
-                    .findFirst().orElseThrow();
+    /**
+     * Reads every cell in this table with a single source read.
+     * @param source memory source to read from
+     * @return cell values, in data index order (X varies fastest)
+     */
+    public float[] getCells(MemorySource source) throws IOException {
+        return data.getAll(source);
+    }
 
-            coordinatesMap.put(axis, coordinates[n]);
+    /**
+     * Writes every cell in this table with a single source write.
+     * @param source memory source to write to
+     * @param values cell values, in data index order (X varies fastest)
+     */
+    public void setCells(MemorySource source, float[] values) throws IOException {
+        if (values.length != data.getLength()) {
+            throw new IllegalArgumentException("Invalid cell count: " + values.length + " != " + data.getLength());
         }
 
-        return setCell(source, value, coordinatesMap);
+        data.setAll(source, values);
     }
 
-    public int getDataIndex(Map<Axis, Integer> coordinates) {
-        if (coordinates.isEmpty()) {
-            return 0;
-        }
-
-        int index = coordinates.get(X);
+    public int getDataIndex(int x, int y) {
+        return getLayout().getIndex(x, y);
+    }
 
-        if (coordinates.containsKey(Y)) {
-            int y_index = coordinates.get(Y);
-            if (y_index > 0) {
-                index += y_index * axes.get(X).getLength();
+    public int getDataIndex(Map<Axis, Integer> coordinates) {
+        TableLayout layout = getLayout();
+        int index = 0;
+        for (Map.Entry<Axis, Integer> coordinate : coordinates.entrySet()) {
+            int value = coordinate.getValue();
+            if (value < 0 || value >= layout.getLength(coordinate.getKey())) {
+                throw new ArrayIndexOutOfBoundsException(coordinate.getKey() + " " + value);
             }
+            index += value * layout.getStride(coordinate.getKey());
         }
-
         return index;
     }
 
@@ -100,10 +129,12 @@ public class Table {
 
     public void setAxes(Map<Axis, Series> axes) {
         this.axes = axes;
+        this.layout = null;
     }
 
     public void setAxis(Axis axis, Series series) {
         this.axes.put(axis, series);
+        this.layout = null;
     }
 
     public Series getSeries(Axis axis) {
@@ -121,43 +152,41 @@ public class Table {
                 }
             };
 
-            Series y = axes.get(Y);
-            Series x = axes.get(X);
+            TableLayout layout = getLayout();
+            float[] cells = getCells(source);
 
             writeCell.accept("");
 
-            if (!axes.isEmpty()) {
-                for (int x_index = 0; x_index < x.getLength(); x_index++) {
-                    writeCell.accept(String.format("%." + rounding_precision + "f", x.get(source, x_index)));
+            if (layout.hasAxis(X)) {
+                for (float value : layout.getSeries(X).getAll(source)) {
+                    writeCell.accept(String.format("%." + rounding_precision + "f", value));
                 }
             }
             writer.write("\r\n");
 
-            if (axes.size() == 2) {
-                for (int y_index = 0; y_index < y.getLength(); y_index ++) {
-                    // Write the row header
-                    writeCell.accept(String.format("%." + rounding_precision + "f", y.get(source, y_index)));
-                    for (int x_index = 0; x_index < x.getLength(); x_index ++) {
-                        // Write the cell data
-                        writeCell.accept(String.format("%." + rounding_precision + "f", getCell(source, x_index, y_index)));
+            if (layout.hasAxis(Y)) {
+                float[] rows = layout.getSeries(Y).getAll(source);
+                TableLayout.Cursor cursor = layout.cells();
+                while (cursor.next()) {
+                    if (cursor.getX() == 0) {
+                        if (cursor.getY() > 0) {
+                            writer.write("\r\n");
+                        }
+
+                        // Write the row header
+                        writeCell.accept(String.format("%." + rounding_precision + "f", rows[cursor.getY()]));
                     }
-                    writer.write("\r\n");
-                }
-            } else if (axes.size() == 1) {
-                // Write the row header
-                writeCell.accept("");
-                for (int x_index = 0; x_index < x.getLength(); x_index ++) {
+
                     // Write the cell data
-                    writeCell.accept(String.format("%." + rounding_precision + "f", getCell(source, x_index)));
+                    writeCell.accept(String.format("%." + rounding_precision + "f", cells[cursor.getIndex()]));
                 }
                 writer.write("\r\n");
-            } else if (axes.isEmpty()) {
+            } else {
                 // Write the row header
                 writeCell.accept("");
-                x = data;
-                for (int x_index = 0; x_index < x.getLength(); x_index ++) {
+                for (float value : cells) {
                     // Write the cell data
-                    writeCell.accept(String.format("%." + rounding_precision + "f", getCell(source, x_index)));
+                    writeCell.accept(String.format("%." + rounding_precision + "f", value));
                 }
                 writer.write("\r\n");
             }
@@ -199,6 +228,7 @@ public class Table {
     }
 
     public Series removeAxis(Axis axis) {
+        this.layout = null;
         return axes.remove(axis);
     }
 
@@ -209,11 +239,7 @@ public class Table {
     public Table copy() {
         Table copy = new Table();
 
-        copy.axes = new HashMap<>();
-        for (Axis axis : axes.keySet()) {
-            copy.axes.put(axis, axes.get(axis).copy());
-        }
-
+        copy.axes = copyAxes(getLayout());
         copy.name = name;
         copy.data = data.copy();
 
@@ -221,15 +247,25 @@ public class Table {
     }
 
     public void apply(Table changed) {
+        Map<Axis, Series> axes = copyAxes(changed.getLayout());
         this.axes.clear();
-        for (Axis axis : changed.axes.keySet()) {
-            this.axes.put(axis, changed.axes.get(axis).copy());
-        }
+        this.axes.putAll(axes);
+        this.layout = null;
 
         this.data = changed.data.copy();
         this.name = changed.name;
     }
 
+    private static Map<Axis, Series> copyAxes(TableLayout layout) {
+        Map<Axis, Series> copy = new HashMap<>();
+        for (Axis axis : Axis.values()) {
+            if (layout.hasAxis(axis)) {
+                copy.put(axis, layout.getSeries(axis).copy());
+            }
+        }
+        return copy;
+    }
+
     public boolean hasScale(Scale scale) {
         if (getData().getScale() == scale) {
             return true;
@@ -0,0 +1,250 @@
+package com.github.manevolent.atlas.model;
+
+import java.util.Map;
+
+/**
+ * Where each cell of a table sits in its data series.
+ *
+ * Cells are stored with the X axis varying fastest, then Y, and so on through {@link Axis}. The stride of each axis,
+ * the distance in the data between neighbouring cells along it, is worked out once, so finding a cell is a
+ * multiply-add for each axis. An axis the table doesn't have counts as an axis of length 1.
+ */
+public class TableLayout {
+    private static final Axis[] AXES = Axis.values();
+
+    private final Series[] series;
+    private final int[] lengths;
+    private final int[] strides;
+    private final int size;
+
+    public TableLayout(Map<Axis, Series> axes) {
+        this.series = new Series[AXES.length];
+        this.lengths = new int[AXES.length];
+        this.strides = new int[AXES.length];
+
+        int stride = 1;
+        for (Axis axis : AXES) {
+            int dimension = axis.getIndex();
+            Series series = axes == null ? null : axes.get(axis);
+            this.series[dimension] = series;
+            this.lengths[dimension] = series == null ? 1 : Math.max(1, series.getLength());
+            this.strides[dimension] = stride;
+            stride *= lengths[dimension];
+        }
+
+        this.size = stride;
+    }
+
+    /**
+     * Finds if this layout still describes a table's axes, which it won't once an axis has been resized
+     * @return true if the layout is current
+     */
+    boolean isCurrent() {
+        for (int dimension = 0; dimension < series.length; dimension ++) {
+            if (series[dimension] != null && Math.max(1, series[dimension].getLength()) != lengths[dimension]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getDimensions() {
+        return lengths.length;
+    }
+
+    public int getLength(Axis axis) {
+        return lengths[axis.getIndex()];
+    }
+
+    public int getStride(Axis axis) {
+        return strides[axis.getIndex()];
+    }
+
+    /**
+     * Gets the number of cells in the table
+     * @return cells
+     */
+    public int getSize() {
+        return size;
+    }
+
+    public boolean hasAxis(Axis axis) {
+        return series[axis.getIndex()] != null;
+    }
+
+    public Series getSeries(Axis axis) {
+        return series[axis.getIndex()];
+    }
+
+    private int checkCoordinate(int dimension, int coordinate) {
+        if (coordinate < 0 || coordinate >= lengths[dimension]) {
+            throw new ArrayIndexOutOfBoundsException(AXES[dimension] + " " + coordinate + " not in [0, "
+                    + lengths[dimension] + ")");
+        }
+        return coordinate;
+    }
+
+    /**
+     * Gets the index of a cell in the table's data
+     * @param x X coordinate
+     * @return data index
+     */
+    public int getIndex(int x) {
+        return checkCoordinate(0, x);
+    }
+
+    /**
+     * Gets the index of a cell in the table's data
+     * @param x X coordinate
+     * @param y Y coordinate
+     * @return data index
+     */
+    public int getIndex(int x, int y) {
+        return checkCoordinate(0, x) + (checkCoordinate(1, y) * strides[1]);
+    }
+
+    /**
+     * Gets the index of a cell in the table's data
+     * @param coordinates coordinates, in axis order; axes left out are at 0
+     * @return data index
+     */
+    public int getIndex(int... coordinates) {
+        if (coordinates.length > lengths.length) {
+            throw new IllegalArgumentException("Too many coordinates: " + coordinates.length);
+        }
+
+        int index = 0;
+        for (int dimension = 0; dimension < coordinates.length; dimension ++) {
+            index += checkCoordinate(dimension, coordinates[dimension]) * strides[dimension];
+        }
+        return index;
+    }
+
+    /**
+     * Gets the coordinate of a cell along an axis
+     * @param index data index of the cell
+     * @param axis axis
+     * @return coordinate
+     */
+    public int getCoordinate(int index, Axis axis) {
+        int dimension = axis.getIndex();
+        return (index / strides[dimension]) % lengths[dimension];
+    }
+
+    /**
+     * Iterates over every cell in the table, in data order
+     * @return cursor positioned before the first cell
+     */
+    public Cursor cells() {
+        return new Cursor(new int[lengths.length], lengths.clone());
+    }
+
+    /**
+     * Iterates over a rectangle of cells, X varying fastest
+     * @param fromX first X coordinate
+     * @param toX X coordinate to stop before
+     * @param fromY first Y coordinate
+     * @param toY Y coordinate to stop before
+     * @return cursor positioned before the first cell
+     */
+    public Cursor cells(int fromX, int toX, int fromY, int toY) {
+        int[] from = new int[lengths.length];
+        int[] to = lengths.clone();
+        from[0] = fromX; to[0] = toX;
+        from[1] = fromY; to[1] = toY;
+        return new Cursor(from, to);
+    }
+
+    /**
+     * Iterates over a range of cells along every axis, X varying fastest
+     * @param from first coordinate along each axis
+     * @param to coordinate to stop before along each axis
+     * @return cursor positioned before the first cell
+     */
+    public Cursor cells(int[] from, int[] to) {
+        if (from.length != lengths.length || to.length != lengths.length) {
+            throw new IllegalArgumentException("Expected " + lengths.length + " coordinates");
+        }
+        return new Cursor(from.clone(), to.clone());
+    }
+
+    /**
+     * Walks a range of cells, keeping track of both their coordinates and their data index as it goes
+     */
+    public class Cursor {
+        private final int[] from, to;
+        private final int[] coordinates;
+        private int index = -1;
+        private boolean started, done;
+
+        private Cursor(int[] from, int[] to) {
+            for (int dimension = 0; dimension < lengths.length; dimension ++) {
+                if (from[dimension] < 0 || to[dimension] > lengths[dimension] || from[dimension] > to[dimension]) {
+                    throw new ArrayIndexOutOfBoundsException(AXES[dimension] + " [" + from[dimension] + ", "
+                            + to[dimension] + ") not in [0, " + lengths[dimension] + ")");
+                }
+
+                if (from[dimension] == to[dimension]) {
+                    done = true;
+                }
+            }
+
+            this.from = from;
+            this.to = to;
+            this.coordinates = from.clone();
+        }
+
+        /**
+         * Moves to the next cell
+         * @return true if there was another cell, false if the range is finished
+         */
+        public boolean next() {
+            if (done) {
+                return false;
+            }
+
+            if (!started) {
+                started = true;
+                index = 0;
+                for (int dimension = 0; dimension < coordinates.length; dimension ++) {
+                    index += coordinates[dimension] * strides[dimension];
+                }
+                return true;
+            }
+
+            for (int dimension = 0; dimension < coordinates.length; dimension ++) {
+                if (++ coordinates[dimension] < to[dimension]) {
+                    index += strides[dimension];
+                    return true;
+                }
+
+                // Carry into the next axis
+                index -= (coordinates[dimension] - 1 - from[dimension]) * strides[dimension];
+                coordinates[dimension] = from[dimension];
+            }
+
+            done = true;
+            return false;
+        }
+
+        /**
+         * Gets the data index of the current cell
+         * @return data index
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        public int getX() {
+            return coordinates[0];
+        }
+
+        public int getY() {
+            return coordinates[1];
+        }
+
+        public int getCoordinate(Axis axis) {
+            return coordinates[axis.getIndex()];
+        }
+    }
+}
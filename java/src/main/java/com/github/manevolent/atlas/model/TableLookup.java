@@ -0,0 +1,284 @@
+package com.github.manevolent.atlas.model;
+
+import com.github.manevolent.atlas.arduino.Integration;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Evaluates a table at any point along its axes, the way an ECU looks one up: each axis finds the two breakpoints
+ * either side of its input, and the cells between them are blended (or, for floor and ceiling axes, one of them is
+ * picked). Inputs beyond either end of an axis are clamped to that end.
+ *
+ * A lookup works on a snapshot of the table's axes and data taken when it is created, so it is unaffected by later
+ * edits and never reads memory while evaluating. Take a new one to see changes. Axis breakpoints must ascend.
+ */
+public final class TableLookup {
+    private final float[][] anchors;
+    private final Integration[] integrations;
+    private final int[] strides;
+    private final float[] data;
+
+    /**
+     * Creates a lookup
+     * @param anchors breakpoints of each axis, X first
+     * @param integrations how to find a value between the breakpoints of each axis
+     * @param data cells, the first axis varying fastest
+     */
+    public TableLookup(float[][] anchors, Integration[] integrations, float[] data) {
+        if (anchors.length != integrations.length) {
+            throw new IllegalArgumentException("Expected an integration for each of " + anchors.length + " axes");
+        }
+
+        this.anchors = new float[anchors.length][];
+        this.integrations = integrations.clone();
+        this.strides = new int[anchors.length];
+
+        int size = 1;
+        for (int dimension = 0; dimension < anchors.length; dimension ++) {
+            float[] axis = anchors[dimension];
+            if (axis.length == 0) {
+                throw new IllegalArgumentException("Axis " + dimension + " has no breakpoints");
+            }
+
+            for (int i = 1; i < axis.length; i ++) {
+                if (!(axis[i] >= axis[i - 1])) {
+                    throw new IllegalArgumentException("Axis " + dimension + " breakpoints don't ascend at " + i);
+                }
+            }
+
+            this.anchors[dimension] = axis.clone();
+            this.strides[dimension] = size;
+            size *= axis.length;
+        }
+
+        if (data.length != size) {
+            throw new IllegalArgumentException("Expected " + size + " cells, got " + data.length);
+        }
+
+        this.data = data.clone();
+    }
+
+    /**
+     * Takes a snapshot of a table, interpolating linearly along every axis
+     * @param table table
+     * @param source memory to read the table from
+     * @return lookup
+     */
+    public static TableLookup of(Table table, MemorySource source) throws IOException {
+        Integration[] integrations = new Integration[Axis.values().length];
+        Arrays.fill(integrations, Integration.LINEAR);
+        return of(table, source, integrations);
+    }
+
+    /**
+     * Takes a snapshot of a table
+     * @param table table
+     * @param source memory to read the table from
+     * @param integrations how to find a value between breakpoints, for each axis in {@link Axis} order
+     * @return lookup
+     */
+    public static TableLookup of(Table table, MemorySource source, Integration... integrations) throws IOException {
+        TableLayout layout = table.getLayout();
+        float[][] anchors = new float[layout.getDimensions()][];
+        for (Axis axis : Axis.values()) {
+            // An axis the table doesn't have is a single breakpoint, which any input clamps to
+            anchors[axis.getIndex()] = layout.hasAxis(axis) ? layout.getSeries(axis).getAll(source) : new float[1];
+        }
+
+        return new TableLookup(anchors, integrations, table.getCells(source));
+    }
+
+    public int getDimensions() {
+        return anchors.length;
+    }
+
+    /**
+     * Finds the breakpoint at or below a value
+     * @param anchors ascending breakpoints
+     * @param value value
+     * @return index of the last breakpoint at or below the value, or 0 if there isn't one
+     */
+    static int search(float[] anchors, float value) {
+        // Halve the range without branching on the comparison, which an ECU's axis inputs make unpredictable
+        int base = 0;
+        int length = anchors.length;
+        while (length > 1) {
+            int half = length >>> 1;
+            base = anchors[base + half] <= value ? base + half : base;
+            length -= half;
+        }
+        return base;
+    }
+
+    /**
+     * Finds how far between a breakpoint and the next a value lies
+     * @return 0 at the breakpoint, up to 1 at the next one
+     */
+    private static float fraction(float[] anchors, int index, float value, Integration integration) {
+        if (index + 1 >= anchors.length) {
+            return 0f;
+        }
+
+        float low = anchors[index], high = anchors[index + 1];
+        return switch (integration) {
+            case LINEAR -> {
+                float t = high > low ? (value - low) / (high - low) : 0f;
+                yield Math.max(0f, Math.min(1f, t));
+            }
+            case FLOOR -> value >= high ? 1f : 0f;
+            case CEILING -> value > low ? 1f : 0f;
+        };
+    }
+
+    public int getLength(int dimension) {
+        return anchors[dimension].length;
+    }
+
+    /**
+     * Finds where an input falls along one axis
+     * @param dimension axis, X first
+     * @param value input
+     * @return index of the breakpoint at or below the input, clamped to the axis
+     */
+    public int getIndex(int dimension, float value) {
+        return search(anchors[dimension], value);
+    }
+
+    /**
+     * Finds how far an input lies between a breakpoint and the next, as it would be blended
+     * @param dimension axis, X first
+     * @param index breakpoint from {@link #getIndex(int, float)}
+     * @param value input
+     * @return 0 at the breakpoint, up to 1 at the next one
+     */
+    public float getFraction(int dimension, int index, float value) {
+        return fraction(anchors[dimension], index, value, integrations[dimension]);
+    }
+
+    /**
+     * Looks up the first axis alone, at the start of any others
+     * @param x X axis input
+     * @return value
+     */
+    public float get(float x) {
+        float[] xs = anchors[0];
+        int i = search(xs, x);
+        float tx = fraction(xs, i, x, integrations[0]);
+
+        float c0 = data[i];
+        if (tx == 0f) {
+            return c0;
+        }
+        return c0 + (data[i + 1] - c0) * tx;
+    }
+
+    /**
+     * Looks up the first two axes, at the start of any others
+     * @param x X axis input
+     * @param y Y axis input
+     * @return value
+     */
+    public float get(float x, float y) {
+        if (anchors.length < 2) {
+            return get(x);
+        }
+
+        float[] xs = anchors[0], ys = anchors[1];
+        int i = search(xs, x);
+        int j = search(ys, y);
+        float tx = fraction(xs, i, x, integrations[0]);
+        float ty = fraction(ys, j, y, integrations[1]);
+
+        int dx = i + 1 < xs.length ? 1 : 0;
+        int dy = j + 1 < ys.length ? strides[1] : 0;
+        int c = i + (j * strides[1]);
+
+        float c00 = data[c], c10 = data[c + dx];
+        float c01 = data[c + dy], c11 = data[c + dx + dy];
+        float top = c00 + (c10 - c00) * tx;
+        float bottom = c01 + (c11 - c01) * tx;
+        return top + (bottom - top) * ty;
+    }
+
+    /**
+     * Looks up any number of axes
+     * @param coordinates input for each axis, X first; axes left out are at their start
+     * @return value
+     */
+    public float get(float... coordinates) {
+        int dimensions = Math.min(coordinates.length, anchors.length);
+        int[] index = new int[dimensions];
+        float[] t = new float[dimensions];
+        int base = 0;
+        for (int dimension = 0; dimension < dimensions; dimension ++) {
+            index[dimension] = search(anchors[dimension], coordinates[dimension]);
+            t[dimension] = fraction(anchors[dimension], index[dimension], coordinates[dimension],
+                    integrations[dimension]);
+            base += index[dimension] * strides[dimension];
+        }
+
+        // Blend the 2^n corners around the point
+        float value = 0f;
+        for (int corner = 0; corner < (1 << dimensions); corner ++) {
+            float weight = 1f;
+            int offset = base;
+            for (int dimension = 0; dimension < dimensions && weight != 0f; dimension ++) {
+                if ((corner & (1 << dimension)) != 0) {
+                    weight *= t[dimension];
+                    offset += strides[dimension];
+                } else {
+                    weight *= 1f - t[dimension];
+                }
+            }
+
+            if (weight != 0f) {
+                value += data[offset] * weight;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Looks up the first axis for each of a series of inputs
+     * @param x X axis inputs
+     * @param results array to put the values in
+     * @param offs position of the first input, and its result
+     * @param len number of inputs
+     */
+    public void get(float[] x, float[] results, int offs, int len) {
+        for (int n = offs; n < offs + len; n ++) {
+            results[n] = get(x[n]);
+        }
+    }
+
+    /**
+     * Looks up the first two axes for each of a series of inputs, such as the columns of a datalog
+     * @param x X axis inputs
+     * @param y Y axis inputs
+     * @param results array to put the values in
+     * @param offs position of the first input, and its result
+     * @param len number of inputs
+     */
+    public void get(float[] x, float[] y, float[] results, int offs, int len) {
+        for (int n = offs; n < offs + len; n ++) {
+            results[n] = get(x[n], y[n]);
+        }
+    }
+
+    /**
+     * Looks up the first two axes for each of a series of inputs
+     * @param x X axis inputs
+     * @param y Y axis inputs
+     * @return values
+     */
+    public float[] get(float[] x, float[] y) {
+        if (x.length != y.length) {
+            throw new IllegalArgumentException("Input lengths differ: " + x.length + " != " + y.length);
+        }
+
+        float[] results = new float[x.length];
+        get(x, y, results, 0, x.length);
+        return results;
+    }
+}
@@ -0,0 +1,238 @@
+package com.github.manevolent.atlas.model.source;
+
+import com.github.manevolent.atlas.model.MemoryEncryption;
+import com.github.manevolent.atlas.model.MemorySource;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A plaintext view over an encrypted memory source.
+ *
+ * Decrypted data is cached in fixed-size pages, so repeated reads and writes to the same region only run the cipher
+ * once. Written pages are kept dirty in the cache and are only encrypted back into the underlying source when they
+ * are evicted (least-recently-used) or when flush() is called.
+ */
+public class DecryptedSource implements MemorySource {
+    public static final int DEFAULT_PAGE_SIZE = 0x1000;
+    public static final int DEFAULT_MAXIMUM_PAGES = 256;
+
+    private final MemorySource source;
+    private final MemoryEncryption encryption;
+    private final int pageSize;
+    private final int maximumPages;
+    private final LinkedHashMap<Long, Page> pages;
+    private int dirtyPages;
+
+    public DecryptedSource(MemorySource source, MemoryEncryption encryption, int pageSize, int maximumPages) {
+        if (pageSize <= 0 || pageSize % encryption.getBlockSize() != 0) {
+            throw new IllegalArgumentException("Page size " + pageSize + " is not a multiple of the block size "
+                    + encryption.getBlockSize());
+        } else if (maximumPages <= 0) {
+            throw new IllegalArgumentException("Invalid maximum page count: " + maximumPages);
+        }
+
+        this.source = source;
+        this.encryption = encryption;
+        this.pageSize = pageSize;
+        this.maximumPages = maximumPages;
+        this.pages = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    public DecryptedSource(MemorySource source, MemoryEncryption encryption) {
+        this(source, encryption, DEFAULT_PAGE_SIZE, DEFAULT_MAXIMUM_PAGES);
+    }
+
+    public MemorySource getSource() {
+        return source;
+    }
+
+    public MemoryEncryption getEncryption() {
+        return encryption;
+    }
+
+    @Override
+    public long getBaseAddress() {
+        return source.getBaseAddress();
+    }
+
+    @Override
+    public int getLength() {
+        return source.getLength();
+    }
+
+    @Override
+    public synchronized int read(byte[] dst, long memoryBase, int offs, int len) throws IOException {
+        checkBounds(memoryBase, len);
+
+        int position = 0;
+        while (position < len) {
+            long address = memoryBase + position;
+            Page page = getPage(address);
+            int pageOffset = (int) (address - page.address);
+            int n = Math.min(len - position, page.data.length - pageOffset);
+            if (n <= 0 || pageOffset < page.offset) {
+                // Partial cipher blocks at the edges of the source can't be decrypted
+                throw new ArrayIndexOutOfBoundsException(Long.toString(address));
+            }
+            System.arraycopy(page.data, pageOffset, dst, offs + position, n);
+            position += n;
+        }
+
+        return len;
+    }
+
+    @Override
+    public synchronized int read(long position) throws IOException {
+        checkBounds(position, 1);
+        byte[] data = new byte[1];
+        read(data, position, 0, 1);
+        return data[0] & 0xFF;
+    }
+
+    @Override
+    public synchronized void write(byte[] bytes, long memoryBase, int offs, int len) throws IOException {
+        checkBounds(memoryBase, len);
+
+        int position = 0;
+        while (position < len) {
+            long address = memoryBase + position;
+            Page page = getPage(address);
+            int pageOffset = (int) (address - page.address);
+            int n = Math.min(len - position, page.data.length - pageOffset);
+            if (n <= 0 || pageOffset < page.offset) {
+                // Partial cipher blocks at the edges of the source can't be decrypted
+                throw new ArrayIndexOutOfBoundsException(Long.toString(address));
+            }
+            System.arraycopy(bytes, offs + position, page.data, pageOffset, n);
+            if (!page.dirty) {
+                page.dirty = true;
+                dirtyPages ++;
+            }
+            position += n;
+        }
+
+        evict();
+    }
+
+    /**
+     * Encrypts and writes all dirty pages back into the underlying source.
+     */
+    public synchronized void flush() throws IOException {
+        if (dirtyPages == 0) {
+            return;
+        }
+
+        for (Page page : pages.values()) {
+            writeBack(page);
+        }
+    }
+
+    /**
+     * Drops all cached pages without writing them back.
+     */
+    public synchronized void invalidate() {
+        pages.clear();
+        dirtyPages = 0;
+    }
+
+    public synchronized boolean isDirty() {
+        return dirtyPages > 0;
+    }
+
+    public synchronized int getCachedPageCount() {
+        return pages.size();
+    }
+
+    private void checkBounds(long memoryBase, int len) {
+        long start = source.getBaseAddress();
+        long end = start + source.getLength();
+        if (memoryBase < start) {
+            throw new ArrayIndexOutOfBoundsException(Long.toString(memoryBase));
+        } else if (memoryBase + len > end) {
+            throw new ArrayIndexOutOfBoundsException(Long.toString(memoryBase + len));
+        }
+    }
+
+    private Page getPage(long address) throws IOException {
+        long pageAddress = Math.floorDiv(address, (long) pageSize) * pageSize;
+        Page page = pages.get(pageAddress);
+        if (page == null) {
+            page = load(pageAddress);
+            pages.put(pageAddress, page);
+            evict();
+        }
+        return page;
+    }
+
+    private Page load(long pageAddress) throws IOException {
+        int blockSize = encryption.getBlockSize();
+
+        // Pages at the edges of the source are clipped to the source, keeping block alignment for the cipher
+        long sourceStart = source.getBaseAddress();
+        long sourceEnd = sourceStart + source.getLength();
+        long start = Math.max(pageAddress, Math.floorDiv(sourceStart, (long) blockSize) * blockSize);
+        long end = Math.min(pageAddress + pageSize, sourceEnd);
+        if (start < sourceStart) {
+            start += blockSize;
+        }
+        end = start + (Math.max(0, end - start) / blockSize) * blockSize;
+
+        byte[] data = new byte[(int) (end - start)];
+        if (data.length > 0) {
+            int read = source.read(data, start, 0, data.length);
+            if (read != data.length) {
+                throw new IOException("Unexpected read size: " + read + " != " + data.length);
+            }
+            encryption.decrypt(data, 0, data.length);
+        }
+
+        if (start != pageAddress) {
+            // Shift so that page offsets line up with absolute addresses; the leading bytes are unreachable
+            byte[] aligned = new byte[(int) (end - pageAddress)];
+            System.arraycopy(data, 0, aligned, (int) (start - pageAddress), data.length);
+            return new Page(pageAddress, (int) (start - pageAddress), aligned);
+        }
+
+        return new Page(pageAddress, 0, data);
+    }
+
+    private void writeBack(Page page) throws IOException {
+        if (!page.dirty) {
+            return;
+        }
+
+        int len = page.data.length - page.offset;
+        byte[] cipherText = new byte[len];
+        System.arraycopy(page.data, page.offset, cipherText, 0, len);
+        encryption.encrypt(cipherText, 0, len);
+        source.write(cipherText, page.address + page.offset, 0, len);
+
+        page.dirty = false;
+        dirtyPages --;
+    }
+
+    private void evict() throws IOException {
+        Iterator<Map.Entry<Long, Page>> iterator = pages.entrySet().iterator();
+        while (pages.size() > maximumPages && iterator.hasNext()) {
+            Page eldest = iterator.next().getValue();
+            writeBack(eldest);
+            iterator.remove();
+        }
+    }
+
+    private static class Page {
+        private final long address;
+        private final int offset;
+        private final byte[] data;
+        private boolean dirty;
+
+        private Page(long address, int offset, byte[] data) {
+            this.address = address;
+            this.offset = offset;
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.github.manevolent.atlas.model.source;
+
+import com.github.manevolent.atlas.model.MemorySection;
+import com.github.manevolent.atlas.model.MemorySource;
+import net.lingala.zip4j.model.FileHeader;
+import net.lingala.zip4j.model.enums.CompressionMethod;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A memory source backed by a read-only memory-mapped region of a file, such as an uncompressed calibration
+ * stored in a project file. Nothing is read onto the heap until it is used.
+ *
+ * Edits are kept in a copy-on-write overlay of pages on the heap; the mapped file itself is never modified.
+ * The mapping is owned by a shared Arena so it can be released deterministically (see unmap()) before the
+ * file it came from is rewritten, which some platforms refuse to do while a mapping is open.
+ */
+public class MappedSource implements MemorySource {
+    private static final int PAGE_SIZE = 0x1000;
+    private static final int LOCAL_FILE_HEADER_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_FILE_HEADER_SIZE = 30;
+
+    private final long memoryBase;
+    private final int length;
+    private final Map<Integer, byte[]> overlay = new HashMap<>();
+    private File file;
+    private Arena arena;
+    private MemorySegment mapped;
+    private boolean dirty;
+
+    public MappedSource(long memoryBaseAddress, File file, Arena arena, MemorySegment mapped) {
+        if (mapped.byteSize() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Mapped region is too large: " + mapped.byteSize());
+        }
+
+        this.memoryBase = memoryBaseAddress;
+        this.length = (int) mapped.byteSize();
+        this.file = file;
+        this.arena = arena;
+        this.mapped = mapped;
+    }
+
+    /**
+     * Gets the file this source is mapped from.
+     * @return mapped file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    public synchronized boolean isMapped() {
+        return arena != null;
+    }
+
+    /**
+     * Releases the mapping. The source can't be read again until it is remapped.
+     */
+    public synchronized void unmap() {
+        if (arena != null) {
+            arena.close();
+            arena = null;
+            mapped = null;
+        }
+    }
+
+    /**
+     * Maps this source again, for example after the file it was mapped from has been rewritten. If this source isn't
+     * dirty, its edits are assumed to have been saved into the new mapping and the overlay is dropped.
+     * @param zipFile ZIP file containing the entry
+     * @param fileHeader entry to map
+     */
+    public synchronized void remap(File zipFile, FileHeader fileHeader) throws IOException {
+        if (fileHeader == null) {
+            throw new FileNotFoundException("Mapped entry no longer exists in " + zipFile);
+        } else if (fileHeader.getUncompressedSize() != length) {
+            throw new IOException("Mapped size changed: " + fileHeader.getUncompressedSize() + " != " + length);
+        }
+
+        Arena arena = Arena.ofShared();
+        try {
+            MemorySegment mapped = map(zipFile, fileHeader, arena);
+            unmap();
+            this.file = zipFile;
+            this.arena = arena;
+            this.mapped = mapped;
+        } catch (IOException | RuntimeException ex) {
+            arena.close();
+            throw ex;
+        }
+
+        if (!dirty) {
+            overlay.clear();
+        }
+    }
+
+    private MemorySegment mapped() {
+        if (mapped == null) {
+            throw new IllegalStateException(file + " is not mapped");
+        }
+        return mapped;
+    }
+
+    @Override
+    public long getBaseAddress() {
+        return memoryBase;
+    }
+
+    @Override
+    public int getLength() {
+        return length;
+    }
+
+    private void checkBounds(long memoryBase, int len) {
+        if (memoryBase < this.memoryBase) {
+            throw new ArrayIndexOutOfBoundsException(Long.toString(memoryBase));
+        } else if (memoryBase + len > this.memoryBase + this.length) {
+            throw new ArrayIndexOutOfBoundsException(Long.toString(memoryBase + len));
+        }
+    }
+
+    @Override
+    public synchronized int read(byte[] dst, long memoryBase, int offs, int len) throws IOException {
+        checkBounds(memoryBase, len);
+
+        int position = (int) (memoryBase - this.memoryBase);
+        int end = position + len;
+        while (position < end) {
+            int page = position / PAGE_SIZE;
+            int pageOffset = position % PAGE_SIZE;
+            int n = Math.min(end - position, PAGE_SIZE - pageOffset);
+
+            byte[] copy = overlay.get(page);
+            if (copy != null) {
+                System.arraycopy(copy, pageOffset, dst, offs, n);
+            } else {
+                MemorySegment.copy(mapped(), ValueLayout.JAVA_BYTE, position, dst, offs, n);
+            }
+
+            position += n;
+            offs += n;
+        }
+
+        return len;
+    }
+
+    @Override
+    public synchronized int read(long position) throws IOException {
+        if (position < memoryBase || position - memoryBase >= length) {
+            return -1;
+        }
+
+        int index = (int) (position - memoryBase);
+        byte[] copy = overlay.get(index / PAGE_SIZE);
+        if (copy != null) {
+            return copy[index % PAGE_SIZE] & 0xFF;
+        } else {
+            return mapped().get(ValueLayout.JAVA_BYTE, index) & 0xFF;
+        }
+    }
+
+    @Override
+    public synchronized void write(byte[] bytes, long memoryBase, int offs, int len) throws IOException {
+        checkBounds(memoryBase, len);
+
+        int position = (int) (memoryBase - this.memoryBase);
+        int end = position + len;
+        while (position < end) {
+            int page = position / PAGE_SIZE;
+            int pageOffset = position % PAGE_SIZE;
+            int n = Math.min(end - position, PAGE_SIZE - pageOffset);
+
+            byte[] copy = overlay.get(page);
+            if (copy == null) {
+                int pageStart = page * PAGE_SIZE;
+                copy = new byte[Math.min(PAGE_SIZE, length - pageStart)];
+                MemorySegment.copy(mapped(), ValueLayout.JAVA_BYTE, pageStart, copy, 0, copy.length);
+                overlay.put(page, copy);
+            }
+
+            System.arraycopy(bytes, offs, copy, pageOffset, n);
+
+            position += n;
+            offs += n;
+        }
+
+        if (len > 0) {
+            setDirty(true);
+        }
+    }
+
+    public synchronized void setDirty(boolean dirty) {
+        this.dirty = dirty;
+    }
+
+    public synchronized boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Checks if a ZIP entry can be mapped directly out of its file; only stored (uncompressed), unencrypted entries can.
+     * @param fileHeader ZIP entry to check
+     * @return true if the entry can be memory-mapped
+     */
+    public static boolean canMap(FileHeader fileHeader) {
+        return fileHeader != null
+                && fileHeader.getCompressionMethod() == CompressionMethod.STORE
+                && !fileHeader.isEncrypted()
+                && fileHeader.getUncompressedSize() <= Integer.MAX_VALUE;
+    }
+
+    /**
+     * Maps a stored (uncompressed) ZIP entry straight out of its ZIP file.
+     * @param zipFile ZIP file containing the entry
+     * @param fileHeader entry to map
+     * @param section memory section the entry's data belongs to
+     * @return mapped source
+     */
+    public static MappedSource fromZipEntry(File zipFile, FileHeader fileHeader, MemorySection section)
+            throws IOException {
+        Arena arena = Arena.ofShared();
+        try {
+            return new MappedSource(section.getBaseAddress(), zipFile, arena, map(zipFile, fileHeader, arena));
+        } catch (IOException | RuntimeException ex) {
+            arena.close();
+            throw ex;
+        }
+    }
+
+    private static MemorySegment map(File zipFile, FileHeader fileHeader, Arena arena) throws IOException {
+        if (!canMap(fileHeader)) {
+            throw new IllegalArgumentException(fileHeader.getFileName() + " is not a stored ZIP entry");
+        }
+
+        try (FileChannel channel = FileChannel.open(zipFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer localHeader = ByteBuffer.allocate(LOCAL_FILE_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            long headerOffset = fileHeader.getOffsetLocalHeader();
+            while (localHeader.hasRemaining()) {
+                if (channel.read(localHeader, headerOffset + localHeader.position()) < 0) {
+                    throw new IOException("Unexpected end of file reading " + fileHeader.getFileName());
+                }
+            }
+
+            if (localHeader.getInt(0) != LOCAL_FILE_HEADER_SIGNATURE) {
+                throw new IOException("Invalid local file header for " + fileHeader.getFileName());
+            }
+
+            int fileNameLength = localHeader.getShort(26) & 0xFFFF;
+            int extraFieldLength = localHeader.getShort(28) & 0xFFFF;
+            long dataOffset = headerOffset + LOCAL_FILE_HEADER_SIZE + fileNameLength + extraFieldLength;
+
+            return channel.map(FileChannel.MapMode.READ_ONLY, dataOffset, fileHeader.getUncompressedSize(), arena);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.github.manevolent.atlas.model.storage;
+
+import com.github.manevolent.atlas.model.MemorySection;
+import com.github.manevolent.atlas.model.Scale;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.AbstractConstruct;
+import org.yaml.snakeyaml.constructor.Constructor;
+import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.nodes.Node;
+import org.yaml.snakeyaml.nodes.ScalarNode;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.representer.Represent;
+import org.yaml.snakeyaml.representer.Representer;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * YAML for project entries that are stored separately from the project itself, such as tables and parameters.
+ *
+ * Scales and memory sections belonging to the project are written as references (!scale/!section and their UUID)
+ * rather than inline, so that each entry can be read and written on its own.
+ */
+final class EntryYaml {
+    private static final Tag SCALE_TAG = new Tag("!scale");
+    private static final Tag SECTION_TAG = new Tag("!section");
+
+    private EntryYaml() {
+
+    }
+
+    /**
+     * Creates a YAML instance to dump entries with.
+     * @param scales scales to write as references
+     * @param sections memory sections to write as references
+     * @return YAML instance
+     */
+    static Yaml dumper(Collection<Scale> scales, Collection<MemorySection> sections) {
+        DumperOptions options = new DumperOptions();
+        return new Yaml(new EntryRepresenter(options, scales, sections), options);
+    }
+
+    /**
+     * Creates a YAML instance to load entries with.
+     * @param loaderOptions loader options
+     * @param scales scales that references are resolved against, by UUID
+     * @param sections memory sections that references are resolved against, by UUID
+     * @return YAML instance
+     */
+    static Yaml loader(LoaderOptions loaderOptions, Map<UUID, Scale> scales, Map<UUID, MemorySection> sections) {
+        return new Yaml(new EntryConstructor(loaderOptions, scales, sections));
+    }
+
+    private static class EntryRepresenter extends Representer {
+        private final Set<Scale> scales = Collections.newSetFromMap(new IdentityHashMap<>());
+        private final Set<MemorySection> sections = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        private EntryRepresenter(DumperOptions options, Collection<Scale> scales, Collection<MemorySection> sections) {
+            super(options);
+
+            this.scales.addAll(scales);
+            this.sections.addAll(sections);
+
+            this.representers.put(Scale.class, new RepresentReference<>(SCALE_TAG, this.scales, Scale::getUuid));
+            this.representers.put(MemorySection.class,
+                    new RepresentReference<>(SECTION_TAG, this.sections, MemorySection::getUuid));
+
+            // Write maps in a stable order, so the same entry always serializes (and hashes) the same way
+            Represent representMap = this.multiRepresenters.get(Map.class);
+            this.multiRepresenters.put(Map.class, data -> representMap.representData(sorted((Map<?, ?>) data)));
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private static Map<?, ?> sorted(Map<?, ?> map) {
+            if (map instanceof SortedMap<?, ?> || !map.keySet().stream().allMatch(k -> k instanceof Comparable)) {
+                return map;
+            }
+
+            return new TreeMap(map);
+        }
+
+        private class RepresentReference<T> implements Represent {
+            private final Tag tag;
+            private final Set<T> known;
+            private final Function<T, UUID> uuid;
+
+            private RepresentReference(Tag tag, Set<T> known, Function<T, UUID> uuid) {
+                this.tag = tag;
+                this.known = known;
+                this.uuid = uuid;
+            }
+
+            @SuppressWarnings("unchecked")
+            @Override
+            public Node representData(Object data) {
+                T object = (T) data;
+                if (known.contains(object)) {
+                    return representScalar(tag, uuid.apply(object).toString());
+                } else {
+                    // Not part of the project; keep it inline as it would be in a single-file project
+                    return representJavaBean(getProperties(data.getClass()), data);
+                }
+            }
+        }
+    }
+
+    private static class EntryConstructor extends Constructor {
+        private EntryConstructor(LoaderOptions loaderOptions,
+                                 Map<UUID, Scale> scales, Map<UUID, MemorySection> sections) {
+            super(loaderOptions);
+
+            this.yamlConstructors.put(SCALE_TAG, new ConstructReference<>("scale", scales));
+            this.yamlConstructors.put(SECTION_TAG, new ConstructReference<>("section", sections));
+        }
+
+        private class ConstructReference<T> extends AbstractConstruct {
+            private final String name;
+            private final Map<UUID, T> known;
+
+            private ConstructReference(String name, Map<UUID, T> known) {
+                this.name = name;
+                this.known = known;
+            }
+
+            @Override
+            public Object construct(Node node) {
+                String uuid = constructScalar((ScalarNode) node);
+                T object = known.get(UUID.fromString(uuid));
+                if (object == null) {
+                    throw new YAMLException("Unknown " + name + " referenced: " + uuid);
+                }
+                return object;
+            }
+        }
+    }
+}
@@ -0,0 +1,372 @@
+package com.github.manevolent.atlas.model.storage;
+
+import com.github.manevolent.atlas.model.*;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * A compact binary snapshot of a project's scales, tables and parameters, which loads much faster than the YAML
+ * entries it mirrors.
+ *
+ * Scales and memory sections are written once and referenced by index, so objects shared in the project stay shared
+ * when the snapshot is read back. Memory sections that belong to the project are referenced by their index in the
+ * project; any others are written into the snapshot.
+ *
+ * A snapshot is tied to the manifest it was written with by the manifest's hash, and is only read when that manifest
+ * is unchanged.
+ */
+final class ProjectSnapshot {
+    private static final int MAGIC = 0x41544C53; // "ATLS"
+    private static final int VERSION = 1;
+
+    private static final int NULL_REFERENCE = -1;
+
+    private ProjectSnapshot() {
+
+    }
+
+    /**
+     * Writes a snapshot of a project.
+     * @param project project to write
+     * @param manifestHash hash of the manifest the snapshot belongs to
+     * @param outputStream stream to write to
+     */
+    static void write(Project project, byte[] manifestHash, OutputStream outputStream) throws IOException {
+        Writer writer = new Writer(project, new DataOutputStream(new BufferedOutputStream(outputStream)));
+        writer.write(manifestHash);
+        writer.out.flush();
+    }
+
+    /**
+     * Reads a snapshot into a project that has been loaded from its manifest, adding its scales, tables and
+     * parameters.
+     * @param project project to read into
+     * @param manifestHash hash of the manifest the project was loaded from
+     * @param inputStream stream to read from
+     * @return true if the snapshot was read, false if it belongs to a different manifest or format version
+     */
+    static boolean read(Project project, byte[] manifestHash, InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream));
+        if (in.readInt() != MAGIC || in.readUnsignedShort() != VERSION) {
+            return false;
+        }
+
+        byte[] hash = new byte[in.readUnsignedByte()];
+        in.readFully(hash);
+        if (!Arrays.equals(hash, manifestHash)) {
+            return false;
+        }
+
+        new Reader(project, in).read();
+        return true;
+    }
+
+    private static class Writer {
+        private final Project project;
+        private final DataOutputStream out;
+        private final Map<MemorySection, Integer> sections = new IdentityHashMap<>();
+        private final Map<Scale, Integer> scales = new IdentityHashMap<>();
+
+        private Writer(Project project, DataOutputStream out) {
+            this.project = project;
+            this.out = out;
+        }
+
+        private void write(byte[] manifestHash) throws IOException {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeByte(manifestHash.length);
+            out.write(manifestHash);
+
+            // Collect everything referenced by index, starting with the project's own sections and scales
+            List<MemorySection> projectSections = project.getSections();
+            projectSections.forEach(section -> sections.putIfAbsent(section, sections.size()));
+            List<MemorySection> otherSections = new ArrayList<>();
+
+            List<Scale> allScales = new ArrayList<>(project.getScales());
+            allScales.forEach(scale -> scales.putIfAbsent(scale, scales.size()));
+            int projectScales = allScales.size();
+
+            for (Table table : project.getTables()) {
+                collect(table.getData(), otherSections, allScales);
+                for (Series series : table.getAxes().values()) {
+                    collect(series, otherSections, allScales);
+                }
+            }
+            for (MemoryParameter parameter : project.getParameters()) {
+                collect(parameter.getAddress(), otherSections);
+                collect(parameter.getScale(), allScales);
+            }
+
+            out.writeInt(projectSections.size());
+            out.writeInt(otherSections.size());
+            for (MemorySection section : otherSections) {
+                writeSection(section);
+            }
+
+            out.writeInt(allScales.size());
+            for (int i = 0; i < allScales.size(); i ++) {
+                out.writeBoolean(i < projectScales);
+                writeScale(allScales.get(i));
+            }
+
+            out.writeInt(project.getTables().size());
+            for (Table table : project.getTables()) {
+                writeString(table.getName());
+                writeSeries(table.getData());
+                out.writeByte(table.getAxes().size());
+                for (Map.Entry<Axis, Series> axis : new TreeMap<>(table.getAxes()).entrySet()) {
+                    out.writeByte(axis.getKey().ordinal());
+                    writeSeries(axis.getValue());
+                }
+            }
+
+            out.writeInt(project.getParameters().size());
+            for (MemoryParameter parameter : project.getParameters()) {
+                writeString(parameter.getName());
+                writeAddress(parameter.getAddress());
+                writeReference(scales, parameter.getScale());
+                writeColor(parameter.getColor());
+            }
+        }
+
+        private void collect(Series series, List<MemorySection> otherSections, List<Scale> allScales) {
+            if (series != null) {
+                collect(series.getAddress(), otherSections);
+                collect(series.getScale(), allScales);
+            }
+        }
+
+        private void collect(MemoryAddress address, List<MemorySection> otherSections) {
+            if (address != null && address.getSection() != null
+                    && sections.putIfAbsent(address.getSection(), sections.size()) == null) {
+                otherSections.add(address.getSection());
+            }
+        }
+
+        private void collect(Scale scale, List<Scale> allScales) {
+            if (scale != null && scales.putIfAbsent(scale, scales.size()) == null) {
+                allScales.add(scale);
+            }
+        }
+
+        private void writeSection(MemorySection section) throws IOException {
+            writeUuid(section.getUuid());
+            writeString(section.getName());
+            writeEnum(section.getMemoryType());
+            writeEnum(section.getEncryptionType());
+            writeEnum(section.getByteOrder());
+            out.writeLong(section.getBaseAddress());
+            out.writeInt(section.getDataLength());
+        }
+
+        private void writeScale(Scale scale) throws IOException {
+            writeUuid(scale.getUuid());
+            writeString(scale.getName());
+            writeEnum(scale.getUnit());
+            writeEnum(scale.getFormat());
+            List<ScalingOperation> operations = scale.getOperations();
+            out.writeInt(operations.size());
+            for (ScalingOperation operation : operations) {
+                writeEnum(operation.getOperation());
+                out.writeFloat(operation.getCoefficient());
+            }
+        }
+
+        private void writeSeries(Series series) throws IOException {
+            out.writeBoolean(series != null);
+            if (series != null) {
+                writeString(series.getName());
+                out.writeInt(series.getLength());
+                writeAddress(series.getAddress());
+                writeReference(scales, series.getScale());
+            }
+        }
+
+        private void writeAddress(MemoryAddress address) throws IOException {
+            out.writeBoolean(address != null);
+            if (address != null) {
+                writeReference(sections, address.getSection());
+                out.writeLong(address.getOffset());
+            }
+        }
+
+        private void writeColor(Color color) throws IOException {
+            out.writeBoolean(color != null);
+            if (color != null) {
+                out.writeInt(color.getRed());
+                out.writeInt(color.getGreen());
+                out.writeInt(color.getBlue());
+            }
+        }
+
+        private <T> void writeReference(Map<T, Integer> references, T object) throws IOException {
+            out.writeInt(object == null ? NULL_REFERENCE : references.get(object));
+        }
+
+        private void writeUuid(UUID uuid) throws IOException {
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        }
+
+        private void writeEnum(Enum<?> value) throws IOException {
+            writeString(value == null ? null : value.name());
+        }
+
+        private void writeString(String value) throws IOException {
+            out.writeBoolean(value != null);
+            if (value != null) {
+                out.writeUTF(value);
+            }
+        }
+    }
+
+    private static class Reader {
+        private final Project project;
+        private final DataInputStream in;
+        private final List<MemorySection> sections = new ArrayList<>();
+        private final List<Scale> scales = new ArrayList<>();
+
+        private Reader(Project project, DataInputStream in) {
+            this.project = project;
+            this.in = in;
+        }
+
+        private void read() throws IOException {
+            int projectSections = in.readInt();
+            if (projectSections != project.getSections().size()) {
+                throw new IOException("Unexpected section count: " + projectSections + " != "
+                        + project.getSections().size());
+            }
+            sections.addAll(project.getSections());
+
+            int otherSections = in.readInt();
+            for (int i = 0; i < otherSections; i ++) {
+                sections.add(readSection());
+            }
+
+            int scaleCount = in.readInt();
+            for (int i = 0; i < scaleCount; i ++) {
+                boolean projectScale = in.readBoolean();
+                Scale scale = readScale();
+                scales.add(scale);
+                if (projectScale) {
+                    project.getScales().add(scale);
+                }
+            }
+
+            int tableCount = in.readInt();
+            for (int i = 0; i < tableCount; i ++) {
+                Table table = new Table(readString());
+                table.setData(readSeries());
+
+                Map<Axis, Series> axes = new LinkedHashMap<>();
+                int axisCount = in.readUnsignedByte();
+                for (int j = 0; j < axisCount; j ++) {
+                    axes.put(Axis.values()[in.readUnsignedByte()], readSeries());
+                }
+                table.setAxes(axes);
+
+                project.getTables().add(table);
+            }
+
+            int parameterCount = in.readInt();
+            for (int i = 0; i < parameterCount; i ++) {
+                MemoryParameter parameter = new MemoryParameter();
+                parameter.setName(readString());
+                parameter.setAddress(readAddress());
+                parameter.setScale(readReference(scales));
+                parameter.setColor(readColor());
+                project.getParameters().add(parameter);
+            }
+        }
+
+        private MemorySection readSection() throws IOException {
+            MemorySection section = new MemorySection();
+            section.setUuid(readUuid());
+            section.setName(readString());
+            section.setMemoryType(readEnum(MemoryType.class));
+            section.setEncryptionType(readEnum(MemoryEncryptionType.class));
+            section.setByteOrder(readEnum(MemoryByteOrder.class));
+            section.setBaseAddress(in.readLong());
+            section.setDataLength(in.readInt());
+            return section;
+        }
+
+        private Scale readScale() throws IOException {
+            Scale scale = new Scale();
+            scale.setUuid(readUuid());
+            scale.setName(readString());
+            scale.setUnit(readEnum(Unit.class));
+            scale.setFormat(readEnum(DataFormat.class));
+
+            int operationCount = in.readInt();
+            List<ScalingOperation> operations = new ArrayList<>(operationCount);
+            for (int i = 0; i < operationCount; i ++) {
+                ScalingOperation operation = new ScalingOperation();
+                operation.setOperation(readEnum(ArithmeticOperation.class));
+                operation.setCoefficient(in.readFloat());
+                operations.add(operation);
+            }
+            scale.setOperations(operations);
+
+            return scale;
+        }
+
+        private Series readSeries() throws IOException {
+            if (!in.readBoolean()) {
+                return null;
+            }
+
+            Series series = new Series();
+            series.setName(readString());
+            series.setLength(in.readInt());
+            series.setAddress(readAddress());
+            series.setScale(readReference(scales));
+            return series;
+        }
+
+        private MemoryAddress readAddress() throws IOException {
+            if (!in.readBoolean()) {
+                return null;
+            }
+
+            MemoryAddress address = new MemoryAddress();
+            address.setSection(readReference(sections));
+            address.setOffset(in.readLong());
+            return address;
+        }
+
+        private Color readColor() throws IOException {
+            if (!in.readBoolean()) {
+                return null;
+            }
+
+            return new Color(in.readInt(), in.readInt(), in.readInt());
+        }
+
+        private <T> T readReference(List<T> references) throws IOException {
+            int index = in.readInt();
+            if (index == NULL_REFERENCE) {
+                return null;
+            } else if (index < 0 || index >= references.size()) {
+                throw new IOException("Invalid reference: " + index);
+            }
+            return references.get(index);
+        }
+
+        private UUID readUuid() throws IOException {
+            return new UUID(in.readLong(), in.readLong());
+        }
+
+        private <E extends Enum<E>> E readEnum(Class<E> type) throws IOException {
+            String name = readString();
+            return name == null ? null : Enum.valueOf(type, name);
+        }
+
+        private String readString() throws IOException {
+            return in.readBoolean() ? in.readUTF() : null;
+        }
+    }
+}
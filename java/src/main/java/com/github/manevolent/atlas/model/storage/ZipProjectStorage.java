@@ -4,25 +4,47 @@ import com.github.manevolent.atlas.connection.ConnectionType;
 import com.github.manevolent.atlas.logging.Log;
 import com.github.manevolent.atlas.model.*;
 import com.github.manevolent.atlas.model.source.LazySource;
+import com.github.manevolent.atlas.model.source.MappedSource;
 import com.github.manevolent.atlas.model.uds.SecurityAccessProperty;
 import com.github.manevolent.atlas.ui.behavior.ProgressListener;
-import com.google.common.io.CharSource;
+import com.google.common.hash.Hashing;
 import net.lingala.zip4j.ZipFile;
+import net.lingala.zip4j.io.outputstream.ZipOutputStream;
 import net.lingala.zip4j.model.FileHeader;
 import net.lingala.zip4j.model.ZipHeader;
 import net.lingala.zip4j.model.ZipParameters;
+import net.lingala.zip4j.model.enums.CompressionMethod;
 import org.yaml.snakeyaml.LoaderOptions;
 import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.inspector.TagInspector;
 
 import java.io.*;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 import java.util.logging.Level;
 
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+/**
+ * Stores projects in a ZIP file.
+ *
+ * Projects are split into one entry per scale, table and parameter, each named after a hash of its content, plus a
+ * manifest listing the entries that make up the project. Saving appends only the entries that changed and a new
+ * manifest to the end of the file, leaving the rest of the file untouched. Entries that are no longer referenced are
+ * dropped when the file is eventually rewritten (compacted) in full.
+ *
+ * When the file is rewritten, a binary snapshot of the project (see ProjectSnapshot) is written with the manifest, and
+ * is read instead of the YAML entries for as long as that manifest is current. Appending saves leave the snapshot
+ * alone, so until the next compaction the project is loaded from its YAML entries, which remain the interchange
+ * format.
+ *
+ * Older single-file projects (project.yaml) can still be loaded, and are converted on their next save.
+ */
 public class ZipProjectStorage implements ProjectStorage {
     private static final Set<String> acceptableClassNames = Collections.unmodifiableSet(Stream.of(
             Project.class, Scale.class, ScalingOperation.class,
@@ -34,15 +56,60 @@ public class ZipProjectStorage implements ProjectStorage {
             Calibration.class, UUID.class
     ).map(Class::getName).collect(Collectors.toSet()));
 
+    private static final String LEGACY_PROJECT_FILE = "project.yaml";
+    private static final String MANIFEST_DIRECTORY = "manifest/";
+    private static final String SNAPSHOT_DIRECTORY = "snapshot/";
+    private static final String SCALE_DIRECTORY = "scales/";
+    private static final String TABLE_DIRECTORY = "tables/";
+    private static final String PARAMETER_DIRECTORY = "parameters/";
+    private static final String CALIBRATION_EXTENSION = ".bin";
+    private static final String YAML_EXTENSION = ".yaml";
+    private static final String SNAPSHOT_EXTENSION = ".bin";
+
+    private static final int MANIFEST_VERSION = 1;
+
+    /**
+     * The most entries a save will append to an existing file. zip4j rewrites the central directory on every append,
+     * so past this point it's cheaper to rewrite the whole file.
+     */
+    private static final int MAXIMUM_APPENDED_ENTRIES = 64;
+
+    /**
+     * Unreferenced data allowed in a file before it is compacted.
+     */
+    private static final long MINIMUM_COMPACTION_BYTES = 256 * 1024;
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
     private final ProgressListener listener;
+    private final boolean readSnapshots;
 
-    public ZipProjectStorage(ProgressListener listener) {
+    public ZipProjectStorage(ProgressListener listener, boolean readSnapshots) {
         this.listener = listener;
+        this.readSnapshots = readSnapshots;
+    }
+
+    public ZipProjectStorage(ProgressListener listener) {
+        this(listener, true);
+    }
+
+    private static LoaderOptions createLoaderOptions() {
+        TagInspector taginspector = tag -> acceptableClassNames.contains(tag.getClassName());
+
+        LoaderOptions loaderOptions = new LoaderOptions();
+        loaderOptions.setMaxAliasesForCollections(1024);
+        loaderOptions.setNestingDepthLimit(1024);
+        loaderOptions.setTagInspector(taginspector);
+        return loaderOptions;
     }
 
     @Override
     public Project load(File file) throws IOException {
-        String yamlString = null;
+        FileHeader legacyHeader = null;
+        FileHeader manifestHeader = null;
+        long manifestGeneration = -1;
+        FileHeader snapshotHeader = null;
+        long snapshotGeneration = -1;
         Map<UUID, FileHeader> sections = new HashMap<>();
 
         try (ZipFile zipFile = new ZipFile(file);) {
@@ -53,10 +120,24 @@ public class ZipProjectStorage implements ProjectStorage {
 
                String fileName = fileHeader.getFileName();
 
-               if (fileName.equals("project.yaml")) {
-                    yamlString = new String(zipFile.getInputStream(fileHeader).readAllBytes(),
-                            StandardCharsets.UTF_16);
-                } else if (fileName.endsWith(".bin")) {
+               if (fileName.equals(LEGACY_PROJECT_FILE)) {
+                   legacyHeader = fileHeader;
+               } else if (fileName.startsWith(MANIFEST_DIRECTORY)) {
+                   long generation = getGeneration(fileName);
+                   if (generation > manifestGeneration) {
+                       manifestGeneration = generation;
+                       manifestHeader = fileHeader;
+                   }
+               } else if (fileName.startsWith(SNAPSHOT_DIRECTORY)) {
+                   long generation = getGeneration(fileName);
+                   if (generation > snapshotGeneration) {
+                       snapshotGeneration = generation;
+                       snapshotHeader = fileHeader;
+                   }
+               } else if (fileName.startsWith(SCALE_DIRECTORY) || fileName.startsWith(TABLE_DIRECTORY)
+                       || fileName.startsWith(PARAMETER_DIRECTORY)) {
+                   // Read through the manifest
+               } else if (fileName.endsWith(CALIBRATION_EXTENSION)) {
                     String uuidString = fileName.replaceFirst("\\.bin$", "");
 
                     try {
@@ -70,14 +151,15 @@ public class ZipProjectStorage implements ProjectStorage {
                 }
             }
 
-            TagInspector taginspector = tag -> acceptableClassNames.contains(tag.getClassName());
-
-            LoaderOptions loaderOptions = new LoaderOptions();
-            loaderOptions.setMaxAliasesForCollections(1024);
-            loaderOptions.setNestingDepthLimit(1024);
-            loaderOptions.setTagInspector(taginspector);
-            Yaml yaml = new Yaml(loaderOptions);
-            Project project = yaml.load(yamlString);
+            LoaderOptions loaderOptions = createLoaderOptions();
+            Project project;
+            if (manifestHeader != null) {
+                project = loadManifest(zipFile, manifestHeader, snapshotHeader, loaderOptions);
+            } else if (legacyHeader != null) {
+                project = loadYaml(new Yaml(loaderOptions), zipFile, legacyHeader, StandardCharsets.UTF_16);
+            } else {
+                throw new FileNotFoundException("No project found in " + file);
+            }
 
             if (project.getCalibrations() == null) {
                 project.setCalibrations(new ArrayList<>());
@@ -90,7 +172,12 @@ public class ZipProjectStorage implements ProjectStorage {
                 }
 
                 FileHeader sectionEntry = sections.get(calibration.getUuid());
-                calibration.updateSource(LazySource.fromZipEntry(file, sectionEntry, section));
+                if (MappedSource.canMap(sectionEntry)) {
+                    // Stored calibrations are mapped straight out of the project file
+                    calibration.updateSource(MappedSource.fromZipEntry(file, sectionEntry, section));
+                } else {
+                    calibration.updateSource(LazySource.fromZipEntry(file, sectionEntry, section));
+                }
             }
 
             project.getSections().forEach(x -> x.setup(project));
@@ -99,44 +186,455 @@ public class ZipProjectStorage implements ProjectStorage {
         }
     }
 
+    private Project loadManifest(ZipFile zipFile, FileHeader manifestHeader, FileHeader snapshotHeader,
+                                 LoaderOptions loaderOptions) throws IOException {
+        Yaml yaml = new Yaml(loaderOptions);
+        byte[] manifestData;
+        try (InputStream inputStream = zipFile.getInputStream(manifestHeader)) {
+            manifestData = inputStream.readAllBytes();
+        }
+        Map<String, Object> manifest = yaml.load(new InputStreamReader(new ByteArrayInputStream(manifestData),
+                StandardCharsets.UTF_8));
+
+        Object version = manifest.get("version");
+        if (!(version instanceof Integer) || (Integer) version > MANIFEST_VERSION) {
+            throw new IOException("Unsupported project version: " + version);
+        }
+
+        Project project = (Project) manifest.get("project");
+        project.setScales(new LinkedHashSet<>());
+        project.setTables(new ArrayList<>());
+        project.setParameters(new LinkedHashSet<>());
+        if (project.getSections() == null) {
+            project.setSections(new ArrayList<>());
+        }
+
+        if (readSnapshots && snapshotHeader != null) {
+            listener.updateProgress("Loading snapshot...", 0f);
+            if (loadSnapshot(zipFile, snapshotHeader, hash(manifestData), project)) {
+                return project;
+            }
+        }
+
+        Map<UUID, MemorySection> sections = new HashMap<>();
+        project.getSections().forEach(section -> sections.put(section.getUuid(), section));
+
+        List<String> scaleEntries = getEntryNames(manifest, "scales", SCALE_DIRECTORY);
+        List<String> tableEntries = getEntryNames(manifest, "tables", TABLE_DIRECTORY);
+        List<String> parameterEntries = getEntryNames(manifest, "parameters", PARAMETER_DIRECTORY);
+        float total = Math.max(1, scaleEntries.size() + tableEntries.size() + parameterEntries.size());
+        int loaded = 0;
+
+        Map<UUID, Scale> scales = new HashMap<>();
+        for (String entry : scaleEntries) {
+            Scale scale = loadYaml(yaml, zipFile, getEntry(zipFile, entry), StandardCharsets.UTF_8);
+            project.getScales().add(scale);
+            scales.put(scale.getUuid(), scale);
+            listener.updateProgress("Loading scales...", ++loaded / total);
+        }
+
+        Yaml entryYaml = EntryYaml.loader(loaderOptions, scales, sections);
+
+        for (String entry : tableEntries) {
+            Table table = loadYaml(entryYaml, zipFile, getEntry(zipFile, entry), StandardCharsets.UTF_8);
+            project.getTables().add(table);
+            listener.updateProgress("Loading tables...", ++loaded / total);
+        }
+
+        for (String entry : parameterEntries) {
+            MemoryParameter parameter = loadYaml(entryYaml, zipFile, getEntry(zipFile, entry),
+                    StandardCharsets.UTF_8);
+            project.getParameters().add(parameter);
+            listener.updateProgress("Loading parameters...", ++loaded / total);
+        }
+
+        return project;
+    }
+
+    private static boolean loadSnapshot(ZipFile zipFile, FileHeader snapshotHeader, byte[] manifestHash,
+                                        Project project) {
+        try (InputStream inputStream = zipFile.getInputStream(snapshotHeader)) {
+            if (ProjectSnapshot.read(project, manifestHash, inputStream)) {
+                return true;
+            }
+
+            // Expected after a save that appended to the file
+            Log.ui().log(Level.FINE, "Project snapshot \"" + snapshotHeader.getFileName()
+                    + "\" is out of date; loading project entries instead");
+        } catch (IOException | RuntimeException ex) {
+            Log.ui().log(Level.WARNING, "Problem reading project snapshot \"" + snapshotHeader.getFileName()
+                    + "\"; loading project entries instead", ex);
+        }
+
+        // Discard anything read before the snapshot was rejected
+        project.getScales().clear();
+        project.getTables().clear();
+        project.getParameters().clear();
+        return false;
+    }
+
+    private static byte[] hash(byte[] data) {
+        return Hashing.sha256().hashBytes(data).asBytes();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> getEntryNames(Map<String, Object> manifest, String key, String directory) {
+        Object hashes = manifest.get(key);
+        if (hashes == null) {
+            return Collections.emptyList();
+        }
+        return ((List<String>) hashes).stream().map(hash -> getEntryName(directory, hash)).toList();
+    }
+
+    private static String getEntryName(String directory, String hash) {
+        return directory + hash + YAML_EXTENSION;
+    }
+
+    private static FileHeader getEntry(ZipFile zipFile, String name) throws IOException {
+        FileHeader header = zipFile.getFileHeader(name);
+        if (header == null) {
+            throw new FileNotFoundException("Missing project entry \"" + name + "\"");
+        }
+        return header;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T loadYaml(Yaml yaml, ZipFile zipFile, FileHeader header, Charset charset)
+            throws IOException {
+        try (Reader reader = new BufferedReader(new InputStreamReader(zipFile.getInputStream(header), charset))) {
+            return (T) yaml.load(reader);
+        }
+    }
+
+    /**
+     * Gets the generation of a manifest or snapshot from its file name, e.g. "manifest/12.yaml".
+     */
+    private static long getGeneration(String fileName) {
+        String generation = fileName.substring(fileName.indexOf('/') + 1).replaceFirst("\\.[a-z]+$", "");
+        try {
+            return Long.parseLong(generation);
+        } catch (NumberFormatException ex) {
+            Log.ui().log(Level.WARNING, "Unknown project file in ZIP: \"" + fileName + "\"");
+            return -1;
+        }
+    }
+
     @Override
     public void save(Project project, File file) throws IOException {
+        // Serialize each scale, table and parameter on its own; their entry names are derived from their content
+        Map<String, byte[]> entries = new LinkedHashMap<>();
         Yaml yaml = new Yaml();
-        String yamlString = yaml.dump(project);
+        Yaml entryYaml = EntryYaml.dumper(project.getScales(), project.getSections());
+        List<String> scaleHashes = addEntries(entries, SCALE_DIRECTORY, yaml, project.getScales());
+        List<String> tableHashes = addEntries(entries, TABLE_DIRECTORY, entryYaml, project.getTables());
+        List<String> parameterHashes = addEntries(entries, PARAMETER_DIRECTORY, entryYaml,
+                project.getParameters());
+
+        Map<String, FileHeader> existing = new HashMap<>();
+        long generation = -1;
+        if (file.exists()) {
+            try (ZipFile zipFile = new ZipFile(file)) {
+                for (FileHeader header : zipFile.getFileHeaders()) {
+                    existing.put(header.getFileName(), header);
+                    if (header.getFileName().startsWith(MANIFEST_DIRECTORY)) {
+                        generation = Math.max(generation, getGeneration(header.getFileName()));
+                    }
+                }
+            }
+        }
+
+        // Older single-file projects are always rewritten
+        boolean compact = existing.keySet().stream().noneMatch(name -> name.startsWith(MANIFEST_DIRECTORY));
+
+        Map<String, Calibration> calibrations = new LinkedHashMap<>();
+        Map<String, MappedSource> mappedSources = new LinkedHashMap<>();
+        Set<String> appended = new LinkedHashSet<>();
+        for (Calibration calibration : project.getCalibrations()) {
+            if (!calibration.hasData()) {
+                continue;
+            }
+
+            // Write back any decrypted changes still held in the calibration's cache
+            calibration.flush();
+
+            String fileName = calibration.getUuid().toString() + CALIBRATION_EXTENSION;
+            calibrations.put(fileName, calibration);
+
+            MemorySource source = calibration.getSource();
+            if (source instanceof MappedSource mappedSource && isSameFile(mappedSource.getFile(), file)) {
+                mappedSources.put(fileName, mappedSource);
+            }
+
+            FileHeader existingFile = existing.get(fileName);
+            if (existingFile == null) {
+                appended.add(fileName);
+            } else if (isDirty(source) || !MappedSource.canMap(existingFile)) {
+                // Entries can't be replaced in place; changed calibrations mean rewriting the file
+                compact = true;
+            }
+        }
+
+        entries.keySet().stream().filter(name -> !existing.containsKey(name)).forEach(appended::add);
+        if (appended.size() > MAXIMUM_APPENDED_ENTRIES) {
+            compact = true;
+        }
+
+        // Compact once enough of the file is no longer referenced
+        Set<String> live = new HashSet<>(entries.keySet());
+        live.addAll(calibrations.keySet());
+        long liveBytes = 0, garbageBytes = 0;
+        int garbageEntries = 0;
+        for (FileHeader header : existing.values()) {
+            if (live.contains(header.getFileName())) {
+                liveBytes += header.getCompressedSize();
+            } else {
+                garbageBytes += header.getCompressedSize();
+                garbageEntries ++;
+            }
+        }
+        if (garbageBytes > Math.max(MINIMUM_COMPACTION_BYTES, liveBytes) || garbageEntries > live.size()) {
+            compact = true;
+        }
+
+        Map<String, Object> manifest = new LinkedHashMap<>();
+        manifest.put("version", MANIFEST_VERSION);
+        manifest.put("generation", generation + 1);
+        manifest.put("project", createManifestProject(project));
+        manifest.put("scales", scaleHashes);
+        manifest.put("tables", tableHashes);
+        manifest.put("parameters", parameterHashes);
+        String manifestName = MANIFEST_DIRECTORY + (generation + 1) + YAML_EXTENSION;
+        byte[] manifestData = yaml.dump(manifest).getBytes(StandardCharsets.UTF_8);
+        String snapshotName = SNAPSHOT_DIRECTORY + (generation + 1) + SNAPSHOT_EXTENSION;
+
+        try {
+            if (compact) {
+                rewrite(file, project, entries, calibrations, snapshotName, manifestName, manifestData,
+                        mappedSources);
+            } else {
+                append(file, entries, calibrations, appended, manifestName, manifestData, mappedSources);
+            }
+
+            project.getCalibrations().stream()
+                    .map(Calibration::getSource)
+                    .forEach(source -> {
+                        if (source instanceof LazySource lazySource) {
+                            lazySource.setDirty(false);
+                        } else if (source instanceof MappedSource mappedSource) {
+                            mappedSource.setDirty(false);
+                        }
+                    });
+
+            // Calibrations still held on the heap are pointed at the entries just written, so the next save can tell
+            // whether they have changed
+            attach(file, calibrations);
+        } finally {
+            remap(file, mappedSources);
+        }
+    }
+
+    /**
+     * Appends new entries and a new manifest to the end of an existing project file.
+     */
+    private void append(File file, Map<String, byte[]> entries, Map<String, Calibration> calibrations,
+                        Set<String> appended, String manifestName, byte[] manifestData,
+                        Map<String, MappedSource> mappedSources) throws IOException {
+        // New calibrations are read up front, in case they share a source mapped from this file
+        Map<String, byte[]> calibrationData = new LinkedHashMap<>();
+        for (String name : appended) {
+            Calibration calibration = calibrations.get(name);
+            if (calibration != null) {
+                calibrationData.put(name, calibration.getSource().readFully());
+            }
+        }
+
+        // Release mappings of this file while it is modified
+        mappedSources.values().forEach(MappedSource::unmap);
 
         try (ZipFile zipFile = new ZipFile(file)) {
-            // Save calibrations
-            for (Calibration calibration : project.getCalibrations()) {
-                if (!calibration.hasData()) {
-                    continue;
+            int written = 0;
+            for (String name : appended) {
+                byte[] data = entries.get(name);
+                if (data != null) {
+                    zipFile.addStream(new ByteArrayInputStream(data), createParameters(name));
+                } else {
+                    data = calibrationData.get(name);
+                    zipFile.addStream(new ByteArrayInputStream(data), createStoredParameters(name, data.length));
                 }
 
-                String fileName = calibration.getUuid().toString() + ".bin";
-                FileHeader existingFile = zipFile.getFileHeader(fileName);
+                listener.updateProgress("Saving project...", ++written / (float) (appended.size() + 1));
+            }
 
-                MemorySource source = calibration.getSource();
-                if (source instanceof LazySource lazySource && !lazySource.isDirty() && existingFile != null) {
-                    // Don't modify the existing calibration data; it isn't dirty
-                    continue;
+            // The manifest goes last, so the previous one stays current if saving fails part-way through
+            zipFile.addStream(new ByteArrayInputStream(manifestData), createParameters(manifestName));
+        }
+    }
+
+    /**
+     * Writes the whole project and a snapshot of it to a new file, which then replaces the existing project file.
+     */
+    private void rewrite(File file, Project project, Map<String, byte[]> entries,
+                         Map<String, Calibration> calibrations, String snapshotName, String manifestName,
+                         byte[] manifestData, Map<String, MappedSource> mappedSources) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        File temporaryFile = File.createTempFile(file.getName(), ".tmp", directory);
+
+        try {
+            float total = entries.size() + calibrations.size() + 2;
+            int written = 0;
+
+            try (ZipOutputStream outputStream = new ZipOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(temporaryFile), COPY_BUFFER_SIZE))) {
+                for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                    outputStream.putNextEntry(createParameters(entry.getKey()));
+                    outputStream.write(entry.getValue());
+                    outputStream.closeEntry();
+                    listener.updateProgress("Saving project...", ++written / total);
+                }
+
+                // Calibrations are stored uncompressed so they can be memory-mapped when the project is opened
+                for (Map.Entry<String, Calibration> entry : calibrations.entrySet()) {
+                    MemorySource source = entry.getValue().getSource();
+                    outputStream.putNextEntry(createStoredParameters(entry.getKey(), source.getLength()));
+                    copy(source, outputStream);
+                    outputStream.closeEntry();
+                    listener.updateProgress("Saving calibrations...", ++written / total);
                 }
 
-                byte[] data = source.readFully();
-                ZipParameters calParameters = new ZipParameters();
-                calParameters.setFileNameInZip(fileName);
-                zipFile.addStream(new ByteArrayInputStream(data), calParameters);
+                outputStream.putNextEntry(createParameters(snapshotName));
+                ProjectSnapshot.write(project, hash(manifestData), outputStream);
+                outputStream.closeEntry();
+                listener.updateProgress("Saving snapshot...", ++written / total);
+
+                outputStream.putNextEntry(createParameters(manifestName));
+                outputStream.write(manifestData);
+                outputStream.closeEntry();
+            }
+
+            // Release mappings of this file before it is replaced
+            mappedSources.values().forEach(MappedSource::unmap);
+
+            try {
+                Files.move(temporaryFile.toPath(), file.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporaryFile.toPath());
+        }
+    }
+
+    private static void copy(MemorySource source, OutputStream outputStream) throws IOException {
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        long address = source.getBaseAddress();
+        long end = address + source.getLength();
+        while (address < end) {
+            int len = (int) Math.min(buffer.length, end - address);
+            int read = source.read(buffer, address, 0, len);
+            if (read != len) {
+                throw new IOException("Unexpected read size: " + read + " != " + len);
             }
+            outputStream.write(buffer, 0, len);
+            address += len;
+        }
+    }
+
+    /**
+     * Serializes objects into entries named after the hash of their content.
+     * @return the hash of each object, in order
+     */
+    private static List<String> addEntries(Map<String, byte[]> entries, String directory, Yaml yaml,
+                                           Collection<?> objects) {
+        List<String> hashes = new ArrayList<>(objects.size());
+        for (Object object : objects) {
+            byte[] data = yaml.dump(object).getBytes(StandardCharsets.UTF_8);
+            String hash = Hashing.sha256().hashBytes(data).toString().substring(0, 32);
+            entries.putIfAbsent(getEntryName(directory, hash), data);
+            hashes.add(hash);
+        }
+        return hashes;
+    }
+
+    /**
+     * Creates a copy of a project without the scales, tables and parameters, which are stored in their own entries.
+     */
+    private static Project createManifestProject(Project project) {
+        Project manifestProject = new Project();
+        manifestProject.setVehicle(project.getVehicle());
+        manifestProject.setSections(project.getSections());
+        manifestProject.setConnectionType(project.getConnectionType());
+        manifestProject.setProperties(project.getProperties());
+        manifestProject.setCalibrations(project.getCalibrations());
+        manifestProject.setScales(new LinkedHashSet<>());
+        manifestProject.setTables(new ArrayList<>());
+        manifestProject.setParameters(new LinkedHashSet<>());
+        return manifestProject;
+    }
+
+    private static ZipParameters createParameters(String fileName) {
+        ZipParameters parameters = new ZipParameters();
+        parameters.setFileNameInZip(fileName);
+        return parameters;
+    }
 
-            ZipParameters yamlParameters = new ZipParameters();
-            yamlParameters.setFileNameInZip("project.yaml");
-            zipFile.addStream(CharSource.wrap(yamlString).asByteSource(StandardCharsets.UTF_16).openStream(),
-                    yamlParameters);
+    private static ZipParameters createStoredParameters(String fileName, long size) {
+        ZipParameters parameters = createParameters(fileName);
+        parameters.setCompressionMethod(CompressionMethod.STORE);
+        parameters.setEntrySize(size);
+        return parameters;
+    }
+
+    private static void remap(File file, Map<String, MappedSource> mappedSources) throws IOException {
+        if (mappedSources.isEmpty()) {
+            return;
         }
 
-        project.getCalibrations().stream()
-                .map(Calibration::getSource)
-                .filter(source -> source instanceof LazySource)
-                .map(source -> (LazySource) source)
-                .forEach(source -> source.setDirty(false));
+        try (ZipFile zipFile = new ZipFile(file)) {
+            for (Map.Entry<String, MappedSource> entry : mappedSources.entrySet()) {
+                entry.getValue().remap(file, zipFile.getFileHeader(entry.getKey()));
+            }
+        }
+    }
+
+    private static void attach(File file, Map<String, Calibration> calibrations) throws IOException {
+        Map<String, Calibration> detached = new LinkedHashMap<>();
+        calibrations.forEach((name, calibration) -> {
+            MemorySource source = calibration.getSource();
+            if (!(source instanceof LazySource) && !(source instanceof MappedSource)) {
+                detached.put(name, calibration);
+            }
+        });
+
+        if (detached.isEmpty()) {
+            return;
+        }
+
+        try (ZipFile zipFile = new ZipFile(file)) {
+            for (Map.Entry<String, Calibration> entry : detached.entrySet()) {
+                Calibration calibration = entry.getValue();
+                FileHeader header = getEntry(zipFile, entry.getKey());
+                if (MappedSource.canMap(header)) {
+                    calibration.updateSource(MappedSource.fromZipEntry(file, header, calibration.getSection()));
+                } else {
+                    calibration.updateSource(LazySource.fromZipEntry(file, header, calibration.getSection()));
+                }
+            }
+        }
+    }
+
+    private static boolean isSameFile(File a, File b) {
+        return a.getAbsoluteFile().toPath().normalize().equals(b.getAbsoluteFile().toPath().normalize());
+    }
+
+    private static boolean isDirty(MemorySource source) {
+        if (source instanceof LazySource lazySource) {
+            return lazySource.isDirty();
+        } else if (source instanceof MappedSource mappedSource) {
+            return mappedSource.isDirty();
+        } else {
+            return true;
+        }
     }
 
     public static class Factory implements ProjectStorageFactory {
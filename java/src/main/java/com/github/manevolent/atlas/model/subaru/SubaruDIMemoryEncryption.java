@@ -2,9 +2,8 @@ package com.github.manevolent.atlas.model.subaru;
 
 import com.github.manevolent.atlas.model.*;
 import com.github.manevolent.atlas.model.uds.SecurityAccessProperty;
+import com.github.manevolent.atlas.ssm4.SubaruDITFlashEncryption;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
@@ -39,24 +38,12 @@ public class SubaruDIMemoryEncryption implements MemoryEncryption {
 
     @Override
     public void encrypt(byte[] data, int offs, int len) throws IOException {
-        try (ByteArrayInputStream inputStream = new ByteArrayInputStream(data, offs, len);
-             ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
-            com.github.manevolent.atlas.ssm4.SubaruDITFlashEncryption.feistel_encrypt(inputStream, outputStream,
-                    encryptKey);
-
-            System.arraycopy(outputStream.toByteArray(), 0, data, 0, len);
-        }
+        SubaruDITFlashEncryption.feistel_encrypt(data, offs, len, encryptKey);
     }
 
     @Override
     public void decrypt(byte[] data, int offs, int len) throws IOException {
-        try (ByteArrayInputStream inputStream = new ByteArrayInputStream(data, offs, len);
-             ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
-            com.github.manevolent.atlas.ssm4.SubaruDITFlashEncryption.feistel_decrypt(inputStream, outputStream,
-                    decryptKey);
-
-            System.arraycopy(outputStream.toByteArray(), 0, data, 0, len);
-        }
+        SubaruDITFlashEncryption.feistel_decrypt(data, offs, len, decryptKey);
     }
 
     @Override
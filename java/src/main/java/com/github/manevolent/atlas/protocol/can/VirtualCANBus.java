@@ -0,0 +1,298 @@
+package com.github.manevolent.atlas.protocol.can;
+
+import com.github.manevolent.atlas.Address;
+import com.github.manevolent.atlas.FrameReader;
+import com.github.manevolent.atlas.FrameWriter;
+import com.github.manevolent.atlas.protocol.j2534.CANDevice;
+import com.github.manevolent.atlas.protocol.j2534.J2534Device;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An in-process CAN bus, for running a tester against simulated modules without any hardware.
+ *
+ * Every frame written by a node is delivered to every other node whose filters accept it. Delivery can be made to
+ * look like a real bus: with a bitrate set, frames take turns on the bus for as long as their bits take to send,
+ * and the writer waits until its frame is sent; each delivery can then be held back by a fixed latency plus a random
+ * jitter, and frames can be lost outright. Each node still receives frames in the order they were sent, as on a real
+ * bus. Randomness comes from a seeded generator, so a run can be repeated exactly.
+ */
+public class VirtualCANBus implements AutoCloseable {
+    /**
+     * Longest a read waits for a frame before returning nothing, so readers can notice being closed
+     */
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * Bits in a standard CAN frame besides its data: start of frame, identifier, control, CRC, acknowledgement, end of
+     * frame and interframe space. Bit stuffing is ignored.
+     */
+    private static final int FRAME_OVERHEAD_BITS = 47;
+
+    private final List<Node> nodes = new CopyOnWriteArrayList<>();
+    private final Random random;
+
+    private final AtomicLong framesSent = new AtomicLong();
+    private final AtomicLong framesLost = new AtomicLong();
+
+    // Guarded by this
+    private long busFree;
+
+    private volatile long latencyNanos;
+    private volatile long jitterNanos;
+    private volatile double loss;
+    private volatile int bitrate;
+
+    public VirtualCANBus() {
+        this(0L);
+    }
+
+    /**
+     * Creates a bus
+     * @param seed seed for the jitter and loss of frames
+     */
+    public VirtualCANBus(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Sets how long every frame takes to arrive once it is sent
+     * @param latency latency
+     * @param unit unit of the latency
+     */
+    public void setLatency(long latency, TimeUnit unit) {
+        this.latencyNanos = unit.toNanos(latency);
+    }
+
+    /**
+     * Sets the most time added to the latency of a frame at random
+     * @param jitter jitter
+     * @param unit unit of the jitter
+     */
+    public void setJitter(long jitter, TimeUnit unit) {
+        this.jitterNanos = unit.toNanos(jitter);
+    }
+
+    /**
+     * Sets the chance of a frame being lost
+     * @param loss probability, from 0 to 1
+     */
+    public void setLoss(double loss) {
+        if (loss < 0 || loss > 1) {
+            throw new IllegalArgumentException("Invalid loss: " + loss);
+        }
+
+        this.loss = loss;
+    }
+
+    /**
+     * Sets the speed of the bus, such as 500,000 for a powertrain bus
+     * @param bitrate bits per second, or 0 to send frames as soon as they are written
+     */
+    public void setBitrate(int bitrate) {
+        this.bitrate = bitrate;
+    }
+
+    public long getFramesSent() {
+        return framesSent.get();
+    }
+
+    public long getFramesLost() {
+        return framesLost.get();
+    }
+
+    /**
+     * Connects a new node to the bus
+     * @param filters filters a frame must pass one of to be received, or none to receive every frame
+     * @return device to read and write frames on the bus
+     */
+    public CANDevice open(J2534Device.CANFilter... filters) {
+        Node node = new Node(filters);
+        nodes.add(node);
+        return node;
+    }
+
+    private void send(Node sender, int arbitrationId, byte[] data) throws IOException {
+        long sent, delay;
+        boolean lost;
+        synchronized (this) {
+            sent = System.nanoTime();
+            if (bitrate > 0) {
+                long frameNanos = TimeUnit.SECONDS.toNanos(FRAME_OVERHEAD_BITS + (8L * data.length)) / bitrate;
+                sent = Math.max(sent, busFree) + frameNanos;
+                busFree = sent;
+            }
+
+            delay = latencyNanos + (jitterNanos > 0 ? (long) (random.nextDouble() * jitterNanos) : 0L);
+            lost = loss > 0 && random.nextDouble() < loss;
+        }
+
+        // The writer has the frame back once it is on the bus
+        long remaining;
+        while ((remaining = sent - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+
+        framesSent.incrementAndGet();
+        if (lost) {
+            framesLost.incrementAndGet();
+            return;
+        }
+
+        long arrival = sent + delay;
+        for (Node node : nodes) {
+            if (node != sender && node.accepts(arbitrationId)) {
+                node.deliver(new CANFrame(arbitrationId, data), arrival);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Node node : nodes) {
+            node.close();
+        }
+    }
+
+    private static int toInt(byte[] data) {
+        return ByteBuffer.wrap(data).getInt();
+    }
+
+    private static class Delivery {
+        private final CANFrame frame;
+        private final long arrival;
+
+        private Delivery(CANFrame frame, long arrival) {
+            this.frame = frame;
+            this.arrival = arrival;
+        }
+    }
+
+    private class Node implements CANDevice, FrameReader<CANFrame>, FrameWriter<CANFrame> {
+        private final int[] masks, patterns;
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition arrived = lock.newCondition();
+        private final Deque<Delivery> queue = new ArrayDeque<>();
+        private long lastArrival = Long.MIN_VALUE;
+        private volatile boolean closed;
+
+        private Node(J2534Device.CANFilter[] filters) {
+            this.masks = new int[filters.length];
+            this.patterns = new int[filters.length];
+            for (int i = 0; i < filters.length; i ++) {
+                masks[i] = toInt(filters[i].getMask());
+                patterns[i] = toInt(filters[i].getPattern());
+            }
+        }
+
+        private boolean accepts(int arbitrationId) {
+            if (masks.length == 0) {
+                return true;
+            }
+
+            for (int i = 0; i < masks.length; i ++) {
+                if ((arbitrationId & masks[i]) == patterns[i]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void deliver(CANFrame frame, long arrival) {
+            lock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+
+                // Jitter can't reorder frames; a frame sent later waits for the one before it
+                arrival = Math.max(arrival, lastArrival);
+                lastArrival = arrival;
+                queue.addLast(new Delivery(frame, arrival));
+                arrived.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public FrameReader<CANFrame> reader() {
+            return this;
+        }
+
+        @Override
+        public FrameWriter<CANFrame> writer() {
+            return this;
+        }
+
+        @Override
+        public CANFrame read() throws IOException {
+            long deadline = System.nanoTime() + POLL_NANOS;
+            lock.lock();
+            try {
+                while (true) {
+                    if (closed) {
+                        throw new EOFException("CAN device closed");
+                    }
+
+                    long now = System.nanoTime();
+                    Delivery next = queue.peekFirst();
+                    if (next != null && next.arrival - now <= 0) {
+                        queue.removeFirst();
+                        return next.frame;
+                    }
+
+                    long wait = deadline - now;
+                    if (wait <= 0) {
+                        return null;
+                    } else if (next != null) {
+                        wait = Math.min(wait, next.arrival - now);
+                    }
+
+                    arrived.awaitNanos(wait);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(e.getMessage());
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void write(Address address, CANFrame frame) throws IOException {
+            if (closed) {
+                throw new EOFException("CAN device closed");
+            }
+
+            // Writers such as ISO-TP reuse their frames, and may not have set the arbitration ID
+            byte[] data = frame.getData();
+            send(this, address.toInt(), Arrays.copyOf(data, data.length));
+        }
+
+        @Override
+        public void close() {
+            lock.lock();
+            try {
+                closed = true;
+                queue.clear();
+                arrived.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            nodes.remove(this);
+        }
+    }
+}
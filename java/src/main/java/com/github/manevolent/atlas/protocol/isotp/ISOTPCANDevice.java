@@ -0,0 +1,62 @@
+package com.github.manevolent.atlas.protocol.isotp;
+
+import com.github.manevolent.atlas.BasicFrame;
+import com.github.manevolent.atlas.FrameReader;
+import com.github.manevolent.atlas.FrameWriter;
+import com.github.manevolent.atlas.protocol.j2534.CANDevice;
+import com.github.manevolent.atlas.protocol.j2534.ISOTPDevice;
+import com.github.manevolent.atlas.protocol.j2534.J2534Device;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * An ISO-TP device that does segmentation and flow control itself, over a device that can only send and receive
+ * raw CAN frames. Messages are only read while something is reading them, and flow control frames are read the
+ * same way, so a message can only be written while the reader is being read from another thread.
+ */
+public class ISOTPCANDevice implements ISOTPDevice {
+    private final CANDevice canDevice;
+    private final ISOTPFrameWriter writer;
+    private final ISOTPFrameReader reader;
+
+    public ISOTPCANDevice(CANDevice canDevice, J2534Device.ISOTPFilter... filters) {
+        this.canDevice = canDevice;
+        this.writer = new ISOTPFrameWriter(canDevice.writer(), true);
+        this.reader = new ISOTPFrameReader(canDevice.reader(), writer, filters);
+    }
+
+    /**
+     * Sets the block size and minimum separation time asked of devices sending to this device
+     * @param blockSize block size, or 0 for no limit
+     * @param separationTime encoded separation time
+     */
+    public void setFlowControl(int blockSize, int separationTime) {
+        reader.setBlockSize(blockSize);
+        reader.setSeparationTime(separationTime);
+    }
+
+    @Override
+    public FrameReader<ISOTPFrame> reader() {
+        return reader;
+    }
+
+    @Override
+    public FrameWriter<BasicFrame> writer() {
+        return writer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            canDevice.close();
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } catch (Exception e) {
+            throw new IOException("Problem closing CAN device", e);
+        }
+    }
+}
@@ -35,7 +35,7 @@ public class ISOTPConsecutiveFrame extends ISOTPDataSubFrame {
 
     public void read(BitReader reader) throws IOException {
         this.index = (int) reader.read(4);
-        this.data = new byte[7];
+        this.data = new byte[Math.min(7, reader.remaining() / 8)];
         reader.read(this.data);
     }
 
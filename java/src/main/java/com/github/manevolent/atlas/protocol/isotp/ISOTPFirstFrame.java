@@ -16,20 +16,37 @@ public class ISOTPFirstFrame extends ISOTPDataSubFrame implements Frame {
     @Override
     public void read(BitReader reader) throws IOException {
         this.totalSize = (int) reader.read(12);
-        this.data = new byte[6];
+        if (this.totalSize == 0) {
+            // 32-bit length, for messages over 4095 bytes
+            this.totalSize = reader.readInt();
+        }
+        this.data = new byte[Math.min(getCapacity(), reader.remaining() / 8)];
         reader.read(data);
     }
 
     @Override
     public void write(BitWriter writer) throws IOException {
-        writer.writeLSB(this.totalSize, 12);
+        if (this.totalSize > 0xFFF) {
+            writer.writeLSB(0, 12);
+            writer.writeInt(this.totalSize);
+        } else {
+            writer.writeLSB(this.totalSize, 12);
+        }
 
-        if (getLength() != 6) {
-            throw new IllegalArgumentException("Unexpected data length " + getLength() + " != 6");
+        if (getLength() != getCapacity()) {
+            throw new IllegalArgumentException("Unexpected data length " + getLength() + " != " + getCapacity());
         }
         writer.write(getData());
     }
 
+    /**
+     * Gets the number of bytes of the message a first frame carries, which depends on the length of the message
+     * @return number of bytes
+     */
+    public int getCapacity() {
+        return this.totalSize > 0xFFF ? 2 : 6;
+    }
+
     public int getTotalSize() {
         return totalSize;
     }
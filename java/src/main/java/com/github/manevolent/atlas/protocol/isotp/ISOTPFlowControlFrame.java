@@ -4,8 +4,30 @@ import com.github.manevolent.atlas.BitReader;
 import com.github.manevolent.atlas.BitWriter;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 public class ISOTPFlowControlFrame extends ISOTPSubFrame {
+    public static final int FLAG_CONTINUE = 0x0;
+    public static final int FLAG_WAIT = 0x1;
+    public static final int FLAG_OVERFLOW = 0x2;
+
+    /**
+     * Decodes a minimum separation time (STmin)
+     * @param separationTime encoded separation time
+     * @return separation time in nanoseconds
+     */
+    public static long getSeparationTimeNanos(int separationTime) {
+        separationTime &= 0xFF;
+        if (separationTime <= 0x7F) {
+            return TimeUnit.MILLISECONDS.toNanos(separationTime);
+        } else if (separationTime >= 0xF1 && separationTime <= 0xF9) {
+            return TimeUnit.MICROSECONDS.toNanos((separationTime - 0xF0) * 100L);
+        } else {
+            // Reserved values are to be treated as the longest separation time
+            return TimeUnit.MILLISECONDS.toNanos(0x7F);
+        }
+    }
+
     private int flag, blockSize, separationTime;
 
     public ISOTPFlowControlFrame(int flag, int blockSize, int separationTime) {
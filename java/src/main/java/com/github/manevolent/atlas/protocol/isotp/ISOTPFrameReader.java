@@ -1,33 +1,86 @@
 package com.github.manevolent.atlas.protocol.isotp;
 
+import com.github.manevolent.atlas.Address;
 import com.github.manevolent.atlas.FrameReader;
+import com.github.manevolent.atlas.protocol.can.CANArbitrationId;
 import com.github.manevolent.atlas.protocol.can.CANFrame;
+import com.github.manevolent.atlas.protocol.j2534.J2534Device;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * Reassembles ISO-TP messages read from a CAN bus.
+ *
+ * A reader given an {@link ISOTPFrameWriter} takes part in flow control: it answers first frames sent to it, and
+ * passes flow control frames it reads to the writer. ISO-TP filters say which address to answer for each address
+ * read from, in the same way a J2534 device uses them. A reader without a writer only listens, as a spy must.
+ */
 public class ISOTPFrameReader implements FrameReader<ISOTPFrame> {
     private final FrameReader<CANFrame> canReader;
+    private final ISOTPFrameWriter writer;
+    private final J2534Device.ISOTPFilter[] filters;
     private final Map<Integer, ISOTPPeer> peers = new HashMap<>();
 
+    private int blockSize = 0;
+    private int separationTime = 0;
+
     public ISOTPFrameReader(FrameReader<CANFrame> canReader) {
+        this(canReader, null);
+    }
+
+    /**
+     * Creates a reader that takes part in flow control
+     * @param canReader CAN reader
+     * @param writer writer sending on the same bus, or null to only listen
+     * @param filters filters giving the flow control address for each address read from
+     */
+    public ISOTPFrameReader(FrameReader<CANFrame> canReader, ISOTPFrameWriter writer,
+                            J2534Device.ISOTPFilter... filters) {
         this.canReader = canReader;
+        this.writer = writer;
+        this.filters = filters;
+    }
+
+    /**
+     * Sets the block size to ask of senders
+     * @param blockSize block size, or 0 to receive each message without any further flow control
+     */
+    public synchronized void setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+        peers.values().forEach(peer -> peer.setBlockSize(blockSize));
+    }
+
+    /**
+     * Sets the minimum separation time (STmin) to ask of senders
+     * @param separationTime encoded separation time
+     */
+    public synchronized void setSeparationTime(int separationTime) {
+        this.separationTime = separationTime;
+        peers.values().forEach(peer -> peer.setSeparationTime(separationTime));
     }
 
     @Override
     public ISOTPFrame read() throws IOException {
         CANFrame canFrame;
         while ((canFrame = canReader.read()) != null) {
-            if (canFrame.getLength() <= 0) {
+            byte[] data = canFrame.getData();
+            if (data == null || data.length <= 0) {
                 continue;
             }
 
             int id = canFrame.getArbitrationId();
-            ISOTPPeer peer = peers.computeIfAbsent(id, ISOTPPeer::new);
-            ISOTPWireFrame wireFrame = new ISOTPWireFrame();
-            wireFrame.read(canFrame.bitReader());
-            ISOTPFrame fullFrame = peer.handleFrame(wireFrame.getSubFrame());
+            if (((data[0] >> 4) & 0xF) == 0x3) {
+                // Flow control for a message being written
+                if (writer != null && data.length >= 3) {
+                    writer.handleFlowControl(getFlowAddress(id), data[0] & 0xF, data[1] & 0xFF, data[2] & 0xFF);
+                }
+                continue;
+            }
+
+            ISOTPFrame fullFrame = getPeer(id).handleFrame(data, data.length);
             if (fullFrame != null) {
                 return fullFrame;
             }
@@ -36,6 +89,42 @@ public class ISOTPFrameReader implements FrameReader<ISOTPFrame> {
         return null;
     }
 
+    private synchronized ISOTPPeer getPeer(int id) {
+        ISOTPPeer peer = peers.get(id);
+        if (peer == null) {
+            Address flowAddress = writer == null ? null : getFlowAddress(id);
+            if (flowAddress != null) {
+                peer = new ISOTPPeer(id, (p, flag, blockSize, separationTime) ->
+                        writer.writeFlowControl(flowAddress, flag, blockSize, separationTime));
+            } else {
+                peer = new ISOTPPeer(id);
+            }
+            peer.setBlockSize(blockSize);
+            peer.setSeparationTime(separationTime);
+            peers.put(id, peer);
+        }
+        return peer;
+    }
+
+    /**
+     * Finds the address a peer expects flow control on, from the filter that matches the address it sends from
+     * @param id arbitration ID the peer sends from
+     * @return flow control address, or null if no filter says
+     */
+    private Address getFlowAddress(int id) {
+        CANArbitrationId address = new CANArbitrationId(id);
+        for (J2534Device.ISOTPFilter filter : filters) {
+            int mask = ByteBuffer.wrap(filter.getMask()).getInt();
+            if (mask == 0 || !filter.testPattern(address)) {
+                continue;
+            }
+
+            int flow = ByteBuffer.wrap(filter.getFlow()).getInt();
+            return new CANArbitrationId((id & ~mask) | (flow & mask));
+        }
+        return null;
+    }
+
     @Override
     public void close() throws Exception {
         canReader.close();
@@ -7,12 +7,82 @@ import com.github.manevolent.atlas.FrameWriter;
 import com.github.manevolent.atlas.protocol.can.CANFrame;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Segments messages into ISO-TP frames and writes them to a CAN bus.
+ *
+ * With flow control enabled, a segmented message is sent the way ISO 15765-2 describes: the first frame, then a
+ * wait for the receiver's flow control frame, then consecutive frames in blocks of the size it asked for, each
+ * separated by at least the separation time (STmin) it asked for, waiting for another flow control frame after
+ * each block. Flow control frames are handed to the writer by the {@link ISOTPFrameReader} reading the same bus.
+ * Without flow control, consecutive frames are sent back to back, which only suits receivers that keep up.
+ *
+ * Every CAN frame is padded to 8 bytes. The CAN frame handed to the CAN writer is reused for the next frame, so a
+ * CAN writer that holds on to frames must copy their data.
+ */
 public class ISOTPFrameWriter implements FrameWriter<BasicFrame> {
+    /**
+     * Longest time to wait for a flow control frame (N_Bs)
+     */
+    public static final long DEFAULT_TIMEOUT_MILLIS = 1_000L;
+
+    /**
+     * Most wait frames accepted in a row before giving up on a message (N_WFTmax)
+     */
+    public static final int MAXIMUM_WAIT_FRAMES = 16;
+
+    private static final int CAN_LENGTH = 8;
+    private static final byte PADDING = 0x00;
+
     private final FrameWriter<CANFrame> canWriter;
+    private final boolean flowControl;
+    private long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_TIMEOUT_MILLIS);
+
+    // Only one message is sent at a time
+    private final Object transferLock = new Object();
+
+    // Guards the CAN writer and the frame reused for each write; flow control replies are written between
+    // the frames of a message being sent
+    private final Object canLock = new Object();
+    private final CANFrame canFrame = new CANFrame();
+    private final byte[] canData = new byte[CAN_LENGTH];
+
+    // Flow control state, guarded by flowLock
+    private final Object flowLock = new Object();
+    private Address awaiting;
+    private boolean flowReceived;
+    private int flowFlag, flowBlockSize, flowSeparationTime;
 
+    /**
+     * Creates a writer that sends consecutive frames back to back, without waiting for flow control
+     * @param canWriter CAN writer
+     */
     public ISOTPFrameWriter(FrameWriter<CANFrame> canWriter) {
+        this(canWriter, false);
+    }
+
+    /**
+     * Creates a writer
+     * @param canWriter CAN writer
+     * @param flowControl true to wait for flow control frames, which must be passed to
+     *                    {@link #handleFlowControl(Address, int, int, int)}
+     */
+    public ISOTPFrameWriter(FrameWriter<CANFrame> canWriter, boolean flowControl) {
         this.canWriter = canWriter;
+        this.flowControl = flowControl;
+        this.canFrame.setData(canData);
+    }
+
+    public boolean isFlowControl() {
+        return flowControl;
+    }
+
+    public void setTimeout(long timeoutMillis) {
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
     }
 
     @Override
@@ -21,37 +91,169 @@ public class ISOTPFrameWriter implements FrameWriter<BasicFrame> {
             throw new IllegalArgumentException("Empty frame");
 
         byte[] data = frame.getData();
-        int offs = 0;
-        for (int index = 0; offs < data.length; index ++) {
-            ISOTPDataSubFrame subFrame;
-            int windowSize;
-
-            if (offs == 0) {
-                if (data.length <= 6) {
-                    subFrame = new ISOTPSingleFrame();
-                } else {
-                    subFrame = new ISOTPFirstFrame();
-                    ((ISOTPFirstFrame)subFrame).setTotalSize(data.length);
+        synchronized (transferLock) {
+            if (data.length <= 7) {
+                synchronized (canLock) {
+                    canData[0] = (byte) data.length;
+                    System.arraycopy(data, 0, canData, 1, data.length);
+                    writeCAN(address, 1 + data.length);
                 }
-                windowSize = 6;
+                return;
+            }
+
+            startTransfer(address);
+            try {
+                transfer(address, data);
+            } finally {
+                synchronized (flowLock) {
+                    awaiting = null;
+                }
+            }
+        }
+    }
+
+    private void transfer(Address address, byte[] data) throws IOException {
+        int offs;
+        synchronized (canLock) {
+            if (data.length <= 0xFFF) {
+                canData[0] = (byte) (0x10 | (data.length >> 8));
+                canData[1] = (byte) data.length;
+                offs = 6;
+                System.arraycopy(data, 0, canData, 2, offs);
             } else {
-                subFrame = new ISOTPConsecutiveFrame();
-                ((ISOTPConsecutiveFrame)subFrame).setIndex(index);
-                windowSize = 7;
+                // 32-bit first frame length
+                canData[0] = 0x10;
+                canData[1] = 0x00;
+                canData[2] = (byte) (data.length >> 24);
+                canData[3] = (byte) (data.length >> 16);
+                canData[4] = (byte) (data.length >> 8);
+                canData[5] = (byte) data.length;
+                offs = 2;
+                System.arraycopy(data, 0, canData, 6, offs);
             }
+            writeCAN(address, CAN_LENGTH);
+        }
+
+        int sequence = 1;
+        while (offs < data.length) {
+            int blockSize = 0;
+            long separationNanos = 0L;
 
-            byte[] chunk = new byte[Math.min(data.length - offs, windowSize)];
-            System.arraycopy(data, offs, chunk, 0, chunk.length);
-            offs += chunk.length;
-            subFrame.setData(chunk);
+            if (flowControl) {
+                awaitFlowControl(address);
+                synchronized (flowLock) {
+                    blockSize = flowBlockSize;
+                    separationNanos = ISOTPFlowControlFrame.getSeparationTimeNanos(flowSeparationTime);
+                }
+            }
 
-            ISOTPWireFrame wireFrame = new ISOTPWireFrame();
-            wireFrame.setSubFrame(subFrame);
+            long next = System.nanoTime();
+            for (int sent = 0; offs < data.length && (blockSize == 0 || sent < blockSize); sent ++) {
+                if (sent > 0 && separationNanos > 0) {
+                    long remaining;
+                    while ((remaining = next - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(remaining);
+                    }
+                }
 
-            CANFrame canFrame = new CANFrame();
-            canFrame.setData(wireFrame.write());
+                int length = Math.min(data.length - offs, CAN_LENGTH - 1);
+                synchronized (canLock) {
+                    canData[0] = (byte) (0x20 | (sequence & 0xF));
+                    System.arraycopy(data, offs, canData, 1, length);
+                    writeCAN(address, 1 + length);
+                }
+
+                next = System.nanoTime() + separationNanos;
+                offs += length;
+                sequence ++;
+            }
+        }
+    }
+
+    /**
+     * Writes a flow control frame, such as in reply to a first frame
+     * @param address address to write to
+     * @param flag flow status
+     * @param blockSize block size
+     * @param separationTime encoded separation time
+     */
+    public void writeFlowControl(Address address, int flag, int blockSize, int separationTime) throws IOException {
+        synchronized (canLock) {
+            canData[0] = (byte) (0x30 | (flag & 0xF));
+            canData[1] = (byte) blockSize;
+            canData[2] = (byte) separationTime;
+            writeCAN(address, 3);
+        }
+    }
+
+    private void writeCAN(Address address, int length) throws IOException {
+        Arrays.fill(canData, length, CAN_LENGTH, PADDING);
+        canWriter.write(address, canFrame);
+    }
+
+    private void startTransfer(Address address) {
+        synchronized (flowLock) {
+            awaiting = address;
+            flowReceived = false;
+        }
+    }
+
+    private void awaitFlowControl(Address address) throws IOException {
+        int waits = 0;
+        synchronized (flowLock) {
+            while (true) {
+                long deadline = System.nanoTime() + timeoutNanos;
+                while (!flowReceived) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        throw new IOException("Timed out waiting for ISO-TP flow control from " + address);
+                    }
+
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait(flowLock, remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException(e.getMessage());
+                    }
+                }
+
+                flowReceived = false;
+                switch (flowFlag) {
+                    case ISOTPFlowControlFrame.FLAG_CONTINUE -> {
+                        return;
+                    }
+                    case ISOTPFlowControlFrame.FLAG_WAIT -> {
+                        if (++ waits > MAXIMUM_WAIT_FRAMES) {
+                            throw new IOException("Too many ISO-TP wait frames from " + address);
+                        }
+                    }
+                    case ISOTPFlowControlFrame.FLAG_OVERFLOW ->
+                            throw new IOException("ISO-TP receiver " + address + " can't accept a message this long");
+                    default -> throw new IOException("Invalid ISO-TP flow status " + flowFlag + " from " + address);
+                }
+            }
+        }
+    }
+
+    /**
+     * Handles a flow control frame read from the bus
+     * @param address address of the message the flow control is for, or null if it isn't known, in which case
+     *                the flow control is taken to be for the message being sent
+     * @param flag flow status
+     * @param blockSize block size
+     * @param separationTime encoded separation time
+     */
+    public void handleFlowControl(Address address, int flag, int blockSize, int separationTime) {
+        synchronized (flowLock) {
+            if (awaiting == null || (address != null && !address.equals(awaiting))) {
+                return;
+            }
 
-            canWriter.write(address, canFrame);
+            flowFlag = flag;
+            flowBlockSize = blockSize;
+            flowSeparationTime = separationTime;
+            flowReceived = true;
+            flowLock.notifyAll();
         }
     }
 }
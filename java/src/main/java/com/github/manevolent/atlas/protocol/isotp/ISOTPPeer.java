@@ -1,47 +1,241 @@
 package com.github.manevolent.atlas.protocol.isotp;
 
+import com.github.manevolent.atlas.logging.Log;
 import com.github.manevolent.atlas.protocol.can.CANArbitrationId;
 
-import java.nio.ByteBuffer;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 
+/**
+ * Reassembles the ISO-TP messages sent by one arbitration ID, from the raw data of each CAN frame it sends.
+ *
+ * A peer is either idle or receiving a segmented message. A first frame starts receiving, replacing any message
+ * already in progress, as ISO 15765-2 requires. Consecutive frames must follow in sequence and within the N_Cr
+ * timeout, or the message is dropped. If the peer was given somewhere to send flow control, it answers each first
+ * frame, and each block of consecutive frames, with the block size and separation time it was configured with;
+ * otherwise it only listens.
+ */
 public class ISOTPPeer {
+    /**
+     * Longest time to wait for the next consecutive frame of a message (N_Cr)
+     */
+    public static final long DEFAULT_TIMEOUT_MILLIS = 1_000L;
+
+    /**
+     * Largest message accepted by default. The 32-bit first frame length allows far more than a diagnostic
+     * session ever sends, so this only guards against a corrupt length.
+     */
+    public static final int DEFAULT_MAXIMUM_SIZE = 1 << 20;
+
+    private static final int INITIAL_BUFFER_SIZE = 4096;
+
+    /**
+     * Sends flow control frames on behalf of a peer
+     */
+    public interface FlowControlSender {
+        void sendFlowControl(ISOTPPeer peer, int flag, int blockSize, int separationTime) throws IOException;
+    }
+
     private final int arbitrationId;
-    private final ByteBuffer buffer = ByteBuffer.allocate(8192);
+    private final CANArbitrationId address;
+    private final FlowControlSender flowControl;
+
+    private int blockSize = 0;
+    private int separationTime = 0;
+    private int maximumSize = DEFAULT_MAXIMUM_SIZE;
+    private long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_TIMEOUT_MILLIS);
+
+    // Reused from one message to the next; grows to fit the largest message seen
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
     private int expected = -1;
+    private int received;
+    private int sequence;
+    private int blockRemaining;
+    private long lastFrameNanos;
 
-    public ISOTPPeer(int arbitrationId) {
+    public ISOTPPeer(int arbitrationId, FlowControlSender flowControl) {
         this.arbitrationId = arbitrationId;
+        this.address = new CANArbitrationId(arbitrationId);
+        this.flowControl = flowControl;
+    }
+
+    public ISOTPPeer(int arbitrationId) {
+        this(arbitrationId, null);
+    }
+
+    public int getArbitrationId() {
+        return arbitrationId;
+    }
+
+    /**
+     * Sets the number of consecutive frames the sender may send before waiting for another flow control frame
+     * @param blockSize block size, or 0 to let the sender send every frame without waiting
+     */
+    public void setBlockSize(int blockSize) {
+        if (blockSize < 0 || blockSize > 0xFF) {
+            throw new IllegalArgumentException(Integer.toString(blockSize));
+        }
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Sets the minimum separation time (STmin) the sender must leave between consecutive frames
+     * @param separationTime encoded separation time: 0x00-0x7F milliseconds, or 0xF1-0xF9 for 100-900 microseconds
+     */
+    public void setSeparationTime(int separationTime) {
+        if (separationTime < 0 || separationTime > 0xFF) {
+            throw new IllegalArgumentException(Integer.toString(separationTime));
+        }
+        this.separationTime = separationTime;
+    }
+
+    public void setMaximumSize(int maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    public void setTimeout(long timeoutMillis) {
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    public boolean isReceiving() {
+        return expected >= 0;
     }
 
-    public ISOTPFrame handleFrame(ISOTPSubFrame subFrame) {
-        if (subFrame instanceof ISOTPSingleFrame) {
-            return ((ISOTPSingleFrame) subFrame).coalesce(new CANArbitrationId(arbitrationId));
-        } else if (subFrame instanceof ISOTPFirstFrame) {
-            ISOTPFirstFrame firstFrame = (ISOTPFirstFrame) subFrame;
-            if (expected > 0) {
-                // Got a first frame, but we weren't ready for it
-                return null;
+    /**
+     * Handles a CAN frame sent by this peer
+     * @param data data of the CAN frame
+     * @param length length of the CAN frame's data
+     * @return a complete message, if this frame completed one
+     */
+    public ISOTPFrame handleFrame(byte[] data, int length) throws IOException {
+        if (length < 1) {
+            return null;
+        }
+
+        int code = (data[0] >> 4) & 0xF;
+        switch (code) {
+            case 0x0 -> {
+                // A single frame interrupts any message in progress
+                abort(null);
+
+                int size = data[0] & 0xF;
+                int offs = 1;
+                if (size == 0 && length > 1) {
+                    // CAN FD escape: the size follows in the next byte
+                    size = data[1] & 0xFF;
+                    offs = 2;
+                }
+
+                if (size == 0 || offs + size > length) {
+                    return null;
+                }
+
+                byte[] message = new byte[size];
+                System.arraycopy(data, offs, message, 0, size);
+                return new ISOTPFrame(address, message);
             }
-            expected = firstFrame.getTotalSize();
-            buffer.put(firstFrame.getData());
-        } else if (subFrame instanceof ISOTPConsecutiveFrame) {
-            if (expected <= 0) {
-                // Got a consecutive frame, but we weren't ready for it
-                return null;
+            case 0x1 -> {
+                if (length < 2) {
+                    return null;
+                }
+
+                if (isReceiving()) {
+                    abort("a new first frame arrived");
+                }
+
+                long size = ((data[0] & 0xF) << 8) | (data[1] & 0xFF);
+                int offs = 2;
+                if (size == 0) {
+                    if (length < 6) {
+                        return null;
+                    }
+
+                    // 32-bit first frame length, for messages over 4095 bytes
+                    size = ((long) (data[2] & 0xFF) << 24) | ((data[3] & 0xFF) << 16)
+                            | ((data[4] & 0xFF) << 8) | (data[5] & 0xFF);
+                    offs = 6;
+                }
+
+                if (size > maximumSize) {
+                    Log.can().log(Level.WARNING, "Refusing " + size + " byte ISO-TP message from " + address);
+                    sendFlowControl(ISOTPFlowControlFrame.FLAG_OVERFLOW, 0, 0);
+                    return null;
+                }
+
+                expected = (int) size;
+                if (buffer.length < expected) {
+                    buffer = new byte[Math.max(expected, buffer.length * 2)];
+                }
+
+                received = Math.min(length - offs, expected);
+                System.arraycopy(data, offs, buffer, 0, received);
+                sequence = 1;
+                lastFrameNanos = System.nanoTime();
+
+                if (received >= expected) {
+                    return complete();
+                }
+
+                blockRemaining = blockSize;
+                sendFlowControl(ISOTPFlowControlFrame.FLAG_CONTINUE, blockSize, separationTime);
             }
+            case 0x2 -> {
+                if (!isReceiving()) {
+                    // Got a consecutive frame, but we weren't ready for it
+                    return null;
+                }
 
-            ISOTPConsecutiveFrame consFrame = (ISOTPConsecutiveFrame) subFrame;
-            buffer.put(consFrame.getData());
-            if (buffer.position() >= expected) {
-                // Assemble
-                byte[] reassembled = new byte[expected];
-                System.arraycopy(buffer.array(), 0, reassembled, 0, expected);
-                buffer.position(0);
-                expected = -1;
-                return new ISOTPFrame(new CANArbitrationId(arbitrationId), reassembled);
+                long now = System.nanoTime();
+                if (now - lastFrameNanos > timeoutNanos) {
+                    abort("timed out waiting for a consecutive frame");
+                    return null;
+                }
+
+                int index = data[0] & 0xF;
+                if (index != (sequence & 0xF)) {
+                    abort("expected consecutive frame " + (sequence & 0xF) + " but got " + index);
+                    return null;
+                }
+
+                int count = Math.min(length - 1, expected - received);
+                System.arraycopy(data, 1, buffer, received, count);
+                received += count;
+                sequence ++;
+                lastFrameNanos = now;
+
+                if (received >= expected) {
+                    return complete();
+                }
+
+                if (blockSize > 0 && -- blockRemaining <= 0) {
+                    blockRemaining = blockSize;
+                    sendFlowControl(ISOTPFlowControlFrame.FLAG_CONTINUE, blockSize, separationTime);
+                }
             }
         }
 
         return null;
     }
+
+    private ISOTPFrame complete() {
+        byte[] message = new byte[expected];
+        System.arraycopy(buffer, 0, message, 0, expected);
+        expected = -1;
+        return new ISOTPFrame(address, message);
+    }
+
+    private void abort(String reason) {
+        if (isReceiving() && reason != null) {
+            Log.can().log(Level.WARNING, "Dropped ISO-TP message from " + address + " after "
+                    + received + "/" + expected + " bytes: " + reason);
+        }
+        expected = -1;
+    }
+
+    private void sendFlowControl(int flag, int blockSize, int separationTime) throws IOException {
+        if (flowControl != null) {
+            flowControl.sendFlowControl(this, flag, blockSize, separationTime);
+        }
+    }
 }
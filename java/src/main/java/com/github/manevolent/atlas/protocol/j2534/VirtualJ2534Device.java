@@ -0,0 +1,37 @@
+package com.github.manevolent.atlas.protocol.j2534;
+
+import com.github.manevolent.atlas.protocol.can.VirtualCANBus;
+import com.github.manevolent.atlas.protocol.isotp.ISOTPCANDevice;
+
+import java.io.IOException;
+
+/**
+ * A J2534 device attached to a {@link VirtualCANBus}. Channels opened on it only receive the frames their filters
+ * accept, as with a real device, and ISO-TP channels do their own segmentation and flow control.
+ */
+public class VirtualJ2534Device implements J2534Device {
+    private final VirtualCANBus bus;
+
+    public VirtualJ2534Device(VirtualCANBus bus) {
+        this.bus = bus;
+    }
+
+    public VirtualCANBus getBus() {
+        return bus;
+    }
+
+    @Override
+    public CANDevice openCAN() throws IOException {
+        return bus.open();
+    }
+
+    @Override
+    public CANDevice openCAN(CANFilter... filters) throws IOException {
+        return bus.open(filters);
+    }
+
+    @Override
+    public ISOTPDevice openISOTOP(ISOTPFilter... filters) throws IOException {
+        return new ISOTPCANDevice(bus.open(filters), filters);
+    }
+}
@@ -0,0 +1,436 @@
+package com.github.manevolent.atlas.protocol.j2534.tactrix;
+
+import com.github.manevolent.atlas.logging.Log;
+import com.github.manevolent.atlas.protocol.j2534.J2534Error;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+
+/**
+ * Decodes the records an OpenPort 2.0 sends over its serial interface.
+ *
+ * The stream is read into a buffer as many bytes at a time as it will give, and records are decoded in place: after
+ * {@link #next()}, the accessors describe a record still sitting in the buffer, so decoding allocates nothing. A
+ * record split across reads is kept until the rest of it arrives. Bytes that can't start a record are skipped up to
+ * the next "ar", so a stream picked up partway through a record, or a record mangled on the wire, only loses that
+ * record.
+ *
+ * A decoder isn't thread safe; it's meant to be used by the one thread reading a device.
+ */
+// Much appreciation for https://github.com/brandonros/rust-tactrix-openport/blob/master/src/lib.rs
+public class OpenPort2Decoder implements AutoCloseable {
+    public static final int DEFAULT_BUFFER_SIZE = 4096;
+
+    /**
+     * "ar", the channel, and the size of the rest of the record
+     */
+    private static final int DATA_HEADER_LENGTH = 4;
+
+    /**
+     * 5 bytes the device puts ahead of every message, then the 4-byte arbitration ID
+     */
+    private static final int MESSAGE_HEADER_LENGTH = 9;
+
+    /**
+     * Longest text record expected; anything longer without a line break is taken to be corrupt
+     */
+    private static final int MAXIMUM_LINE_LENGTH = 256;
+
+    /**
+     * Shortest and longest waits between reads that come back empty. Some serial ports return nothing at once
+     * rather than waiting for data; the cap keeps the added latency well under a CAN response time.
+     */
+    private static final long MINIMUM_IDLE_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long MAXIMUM_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    public enum Record {
+        /**
+         * "ar" followed by a channel number: a message received on that channel
+         */
+        DATA,
+
+        /**
+         * "aro": a command succeeded
+         */
+        OK,
+
+        /**
+         * "are": a command or channel failed
+         */
+        ERROR,
+
+        /**
+         * "arf": the result of setting up a filter
+         */
+        FILTER,
+
+        /**
+         * "ari": version information
+         */
+        INFO
+    }
+
+    private final InputStream inputStream;
+    private final byte[] array;
+    private final ByteBuffer buffer;
+
+    // The current record, in the buffer between start and end
+    private Record record;
+    private int start, end;
+    private int channel;
+    private int code;
+
+    private long skipped;
+    private long idleNanos;
+
+    public OpenPort2Decoder(InputStream inputStream, int bufferSize) {
+        if (bufferSize < DATA_HEADER_LENGTH + 0xFF || bufferSize < MAXIMUM_LINE_LENGTH) {
+            throw new IllegalArgumentException("Buffer too small for a record: " + bufferSize);
+        }
+
+        this.inputStream = inputStream;
+        this.array = new byte[bufferSize];
+        this.buffer = ByteBuffer.wrap(array);
+        this.buffer.limit(0);
+    }
+
+    public OpenPort2Decoder(InputStream inputStream) {
+        this(inputStream, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Decodes the next record, reading from the stream if the buffer doesn't hold a whole one
+     * @return the kind of record decoded, or null if the stream ended
+     */
+    public Record next() throws IOException {
+        consume();
+
+        while (true) {
+            Record decoded = decode();
+            if (decoded != null) {
+                return record = decoded;
+            }
+
+            if (!fill()) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Reads a line of text, such as the response to a command
+     * @return the line, without its line break
+     */
+    public String readLine() throws IOException {
+        consume();
+
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            int limit = buffer.limit();
+            for (int p = buffer.position(); p < limit; p ++) {
+                byte c = array[p];
+                if (c == '\n') {
+                    buffer.position(p + 1);
+                    return sb.toString();
+                } else if (c != '\r') {
+                    sb.append((char) c);
+                }
+            }
+
+            buffer.position(limit);
+            if (!fill()) {
+                return sb.toString();
+            }
+        }
+    }
+
+    /**
+     * Discards everything buffered, and anything the stream has ready to read
+     */
+    public void drain() throws IOException {
+        record = null;
+        buffer.limit(0);
+
+        //noinspection StatementWithEmptyBody
+        while (inputStream.available() > 0 && inputStream.read(array, 0, array.length) >= 0) {
+        }
+    }
+
+    private void consume() {
+        if (record != null) {
+            buffer.position(end);
+            record = null;
+        }
+    }
+
+    private boolean fill() throws IOException {
+        buffer.compact();
+
+        int read = -1;
+        try {
+            read = inputStream.read(array, buffer.position(), buffer.remaining());
+        } finally {
+            if (read > 0) {
+                buffer.position(buffer.position() + read);
+            }
+            buffer.flip();
+        }
+
+        if (read == 0) {
+            idle();
+        } else {
+            idleNanos = 0;
+        }
+
+        return read >= 0;
+    }
+
+    /**
+     * Waits a little after a read that gave nothing back, for longer each time in a row, so an idle port isn't spun on
+     */
+    private void idle() throws InterruptedIOException {
+        idleNanos = idleNanos == 0 ? MINIMUM_IDLE_NANOS : Math.min(MAXIMUM_IDLE_NANOS, idleNanos * 2);
+        LockSupport.parkNanos(idleNanos);
+
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Interrupted waiting for OpenPort");
+        }
+    }
+
+    private Record decode() {
+        int position = buffer.position();
+        int limit = buffer.limit();
+        int p = position;
+
+        try {
+            while (p < limit) {
+                if (array[p] != 'a') {
+                    p ++;
+                    continue;
+                }
+
+                if (limit - p < 3) {
+                    return null;
+                } else if (array[p + 1] != 'r') {
+                    p ++;
+                    continue;
+                }
+
+                byte type = array[p + 2];
+                if (type >= '1' && type <= '9') {
+                    if (limit - p < DATA_HEADER_LENGTH) {
+                        return null;
+                    }
+
+                    int size = array[p + 3] & 0xFF;
+                    if (limit - p < DATA_HEADER_LENGTH + size) {
+                        return null;
+                    }
+
+                    channel = type - '0';
+                    code = 0;
+                    start = p + DATA_HEADER_LENGTH;
+                    end = start + size;
+                    return Record.DATA;
+                } else if (type == 'o' || type == 'e' || type == 'f' || type == 'i') {
+                    int newline = indexOf('\n', p + 3, Math.min(limit, p + MAXIMUM_LINE_LENGTH));
+                    if (newline < 0) {
+                        if (limit - p < MAXIMUM_LINE_LENGTH) {
+                            return null;
+                        }
+
+                        // No line break where there should have been one
+                        p ++;
+                        continue;
+                    }
+
+                    start = p;
+                    end = newline + 1;
+                    return decodeLine(type);
+                } else {
+                    p ++;
+                }
+            }
+
+            return null;
+        } finally {
+            if (p > position) {
+                skipped += p - position;
+                Log.can().log(Level.FINE, "Skipped " + (p - position) + " unexpected bytes from OpenPort");
+            }
+            buffer.position(p);
+        }
+    }
+
+    private Record decodeLine(byte type) {
+        // "are[channel] code", "arf[channel] index code"
+        int p = start + 3;
+        channel = 0;
+        if (p < end && array[p] >= '0' && array[p] <= '9') {
+            channel = array[p] - '0';
+            p ++;
+        }
+
+        int first = -1, second = -1;
+        while (p < end) {
+            if (array[p] >= '0' && array[p] <= '9') {
+                int value = 0;
+                while (p < end && array[p] >= '0' && array[p] <= '9') {
+                    value = (value * 10) + (array[p] - '0');
+                    p ++;
+                }
+
+                if (first < 0) {
+                    first = value;
+                } else if (second < 0) {
+                    second = value;
+                }
+            } else {
+                p ++;
+            }
+        }
+
+        switch (type) {
+            case 'o' -> {
+                code = 0;
+                return Record.OK;
+            }
+            case 'e' -> {
+                code = first;
+                return Record.ERROR;
+            }
+            case 'f' -> {
+                code = second >= 0 ? second : first;
+                return Record.FILTER;
+            }
+            default -> {
+                code = 0;
+                return Record.INFO;
+            }
+        }
+    }
+
+    private int indexOf(char c, int from, int to) {
+        for (int p = from; p < to; p ++) {
+            if (array[p] == c) {
+                return p;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the kind of record last decoded
+     * @return record, or null if there isn't one
+     */
+    public Record getRecord() {
+        return record;
+    }
+
+    /**
+     * Gets the channel a record is for
+     * @return channel, such as 5 for CAN or 6 for ISO 15765, or 0 if the record didn't name one
+     */
+    public int getChannel() {
+        return channel;
+    }
+
+    /**
+     * Gets the status code of an error or filter record
+     * @return J2534 status code, or -1 if the record didn't carry one
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * Finds the J2534 error the status code of an error or filter record stands for
+     * @return error, or null if the code isn't known
+     */
+    public J2534Error getError() {
+        for (J2534Error error : J2534Error.values()) {
+            if (error.getCode() == code) {
+                return error;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates the exception to raise for an error or filter record
+     * @return exception
+     */
+    public IOException getException() {
+        J2534Error error = getError();
+        if (error == J2534Error.ERR_TIMEOUT) {
+            return new SocketTimeoutException();
+        }
+        return new IOException(code + "/" + error);
+    }
+
+    /**
+     * Gets the arbitration ID of a received message
+     * @return arbitration ID
+     */
+    public int getArbitrationId() {
+        if (end - start < MESSAGE_HEADER_LENGTH) {
+            return 0;
+        }
+        return buffer.getInt(start + MESSAGE_HEADER_LENGTH - 4);
+    }
+
+    /**
+     * Gets the length of a received message's data
+     * @return length in bytes
+     */
+    public int getLength() {
+        if (record != Record.DATA) {
+            return 0;
+        }
+        return Math.max(0, end - start - MESSAGE_HEADER_LENGTH);
+    }
+
+    /**
+     * Copies a received message's data
+     * @param data array to copy into
+     * @param offs position in the array to copy to
+     * @return number of bytes copied
+     */
+    public int getData(byte[] data, int offs) {
+        int length = getLength();
+        if (length == 0) {
+            return 0;
+        }
+        System.arraycopy(array, start + MESSAGE_HEADER_LENGTH, data, offs, length);
+        return length;
+    }
+
+    /**
+     * Copies a received message's data
+     * @return data
+     */
+    public byte[] getData() {
+        byte[] data = new byte[getLength()];
+        getData(data, 0);
+        return data;
+    }
+
+    /**
+     * Gets the number of bytes skipped because they didn't belong to a record
+     * @return skipped bytes
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+}
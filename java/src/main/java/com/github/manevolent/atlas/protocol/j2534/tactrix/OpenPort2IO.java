@@ -0,0 +1,471 @@
+package com.github.manevolent.atlas.protocol.j2534.tactrix;
+
+import com.github.manevolent.atlas.Frame;
+import com.github.manevolent.atlas.FrameReader;
+import com.github.manevolent.atlas.logging.Log;
+import com.github.manevolent.atlas.protocol.can.CANArbitrationId;
+import com.github.manevolent.atlas.protocol.can.CANFrame;
+import com.github.manevolent.atlas.protocol.isotp.ISOTPFrame;
+import com.github.manevolent.atlas.protocol.j2534.J2534Error;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+/**
+ * Runs all I/O with an open OpenPort on two threads of its own, so that no caller waits on the device for another.
+ *
+ * Frame writers only encode their commands and queue them. The writer thread takes everything queued at once and
+ * writes it as one batch, so frames sent from several threads at about the same time share one USB transfer or
+ * serial write. When the queue is full, writers wait for room.
+ *
+ * The reader thread decodes everything the device sends and hands each frame to every reader subscribed to its
+ * channel. Each subscription has its own queue, so a subscriber that falls behind never holds up the others. A CAN
+ * subscriber that falls behind loses its oldest frames. An ISO-TP subscriber can't: a UDS session waiting on a
+ * response that was thrown away would only time out. Instead, once an ISO-TP subscriber's queue overflows, it is
+ * given what was already queued and then fails with an error.
+ */
+public class OpenPort2IO implements AutoCloseable {
+    public static final int CHANNEL_CAN = 5;
+    public static final int CHANNEL_ISO15765 = 6;
+
+    public static final int DEFAULT_WRITE_QUEUE_SIZE = 256;
+    public static final int DEFAULT_READ_QUEUE_SIZE = 1024;
+
+    /**
+     * Most commands written in one batch
+     */
+    private static final int MAXIMUM_BATCH = 64;
+
+    private static final long POLL_MILLIS = 100L;
+    private static final long CLOSE_TIMEOUT_MILLIS = 1_000L;
+
+    private final OpenPort2Decoder decoder;
+    private final OutputStream outputStream;
+    private final BlockingQueue<Command> writeQueue;
+    private final int readQueueSize;
+    private final List<Subscription<?>> subscriptions = new CopyOnWriteArrayList<>();
+
+    private final Thread writerThread;
+    private final Thread readerThread;
+    private volatile boolean closed;
+    private volatile boolean ended;
+    private volatile IOException writeFailure;
+
+    private final LongAdder commandsWritten = new LongAdder();
+    private final LongAdder batchesWritten = new LongAdder();
+    private final LongAdder writeLatencyNanos = new LongAdder();
+    private final AtomicLong maximumWriteLatencyNanos = new AtomicLong();
+    private final LongAdder framesRead = new LongAdder();
+    private final LongAdder framesDelivered = new LongAdder();
+    private final LongAdder framesDropped = new LongAdder();
+    private final LongAdder readLatencyNanos = new LongAdder();
+    private final AtomicLong maximumReadLatencyNanos = new AtomicLong();
+
+    public OpenPort2IO(OpenPort2Decoder decoder, OutputStream outputStream, int writeQueueSize, int readQueueSize) {
+        this.decoder = decoder;
+        this.outputStream = outputStream;
+        this.writeQueue = new ArrayBlockingQueue<>(writeQueueSize);
+        this.readQueueSize = readQueueSize;
+
+        this.writerThread = new Thread(this::runWriter, "OpenPort/Writer");
+        this.writerThread.setDaemon(true);
+        this.readerThread = new Thread(this::runReader, "OpenPort/Reader");
+        this.readerThread.setDaemon(true);
+    }
+
+    public OpenPort2IO(OpenPort2Decoder decoder, OutputStream outputStream) {
+        this(decoder, outputStream, DEFAULT_WRITE_QUEUE_SIZE, DEFAULT_READ_QUEUE_SIZE);
+    }
+
+    /**
+     * Starts the reader and writer threads. Nothing else may read from or write to the device after this.
+     */
+    public void start() {
+        writerThread.start();
+        readerThread.start();
+    }
+
+    /**
+     * Encodes a command to transmit a message
+     * @param channel channel to transmit on
+     * @param txFlags J2534 transmit flags
+     * @param arbitrationId arbitration ID to transmit to
+     * @param data message data
+     * @param length length of the message data
+     * @param paddedLength length to pad the message data to with zeroes
+     * @return command
+     */
+    public static byte[] encodeTransmit(int channel, int txFlags, int arbitrationId,
+                                        byte[] data, int length, int paddedLength) {
+        int messageLength = Math.max(length, paddedLength);
+        byte[] header = ("att" + channel + " " + (4 + messageLength) + " " + txFlags + "\r\n")
+                .getBytes(StandardCharsets.US_ASCII);
+
+        byte[] command = new byte[header.length + 4 + messageLength];
+        System.arraycopy(header, 0, command, 0, header.length);
+        int offs = header.length;
+        command[offs] = (byte) (arbitrationId >> 24);
+        command[offs + 1] = (byte) (arbitrationId >> 16);
+        command[offs + 2] = (byte) (arbitrationId >> 8);
+        command[offs + 3] = (byte) arbitrationId;
+        System.arraycopy(data, 0, command, offs + 4, length);
+        return command;
+    }
+
+    /**
+     * Queues a command to be written to the device
+     * @param command command, which the caller must not change afterwards
+     * @throws IOException if the device is closed, or an earlier write failed
+     */
+    public void write(byte[] command) throws IOException {
+        IOException failure = writeFailure;
+        if (failure != null) {
+            throw new IOException("Writing to OpenPort failed", failure);
+        } else if (closed) {
+            throw new IOException("OpenPort is closed");
+        }
+
+        try {
+            writeQueue.put(new Command(command, System.nanoTime()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        }
+    }
+
+    /**
+     * Subscribes to CAN frames received by the device
+     * @return a reader with its own queue of frames
+     */
+    public FrameReader<CANFrame> subscribeCAN() {
+        return subscribe(CHANNEL_CAN);
+    }
+
+    /**
+     * Subscribes to ISO-TP messages received by the device. If the reader falls so far behind that its queue
+     * overflows, the subscription fails: once the messages already queued have been read, reads throw an IOException.
+     * @return a reader with its own queue of messages
+     */
+    public FrameReader<ISOTPFrame> subscribeISOTP() {
+        return subscribe(CHANNEL_ISO15765);
+    }
+
+    private <F extends Frame> Subscription<F> subscribe(int channel) {
+        Subscription<F> subscription = new Subscription<>(channel, readQueueSize, channel == CHANNEL_ISO15765);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    private void runWriter() {
+        List<Command> batch = new ArrayList<>(MAXIMUM_BATCH);
+        byte[] buffer = new byte[1024];
+
+        try {
+            while (!closed || !writeQueue.isEmpty()) {
+                Command first = writeQueue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+
+                batch.add(first);
+                writeQueue.drainTo(batch, MAXIMUM_BATCH - 1);
+
+                int length = 0;
+                for (Command command : batch) {
+                    if (length + command.data.length > buffer.length) {
+                        byte[] larger = new byte[Math.max(buffer.length * 2, length + command.data.length)];
+                        System.arraycopy(buffer, 0, larger, 0, length);
+                        buffer = larger;
+                    }
+                    System.arraycopy(command.data, 0, buffer, length, command.data.length);
+                    length += command.data.length;
+                }
+
+                outputStream.write(buffer, 0, length);
+                outputStream.flush();
+
+                long now = System.nanoTime();
+                for (Command command : batch) {
+                    long latency = now - command.queuedNanos;
+                    writeLatencyNanos.add(latency);
+                    maximumWriteLatencyNanos.accumulateAndGet(latency, Math::max);
+                }
+
+                commandsWritten.add(batch.size());
+                batchesWritten.increment();
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            if (!closed) {
+                Log.can().log(Level.WARNING, "Problem writing to OpenPort", e);
+            }
+            writeFailure = e;
+            writeQueue.clear();
+        }
+    }
+
+    private void runReader() {
+        try {
+            while (!closed) {
+                OpenPort2Decoder.Record record;
+                try {
+                    record = decoder.next();
+                } catch (SocketTimeoutException e) {
+                    continue;
+                }
+
+                if (record == null) {
+                    break;
+                }
+
+                switch (record) {
+                    case DATA -> {
+                        Frame frame = newFrame();
+                        if (frame != null) {
+                            framesRead.increment();
+                            deliver(decoder.getChannel(), frame);
+                        }
+                    }
+                    case ERROR -> deliver(decoder.getChannel(), decoder.getException());
+                    case FILTER -> {
+                        if (decoder.getCode() != J2534Error.STATUS_NOERROR.getCode()) {
+                            deliver(decoder.getChannel(), decoder.getException());
+                        }
+                    }
+                    default -> {
+                        // Acknowledgements of frames we wrote, and the like
+                    }
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                Log.can().log(Level.WARNING, "Problem reading from OpenPort", e);
+                deliver(0, e);
+            }
+        } finally {
+            ended = true;
+        }
+    }
+
+    private Frame newFrame() {
+        return switch (decoder.getChannel()) {
+            case CHANNEL_CAN -> new CANFrame(decoder.getArbitrationId(), decoder.getData());
+            // Empty messages are the device's indications that a message was sent
+            case CHANNEL_ISO15765 -> decoder.getLength() > 0 ?
+                    new ISOTPFrame(new CANArbitrationId(decoder.getArbitrationId()), decoder.getData()) : null;
+            default -> null;
+        };
+    }
+
+    private void deliver(int channel, Object item) {
+        long now = System.nanoTime();
+        for (Subscription<?> subscription : subscriptions) {
+            if (channel == 0 || subscription.channel == channel) {
+                subscription.offer(new Received(item, now));
+            }
+        }
+    }
+
+    public int getWriteQueueDepth() {
+        return writeQueue.size();
+    }
+
+    public int getReadQueueDepth() {
+        int depth = 0;
+        for (Subscription<?> subscription : subscriptions) {
+            depth += subscription.queue.size();
+        }
+        return depth;
+    }
+
+    public long getCommandsWritten() {
+        return commandsWritten.sum();
+    }
+
+    public long getBatchesWritten() {
+        return batchesWritten.sum();
+    }
+
+    /**
+     * Gets the average time from a command being queued to it being written
+     * @return latency in nanoseconds
+     */
+    public long getWriteLatencyNanos() {
+        long written = commandsWritten.sum();
+        return written == 0 ? 0 : writeLatencyNanos.sum() / written;
+    }
+
+    public long getMaximumWriteLatencyNanos() {
+        return maximumWriteLatencyNanos.get();
+    }
+
+    public long getFramesRead() {
+        return framesRead.sum();
+    }
+
+    /**
+     * Gets the number of frames dropped from the queues of subscribers that fell behind, including those lost when an
+     * ISO-TP subscriber overflowed
+     * @return dropped frames
+     */
+    public long getFramesDropped() {
+        return framesDropped.sum();
+    }
+
+    /**
+     * Gets the average time from a frame being received to a subscriber reading it
+     * @return latency in nanoseconds
+     */
+    public long getReadLatencyNanos() {
+        long delivered = framesDelivered.sum();
+        return delivered == 0 ? 0 : readLatencyNanos.sum() / delivered;
+    }
+
+    public long getMaximumReadLatencyNanos() {
+        return maximumReadLatencyNanos.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("written=%d/%d batches (%d us avg, %d us max), read=%d (%d us avg, %d us max, %d dropped)",
+                getCommandsWritten(), getBatchesWritten(),
+                TimeUnit.NANOSECONDS.toMicros(getWriteLatencyNanos()),
+                TimeUnit.NANOSECONDS.toMicros(getMaximumWriteLatencyNanos()),
+                getFramesRead(),
+                TimeUnit.NANOSECONDS.toMicros(getReadLatencyNanos()),
+                TimeUnit.NANOSECONDS.toMicros(getMaximumReadLatencyNanos()),
+                getFramesDropped());
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            // Let anything already queued go out first
+            writerThread.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            outputStream.close();
+        } finally {
+            decoder.close();
+            Log.can().log(Level.FINE, "Closed OpenPort: " + this);
+        }
+    }
+
+    private static class Command {
+        private final byte[] data;
+        private final long queuedNanos;
+
+        private Command(byte[] data, long queuedNanos) {
+            this.data = data;
+            this.queuedNanos = queuedNanos;
+        }
+    }
+
+    private static class Received {
+        private final Object item;
+        private final long receivedNanos;
+
+        private Received(Object item, long receivedNanos) {
+            this.item = item;
+            this.receivedNanos = receivedNanos;
+        }
+    }
+
+    private class Subscription<F extends Frame> implements FrameReader<F> {
+        private final int channel;
+        private final BlockingQueue<Received> queue;
+        private final boolean lossless;
+        private volatile IOException overflow;
+
+        /**
+         * @param channel channel to receive frames from
+         * @param size most frames held for the subscriber
+         * @param lossless true to fail the subscription when it overflows, false to drop its oldest frames
+         */
+        private Subscription(int channel, int size, boolean lossless) {
+            this.channel = channel;
+            this.queue = new ArrayBlockingQueue<>(size);
+            this.lossless = lossless;
+        }
+
+        private void offer(Received received) {
+            if (!lossless) {
+                while (!queue.offer(received)) {
+                    if (queue.poll() != null) {
+                        framesDropped.increment();
+                    }
+                }
+            } else if (overflow != null || !queue.offer(received)) {
+                if (overflow == null) {
+                    overflow = new IOException("ISO-TP reader fell behind; more than " + queue.size()
+                            + " messages were waiting to be read");
+                    Log.can().log(Level.WARNING, overflow.getMessage());
+                }
+
+                framesDropped.increment();
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public F read() throws IOException {
+            Received received;
+            try {
+                while ((received = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                    IOException overflow = this.overflow;
+                    if (overflow != null) {
+                        throw new IOException("ISO-TP subscription failed", overflow);
+                    }
+
+                    if (ended || closed) {
+                        received = queue.poll();
+                        if (received == null) {
+                            return null;
+                        }
+                        break;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(e.getMessage());
+            }
+
+            if (received.item instanceof IOException) {
+                throw (IOException) received.item;
+            }
+
+            long latency = System.nanoTime() - received.receivedNanos;
+            readLatencyNanos.add(latency);
+            maximumReadLatencyNanos.accumulateAndGet(latency, Math::max);
+            framesDelivered.increment();
+            return (F) received.item;
+        }
+
+        @Override
+        public void close() {
+            subscriptions.remove(this);
+        }
+    }
+}
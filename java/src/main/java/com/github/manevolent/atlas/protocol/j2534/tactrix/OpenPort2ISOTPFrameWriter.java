@@ -6,34 +6,27 @@ import com.github.manevolent.atlas.FrameWriter;
 import com.github.manevolent.atlas.protocol.can.CANArbitrationId;
 
 import java.io.IOException;
-import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
 
 // Much appreciation for https://github.com/brandonros/rust-tactrix-openport/blob/master/src/lib.rs
 public class OpenPort2ISOTPFrameWriter implements FrameWriter<BasicFrame>, AutoCloseable {
-    private static final byte channelId = 6;
     private static final int txFlags = 0x00000040;
 
-    private final OutputStream outputStream;
+    private final OpenPort2IO io;
 
-    public OpenPort2ISOTPFrameWriter(OutputStream outputStream) {
-        this.outputStream = outputStream;
+    public OpenPort2ISOTPFrameWriter(OpenPort2IO io) {
+        this.io = io;
     }
 
     @Override
     public void close() throws Exception {
-        outputStream.close();
+        io.close();
     }
 
+    /**
+     * Queues a message to be written. The message's data is copied, so the frame may be reused straight away.
+     */
     @Override
     public void write(Address address, BasicFrame frame) throws IOException {
-        String command = String.format("att%d %d %d\r\n",
-                channelId,
-                4 + frame.getLength(), // 8 bytes CAN + 4 bytes arb ID
-                txFlags
-        );
-        outputStream.write(command.getBytes(StandardCharsets.US_ASCII));
-
         int arbitrationId;
         if (address instanceof CANArbitrationId) {
             arbitrationId = ((CANArbitrationId) address).getArbitrationId();
@@ -41,15 +34,7 @@ public class OpenPort2ISOTPFrameWriter implements FrameWriter<BasicFrame>, AutoC
             throw new IllegalArgumentException("Arbitration ID not supplied");
         }
 
-        byte[] arbitrationIdBytes = new byte[4];
-        arbitrationIdBytes[0] = (byte) ((arbitrationId >> 24) & 0xFF);
-        arbitrationIdBytes[1] = (byte) ((arbitrationId >> 16) & 0xFF);
-        arbitrationIdBytes[2] = (byte) ((arbitrationId >> 8) & 0xFF);
-        arbitrationIdBytes[3] = (byte) ((arbitrationId) & 0xFF);
-        outputStream.write(arbitrationIdBytes);
-
-        outputStream.write(frame.getData());
-
-        outputStream.flush();
+        io.write(OpenPort2IO.encodeTransmit(OpenPort2IO.CHANNEL_ISO15765, txFlags, arbitrationId,
+                frame.getData(), frame.getLength(), 0));
     }
 }
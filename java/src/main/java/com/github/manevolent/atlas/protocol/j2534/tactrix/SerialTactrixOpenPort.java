@@ -15,38 +15,39 @@ import java.io.*;
 import java.nio.charset.StandardCharsets;
 
 public class SerialTactrixOpenPort implements J2534Device {
-    private final InputStream is;
     private final OutputStream os;
 
+    // Command responses and received frames are read through the same buffer
+    private final OpenPort2Decoder decoder;
+    private volatile OpenPort2IO io;
+
     public SerialTactrixOpenPort(InputStream is, OutputStream os) {
-        this.is = is;
         this.os = new BufferedOutputStream(os);
+        this.decoder = new OpenPort2Decoder(is);
     }
 
-    private String readLine() throws IOException {
-        StringBuilder sb = new StringBuilder();
-        int c;
-
-        while ((c = is.read()) >= 0) {
-            if (c == '\r') {
-                continue;
-            }
-            if (c == '\n') {
-                break;
-            }
+    private OpenPort2IO newIO() {
+        // Once started, everything goes through the I/O threads
+        OpenPort2IO io = new OpenPort2IO(decoder, os);
+        this.io = io;
+        return io;
+    }
 
-            sb.append((char)c);
-        }
+    /**
+     * Gets the I/O threads of the open channel, such as to subscribe to its frames or see its statistics
+     * @return I/O threads, or null if no channel has been opened
+     */
+    public OpenPort2IO getIO() {
+        return io;
+    }
 
-        return sb.toString();
+    private String readLine() throws IOException {
+        return decoder.readLine();
     }
 
     private void preconnect() throws IOException {
         // Empty the buffer
-        int read;
-        //noinspection StatementWithEmptyBody
-        while (is.available() > 0 && (read = is.read()) >= 0) {
-        }
+        decoder.drain();
 
         os.write("\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
         os.write("ati\r\n".getBytes(StandardCharsets.US_ASCII));
@@ -166,21 +167,25 @@ public class SerialTactrixOpenPort implements J2534Device {
         connect(5);
         setupPassthroughCAN(filters);
 
+        OpenPort2IO io = newIO();
+        FrameReader<CANFrame> reader = io.subscribeCAN();
+        FrameWriter<CANFrame> writer = new OpenPort2CANFrameWriter(io);
+        io.start();
+
         return new CANDevice() {
             @Override
             public FrameReader<CANFrame> reader() {
-                return new OpenPort2CANFrameReader(is);
+                return reader;
             }
 
             @Override
             public FrameWriter<CANFrame> writer() {
-                return new OpenPort2CANFrameWriter(os);
+                return writer;
             }
 
             @Override
             public void close() throws Exception {
-                is.close();
-                os.close();
+                io.close();
             }
         };
     }
@@ -191,21 +196,25 @@ public class SerialTactrixOpenPort implements J2534Device {
         connect(6);
         setupPassthroughISOTP(filters);
 
+        OpenPort2IO io = newIO();
+        FrameReader<ISOTPFrame> reader = io.subscribeISOTP();
+        FrameWriter<BasicFrame> writer = new OpenPort2ISOTPFrameWriter(io);
+        io.start();
+
         return new ISOTPDevice() {
             @Override
             public void close() throws Exception {
-                is.close();
-                os.close();
+                io.close();
             }
 
             @Override
             public FrameReader<ISOTPFrame> reader() {
-                return new OpenPort2ISOTPFrameReader(is);
+                return reader;
             }
 
             @Override
             public FrameWriter<BasicFrame> writer() {
-                return new OpenPort2ISOTPFrameWriter(os);
+                return writer;
             }
         };
     }
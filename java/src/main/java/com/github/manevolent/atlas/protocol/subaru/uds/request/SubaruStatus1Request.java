@@ -20,6 +20,10 @@ public class SubaruStatus1Request extends UDSRequest<SubaruStatus1Response> {
         this.code = code;
     }
 
+    public int getCode() {
+        return code;
+    }
+
     @Override
     public void read(BitReader reader) throws IOException {
         code = reader.readByte() & 0xFF;
@@ -3,48 +3,177 @@ package com.github.manevolent.atlas.protocol.uds;
 import com.github.manevolent.atlas.Address;
 import com.github.manevolent.atlas.FrameReader;
 import com.github.manevolent.atlas.FrameWriter;
+import com.github.manevolent.atlas.logging.Log;
 import com.github.manevolent.atlas.protocol.isotp.ISOTPSpyDevice;
 import com.github.manevolent.atlas.protocol.j2534.ISOTPDevice;
 import com.github.manevolent.atlas.protocol.uds.response.UDSNegativeResponse;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.SocketTimeoutException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.TimeoutException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
-
+import java.util.logging.Level;
+
+/**
+ * A UDS session that reads responses on a background thread and hands them to the transactions waiting on them.
+ *
+ * Up to a window of requests may be in flight for each service ID and reply address at once. Responses are correlated
+ * with the oldest outstanding request of the same service ID that expects a response from the address it came from,
+ * so requests to the same component are answered in the order they were sent. Requests sent without a reply address
+ * accept a response from any address, so they share one window for each service ID and are never in flight alongside
+ * requests that have one. With the default window of 1, each request waits for the previous request like it to
+ * complete before it is sent.
+ *
+ * Each transaction times out after the timeout configured for its service ID. A server that answers with
+ * RESPONSE_PENDING extends the deadlines of the transactions it could be answering. A request that completes without
+ * its response, such as by timing out, is abandoned along with the requests queued behind it: the responses still on
+ * their way are dropped, and nothing more is sent for that service until they have arrived or timed out. Otherwise a
+ * late or missing response would shift every later response onto the wrong request.
+ */
 public class AsyncUDSSession extends AbstractUDSSession implements UDSSession {
+    public static final int DEFAULT_WINDOW = 1;
+
     private final ISOTPDevice device;
     private final UDSProtocol protocol;
+    private final int window;
 
-    @SuppressWarnings("rawtypes")
-    private final Map<Integer, UDSTransaction> activeTransactions = new HashMap<>();
+    /**
+     * Outstanding requests and the room left to send more, indexed by service ID
+     */
+    private final Service[] services = new Service[256];
+
+    /**
+     * Response timeouts in milliseconds, indexed by service ID
+     */
+    private final AtomicLongArray timeouts = new AtomicLongArray(256);
+    private volatile long responsePendingTimeout = UDSTransaction.RESPONSE_PENDING_TIMEOUT_MILLIS;
 
     private final Reader readThread;
     private UDSFrameReader reader;
     private UDSFrameWriter writer;
 
-    private boolean closed;
+    private volatile boolean closed;
 
     private final Object[] writeLocks = new Object[256];
 
-    public AsyncUDSSession(ISOTPDevice device, UDSProtocol protocol) {
+    /**
+     * Creates a new session
+     * @param device ISO-TP device to communicate over
+     * @param protocol UDS protocol to use
+     * @param window maximum number of requests in flight for each service ID and reply address
+     */
+    public AsyncUDSSession(ISOTPDevice device, UDSProtocol protocol, int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Invalid window: " + window);
+        }
+
         this.device = device;
         this.protocol = protocol;
+        this.window = window;
         this.readThread = new Reader();
 
         for (int i = 0; i < writeLocks.length; i ++) {
             writeLocks[i] = new Object();
+            services[i] = new Service(i);
+            timeouts.set(i, UDSTransaction.TIMEOUT_MILLIS);
         }
     }
 
+    public AsyncUDSSession(ISOTPDevice device, UDSProtocol protocol) {
+        this(device, protocol, DEFAULT_WINDOW);
+    }
+
     public AsyncUDSSession(ISOTPDevice device) {
         this(device, UDSProtocol.STANDARD);
     }
 
+    /**
+     * Gets the maximum number of requests that may be in flight for each service ID and reply address, unless set
+     * otherwise for a service
+     * @return request window
+     */
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * Gets the maximum number of requests that may be in flight for a service ID and each reply address
+     * @param serviceId service ID of the request
+     * @return request window
+     */
+    public int getWindow(int serviceId) {
+        return services[serviceId & 0xFF].getWindow();
+    }
+
+    /**
+     * Sets the maximum number of requests that may be in flight for a service ID and each reply address. A service
+     * whose responses can't be told apart, such as memory reads, should only be given more than one if its
+     * responses can't be lost.
+     * @param serviceId service ID of the request
+     * @param window request window
+     */
+    public void setWindow(int serviceId, int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Invalid window: " + window);
+        }
+
+        services[serviceId & 0xFF].setWindow(window);
+    }
+
+    /**
+     * Sets the maximum number of requests that may be in flight for a service ID and each reply address
+     * @param requestClass class of the request
+     * @param window request window
+     */
+    public void setWindow(Class<? extends UDSRequest<?>> requestClass, int window) {
+        setWindow(protocol.getSid(requestClass), window);
+    }
+
+    /**
+     * Gets how long to wait for a response to a request
+     * @param serviceId service ID of the request
+     * @return timeout, in milliseconds
+     */
+    public long getTimeout(int serviceId) {
+        return timeouts.get(serviceId & 0xFF);
+    }
+
+    /**
+     * Sets how long to wait for a response to a request
+     * @param serviceId service ID of the request
+     * @param timeoutMillis timeout, in milliseconds
+     */
+    public void setTimeout(int serviceId, long timeoutMillis) {
+        timeouts.set(serviceId & 0xFF, timeoutMillis);
+    }
+
+    /**
+     * Sets how long to wait for a response to a request
+     * @param requestClass class of the request
+     * @param timeoutMillis timeout, in milliseconds
+     */
+    public void setTimeout(Class<? extends UDSRequest<?>> requestClass, long timeoutMillis) {
+        setTimeout(protocol.getSid(requestClass), timeoutMillis);
+    }
+
+    public long getResponsePendingTimeout() {
+        return responsePendingTimeout;
+    }
+
+    /**
+     * Sets how much longer to wait for a response once the server has answered with RESPONSE_PENDING
+     * @param timeoutMillis timeout, in milliseconds
+     */
+    public void setResponsePendingTimeout(long timeoutMillis) {
+        this.responsePendingTimeout = timeoutMillis;
+    }
+
     public void start() {
         if (!this.readThread.isAlive()) {
             this.readThread.start();
@@ -93,7 +222,6 @@ public class AsyncUDSSession extends AbstractUDSSession implements UDSSession {
         return n;
     }
 
-    @SuppressWarnings({"unchecked", "rawtypes"})
     protected UDSResponse handleNext() throws IOException {
         UDSFrame frame = reader().read();
         if (frame == null) {
@@ -103,21 +231,29 @@ public class AsyncUDSSession extends AbstractUDSSession implements UDSSession {
         if (frame.getBody() instanceof UDSResponse) {
             if (frame.getBody() instanceof UDSNegativeResponse) {
                 UDSNegativeResponse negativeResponse = (UDSNegativeResponse) frame.getBody();
+                int serviceId = negativeResponse.getRejectedSid() & 0xFF;
                 if (negativeResponse.getResponseCode() == NegativeResponseCode.RESPONSE_PENDING) {
+                    // The server is still working on a request, so give it and any requests behind it more time
+                    for (Outstanding outstanding : services[serviceId].outstanding) {
+                        if (outstanding.transaction.accepts(frame.getAddress())) {
+                            outstanding.transaction.extendTimeout(responsePendingTimeout, TimeUnit.MILLISECONDS);
+                        }
+                    }
                     return null;
                 }
 
-                UDSTransaction transaction = activeTransactions.get(negativeResponse.getRejectedSid() & 0xFF);
-                if (transaction != null) {
-                    transaction.supplyException(negativeResponse);
+                Outstanding outstanding = correlate(serviceId, frame.getAddress());
+                if (outstanding != null) {
+                    outstanding.transaction.supplyException(negativeResponse);
                 }
             } else {
                 int responseSid = frame.getServiceId();
                 UDSQuery query = protocol.getBySid(responseSid);
                 int serviceId = query.getMapping(UDSSide.REQUEST).getSid();
-                UDSTransaction transaction = activeTransactions.get(serviceId & 0xFF);
-                if (transaction != null) {
-                    transaction.supply((UDSResponse) frame.getBody());
+                UDSResponse response = (UDSResponse) frame.getBody();
+                Outstanding outstanding = correlate(serviceId & 0xFF, frame.getAddress());
+                if (outstanding != null) {
+                    outstanding.supply(response);
                 }
             }
 
@@ -128,6 +264,52 @@ public class AsyncUDSSession extends AbstractUDSSession implements UDSSession {
         }
     }
 
+    /**
+     * Takes the oldest outstanding request for a service ID that accepts a response from a given address off the
+     * queue. A request that was abandoned still takes its response, which is then dropped by completing an
+     * already-completed transaction; skipping over it would hand that response to the request behind it.
+     * @param serviceId service ID of the request
+     * @param address address the response was received from
+     * @return request the response belongs to, or null if there isn't one
+     */
+    private Outstanding correlate(int serviceId, Address address) {
+        for (Outstanding outstanding : services[serviceId].outstanding) {
+            if (outstanding.transaction.accepts(address)) {
+                outstanding.retire();
+                return outstanding;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Gives up on a request that completed without its response. Its response, or the response to a request queued
+     * behind it, may still arrive; so every request behind it that the same responses could answer fails too, and
+     * each stays queued to take its response until that response arrives or the service's timeout passes.
+     * @param abandoned request to give up on
+     */
+    private void abandon(Outstanding abandoned) {
+        Service service = abandoned.service;
+        if (!service.abandon(abandoned)) {
+            return;
+        }
+
+        CompletableFuture.delayedExecutor(getTimeout(service.serviceId), TimeUnit.MILLISECONDS)
+                .execute(abandoned::retire);
+
+        boolean behind = false;
+        for (Outstanding outstanding : service.outstanding) {
+            if (outstanding == abandoned) {
+                behind = true;
+            } else if (behind && outstanding.overlaps(abandoned)) {
+                outstanding.transaction.supplyException(new IOException("Abandoned "
+                        + outstanding.transaction.getRequestClass().getSimpleName()
+                        + " after an earlier request went unanswered"));
+            }
+        }
+    }
+
     public <Q extends UDSRequest<T>, T extends UDSResponse>
     void requestAndWait(UDSComponent component, Q request)
             throws IOException, TimeoutException {
@@ -167,39 +349,105 @@ public class AsyncUDSSession extends AbstractUDSSession implements UDSSession {
         }
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Sends a request without waiting for its response. Like {@link #request(Address, Address, UDSRequest)}, this
+     * blocks until there is room in the request's window; only the response is waited on asynchronously.
+     * @param component component to send the request to, and expect the response from
+     * @param request request to send
+     * @return future completed with the response
+     */
+    public <Q extends UDSRequest<T>, T extends UDSResponse>
+        CompletableFuture<T> requestAsync(UDSComponent component, Q request) {
+        return requestAsync(component.getSendAddress(), component.getReplyAddress(), request);
+    }
+
+    /**
+     * Sends a request without waiting for its response. Like {@link #request(Address, Address, UDSRequest)}, this
+     * blocks until there is room in the request's window; only the response is waited on asynchronously.
+     * @param destination address to send the request to
+     * @param request request to send
+     * @return future completed with the response
+     */
+    public <Q extends UDSRequest<T>, T extends UDSResponse>
+        CompletableFuture<T> requestAsync(Address destination, Q request) {
+        return requestAsync(destination, null, request);
+    }
+
+    private <Q extends UDSRequest<T>, T extends UDSResponse>
+        CompletableFuture<T> requestAsync(Address destination, Address replyAddress, Q request) {
+        try {
+            UDSTransaction<Q, T> transaction = request(destination, replyAddress, request);
+            return transaction.getFuture();
+        } catch (IOException | TimeoutException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
     public <Q extends UDSRequest<T>, T extends UDSResponse>
         UDSTransaction<Q, T> request(Address destination, Q request) throws IOException, TimeoutException {
-        final int serviceId = protocol.getSid(request.getClass());
-        synchronized (writeLocks[serviceId & 0xFF]) {
-            UDSTransaction<Q, T> transaction = activeTransactions.get(serviceId & 0xFF);
-            if (transaction != null) {
-                // Wait for this transaction to complete before submitting another
-                transaction.join();
-            }
-
-            // Construct the new transaction
-            transaction = new UDSTransaction<>((Class<Q>) request.getClass(),
-                                                request.isResponseExpected()) {
-                @Override
-                public void close() {
-                    AsyncUDSSession.this.activeTransactions.remove(serviceId & 0xFF, this);
+        return request(destination, null, request);
+    }
+
+    /**
+     * Sends a request, waiting first for room in its window. While abandoned requests for the same service are
+     * waiting on their responses, this waits for them as well.
+     * @param destination address to send the request to
+     * @param replyAddress address the response is expected from, or null to accept it from any address
+     * @param request request to send
+     * @return transaction for the request
+     * @throws TimeoutException if the window stayed full for longer than the transaction timeout
+     */
+    @SuppressWarnings("unchecked")
+    public <Q extends UDSRequest<T>, T extends UDSResponse>
+        UDSTransaction<Q, T> request(Address destination, Address replyAddress, Q request)
+            throws IOException, TimeoutException {
+        final int serviceId = protocol.getSid(request.getClass()) & 0xFF;
+        final Service service = services[serviceId];
+        final long timeout = getTimeout(serviceId);
+
+        // Construct the new transaction
+        UDSTransaction<Q, T> transaction = new UDSTransaction<>((Class<Q>) request.getClass(),
+                                            request.isResponseExpected(), replyAddress) {
+            @Override
+            public void close() {
+                // Stop waiting on a response that isn't going to be read
+                supplyException(new IOException("Transaction closed"));
+            }
+        };
+
+        Outstanding outstanding = null;
+        if (transaction.isResponseExpected()) {
+            // Wait for room in the window before submitting another request
+            if (!service.acquire(replyAddress, timeout)) {
+                throw new TimeoutException("Timeout waiting to send " + request.getClass().getSimpleName());
+            }
+
+            // A transaction that completes before its response is taken off the queue gives up on that response
+            Outstanding queued = outstanding = new Outstanding(service, transaction);
+            transaction.getFuture().whenComplete((response, error) -> {
+                if (!queued.isRetired()) {
+                    abandon(queued);
                 }
-            };
+            });
+        }
 
-            activeTransactions.put(serviceId & 0xFF, transaction);
+        synchronized (writeLocks[serviceId]) {
+            if (outstanding != null) {
+                // Queue the transaction in the same order the requests are written
+                service.outstanding.add(outstanding);
+                transaction.setTimeout(timeout, TimeUnit.MILLISECONDS);
+                transaction.scheduleTimeout();
+            }
 
             // Write to the bus
             try {
                 writer().write(destination, request);
             } catch (IOException ex) {
-                // If there is a failure, remove the transaction, otherwise we 'brick' this SID
-                try {
-                    transaction.close();
-                } catch (Exception e) {
-                    ex.addSuppressed(e);
+                // Nothing was sent, so there's no response to wait for; otherwise we 'brick' this SID
+                if (outstanding != null) {
+                    outstanding.retire();
                 }
-
+                transaction.supplyException(ex);
                 throw ex;
             }
 
@@ -228,7 +476,7 @@ public class AsyncUDSSession extends AbstractUDSSession implements UDSSession {
                 device.close();
             }
 
-            activeTransactions.clear();
+            failOutstanding(new EOFException("Session closed"));
 
             onDisconnected(this);
         } catch (Exception e) {
@@ -236,6 +484,25 @@ public class AsyncUDSSession extends AbstractUDSSession implements UDSSession {
         }
     }
 
+    /**
+     * Fails every request still waiting for a response
+     * @param cause exception to fail them with
+     */
+    private void failOutstanding(Exception cause) {
+        for (Service service : services) {
+            Outstanding outstanding;
+            while ((outstanding = service.outstanding.poll()) != null) {
+                outstanding.retire();
+                outstanding.transaction.supplyException(cause);
+            }
+
+            // Wake anything waiting for room in a window
+            synchronized (service) {
+                service.notifyAll();
+            }
+        }
+    }
+
     private class Reader extends Thread {
         Reader() {
             this.setName("UDSSession/" + device.toString() + "/" + protocol.toString());
@@ -247,8 +514,176 @@ public class AsyncUDSSession extends AbstractUDSSession implements UDSSession {
             try {
                 handle();
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                // Reads fail once the device is closed out from under us
+                if (closed) {
+                    return;
+                }
+
+                // Nothing more can be read, so the requests waiting on responses get the error now rather than
+                // timing out one by one
+                Log.can().log(Level.WARNING, "Problem reading from " + device, e);
+                failOutstanding(e);
+
+                try {
+                    AsyncUDSSession.this.close();
+                } catch (IOException ex) {
+                    Log.can().log(Level.WARNING, "Problem closing " + device, ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * The requests outstanding for one service ID, oldest first, and the window they share
+     */
+    private final class Service {
+        private final int serviceId;
+        private final Queue<Outstanding> outstanding = new ConcurrentLinkedQueue<>();
+
+        // Requests holding a place in the window, by reply address; guarded by this
+        private final Map<Address, Integer> addressed = new HashMap<>();
+        private int unaddressed;
+        private int abandoned;
+        private int window = AsyncUDSSession.this.window;
+
+        private Service(int serviceId) {
+            this.serviceId = serviceId;
+        }
+
+        private synchronized int getWindow() {
+            return window;
+        }
+
+        private synchronized void setWindow(int window) {
+            this.window = window;
+            notifyAll();
+        }
+
+        private boolean hasRoom(Address replyAddress) {
+            if (abandoned > 0) {
+                // Responses to abandoned requests may still arrive, and would be taken for the new request's
+                return false;
+            } else if (replyAddress == null) {
+                return addressed.isEmpty() && unaddressed < window;
+            } else {
+                return unaddressed == 0 && addressed.getOrDefault(replyAddress, 0) < window;
+            }
+        }
+
+        /**
+         * Takes a place in the window, waiting for one to free up
+         * @param replyAddress address the response is expected from, or null for any address
+         * @param timeoutMillis longest to wait for a full window; waiting on abandoned requests doesn't count
+         * @return true if a place was taken, false if the window stayed full
+         */
+        private synchronized boolean acquire(Address replyAddress, long timeoutMillis) throws IOException {
+            long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            long deadline = System.nanoTime() + timeoutNanos;
+            try {
+                while (!hasRoom(replyAddress)) {
+                    if (closed) {
+                        throw new EOFException("Session closed");
+                    }
+
+                    if (abandoned > 0) {
+                        // Abandoned requests are retired by their own timeouts, if not by their responses
+                        wait();
+                        deadline = System.nanoTime() + timeoutNanos;
+                        continue;
+                    }
+
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(e.getMessage());
+            }
+
+            if (replyAddress == null) {
+                unaddressed ++;
+            } else {
+                addressed.merge(replyAddress, 1, Integer::sum);
+            }
+            return true;
+        }
+
+        /**
+         * Marks a request as abandoned
+         * @return true if it wasn't already, and is still waiting on its response
+         */
+        private synchronized boolean abandon(Outstanding outstanding) {
+            if (outstanding.abandoned || outstanding.isRetired()) {
+                return false;
+            }
+
+            outstanding.abandoned = true;
+            abandoned ++;
+            return true;
+        }
+
+        private synchronized void release(Outstanding outstanding) {
+            Address replyAddress = outstanding.transaction.getReplyAddress();
+            if (replyAddress == null) {
+                unaddressed --;
+            } else {
+                addressed.computeIfPresent(replyAddress, (address, count) -> count > 1 ? count - 1 : null);
+            }
+
+            if (outstanding.abandoned) {
+                abandoned --;
             }
+
+            notifyAll();
+        }
+    }
+
+    /**
+     * A request holding a place in its service's window until its response arrives, or it is given up on
+     */
+    private static final class Outstanding {
+        private final Service service;
+        private final UDSTransaction<?, ?> transaction;
+        private final AtomicBoolean retired = new AtomicBoolean();
+
+        // Guarded by the service
+        private boolean abandoned;
+
+        private Outstanding(Service service, UDSTransaction<?, ?> transaction) {
+            this.service = service;
+            this.transaction = transaction;
+        }
+
+        private boolean isRetired() {
+            return retired.get();
+        }
+
+        /**
+         * Takes this request off its service's queue and gives up its place in the window
+         */
+        private void retire() {
+            if (retired.compareAndSet(false, true)) {
+                service.outstanding.remove(this);
+                service.release(this);
+            }
+        }
+
+        /**
+         * Checks if a response to another request could be taken for a response to this one
+         */
+        private boolean overlaps(Outstanding other) {
+            Address replyAddress = transaction.getReplyAddress();
+            Address otherAddress = other.transaction.getReplyAddress();
+            return replyAddress == null || otherAddress == null || replyAddress.equals(otherAddress);
+        }
+
+        @SuppressWarnings("unchecked")
+        private void supply(UDSResponse response) {
+            // The response's service ID maps back to this request's, so it is the type this transaction expects
+            ((UDSTransaction<?, UDSResponse>) transaction).supply(response);
         }
     }
 }
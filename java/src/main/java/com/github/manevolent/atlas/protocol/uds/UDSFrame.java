@@ -11,6 +11,7 @@ public class UDSFrame implements Frame, Addressed {
     private UDSBody body;
     private Direction direction = Direction.WRITE;
     private byte[] remaining;
+    private byte[] raw;
 
     public UDSFrame(UDSProtocol protocol) {
         this.protocol = protocol;
@@ -50,6 +51,18 @@ public class UDSFrame implements Frame, Addressed {
         this.direction = direction;
     }
 
+    /**
+     * Gets the bytes this frame was read from, starting with the service ID
+     * @return encoded frame, or null if the frame wasn't read from a transport
+     */
+    public byte[] getRaw() {
+        return raw;
+    }
+
+    public void setRaw(byte[] raw) {
+        this.raw = raw;
+    }
+
     public int getServiceId() {
         if (sid != null) {
             return sid;
@@ -1,6 +1,7 @@
 package com.github.manevolent.atlas.protocol.uds;
 
 import com.github.manevolent.atlas.Addressed;
+import com.github.manevolent.atlas.BitReader;
 import com.github.manevolent.atlas.Frame;
 import com.github.manevolent.atlas.FrameReader;
 import com.github.manevolent.atlas.logging.Log;
@@ -35,12 +36,15 @@ public class UDSFrameReader implements FrameReader<UDSFrame> {
             udsFrame.setAddress(((Addressed) frame).getAddress());
         }
 
+        byte[] data = frame.getData();
         try {
-            udsFrame.read(frame.bitReader());
+            udsFrame.read(new BitReader(data));
         } catch (Exception ex) {
             throw new IOException("Problem reading frame " + frame.toHexString(), ex);
         }
 
+        udsFrame.setRaw(data);
+
         Log.can().log(Level.FINER, udsFrame.toString());
 
         onFrameRead(udsFrame);
@@ -0,0 +1,21 @@
+package com.github.manevolent.atlas.protocol.uds;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a server rejects a request with a negative response, as opposed to the request failing to reach it
+ */
+public class UDSNegativeResponseException extends IOException {
+    private static final long serialVersionUID = 0L;
+
+    private final NegativeResponseCode responseCode;
+
+    public UDSNegativeResponseException(NegativeResponseCode responseCode) {
+        super(responseCode.name());
+        this.responseCode = responseCode;
+    }
+
+    public NegativeResponseCode getResponseCode() {
+        return responseCode;
+    }
+}
@@ -1,74 +1,197 @@
 package com.github.manevolent.atlas.protocol.uds;
 
+import com.github.manevolent.atlas.Address;
 import com.github.manevolent.atlas.protocol.uds.response.UDSNegativeResponse;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 public abstract class UDSTransaction<Q extends UDSRequest<T>, T extends UDSResponse> implements AutoCloseable {
     public static final int TIMEOUT_MILLIS = 2_000;
 
+    /**
+     * How much longer a server may take to respond once it has answered with RESPONSE_PENDING
+     */
+    public static final int RESPONSE_PENDING_TIMEOUT_MILLIS = 5_000;
+
     private final Class<Q> requestClass;
     private final boolean responseExpected;
-    private List<T> responses = new ArrayList<>();
-    private UDSNegativeResponse exception;
+    private final Address replyAddress;
+    private final CompletableFuture<T> future = new CompletableFuture<>();
+
+    /**
+     * When this transaction times out, relative to System.nanoTime()
+     */
+    private volatile long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS);
 
     public UDSTransaction(Class<Q> requestClass, boolean responseExpected) {
+        this(requestClass, responseExpected, null);
+    }
+
+    /**
+     * Creates a new transaction
+     * @param requestClass class of the request sent
+     * @param responseExpected true if the request expects a response
+     * @param replyAddress address the response is expected from, or null to accept a response from any address
+     */
+    public UDSTransaction(Class<Q> requestClass, boolean responseExpected, Address replyAddress) {
         this.requestClass = requestClass;
         this.responseExpected = responseExpected;
-    }
+        this.replyAddress = replyAddress;
 
-    public void supply(T response) {
-        synchronized (this) {
-            this.responses.add(response);
-            this.notify();
+        if (!responseExpected) {
+            future.complete(null);
         }
     }
 
-    public void supplyException(UDSNegativeResponse exception) {
-        synchronized (this) {
-            this.exception = exception;
-            this.notifyAll();
+    public Class<Q> getRequestClass() {
+        return requestClass;
+    }
+
+    public boolean isResponseExpected() {
+        return responseExpected;
+    }
+
+    public Address getReplyAddress() {
+        return replyAddress;
+    }
+
+    /**
+     * Checks if a response received from a given address could belong to this transaction
+     * @param address address the response was received from, or null if unknown
+     * @return true if the response could belong to this transaction
+     */
+    public boolean accepts(Address address) {
+        return replyAddress == null || address == null || replyAddress.equals(address);
+    }
+
+    /**
+     * Gets the future completed with the response to this transaction, or completed exceptionally if the request
+     * was rejected or timed out.
+     * @return response future
+     */
+    public CompletableFuture<T> getFuture() {
+        return future;
+    }
+
+    public boolean isDone() {
+        return future.isDone();
+    }
+
+    /**
+     * Gets the deadline for a response to this transaction
+     * @return deadline, relative to System.nanoTime()
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Sets the deadline for a response to this transaction to some time from now
+     * @param timeout time from now
+     * @param unit unit of the timeout
+     */
+    public void setTimeout(long timeout, TimeUnit unit) {
+        deadline = System.nanoTime() + unit.toNanos(timeout);
+    }
+
+    /**
+     * Pushes the deadline for a response back to some time from now, if it is any sooner than that
+     * @param timeout time from now
+     * @param unit unit of the timeout
+     */
+    public void extendTimeout(long timeout, TimeUnit unit) {
+        long extended = System.nanoTime() + unit.toNanos(timeout);
+        if (extended - deadline > 0) {
+            deadline = extended;
         }
     }
 
-    public T get() throws IOException, InterruptedException, TimeoutException {
-        if (!responseExpected) {
-            return null;
+    public boolean isExpired() {
+        return System.nanoTime() - deadline >= 0;
+    }
+
+    /**
+     * Times this transaction out once its deadline passes, following any extensions made to the deadline meanwhile
+     */
+    void scheduleTimeout() {
+        if (isDone()) {
+            return;
         }
 
-        synchronized (this) {
-            long start = System.currentTimeMillis();
-            while (System.currentTimeMillis() - start < TIMEOUT_MILLIS &&
-                    this.responses.isEmpty() && exception == null) {
-                this.wait(TIMEOUT_MILLIS);
-            }
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+            timeout();
+        } else {
+            CompletableFuture.delayedExecutor(remaining, TimeUnit.NANOSECONDS).execute(this::scheduleTimeout);
+        }
+    }
 
-            if (System.currentTimeMillis() - start >= TIMEOUT_MILLIS) {
-                throw new TimeoutException("Timeout waiting for response to "
-                        + requestClass.getSimpleName());
-            }
+    public boolean supply(T response) {
+        return future.complete(response);
+    }
+
+    public boolean supplyException(UDSNegativeResponse exception) {
+        return future.completeExceptionally(toException(exception));
+    }
+
+    public boolean supplyException(Exception exception) {
+        return future.completeExceptionally(exception);
+    }
+
+    public boolean timeout() {
+        return future.completeExceptionally(newTimeoutException());
+    }
 
-            if (exception != null) {
-                if (exception.getResponseCode() == NegativeResponseCode.SECURITY_ACCESS_DENIED) {
-                    throw new SecurityException(exception.getResponseCode().name());
-                } else if (exception.getResponseCode() == NegativeResponseCode.INVALID_KEY) {
-                    throw new SecurityException(exception.getResponseCode().name());
+    private TimeoutException newTimeoutException() {
+        return new TimeoutException("Timeout waiting for response to " + requestClass.getSimpleName());
+    }
+
+    private static Exception toException(UDSNegativeResponse exception) {
+        if (exception.getResponseCode() == NegativeResponseCode.SECURITY_ACCESS_DENIED) {
+            return new SecurityException(exception.getResponseCode().name());
+        } else if (exception.getResponseCode() == NegativeResponseCode.INVALID_KEY) {
+            return new SecurityException(exception.getResponseCode().name());
+        }
+        return new UDSNegativeResponseException(exception.getResponseCode());
+    }
+
+    public T get() throws IOException, InterruptedException, TimeoutException {
+        while (true) {
+            try {
+                return future.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                // The deadline may have been extended while we were waiting
+                if (isExpired()) {
+                    timeout();
                 }
-                throw new IOException(exception.getResponseCode().name());
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else if (cause instanceof TimeoutException) {
+                    throw (TimeoutException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IOException(cause);
             }
-
-            return this.responses.remove(0);
         }
     }
 
-    public void join() throws TimeoutException {
+    /**
+     * Waits for this transaction to complete, ignoring its response
+     */
+    public void join() throws IOException, TimeoutException {
         try {
             get();
-        } catch (IOException | InterruptedException e) {
-            throw new RuntimeException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
         }
     }
 }
@@ -0,0 +1,237 @@
+package com.github.manevolent.atlas.protocol.uds.debug;
+
+import com.github.manevolent.atlas.Address;
+import com.github.manevolent.atlas.BitReader;
+import com.github.manevolent.atlas.datalog.DatalogStore;
+import com.github.manevolent.atlas.protocol.uds.UDSFrame;
+import com.github.manevolent.atlas.protocol.uds.UDSProtocol;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * An append-only capture of UDS frames and the times they were seen, for spying on a bus for hours at a time.
+ *
+ * Frames are kept in fixed-size chunks, so finding a frame by its index is a shift and a mask no matter how long the
+ * capture runs, and growing the capture never copies the frames already in it. Nothing is formatted for display
+ * here; that is left to whoever shows a frame.
+ *
+ * Frames are kept as the bytes they were read from, or for frames written by us, the bytes they encode to, and are
+ * decoded again each time they are asked for. Decoded frames are only kept when their body can't be encoded.
+ *
+ * Any thread may append. Readers on other threads see every frame appended before they read {@link #size()}.
+ */
+public class UDSCaptureStore {
+    public static final int CHUNK_SIZE = 1 << 12;
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    // Wall clock time at which System.nanoTime() read originNanoTime, so capture times are monotonic but absolute
+    private final long originEpochNanos;
+    private final long originNanoTime;
+
+    private volatile Chunk[] chunks = new Chunk[16];
+
+    /**
+     * Number of frames in the capture; only written under the lock, after the frame itself is in place
+     */
+    private volatile int size;
+
+    public UDSCaptureStore() {
+        Instant now = Instant.now();
+        this.originNanoTime = System.nanoTime();
+        this.originEpochNanos = DatalogStore.toNanos(now);
+    }
+
+    /**
+     * Gets the number of frames captured
+     * @return frame count
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Appends a frame, stamped with the current time
+     * @param frame frame to append
+     * @return index of the frame
+     */
+    public int append(UDSFrame frame) {
+        return append(frame, originEpochNanos + (System.nanoTime() - originNanoTime));
+    }
+
+    /**
+     * Appends a frame
+     * @param frame frame to append
+     * @param nanos time the frame was seen, in nanoseconds since the epoch
+     * @return index of the frame
+     */
+    public int append(UDSFrame frame, long nanos) {
+        // Encoding is done before taking the lock, so threads appending at once don't wait on each other's frames
+        return append(frame, encode(frame), nanos);
+    }
+
+    private synchronized int append(UDSFrame frame, byte[] raw, long nanos) {
+        int index = size;
+        if (index == Integer.MAX_VALUE) {
+            throw new IllegalStateException("Capture is full");
+        }
+
+        int chunkIndex = index >>> CHUNK_BITS;
+        Chunk[] chunks = this.chunks;
+        if (chunkIndex >= chunks.length) {
+            chunks = this.chunks = Arrays.copyOf(chunks, chunks.length * 2);
+        }
+
+        Chunk chunk = chunks[chunkIndex];
+        if (chunk == null) {
+            chunk = chunks[chunkIndex] = new Chunk();
+        }
+
+        int slot = index & CHUNK_MASK;
+        if (raw != null) {
+            chunk.raw[slot] = raw;
+            chunk.protocols[slot] = frame.getProtocol();
+            chunk.addresses[slot] = frame.getAddress();
+            chunk.directions[slot] = frame.getDirection();
+        } else {
+            chunk.frames[slot] = frame;
+        }
+        chunk.times[slot] = nanos;
+
+        size = index + 1;
+        return index;
+    }
+
+    /**
+     * Encodes a frame for the capture
+     * @param frame frame to encode
+     * @return encoded frame, or null if the frame must be kept as it is
+     */
+    private static byte[] encode(UDSFrame frame) {
+        byte[] raw = frame.getRaw();
+        if (raw != null) {
+            return raw;
+        }
+
+        try {
+            raw = frame.write();
+
+            // Bodies that write but don't read back the same are kept as they are
+            decode(frame.getProtocol(), frame.getAddress(), frame.getDirection(), raw);
+        } catch (IOException | RuntimeException ex) {
+            return null;
+        }
+
+        return raw;
+    }
+
+    private static UDSFrame decode(UDSProtocol protocol, Address address, UDSFrame.Direction direction, byte[] raw)
+            throws IOException {
+        UDSFrame frame = new UDSFrame(protocol);
+        frame.setAddress(address);
+        frame.setDirection(direction);
+        frame.read(new BitReader(raw));
+        frame.setRaw(raw);
+        return frame;
+    }
+
+    private Chunk getChunk(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+
+        return chunks[index >>> CHUNK_BITS];
+    }
+
+    /**
+     * Gets a frame, decoding it again if it was captured as bytes. Each call returns a new frame.
+     * @param index index of the frame
+     * @return frame
+     */
+    public UDSFrame getFrame(int index) {
+        return getChunk(index).getFrame(index & CHUNK_MASK);
+    }
+
+    /**
+     * Gets the time a frame was seen
+     * @param index index of the frame
+     * @return time, in nanoseconds since the epoch
+     */
+    public long getTime(int index) {
+        return getChunk(index).times[index & CHUNK_MASK];
+    }
+
+    public Instant getInstant(int index) {
+        return DatalogStore.toInstant(getTime(index));
+    }
+
+    /**
+     * Removes every frame from the capture. Views taken before this keep the frames they were taken with.
+     */
+    public synchronized void clear() {
+        Chunk[] chunks = new Chunk[16];
+        size = 0;
+        this.chunks = chunks;
+    }
+
+    /**
+     * Gets a view of the frames captured so far. Frames appended later aren't in the view, and clearing the capture
+     * doesn't empty it.
+     * @return unmodifiable list of frames
+     */
+    public synchronized List<UDSFrame> getFrames() {
+        return new Frames(chunks, size);
+    }
+
+    private static class Chunk {
+        private final byte[][] raw = new byte[CHUNK_SIZE][];
+        private final UDSProtocol[] protocols = new UDSProtocol[CHUNK_SIZE];
+        private final Address[] addresses = new Address[CHUNK_SIZE];
+        private final UDSFrame.Direction[] directions = new UDSFrame.Direction[CHUNK_SIZE];
+        private final UDSFrame[] frames = new UDSFrame[CHUNK_SIZE];
+        private final long[] times = new long[CHUNK_SIZE];
+
+        private UDSFrame getFrame(int slot) {
+            byte[] raw = this.raw[slot];
+            if (raw == null) {
+                return frames[slot];
+            }
+
+            try {
+                return decode(protocols[slot], addresses[slot], directions[slot], raw);
+            } catch (IOException e) {
+                // The frame was decoded from these same bytes when it was captured
+                throw new IllegalStateException("Problem decoding captured frame", e);
+            }
+        }
+    }
+
+    private static class Frames extends AbstractList<UDSFrame> implements RandomAccess {
+        private final Chunk[] chunks;
+        private final int size;
+
+        private Frames(Chunk[] chunks, int size) {
+            this.chunks = chunks;
+            this.size = size;
+        }
+
+        @Override
+        public UDSFrame get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException(index);
+            }
+
+            return chunks[index >>> CHUNK_BITS].getFrame(index & CHUNK_MASK);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,728 @@
+package com.github.manevolent.atlas.protocol.uds.debug;
+
+import com.github.manevolent.atlas.BasicFrame;
+import com.github.manevolent.atlas.BitReader;
+import com.github.manevolent.atlas.FrameWriter;
+import com.github.manevolent.atlas.logging.Log;
+import com.github.manevolent.atlas.protocol.can.CANArbitrationId;
+import com.github.manevolent.atlas.protocol.can.VirtualCANBus;
+import com.github.manevolent.atlas.protocol.isotp.ISOTPCANDevice;
+import com.github.manevolent.atlas.protocol.isotp.ISOTPFrame;
+import com.github.manevolent.atlas.protocol.j2534.J2534Device;
+import com.github.manevolent.atlas.protocol.subaru.uds.request.SubaruStatus1Request;
+import com.github.manevolent.atlas.protocol.uds.*;
+import com.github.manevolent.atlas.protocol.uds.request.*;
+import com.github.manevolent.atlas.ssm4.AES;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+
+/**
+ * A simulated ECU that answers UDS requests over a {@link VirtualCANBus}, for exercising connections end to end
+ * without a car. Requests arrive over a real ISO-TP peer, so segmentation, flow control and the bus's timing all
+ * take part just as they would against hardware.
+ *
+ * The ECU answers the way a Subaru DIT ECU does: memory is read by address and returned in reverse byte order, and
+ * so are the values of the data identifiers defined by memory address. Security access is unlocked with the AES
+ * answer to a random challenge. Flash is programmed by erasing it with routine 0xFF and then downloading to it,
+ * where programming can only clear bits, as with real flash.
+ *
+ * Memory given to the ECU is used in place, so a caller can change it while the ECU runs, such as to move the values
+ * being datalogged.
+ */
+public class VirtualECU implements AutoCloseable {
+    /**
+     * Bytes of a transfer request besides its data: service ID, block index and address
+     */
+    private static final int TRANSFER_OVERHEAD = 6;
+
+    private static final int NEGATIVE_RESPONSE = 0x7F;
+    private static final int SUPPRESS_RESPONSE = 0x80;
+    private static final int CLEAR_FLASH_ROUTINE = 0xFF;
+    private static final int DEFINE_BY_MEMORY_ADDRESS = 0x2;
+    private static final int CLEAR_DEFINITION = 0x3;
+    private static final int CHALLENGE_LENGTH = 0x10;
+
+    private final Random random = new SecureRandom();
+
+    private UDSProtocol protocol = UDSProtocol.STANDARD;
+    private final List<UDSComponent> components = new ArrayList<>();
+    private CANArbitrationId functionalAddress;
+    private final List<Region> regions = new ArrayList<>();
+    private final Map<Integer, byte[]> keys = new HashMap<>();
+    private final Map<Integer, byte[]> dataIdentifiers = new HashMap<>();
+    private int maximumReadSize = 0xFF;
+    private int transferBlockLength = 0x100 + TRANSFER_OVERHEAD;
+    private long responseNanos;
+
+    // State below is only touched by the responder thread
+    private final Map<Integer, ComponentState> states = new HashMap<>();
+    private final Map<Integer, List<long[]>> definitions = new HashMap<>();
+    private Download download;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong negativeResponses = new AtomicLong();
+
+    private final BlockingQueue<ISOTPFrame> received = new LinkedBlockingQueue<>();
+    private ISOTPCANDevice device;
+    private Thread readThread, respondThread;
+    private volatile boolean closed;
+
+    private VirtualECU() {
+
+    }
+
+    /**
+     * Connects the ECU to a bus and starts answering requests sent to any of its components
+     * @param bus bus
+     */
+    public void start(VirtualCANBus bus) {
+        if (device != null) {
+            throw new IllegalStateException("Already started");
+        }
+
+        List<J2534Device.CANFilter> canFilters = new ArrayList<>();
+        J2534Device.ISOTPFilter[] isotpFilters = new J2534Device.ISOTPFilter[components.size()];
+        byte[] mask = new byte[] { (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF };
+        for (int i = 0; i < components.size(); i ++) {
+            // The reverse of a tester's filter: read what is sent to the component, and reply as it
+            UDSComponent component = components.get(i);
+            isotpFilters[i] = new J2534Device.ISOTPFilter(mask, component.getSendAddress().getData(),
+                    component.getReplyAddress().getData());
+            canFilters.add(isotpFilters[i]);
+        }
+        if (functionalAddress != null) {
+            canFilters.add(new J2534Device.CANFilter(mask, functionalAddress.getData()));
+        }
+
+        device = new ISOTPCANDevice(bus.open(canFilters.toArray(new J2534Device.CANFilter[0])), isotpFilters);
+
+        readThread = new Thread(this::read);
+        readThread.setName("Virtual ECU Reader");
+        readThread.setDaemon(true);
+        readThread.start();
+
+        respondThread = new Thread(this::respond);
+        respondThread.setName("Virtual ECU Responder");
+        respondThread.setDaemon(true);
+        respondThread.start();
+    }
+
+    /**
+     * Gets how many requests have been answered or ignored
+     * @return request count
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getNegativeResponses() {
+        return negativeResponses.get();
+    }
+
+    /**
+     * Reads requests as they arrive, leaving them to be answered on another thread. This keeps flow control frames
+     * being read while a long response is written.
+     */
+    private void read() {
+        while (!closed) {
+            try {
+                ISOTPFrame frame = device.reader().read();
+                if (frame != null) {
+                    received.add(frame);
+                }
+            } catch (EOFException e) {
+                break;
+            } catch (IOException e) {
+                if (!closed) {
+                    Log.can().log(Level.FINE, "Virtual ECU dropped a message", e);
+                }
+            }
+        }
+    }
+
+    private void respond() {
+        while (!closed) {
+            ISOTPFrame frame;
+            try {
+                frame = received.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            if (frame == null) {
+                continue;
+            }
+
+            try {
+                respond(frame);
+            } catch (IOException e) {
+                if (!closed) {
+                    Log.can().log(Level.WARNING, "Virtual ECU failed to respond to " + frame, e);
+                }
+            }
+        }
+    }
+
+    private void respond(ISOTPFrame frame) throws IOException {
+        requests.incrementAndGet();
+
+        int address = frame.getAddress().toInt();
+        boolean functional = functionalAddress != null && address == functionalAddress.getArbitrationId();
+        List<UDSComponent> targets = functional ? components : components.stream()
+                .filter(component -> component.getSendAddress().getArbitrationId() == address)
+                .toList();
+
+        byte[] data = frame.getData();
+        int sid = data[0] & 0xFF;
+        UDSBody body;
+        try {
+            UDSFrame request = new UDSFrame(protocol);
+            request.read(new BitReader(data));
+            body = request.getBody();
+        } catch (IOException | RuntimeException e) {
+            for (UDSComponent component : targets) {
+                reject(component, sid, NegativeResponseCode.INVALID_MESSAGE_LEN_OR_FORMAT, functional);
+            }
+            return;
+        }
+
+        if (responseNanos > 0) {
+            long deadline = System.nanoTime() + responseNanos;
+            long remaining;
+            while ((remaining = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(remaining);
+            }
+        }
+
+        for (UDSComponent component : targets) {
+            try {
+                byte[] response = handle(component, sid, body);
+                if (response != null) {
+                    write(component, response);
+                }
+            } catch (Rejection rejection) {
+                reject(component, sid, rejection.code, functional);
+            }
+        }
+    }
+
+    private void reject(UDSComponent component, int sid, NegativeResponseCode code, boolean functional)
+            throws IOException {
+        if (functional && (code == NegativeResponseCode.SERVICE_NOT_SUPPORTED
+                || code == NegativeResponseCode.SUB_FUNCTION_NOT_SUPPORTED
+                || code == NegativeResponseCode.REQUEST_OUT_OF_RANGE)) {
+            // Modules keep quiet about functional requests that aren't meant for them
+            return;
+        }
+
+        negativeResponses.incrementAndGet();
+        write(component, new byte[] { (byte) NEGATIVE_RESPONSE, (byte) sid, code.getCode() });
+    }
+
+    private void write(UDSComponent component, byte[] response) throws IOException {
+        FrameWriter<BasicFrame> writer = device.writer();
+        writer.write(component.getReplyAddress(), new BasicFrame(response));
+    }
+
+    /**
+     * Handles a request
+     * @param component component the request was sent to
+     * @param sid service ID of the request
+     * @param body request
+     * @return response, including its service ID, or null to send no response
+     * @throws Rejection if the request is refused
+     */
+    private byte[] handle(UDSComponent component, int sid, UDSBody body) throws Rejection {
+        ComponentState state = states.computeIfAbsent(component.getSendAddress().getArbitrationId(),
+                id -> new ComponentState());
+        Response response = new Response(sid);
+
+        if (body instanceof UDSTesterPresentRequest request) {
+            int function = request.getData().length > 0 ? request.getData()[0] & 0xFF : 0;
+            if ((function & SUPPRESS_RESPONSE) != 0) {
+                return null;
+            }
+            response.put(function);
+        } else if (body instanceof UDSDiagSessionControlRequest request) {
+            if (request.getCode() < DiagnosticSessionType.DEFAULT_SESSION.getCode()
+                    || request.getCode() > DiagnosticSessionType.EXTENDED_SESSION.getCode()) {
+                throw new Rejection(NegativeResponseCode.SUB_FUNCTION_NOT_SUPPORTED);
+            }
+
+            state.session = request.getCode();
+            if (state.session == DiagnosticSessionType.DEFAULT_SESSION.getCode()) {
+                state.lock();
+            }
+
+            // P2 and P2* server timing
+            response.put(request.getCode()).putShort(0x0032).putShort(0x01F4);
+        } else if (body instanceof UDSSecurityAccessRequest request) {
+            handleSecurityAccess(state, request, response);
+        } else if (body instanceof SubaruStatus1Request request) {
+            response.put(request.getCode());
+        } else if (body instanceof UDSECUResetRequest request) {
+            states.clear();
+            definitions.clear();
+            download = null;
+            response.put(request.getResetMode());
+        } else if (body instanceof UDSClearDTCInformationRequest) {
+            // Nothing to clear
+        } else if (body instanceof UDSReadDTCRequest) {
+            // No DTCs: the report type asked for, and the status availability mask
+            response.put(body.getData().length > 0 ? body.getData()[0] : 0).put(0xFF);
+        } else if (body instanceof UDSReadMemoryByAddressRequest request) {
+            requireUnlocked(state);
+            if (request.getSize() <= 0 || request.getSize() > maximumReadSize) {
+                throw new Rejection(NegativeResponseCode.REQUEST_OUT_OF_RANGE);
+            }
+
+            byte[] memory = readMemory(request.getAddress(), (int) request.getSize());
+            reverse(memory, 0, memory.length);
+            response.put(memory);
+        } else if (body instanceof UDSDefineDataIdentifierRequest request) {
+            handleDefinition(state, request, response);
+        } else if (body instanceof UDSReadDataByIDRequest request) {
+            int[] dids = request.getDids();
+            if (dids.length == 0) {
+                throw new Rejection(NegativeResponseCode.INVALID_MESSAGE_LEN_OR_FORMAT);
+            }
+
+            for (int did : dids) {
+                response.putShort(did).put(readDataIdentifier(did));
+            }
+        } else if (body instanceof UDSRoutineControlRequest request) {
+            response.put(request.getControlFunction()).put(request.getRoutineId());
+            if (request.getRoutineId() == CLEAR_FLASH_ROUTINE) {
+                requireProgramming(state);
+                clearFlash(request.getData());
+                response.put(0x00);
+            }
+        } else if (body instanceof UDSDownloadRequest request) {
+            requireProgramming(state);
+            Region region = findRegion(request.getMemoryAddress(), request.getMemorySize());
+            if (!region.flash) {
+                throw new Rejection(NegativeResponseCode.UL_DL_NOT_ACCEPTED);
+            }
+
+            download = new Download(request.getMemoryAddress(), request.getMemoryAddress() + request.getMemorySize());
+
+            // Two bytes of maximum block length
+            response.put(0x20).putShort(transferBlockLength);
+        } else if (body instanceof UDSTransferRequest request) {
+            requireProgramming(state);
+            handleTransfer(request, response);
+        } else if (body instanceof UDSResponse) {
+            // Another module's response; not for us
+            return null;
+        } else {
+            throw new Rejection(NegativeResponseCode.SERVICE_NOT_SUPPORTED);
+        }
+
+        return response.toByteArray();
+    }
+
+    private void handleSecurityAccess(ComponentState state, UDSSecurityAccessRequest request, Response response)
+            throws Rejection {
+        if (state.session == DiagnosticSessionType.DEFAULT_SESSION.getCode()) {
+            throw new Rejection(NegativeResponseCode.SERVICE_NOT_SUPPORTED_IN_SESSION);
+        }
+
+        int level = request.getSeed() & 0xFF;
+        if ((level & 1) == 1) {
+            // Odd levels ask for a challenge
+            if (!keys.containsKey(level)) {
+                throw new Rejection(NegativeResponseCode.SUB_FUNCTION_NOT_SUPPORTED);
+            }
+
+            state.challenge = new byte[CHALLENGE_LENGTH];
+            random.nextBytes(state.challenge);
+            state.challengeLevel = level;
+            response.put(level).put(state.challenge);
+        } else {
+            // Even levels answer the challenge from the level below
+            if (state.challenge == null || state.challengeLevel != level - 1) {
+                throw new Rejection(NegativeResponseCode.REQUEST_SEQUENCE_ERROR);
+            }
+
+            byte[] expected = AES.answer(keys.get(level - 1), state.challenge);
+            state.challenge = null;
+            if (!Arrays.equals(expected, request.getData())) {
+                throw new Rejection(NegativeResponseCode.INVALID_KEY);
+            }
+
+            state.unlocked = level - 1;
+            response.put(level);
+        }
+    }
+
+    private void handleDefinition(ComponentState state, UDSDefineDataIdentifierRequest request, Response response)
+            throws Rejection {
+        int did = request.getDid();
+        switch (request.getFunction()) {
+            case DEFINE_BY_MEMORY_ADDRESS -> {
+                requireUnlocked(state);
+
+                byte[] data = request.getData();
+                if (data.length < 1) {
+                    throw new Rejection(NegativeResponseCode.INVALID_MESSAGE_LEN_OR_FORMAT);
+                }
+
+                int sizeLength = (data[0] >> 4) & 0xF, addressLength = data[0] & 0xF;
+                int entryLength = sizeLength + addressLength;
+                if (sizeLength == 0 || addressLength == 0 || (data.length - 1) % entryLength != 0) {
+                    throw new Rejection(NegativeResponseCode.INVALID_MESSAGE_LEN_OR_FORMAT);
+                }
+
+                List<long[]> entries = new ArrayList<>();
+                BitReader reader = new BitReader(data, 1, data.length);
+                try {
+                    while (reader.remainingBytes() > 0) {
+                        long address = reader.read(addressLength * 8);
+                        long size = reader.read(sizeLength * 8);
+                        findRegion(address, size);
+                        entries.add(new long[] { address, size });
+                    }
+                } catch (IOException e) {
+                    throw new Rejection(NegativeResponseCode.INVALID_MESSAGE_LEN_OR_FORMAT);
+                }
+
+                // Defining a DID that is already defined adds to it
+                definitions.computeIfAbsent(did, key -> new ArrayList<>()).addAll(entries);
+            }
+            case CLEAR_DEFINITION -> {
+                if (definitions.remove(did) == null) {
+                    throw new Rejection(NegativeResponseCode.REQUEST_OUT_OF_RANGE);
+                }
+            }
+            default -> throw new Rejection(NegativeResponseCode.SUB_FUNCTION_NOT_SUPPORTED);
+        }
+
+        response.put(request.getFunction()).putShort(did);
+    }
+
+    private void handleTransfer(UDSTransferRequest request, Response response) throws Rejection {
+        if (download == null) {
+            throw new Rejection(NegativeResponseCode.REQUEST_SEQUENCE_ERROR);
+        }
+
+        int index = request.getIndex();
+        byte[] data = request.getData();
+        if (index == download.lastIndex && download.lastAddress == request.getAddress()) {
+            // A repeat of a block whose response went missing
+            response.put(index);
+            return;
+        } else if (index != ((download.lastIndex + 1) & 0xFF)) {
+            throw new Rejection(NegativeResponseCode.WRONG_BLOCK_SEQ_COUNTER);
+        } else if (data.length + TRANSFER_OVERHEAD > transferBlockLength) {
+            throw new Rejection(NegativeResponseCode.INVALID_MESSAGE_LEN_OR_FORMAT);
+        }
+
+        long address = request.getAddress() & 0xFFFFFFFFL;
+        if (address != download.position || address + data.length > download.end) {
+            throw new Rejection(NegativeResponseCode.TRANSFER_DATA_SUSPENDED);
+        }
+
+        // Programming can only clear bits
+        Region region = findRegion(address, data.length);
+        int offset = (int) (address - region.base);
+        for (int i = 0; i < data.length; i ++) {
+            region.data[offset + i] &= data[i];
+        }
+
+        download.position += data.length;
+        download.lastIndex = index;
+        download.lastAddress = request.getAddress();
+        response.put(index);
+    }
+
+    private void clearFlash(byte[] data) throws Rejection {
+        if (data.length != 10 || data[1] != 0x44) {
+            throw new Rejection(NegativeResponseCode.INVALID_MESSAGE_LEN_OR_FORMAT);
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(data, 2, 8);
+        long start = buffer.getInt() & 0xFFFFFFFFL, end = buffer.getInt() & 0xFFFFFFFFL;
+        Region region = findRegion(start, end - start);
+        if (!region.flash) {
+            throw new Rejection(NegativeResponseCode.REQUEST_OUT_OF_RANGE);
+        }
+
+        Arrays.fill(region.data, (int) (start - region.base), (int) (end - region.base), (byte) 0xFF);
+    }
+
+    private byte[] readDataIdentifier(int did) throws Rejection {
+        List<long[]> entries = definitions.get(did);
+        if (entries != null) {
+            ByteArrayOutputStream value = new ByteArrayOutputStream();
+            for (long[] entry : entries) {
+                byte[] memory = readMemory(entry[0], (int) entry[1]);
+                reverse(memory, 0, memory.length);
+                value.writeBytes(memory);
+            }
+            return value.toByteArray();
+        }
+
+        byte[] value = dataIdentifiers.get(did);
+        if (value == null) {
+            throw new Rejection(NegativeResponseCode.REQUEST_OUT_OF_RANGE);
+        }
+        return value;
+    }
+
+    private byte[] readMemory(long address, int length) throws Rejection {
+        Region region = findRegion(address, length);
+        int offset = (int) (address - region.base);
+        return Arrays.copyOfRange(region.data, offset, offset + length);
+    }
+
+    private Region findRegion(long address, long length) throws Rejection {
+        for (Region region : regions) {
+            if (address >= region.base && length >= 0 && address + length <= region.base + region.data.length) {
+                return region;
+            }
+        }
+        throw new Rejection(NegativeResponseCode.REQUEST_OUT_OF_RANGE);
+    }
+
+    private static void requireUnlocked(ComponentState state) throws Rejection {
+        if (state.unlocked == 0) {
+            throw new Rejection(NegativeResponseCode.SECURITY_ACCESS_DENIED);
+        }
+    }
+
+    private static void requireProgramming(ComponentState state) throws Rejection {
+        if (state.session != DiagnosticSessionType.PROGRAMMING_SESSION.getCode()) {
+            throw new Rejection(NegativeResponseCode.CONDITIONS_NOT_CORRECT);
+        }
+        requireUnlocked(state);
+    }
+
+    private static void reverse(byte[] array, int offs, int len) {
+        for (int i = 0; i < len / 2; i ++) {
+            byte temp = array[offs + i];
+            array[offs + i] = array[offs + len - 1 - i];
+            array[offs + len - 1 - i] = temp;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+
+        if (device != null) {
+            device.close();
+        }
+
+        try {
+            if (readThread != null) {
+                readThread.interrupt();
+                readThread.join();
+            }
+            if (respondThread != null) {
+                respondThread.interrupt();
+                respondThread.join();
+            }
+        } catch (InterruptedException e) {
+            // The threads are already told to stop; don't wait on them any longer
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private static class Region {
+        private final long base;
+        private final byte[] data;
+        private final boolean flash;
+
+        private Region(long base, byte[] data, boolean flash) {
+            this.base = base;
+            this.data = data;
+            this.flash = flash;
+        }
+    }
+
+    private static class ComponentState {
+        private int session = DiagnosticSessionType.DEFAULT_SESSION.getCode();
+        private int unlocked;
+        private int challengeLevel;
+        private byte[] challenge;
+
+        private void lock() {
+            unlocked = 0;
+            challenge = null;
+        }
+    }
+
+    private static class Download {
+        private final long end;
+        private long position;
+        private int lastIndex;
+        private int lastAddress = -1;
+
+        private Download(long start, long end) {
+            this.position = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * A positive response being built, starting with its service ID
+     */
+    private static class Response {
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+        private Response(int sid) {
+            data.write(sid | 0x40);
+        }
+
+        private Response put(int value) {
+            data.write(value);
+            return this;
+        }
+
+        private Response putShort(int value) {
+            data.write(value >> 8);
+            data.write(value);
+            return this;
+        }
+
+        private Response put(byte[] value) {
+            data.writeBytes(value);
+            return this;
+        }
+
+        private byte[] toByteArray() {
+            return data.toByteArray();
+        }
+    }
+
+    private static class Rejection extends Exception {
+        private static final long serialVersionUID = 0L;
+
+        private final NegativeResponseCode code;
+
+        private Rejection(NegativeResponseCode code) {
+            super(code.name(), null, false, false);
+            this.code = code;
+        }
+    }
+
+    public static class Builder {
+        private final VirtualECU ecu = new VirtualECU();
+
+        public Builder withProtocol(UDSProtocol protocol) {
+            ecu.protocol = protocol;
+            return this;
+        }
+
+        /**
+         * Answers requests sent to a component, as that component
+         * @param components components
+         * @return builder
+         */
+        public Builder withComponents(UDSComponent... components) {
+            ecu.components.addAll(Arrays.asList(components));
+            return this;
+        }
+
+        /**
+         * Answers requests sent to an address every component listens to, such as for tester present
+         * @param functionalAddress functional address
+         * @return builder
+         */
+        public Builder withFunctionalAddress(CANArbitrationId functionalAddress) {
+            ecu.functionalAddress = functionalAddress;
+            return this;
+        }
+
+        /**
+         * Adds memory that can be read, such as RAM. The array is used in place.
+         * @param base address of the first byte
+         * @param data memory
+         * @return builder
+         */
+        public Builder withMemory(long base, byte[] data) {
+            ecu.regions.add(new Region(base, data, false));
+            return this;
+        }
+
+        /**
+         * Adds flash, which can be read and also erased and programmed. The array is used in place.
+         * @param base address of the first byte
+         * @param data flash image
+         * @return builder
+         */
+        public Builder withFlash(long base, byte[] data) {
+            ecu.regions.add(new Region(base, data, true));
+            return this;
+        }
+
+        /**
+         * Adds a security access level
+         * @param level odd level requesting the challenge; the level above it answers it
+         * @param key AES key the answer is made with
+         * @return builder
+         */
+        public Builder withSecurityKey(int level, byte[] key) {
+            ecu.keys.put(level, key);
+            return this;
+        }
+
+        public Builder withDataIdentifier(int did, byte[] value) {
+            ecu.dataIdentifiers.put(did, value);
+            return this;
+        }
+
+        /**
+         * Sets the most memory read by address at once; larger reads are refused
+         * @param maximumReadSize maximum read size
+         * @return builder
+         */
+        public Builder withMaximumReadSize(int maximumReadSize) {
+            ecu.maximumReadSize = maximumReadSize;
+            return this;
+        }
+
+        /**
+         * Sets the length of transfer request the ECU asks for when a download starts
+         * @param dataLength bytes of data in each transfer request
+         * @return builder
+         */
+        public Builder withTransferLength(int dataLength) {
+            ecu.transferBlockLength = dataLength + TRANSFER_OVERHEAD;
+            return this;
+        }
+
+        /**
+         * Sets how long the ECU takes to work on each request before answering
+         * @param time time
+         * @param unit unit of the time
+         * @return builder
+         */
+        public Builder withResponseTime(long time, TimeUnit unit) {
+            ecu.responseNanos = unit.toNanos(time);
+            return this;
+        }
+
+        public VirtualECU build() {
+            if (ecu.components.isEmpty()) {
+                throw new IllegalArgumentException("No components");
+            }
+            return ecu;
+        }
+    }
+}
@@ -27,6 +27,14 @@ public class UDSDefineDataIdentifierRequest extends UDSRequest<UDSDefineDataIden
         this.data = data;
     }
 
+    public int getFunction() {
+        return function;
+    }
+
+    public int getDid() {
+        return did;
+    }
+
     @Override
     public byte[] getData() {
         return data;
@@ -24,6 +24,10 @@ public class UDSDiagSessionControlRequest extends UDSRequest<UDSDiagSessionContr
         this.code = type.getCode();
     }
 
+    public int getCode() {
+        return code;
+    }
+
     @Override
     public void read(BitReader reader) throws IOException {
         code = reader.readByte() & 0xFF;
@@ -1,6 +1,7 @@
 package com.github.manevolent.atlas.protocol.uds.request;
 
 import com.github.manevolent.atlas.BitReader;
+import com.github.manevolent.atlas.BitWriter;
 import com.github.manevolent.atlas.protocol.uds.UDSRequest;
 import com.github.manevolent.atlas.protocol.uds.response.UDSDownloadResponse;
 
@@ -15,6 +16,28 @@ public class UDSDownloadRequest extends UDSRequest<UDSDownloadResponse> {
     private long memoryAddress;
     private long memorySize;
 
+    public UDSDownloadRequest() {
+
+    }
+
+    /**
+     * Creates a request to download an uncompressed, unencrypted span of memory, with a 32-bit address and size
+     * @param memoryAddress address to download to
+     * @param memorySize number of bytes to download
+     */
+    public UDSDownloadRequest(long memoryAddress, long memorySize) {
+        this.memoryAddress = memoryAddress;
+        this.memorySize = memorySize;
+    }
+
+    public long getMemoryAddress() {
+        return memoryAddress;
+    }
+
+    public long getMemorySize() {
+        return memorySize;
+    }
+
     @Override
     public void read(BitReader reader) throws IOException {
         this.dataCompression = (int) reader.read(4);
@@ -27,6 +50,18 @@ public class UDSDownloadRequest extends UDSRequest<UDSDownloadResponse> {
         this.memorySize = reader.read(memorySizeBytes * 8);
     }
 
+    @Override
+    public void write(BitWriter writer) throws IOException {
+        writer.writeNibble((byte) dataCompression);
+        writer.writeNibble((byte) dataEncryption);
+
+        writer.writeNibble((byte) 4);
+        writer.writeNibble((byte) 4);
+
+        writer.writeInt((int) memoryAddress);
+        writer.writeInt((int) memorySize);
+    }
+
     @Override
     public String toString() {
         return "comp=" + dataCompression + " crypto=" + dataEncryption
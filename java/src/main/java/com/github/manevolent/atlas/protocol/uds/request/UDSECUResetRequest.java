@@ -25,6 +25,10 @@ public class UDSECUResetRequest extends UDSRequest<UDSECUResetResponse> {
         this.resetMode = mode.getCode();
     }
 
+    public int getResetMode() {
+        return resetMode;
+    }
+
     @Override
     public void write(BitWriter writer) throws IOException {
         writer.write(resetMode & 0xFF);
@@ -34,7 +34,7 @@ public class UDSReadDataByIDRequest extends UDSRequest<UDSReadDataByIDResponse>
         int numDids = reader.remaining() / 16;
         dids = new int[numDids];
         for (int i = 0; i < numDids; i ++) {
-            dids[i] = reader.readShort();
+            dids[i] = reader.readUShort();
         }
     }
 
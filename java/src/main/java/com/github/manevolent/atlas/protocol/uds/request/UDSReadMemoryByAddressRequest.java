@@ -28,8 +28,16 @@ public class UDSReadMemoryByAddressRequest extends UDSRequest<UDSReadMemoryByAdd
     public void read(BitReader reader) throws IOException {
         this.sizeLength = (int) reader.read(4);
         this.addressLength = (int) reader.read(4);
-        this.size = reader.read(sizeLength);
-        this.address = reader.read(addressLength);
+        this.address = reader.read(addressLength * 8);
+        this.size = reader.read(sizeLength * 8);
+    }
+
+    public long getAddress() {
+        return address;
+    }
+
+    public long getSize() {
+        return size;
     }
 
     @Override
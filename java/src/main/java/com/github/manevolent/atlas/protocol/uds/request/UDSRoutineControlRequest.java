@@ -47,6 +47,14 @@ public class UDSRoutineControlRequest
         writer.write(data);
     }
 
+    public int getControlFunction() {
+        return controlFunction;
+    }
+
+    public int getRoutineId() {
+        return routineId;
+    }
+
     @Override
     public byte[] getData() {
         return data;
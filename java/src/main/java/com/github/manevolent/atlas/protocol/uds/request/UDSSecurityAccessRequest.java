@@ -42,6 +42,10 @@ public class UDSSecurityAccessRequest
         writer.write(this.data);
     }
 
+    public int getSeed() {
+        return seed;
+    }
+
     @Override
     public byte[] getData() {
         return data;
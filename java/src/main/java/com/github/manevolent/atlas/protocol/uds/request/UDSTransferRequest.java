@@ -1,6 +1,7 @@
 package com.github.manevolent.atlas.protocol.uds.request;
 
 import com.github.manevolent.atlas.BitReader;
+import com.github.manevolent.atlas.BitWriter;
 import com.github.manevolent.atlas.Frame;
 import com.github.manevolent.atlas.protocol.uds.UDSRequest;
 import com.github.manevolent.atlas.protocol.uds.response.UDSTransferResponse;
@@ -12,13 +13,32 @@ public class UDSTransferRequest extends UDSRequest<UDSTransferResponse> implemen
     private int address;
     private byte[] data;
 
+    public UDSTransferRequest() {
+
+    }
+
+    public UDSTransferRequest(int index, int address, byte[] data) {
+        this.index = index;
+        this.address = address;
+        this.data = data;
+    }
+
     @Override
     public void read(BitReader reader) throws IOException {
         this.index = reader.readByte() & 0xFF;
         this.address = reader.readInt();
+        this.data = reader.readRemaining();
+    }
+
+    @Override
+    public void write(BitWriter writer) throws IOException {
+        writer.write(index & 0xFF);
+        writer.writeInt(address);
+        writer.write(data);
+    }
 
-        this.data = new byte[256];
-        reader.read(data);
+    public int getIndex() {
+        return index;
     }
 
     public int getAddress() {
@@ -29,6 +29,10 @@ public class UDSDownloadResponse extends UDSResponse {
         blockLength = (long) reader.read(maxNumberOfBlockLength * 8);
     }
 
+    public long getBlockLength() {
+        return blockLength;
+    }
+
     @Override
     public String toString() {
         return "blockLength=" + blockLength;
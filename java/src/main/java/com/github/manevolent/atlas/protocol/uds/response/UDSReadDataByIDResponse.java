@@ -28,6 +28,15 @@ public class UDSReadDataByIDResponse extends UDSResponse implements Frame {
         reader.read(value);
     }
 
+    public int getDid() {
+        return did;
+    }
+
+    /**
+     * Gets the data following the first DID. When several DIDs were read at once, this holds the first DID's data
+     * followed by each other DID and its data in turn.
+     * @return data
+     */
     @Override
     public byte[] getData() {
         return value;
@@ -7,6 +7,8 @@ public final class Setting<T extends SettingValue<?>> {
             new Setting<>(StringValue.class, "editor.project.last_opened_file");
     public static final Setting<IntValue> DATALOG_FREQUENCY =
             new Setting<>(IntValue.class, "datalog.frequency");
+    public static final Setting<IntValue> DATALOG_RETAINED_RECORDINGS =
+            new Setting<>(IntValue.class, "datalog.recordings.retained");
 
     private final String name;
     private final Class<T> valueClass;
@@ -2,6 +2,9 @@ package com.github.manevolent.atlas.ssm4;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * This is the flash encryption algorithm used for modules in the CAN network
@@ -71,6 +74,238 @@ public class SubaruDITFlashEncryption {
             (short)0x5fb1,
     };
 
+    /**
+     * Images at least this large are encrypted/decrypted in parallel chunks
+     */
+    public static final int PARALLEL_THRESHOLD = 256 * 1024;
+
+    /**
+     * Size of each chunk of work submitted to the fork-join pool when working in parallel
+     */
+    private static final int PARALLEL_CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * The complete 'F' function for all 65536 possible (key ^ half) inputs: the 5-bit lookup table scramble and the
+     * 3-bit rotation. Once the key is XOR'd in, F doesn't depend on the key, so a single table serves every key.
+     */
+    private static final char[] feistel_round_table = new char[0x10000];
+
+    static {
+        byte[] indices = new byte[4];
+        byte[] nibbles = new byte[4];
+        for (int v = 0; v < feistel_round_table.length; v ++) {
+            feistel_round_table[v] = (char) feistel_round(v, indices, nibbles);
+        }
+    }
+
+    /**
+     * The original 'F' function for a single round, used to build feistel_round_table.
+     * @param v 16-bit (key ^ half) input
+     * @return 16-bit output of F
+     */
+    private static int feistel_round(int v, byte[] abStack_8, byte[] abStack_4) {
+        int uVar2 = v & 0xFFFF;
+        int uVar3 = uVar2 & 1;
+        int uVar4 = 0;
+
+        while (true) {
+            abStack_8[uVar4] = (byte)(uVar2 & 0x1f);
+            uVar2 = uVar2 >> 4;
+            uVar4 = (uVar4 + 1) & 0xff;
+            if (3 < uVar4) break;
+            if ((uVar4 == 3) && (uVar3 == 1)) {
+                uVar2 = uVar2 | 0x10;
+            }
+        }
+
+        for (int i = 0; i < 4; i ++) {
+            abStack_4[i] = feistel_lookup_table[abStack_8[i]];
+        }
+
+        uVar2 = ((abStack_4[0] & 0xFF) +
+                ((abStack_4[1] & 0xFF) * 0x10) +
+                ((abStack_4[2] & 0xFF) * 0x100) +
+                ((abStack_4[3] & 0xFF) * 0x1000)) &
+                0xffff;
+
+        // Rotate right by 3
+        return ((uVar2 >> 3) | (uVar2 << 13)) & 0xFFFF;
+    }
+
+    private static int feistel_decrypt_symbol(int local_c, short[] keys) {
+        for (int i = 0; i < 4; i ++) {
+            int f = feistel_round_table[(keys[i] ^ local_c) & 0xFFFF];
+            local_c = ((f ^ (local_c >>> 16)) & 0xFFFF) | (local_c << 16);
+        }
+        return local_c;
+    }
+
+    private static int feistel_encrypt_symbol(int local_c, short[] keys) {
+        // Swap the halves of the cleartext before the first round
+        local_c = (local_c << 16) | (local_c >>> 16);
+        for (int i = 0; i < 4; i ++) {
+            int f = feistel_round_table[(keys[i] ^ (local_c >>> 16)) & 0xFFFF];
+            local_c = (((f ^ local_c) & 0xFFFF) << 16) | (local_c >>> 16);
+        }
+        return local_c;
+    }
+
+    private static void feistel_decrypt_range(byte[] data, int offs, int end, short[] keys) {
+        for (int i = offs; i < end; i += 4) {
+            int symbol = ((data[i] & 0xFF) << 24) | ((data[i + 1] & 0xFF) << 16) |
+                    ((data[i + 2] & 0xFF) << 8) | (data[i + 3] & 0xFF);
+            int local_c = feistel_decrypt_symbol(symbol, keys);
+            data[i] = (byte) (local_c >> 8);
+            data[i + 1] = (byte) local_c;
+            data[i + 2] = (byte) (local_c >> 24);
+            data[i + 3] = (byte) (local_c >> 16);
+        }
+    }
+
+    private static void feistel_encrypt_range(byte[] data, int offs, int end, short[] keys) {
+        for (int i = offs; i < end; i += 4) {
+            int symbol = ((data[i] & 0xFF) << 24) | ((data[i + 1] & 0xFF) << 16) |
+                    ((data[i + 2] & 0xFF) << 8) | (data[i + 3] & 0xFF);
+            int local_c = feistel_encrypt_symbol(symbol, keys);
+            data[i] = (byte) (local_c >> 24);
+            data[i + 1] = (byte) (local_c >> 16);
+            data[i + 2] = (byte) (local_c >> 8);
+            data[i + 3] = (byte) local_c;
+        }
+    }
+
+    private static int checkSymbols(byte[] data, int offs, int len) {
+        if (offs < 0 || len < 0 || offs + len > data.length) {
+            throw new ArrayIndexOutOfBoundsException(offs + len);
+        }
+
+        // Any trailing partial symbol is left untouched, as with the stream implementations
+        return len - (len % 4);
+    }
+
+    /**
+     * Decrypts ciphertext in place, in parallel chunks for large images.
+     * @param data ciphertext to decrypt
+     * @param offs offset of the first symbol
+     * @param len number of bytes to decrypt; any trailing partial symbol is left as-is
+     * @param keys an array of decryption keys
+     * @return Number of symbols decrypted.
+     */
+    public static int feistel_decrypt(byte[] data, int offs, int len, short[] keys) {
+        return feistel_decrypt(data, offs, len, keys, len >= PARALLEL_THRESHOLD);
+    }
+
+    public static int feistel_decrypt(byte[] data, int offs, int len, short[] keys, boolean parallel) {
+        len = checkSymbols(data, offs, len);
+        if (parallel) {
+            ForkJoinPool.commonPool().invoke(new FeistelTask(data, offs, offs + len, keys, false));
+        } else {
+            feistel_decrypt_range(data, offs, offs + len, keys);
+        }
+        return len / 4;
+    }
+
+    /**
+     * Encrypts cleartext in place, in parallel chunks for large images.
+     * @param data cleartext to encrypt
+     * @param offs offset of the first symbol
+     * @param len number of bytes to encrypt; any trailing partial symbol is left as-is
+     * @param keys an array of encryption keys
+     * @return Number of symbols encrypted.
+     */
+    public static int feistel_encrypt(byte[] data, int offs, int len, short[] keys) {
+        return feistel_encrypt(data, offs, len, keys, len >= PARALLEL_THRESHOLD);
+    }
+
+    public static int feistel_encrypt(byte[] data, int offs, int len, short[] keys, boolean parallel) {
+        len = checkSymbols(data, offs, len);
+        if (parallel) {
+            ForkJoinPool.commonPool().invoke(new FeistelTask(data, offs, offs + len, keys, true));
+        } else {
+            feistel_encrypt_range(data, offs, offs + len, keys);
+        }
+        return len / 4;
+    }
+
+    /**
+     * Decrypts the remaining ciphertext in a buffer in place. The buffer's position is advanced past every
+     * symbol decrypted.
+     * @param buffer ciphertext to decrypt
+     * @param keys an array of decryption keys
+     * @return Number of symbols decrypted.
+     */
+    public static int feistel_decrypt(ByteBuffer buffer, short[] keys) {
+        int len = buffer.remaining() - (buffer.remaining() % 4);
+        if (buffer.hasArray()) {
+            feistel_decrypt(buffer.array(), buffer.arrayOffset() + buffer.position(), len, keys);
+        } else {
+            ByteBuffer bigEndian = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+            for (int i = buffer.position(); i < buffer.position() + len; i += 4) {
+                int local_c = feistel_decrypt_symbol(bigEndian.getInt(i), keys);
+                // Decrypted halves are written swapped
+                bigEndian.putInt(i, (local_c << 16) | (local_c >>> 16));
+            }
+        }
+        buffer.position(buffer.position() + len);
+        return len / 4;
+    }
+
+    /**
+     * Encrypts the remaining cleartext in a buffer in place. The buffer's position is advanced past every
+     * symbol encrypted.
+     * @param buffer cleartext to encrypt
+     * @param keys an array of encryption keys
+     * @return Number of symbols encrypted.
+     */
+    public static int feistel_encrypt(ByteBuffer buffer, short[] keys) {
+        int len = buffer.remaining() - (buffer.remaining() % 4);
+        if (buffer.hasArray()) {
+            feistel_encrypt(buffer.array(), buffer.arrayOffset() + buffer.position(), len, keys);
+        } else {
+            ByteBuffer bigEndian = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+            for (int i = buffer.position(); i < buffer.position() + len; i += 4) {
+                bigEndian.putInt(i, feistel_encrypt_symbol(bigEndian.getInt(i), keys));
+            }
+        }
+        buffer.position(buffer.position() + len);
+        return len / 4;
+    }
+
+    private static class FeistelTask extends RecursiveAction {
+        private final byte[] data;
+        private final int offs, end;
+        private final short[] keys;
+        private final boolean encrypt;
+
+        private FeistelTask(byte[] data, int offs, int end, short[] keys, boolean encrypt) {
+            this.data = data;
+            this.offs = offs;
+            this.end = end;
+            this.keys = keys;
+            this.encrypt = encrypt;
+        }
+
+        @Override
+        protected void compute() {
+            int len = end - offs;
+            if (len <= PARALLEL_CHUNK_SIZE) {
+                if (encrypt) {
+                    feistel_encrypt_range(data, offs, end, keys);
+                } else {
+                    feistel_decrypt_range(data, offs, end, keys);
+                }
+                return;
+            }
+
+            // Split on a symbol boundary
+            int middle = offs + ((len / 2) & ~3);
+            invokeAll(
+                    new FeistelTask(data, offs, middle, keys, encrypt),
+                    new FeistelTask(data, middle, end, keys, encrypt)
+            );
+        }
+    }
+
     public static void feistel_decrypt(int encrypted_symbol,
                                        byte[] data_out,
                                        short[] keys) {
@@ -2,6 +2,7 @@ package com.github.manevolent.atlas.ui;
 
 import com.github.manevolent.atlas.connection.Connection;
 import com.github.manevolent.atlas.connection.ConnectionType;
+import com.github.manevolent.atlas.connection.MemoryFrame;
 import com.github.manevolent.atlas.model.*;
 import com.github.manevolent.atlas.logging.Log;
 import com.github.manevolent.atlas.model.storage.ProjectStorageType;
@@ -36,6 +37,7 @@ import java.awt.event.*;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
@@ -82,6 +84,7 @@ public class Editor extends JFrame implements InternalFrameListener, MouseMotion
 
     // Vehicle connection
     private Connection connection;
+    private final java.util.List<Consumer<MemoryFrame>> memoryFrameListeners = new CopyOnWriteArrayList<>();
 
     public Editor(Project project) {
         // Just to make sure it shows up in the taskbar/dock/etc.
@@ -228,11 +231,28 @@ public class Editor extends JFrame implements InternalFrameListener, MouseMotion
         Connection connection = connectionType.createConnection(Devices.getProvider());
         if (connection != null) {
             connection.setProject(getProject());
+            connection.addMemoryFrameListener(this::onMemoryFrame);
         }
 
         return connection;
     }
 
+    /**
+     * Adds a listener for memory frames read by the vehicle connection, which carries over to new connections
+     * @param listener listener, called on the thread that read each frame
+     */
+    public void addMemoryFrameListener(Consumer<MemoryFrame> listener) {
+        memoryFrameListeners.add(listener);
+    }
+
+    public void removeMemoryFrameListener(Consumer<MemoryFrame> listener) {
+        memoryFrameListeners.remove(listener);
+    }
+
+    private void onMemoryFrame(MemoryFrame frame) {
+        memoryFrameListeners.forEach(listener -> listener.accept(frame));
+    }
+
     public Connection getConnection() {
         if (connection == null && getProject() != null) {
             connection = createConnection();
@@ -28,6 +28,7 @@ public class FileMenu extends DatalogMenu {
 
         JMenuItem openDatalog = new JMenuItem("Open Datalog...");
         openDatalog.addActionListener(e -> {
+            getParent().openDatalog();
         });
         fileMenu.add(openDatalog);
 
@@ -1,6 +1,8 @@
 package com.github.manevolent.atlas.ui.component.menu.table;
 
 import com.github.manevolent.atlas.ui.component.window.TableEditor;
+import com.github.manevolent.atlas.ui.util.Icons;
+import org.kordamp.ikonli.carbonicons.CarbonIcons;
 
 import javax.swing.*;
 
@@ -12,5 +14,22 @@ public class ViewMenu extends TableEditorMenu {
     @Override
     protected void initComponent(JMenu menu) {
         menu.setText("View");
+
+        JMenuItem clearTrace = new JMenuItem("Clear Trace");
+        clearTrace.setIcon(Icons.get(CarbonIcons.RESET));
+        clearTrace.setEnabled(getParent().isTracing());
+        clearTrace.addActionListener(e -> getParent().clearTrace());
+
+        JCheckBoxMenuItem trace = new JCheckBoxMenuItem("Trace Datalog");
+        trace.setIcon(Icons.get(CarbonIcons.ACTIVITY));
+        trace.setSelected(getParent().isTracing());
+        trace.addActionListener(e -> {
+            getParent().setTracing(trace.isSelected());
+            trace.setSelected(getParent().isTracing());
+            clearTrace.setEnabled(getParent().isTracing());
+        });
+
+        menu.add(trace);
+        menu.add(clearTrace);
     }
 }
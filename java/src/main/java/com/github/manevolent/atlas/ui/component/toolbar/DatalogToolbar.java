@@ -1,5 +1,6 @@
 package com.github.manevolent.atlas.ui.component.toolbar;
 
+import com.github.manevolent.atlas.datalog.DatalogScheduler;
 import com.github.manevolent.atlas.ui.component.window.DatalogPage;
 import com.github.manevolent.atlas.ui.component.window.DatalogWindow;
 import com.github.manevolent.atlas.ui.util.Fonts;
@@ -14,6 +15,7 @@ import java.awt.*;
 public class DatalogToolbar extends Toolbar<DatalogWindow> {
     private JButton pauseButton;
     private JLabel tLabel;
+    private JLabel rateLabel;
     private JButton addButton;
 
     public DatalogToolbar(DatalogWindow editor) {
@@ -75,6 +77,8 @@ public class DatalogToolbar extends Toolbar<DatalogWindow> {
         toolbar.addSeparator();
 
         toolbar.add(Box.createHorizontalGlue());
+        toolbar.add(rateLabel = Labels.text(CarbonIcons.METER, Fonts.VALUE_FONT, ""));
+        rateLabel.setVisible(false);
         toolbar.add(tLabel = Labels.text(CarbonIcons.ARROWS_HORIZONTAL, Fonts.VALUE_FONT, ""));
         tLabel.setVisible(false);
     }
@@ -85,6 +89,22 @@ public class DatalogToolbar extends Toolbar<DatalogWindow> {
         tLabel.setVisible(millis > 0);
     }
 
+    /**
+     * Shows how fast a datalog is being sampled
+     * @param scheduler scheduler sampling the datalog, or null if nothing is being recorded
+     */
+    public void setRate(DatalogScheduler scheduler) {
+        if (scheduler == null || scheduler.getFrequency() <= 0D) {
+            rateLabel.setVisible(false);
+            return;
+        }
+
+        rateLabel.setText(String.format("%.1f Hz \u00B1%.1fms ", scheduler.getFrequency(), scheduler.getJitterMillis()));
+        rateLabel.setToolTipText(String.format("Round trip %.1fms, %d failed reads",
+                scheduler.getRoundTripMillis(), scheduler.getFailures()));
+        rateLabel.setVisible(true);
+    }
+
     public void setPaused(boolean paused) {
 
         boolean recording = getParent().isRecording();
@@ -6,6 +6,7 @@ import com.github.manevolent.atlas.protocol.uds.UDSFrame;
 import com.github.manevolent.atlas.protocol.uds.UDSRequest;
 import com.github.manevolent.atlas.protocol.uds.UDSResponse;
 import com.github.manevolent.atlas.protocol.uds.UDSUnknownBody;
+import com.github.manevolent.atlas.protocol.uds.debug.UDSCaptureStore;
 import com.github.manevolent.atlas.protocol.uds.response.UDSNegativeResponse;
 import com.github.manevolent.atlas.ui.Editor;
 import com.github.manevolent.atlas.ui.util.Csv;
@@ -17,8 +18,8 @@ import org.kordamp.ikonli.carbonicons.CarbonIcons;
 
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
+import javax.swing.table.AbstractTableModel;
 import javax.swing.table.DefaultTableCellRenderer;
-import javax.swing.table.DefaultTableModel;
 import javax.swing.table.TableColumn;
 import javax.swing.table.TableColumnModel;
 
@@ -38,15 +39,26 @@ import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 public class CANDebugPage extends JPanel implements AdjustmentListener {
+    private static final String[] COLUMN_NAMES = new String[] { "", "Time", "Address", "SID", "Type", "Data" };
+
+    /**
+     * Only this many rows at the top of the table are measured when sizing columns
+     */
+    private static final int SIZED_ROWS = 100;
+
     private final CANDebugWindow window;
     private JScrollPane scrollPane;
 
-    private final List<UDSFrame> frames = new LinkedList<>();
-    private boolean paused = true;
+    private final UDSCaptureStore frames = new UDSCaptureStore();
+    private volatile boolean paused = true;
 
-    private DefaultTableModel model;
+    private Model model;
     private JTable table;
 
+    // Frames are appended from the session's threads; the table catches up with them on this timer
+    private final int refreshMillis = 1000 / 30;
+    private javax.swing.Timer refreshTimer;
+
     private String name;
     private boolean locked = true;
     private boolean adding = false;
@@ -72,7 +84,7 @@ public class CANDebugPage extends JPanel implements AdjustmentListener {
     }
 
     public List<UDSFrame> getFrames() {
-        return frames;
+        return frames.getFrames();
     }
 
     public void activated() {
@@ -112,8 +124,7 @@ public class CANDebugPage extends JPanel implements AdjustmentListener {
     }
 
     public void initComponent() {
-        Vector<String> columnNames = new Vector<>(Arrays.asList("", "Time", "Address", "SID", "Type", "Data"));
-        model = new DefaultTableModel(columnNames, 0);
+        model = new Model();
         table = new JTable(model) {
             // See: https://stackoverflow.com/questions/9919230/disable-user-edit-in-jtable
             public boolean isCellEditable(int row, int column) {
@@ -121,8 +132,10 @@ public class CANDebugPage extends JPanel implements AdjustmentListener {
             };
         };
         table.getModel().addTableModelListener(e -> {
-            ColumnsAutoSizer.sizeColumnsToFit(table);
-            resizeLastColumn();
+            if (e.getFirstRow() < SIZED_ROWS) {
+                ColumnsAutoSizer.sizeColumnsToFit(table);
+                resizeLastColumn();
+            }
         });
 
         table.setDefaultRenderer(String.class, new Renderer());
@@ -170,49 +183,52 @@ public class CANDebugPage extends JPanel implements AdjustmentListener {
 
     public void clearFrames() {
         SwingUtilities.invokeLater(() -> {
-            synchronized (frames) {
-                model.setRowCount(0);
-                frames.clear();
-                window.getToolbar().update();
-            }
+            frames.clear();
+            model.clear();
+            window.getToolbar().update();
         });
     }
 
+    /**
+     * Captures a frame. Can be called from any thread; the table shows the frame on its next refresh.
+     * @param frame frame to capture
+     */
     public void addFrame(UDSFrame frame) {
         if (paused) {
             return;
         }
 
-        JScrollBar scrollBar = scrollPane.getVerticalScrollBar();
-        boolean isScrollLocked = !scrollBar.isVisible() || locked;
+        frames.append(frame);
+    }
 
-        SwingUtilities.invokeLater(() -> {
-            synchronized (frames) {
-                frames.add(frame);
-                adding = true;
-                String serviceIdString;
-
-                try {
-                    serviceIdString = "0x" + Frame.toHexString(new byte[] { (byte) (frame.getServiceId() & 0xFF) });
-                } catch (Exception ex) {
-                    serviceIdString = "??";
-                }
+    private void startRefreshing() {
+        if (refreshTimer == null) {
+            refreshTimer = new javax.swing.Timer(refreshMillis, e -> refresh());
+            refreshTimer.start();
+        }
+    }
 
-                model.addRow(new Vector<>(Arrays.asList(
-                        "",
-                        Instant.now().toString(),
-                        String.format("0x%02X", frame.getAddress().toInt()),
-                        serviceIdString,
-                        frame.getBody().getClass().getSimpleName(),
-                        frame.getBody().toString()
-                )));
+    private void stopRefreshing() {
+        if (refreshTimer != null) {
+            refreshTimer.stop();
+            refreshTimer = null;
+        }
 
-                table.revalidate();
-                table.repaint();
+        // Show whatever arrived since the last refresh
+        refresh();
+    }
 
-                window.getToolbar().update();
-            }
-        });
+    private void refresh() {
+        if (!model.update()) {
+            return;
+        }
+
+        adding = true;
+        if (locked) {
+            jumpToLatest();
+        }
+
+        window.getToolbar().update();
     }
 
     public void setPaused(boolean paused, boolean override) {
@@ -231,6 +247,12 @@ public class CANDebugPage extends JPanel implements AdjustmentListener {
 
         this.paused = paused;
 
+        if (paused) {
+            stopRefreshing();
+        } else {
+            startRefreshing();
+        }
+
         if (paused && window.getRecordingPage() == this) {
             window.stopRecording();
         }
@@ -294,6 +316,87 @@ public class CANDebugPage extends JPanel implements AdjustmentListener {
         }
     }
 
+    private class Model extends AbstractTableModel {
+        // Rows the table has been told about; the capture may already hold more
+        private int rows;
+
+        // Every cell of a row asks for its frame, so the last frame decoded is kept
+        private int cachedRow = -1;
+        private UDSFrame cachedFrame;
+
+        /**
+         * Tells the table about frames captured since the last update, all in one event
+         * @return true if there were any
+         */
+        private boolean update() {
+            int size = frames.size();
+            if (size <= rows) {
+                return false;
+            }
+
+            int first = rows;
+            rows = size;
+            fireTableRowsInserted(first, size - 1);
+            return true;
+        }
+
+        private void clear() {
+            rows = 0;
+            cachedRow = -1;
+            cachedFrame = null;
+            fireTableDataChanged();
+        }
+
+        private UDSFrame getFrame(int row) {
+            if (row != cachedRow) {
+                cachedFrame = frames.getFrame(row);
+                cachedRow = row;
+            }
+
+            return cachedFrame;
+        }
+
+        @Override
+        public int getRowCount() {
+            return rows;
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMN_NAMES.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMN_NAMES[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return String.class;
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            UDSFrame frame = getFrame(row);
+            return switch (column) {
+                case 0 -> "";
+                case 1 -> frames.getInstant(row).toString();
+                case 2 -> String.format("0x%02X", frame.getAddress().toInt());
+                case 3 -> {
+                    try {
+                        yield "0x" + Frame.toHexString(new byte[] { (byte) (frame.getServiceId() & 0xFF) });
+                    } catch (Exception ex) {
+                        yield "??";
+                    }
+                }
+                case 4 -> frame.getBody().getClass().getSimpleName();
+                case 5 -> frame.getBody().toString();
+                default -> throw new IndexOutOfBoundsException(column);
+            };
+        }
+    }
+
     private class Renderer extends DefaultTableCellRenderer {
         @Override
         public Component getTableCellRendererComponent(JTable table, Object value,
@@ -301,7 +404,7 @@ public class CANDebugPage extends JPanel implements AdjustmentListener {
             Component component = super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
             component.setFont(Fonts.VALUE_FONT);
 
-            UDSFrame frame = frames.get(row);
+            UDSFrame frame = model.getFrame(table.convertRowIndexToModel(row));
             Color color;
             Ikon icon = null;
             if (frame.getDirection() == UDSFrame.Direction.READ) {
@@ -2,6 +2,7 @@ package com.github.manevolent.atlas.ui.component.window;
 
 import com.github.manevolent.atlas.connection.Connection;
 import com.github.manevolent.atlas.connection.ConnectionMode;
+import com.github.manevolent.atlas.connection.MemoryDump;
 import com.github.manevolent.atlas.logging.Log;
 import com.github.manevolent.atlas.model.*;
 import com.github.manevolent.atlas.protocol.uds.*;
@@ -33,7 +34,6 @@ import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.*;
 import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
@@ -466,6 +466,27 @@ public class CANDebugWindow extends Window implements ChangeListener, UDSListene
             return;
         }
 
+        JFileChooser fileChooser = new JFileChooser();
+        FileNameExtensionFilter def = new FileNameExtensionFilter("Binary files", "bin");
+        fileChooser.addChoosableFileFilter(def);
+        fileChooser.setFileFilter(def);
+        fileChooser.setDialogTitle("Save Memory Dump");
+        fileChooser.setSelectedFile(new File(selected.getName() + ".bin"));
+        if (fileChooser.showSaveDialog(getParent()) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+
+        File file = fileChooser.getSelectedFile();
+        File checkpoint = new File(file.getPath() + ".checkpoint");
+        if (checkpoint.exists() && JOptionPane.showConfirmDialog(getParent(),
+                "A previous read of this memory section was interrupted. Would you like to resume it?",
+                "Resume Read",
+                JOptionPane.YES_NO_OPTION) != JOptionPane.YES_OPTION) {
+            if (!checkpoint.delete()) {
+                Log.ui().log(Level.WARNING, "Problem deleting checkpoint " + checkpoint.getPath());
+            }
+        }
+
         Job.fork(() -> {
             try {
                 connection.changeConnectionMode(ConnectionMode.READ_MEMORY);
@@ -479,8 +500,15 @@ public class CANDebugWindow extends Window implements ChangeListener, UDSListene
             }
 
             MemoryReader reader = new MemoryReader(getParent(), selected);
+            MemoryDump dump = MemoryDump.builder()
+                    .withConnection(connection)
+                    .withSection(selected)
+                    .withFile(file)
+                    .withCheckpoint(checkpoint)
+                    .withListener((message, progress) -> reader.postStatus(progress, message))
+                    .build();
+
             reader.setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
-            AtomicBoolean closed = new AtomicBoolean();
             reader.addWindowListener(new WindowAdapter() {
                 @Override
                 public void windowClosing(WindowEvent e) {
@@ -491,83 +519,38 @@ public class CANDebugWindow extends Window implements ChangeListener, UDSListene
                         return;
                     }
                     super.windowClosing(e);
-                    closed.set(true);
+                    dump.cancel();
                 }
             });
 
-            byte[] memory = new byte[selected.getDataLength()];
-            for (long offs = selected.getBaseAddress(); offs < selected.getBaseAddress() + memory.length;) {
-                if (closed.get()) {
-                    JOptionPane.showMessageDialog(getParent(), "Memory section read was canceled.",
-                            "Read memory canceled",
-                            JOptionPane.WARNING_MESSAGE);
-                    SwingUtilities.invokeLater(reader::dispose);
-                    return;
-                }
-
-                int readLength = (int) Math.min(
-                        selected.getBaseAddress() + memory.length - offs,
-                        connection.getMaximumReadSize());
-
-                reader.postStatus((float) (offs - selected.getBaseAddress()) / (float) memory.length, "Reading " +
-                        String.format("0x%04X", offs) + "...");
-
-                try {
-                    byte[] block = connection.readMemory(
-                            MemoryAddress.builder().withSection(selected).withOffset(offs & 0xFFFFFFFFL).build(),
-                            readLength);
-
-                    readLength = block.length;
-
-                    System.arraycopy(block, 0, memory, (int) (offs - selected.getBaseAddress()), readLength);
-
-                    if (!reader.isVisible()) {
-                        SwingUtilities.invokeLater(() -> {
-                            reader.setVisible(true);
-                        });
-                    }
-                } catch (IOException | TimeoutException e) {
-                    String message = "Problem reading memory at offset " + Integer.toHexString((int) offs);
-                    if (e instanceof TimeoutException || offs <= selected.getBaseAddress()) {
-                        SwingUtilities.invokeLater(() -> {
-                            reader.setVisible(false);
-                        });
-                        Log.can().log(Level.SEVERE, message, e);
-                        JOptionPane.showMessageDialog(getParent(), message + "!\r\n" +
-                                        e.getMessage() + "\r\n" + "See console output (F12) for more details.",
-                                "Read memory failed",
-                                JOptionPane.ERROR_MESSAGE);
-                        return;
-                    } else {
-                        Log.can().log(Level.WARNING, message, e);
-                    }
-                }
+            SwingUtilities.invokeLater(() -> reader.setVisible(true));
 
-                offs += readLength;
+            boolean finished;
+            try {
+                finished = dump.run();
+            } catch (IOException e) {
+                SwingUtilities.invokeLater(reader::dispose);
+                String message = "Problem reading memory section " + selected.getName();
+                Log.can().log(Level.SEVERE, message, e);
+                JOptionPane.showMessageDialog(getParent(), message + "!\r\n" +
+                                e.getMessage() + "\r\n" + "Read the section again to resume from where it " +
+                                "stopped. See console output (F12) for more details.",
+                        "Read memory failed",
+                        JOptionPane.ERROR_MESSAGE);
+                return;
             }
 
-            SwingUtilities.invokeLater(() -> {
-                reader.setVisible(false);
-            });
+            SwingUtilities.invokeLater(reader::dispose);
 
-            SwingUtilities.invokeLater(() -> {
-                JFileChooser fileChooser = new JFileChooser();
-                FileNameExtensionFilter def = new FileNameExtensionFilter("Binary files", "bin");
-                fileChooser.addChoosableFileFilter(def);
-                fileChooser.setFileFilter(def);
-                fileChooser.setDialogTitle("Save Memory Dump");
-                fileChooser.setSelectedFile(new File(selected.getName() + ".bin"));
-                if (fileChooser.showSaveDialog(getParent()) == JFileChooser.APPROVE_OPTION) {
-                    File file = fileChooser.getSelectedFile();
-                    try (FileOutputStream fos = new FileOutputStream(file)) {
-                        fos.write(memory);
-                        Log.ui().log(Level.INFO, "Memory section " + selected.getName() + " saved to "
-                                + file.getPath());
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
-                    }
-                }
-            });
+            if (finished) {
+                Log.ui().log(Level.INFO, "Memory section " + selected.getName() + " saved to "
+                        + file.getPath());
+            } else {
+                JOptionPane.showMessageDialog(getParent(), "Memory section read was canceled. Read the section " +
+                                "again to resume from where it stopped.",
+                        "Read memory canceled",
+                        JOptionPane.WARNING_MESSAGE);
+            }
         });
     }
 
@@ -706,10 +689,14 @@ public class CANDebugWindow extends Window implements ChangeListener, UDSListene
             return;
         }
 
-        List<UDSFrame> frames = page.getFrames();
+        // Captured frames are decoded each time they're read, so the transfers are pulled out in one pass
+        List<UDSTransferRequest> transfers = page.getFrames().stream()
+                .map(UDSFrame::getBody)
+                .filter(body -> body instanceof UDSTransferRequest)
+                .map(body -> (UDSTransferRequest) body)
+                .toList();
 
-        boolean hasAnyRoms = frames.stream().anyMatch(frame -> frame.getBody() instanceof UDSTransferRequest);
-        if (!hasAnyRoms) {
+        if (transfers.isEmpty()) {
             JOptionPane.showMessageDialog(getParent(),
                     "No ROM transfers found in this log.",
                     "Extract ROM",
@@ -717,13 +704,13 @@ public class CANDebugWindow extends Window implements ChangeListener, UDSListene
             return;
         }
 
-        long lowestAddress = frames.stream().filter(x -> x.getBody() instanceof UDSTransferRequest)
-                .mapToLong(x -> ((UDSTransferRequest) x.getBody()).getAddress() & 0xFFFFFFFFL)
+        long lowestAddress = transfers.stream()
+                .mapToLong(x -> x.getAddress() & 0xFFFFFFFFL)
                 .min()
                 .orElse(0L);
 
-        long highestAddress = frames.stream().filter(x -> x.getBody() instanceof UDSTransferRequest)
-                .mapToLong(x -> (((UDSTransferRequest) x.getBody()).getAddress() & 0xFFFFFFFFL) + x.getLength())
+        long highestAddress = transfers.stream()
+                .mapToLong(x -> (x.getAddress() & 0xFFFFFFFFL) + x.getLength())
                 .max()
                 .orElse(0L);
 
@@ -740,18 +727,16 @@ public class CANDebugWindow extends Window implements ChangeListener, UDSListene
         File file = fileChooser.getSelectedFile();
         AtomicLong written = new AtomicLong();
         try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
-            frames.stream().filter(x -> x.getBody() instanceof UDSTransferRequest)
-                    .map(x -> (UDSTransferRequest) x.getBody())
-                    .forEach(x -> {
-                        long fileOffset = ((x.getAddress() & 0xFFFFFFFFL) - lowestAddress);
-                        try {
-                            raf.seek(fileOffset);
-                            raf.write(x.getData(), 0, x.getLength());
-                            written.addAndGet(x.getLength());
-                        } catch (IOException e) {
-                            Log.ui().log(Level.SEVERE, "Problem saving ROM block at offset " + fileOffset, e);
-                        }
-                    });
+            transfers.forEach(x -> {
+                long fileOffset = ((x.getAddress() & 0xFFFFFFFFL) - lowestAddress);
+                try {
+                    raf.seek(fileOffset);
+                    raf.write(x.getData(), 0, x.getLength());
+                    written.addAndGet(x.getLength());
+                } catch (IOException e) {
+                    Log.ui().log(Level.SEVERE, "Problem saving ROM block at offset " + fileOffset, e);
+                }
+            });
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -1,7 +1,16 @@
 package com.github.manevolent.atlas.ui.component.window;
 
 import com.github.manevolent.atlas.connection.MemoryFrame;
+import com.github.manevolent.atlas.datalog.DatalogRate;
+import com.github.manevolent.atlas.datalog.DatalogReader;
+import com.github.manevolent.atlas.datalog.DatalogRecorder;
+import com.github.manevolent.atlas.datalog.DatalogScheduler;
+import com.github.manevolent.atlas.datalog.DatalogStore;
+import com.github.manevolent.atlas.logging.Log;
+import com.github.manevolent.atlas.model.DataFormat;
 import com.github.manevolent.atlas.model.MemoryParameter;
+import com.github.manevolent.atlas.model.Scale;
+import com.github.manevolent.atlas.model.Unit;
 import com.github.manevolent.atlas.ui.Editor;
 import com.github.manevolent.atlas.ui.util.Inputs;
 import com.github.manevolent.atlas.ui.util.Labels;
@@ -11,10 +20,12 @@ import org.kordamp.ikonli.carbonicons.CarbonIcons;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.time.Instant;
 import java.util.*;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
 
 public class DatalogPage extends JPanel implements MouseListener, MouseMotionListener, MouseWheelListener,
         KeyListener {
@@ -23,7 +34,6 @@ public class DatalogPage extends JPanel implements MouseListener, MouseMotionLis
     private JScrollPane scrollPane;
     private JPanel footerPanel;
     private Integer cursorX;
-    private long maximumHistoryMillis = 60_000L;
     private long windowWidthMillis = 10_000L;
     private long timeOffset = 0L;
     private Instant currentInstant = Instant.now();
@@ -36,7 +46,12 @@ public class DatalogPage extends JPanel implements MouseListener, MouseMotionLis
 
     private final LinkedHashSet<MemoryParameter> activeParameters = new LinkedHashSet<>();
     private final Map<MemoryParameter, DatalogParameterPanel> panelMap = new LinkedHashMap<>();
-    private final List<MemoryFrame> frames = new CopyOnWriteArrayList<>();
+    private final DatalogStore store = new DatalogStore();
+    private volatile DatalogRecorder recorder;
+    private DatalogScheduler scheduler;
+
+    private final Map<MemoryParameter, DatalogRate> rates = new HashMap<>();
+    private final Set<MemoryParameter> prioritized = new HashSet<>();
 
     public DatalogPage(DatalogWindow window) {
         this.window = window;
@@ -182,6 +197,16 @@ public class DatalogPage extends JPanel implements MouseListener, MouseMotionLis
 
     public void addParameter(MemoryParameter parameter) {
         activeParameters.add(parameter);
+        store.addColumn(parameter);
+        schedule(parameter);
+
+        if (recorder != null) {
+            try {
+                recorder.addParameter(parameter);
+            } catch (IOException ex) {
+                recordingFailed(ex);
+            }
+        }
 
         DatalogParameterPanel panel = initParameterPanel(parameter);
         graphContainer.add(panel,
@@ -216,6 +241,9 @@ public class DatalogPage extends JPanel implements MouseListener, MouseMotionLis
 
     public void removeParameter(MemoryParameter memoryParameter) {
         activeParameters.remove(memoryParameter);
+        if (scheduler != null) {
+            scheduler.removeParameter(memoryParameter);
+        }
         panelMap.remove(memoryParameter);
         reload();
     }
@@ -297,12 +325,155 @@ public class DatalogPage extends JPanel implements MouseListener, MouseMotionLis
             return;
         }
 
-        Instant historyLeft = getHistoryLeft();
-        while (!frames.isEmpty() && frames.getLast().getInstant().isBefore(historyLeft)) {
-            frames.removeLast();
+        store.append(frame);
+
+        DatalogRecorder recorder = this.recorder;
+        if (recorder != null) {
+            try {
+                recorder.append(frame);
+            } catch (IOException ex) {
+                recordingFailed(ex);
+            }
         }
+    }
+
+    /**
+     * Sets the scheduler sampling the parameters on this page, while it is being recorded
+     * @param scheduler scheduler, or null if the page isn't being recorded
+     */
+    public void setScheduler(DatalogScheduler scheduler) {
+        this.scheduler = scheduler;
+        activeParameters.forEach(this::schedule);
+    }
+
+    public DatalogScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public DatalogRate getRate(MemoryParameter parameter) {
+        return rates.getOrDefault(parameter, DatalogRate.FULL);
+    }
+
+    public void setRate(MemoryParameter parameter, DatalogRate rate) {
+        rates.put(parameter, rate);
+        schedule(parameter);
+    }
 
-        frames.add(0, frame);
+    /**
+     * Checks if a parameter goes ahead of other parameters sampled at a slower than full rate
+     * @param parameter parameter
+     * @return true if the parameter is prioritized
+     */
+    public boolean isPrioritized(MemoryParameter parameter) {
+        return prioritized.contains(parameter);
+    }
+
+    public void setPrioritized(MemoryParameter parameter, boolean prioritized) {
+        if (prioritized) {
+            this.prioritized.add(parameter);
+        } else {
+            this.prioritized.remove(parameter);
+        }
+        schedule(parameter);
+    }
+
+    private void schedule(MemoryParameter parameter) {
+        if (scheduler != null && activeParameters.contains(parameter)) {
+            scheduler.setParameter(parameter, getRate(parameter), isPrioritized(parameter) ? 1 : 0);
+        }
+    }
+
+    /**
+     * Starts streaming the frames added to this page to a file
+     * @param path file to record to
+     */
+    public void startRecorder(Path path) throws IOException {
+        stopRecorder();
+
+        DatalogRecorder recorder = DatalogRecorder.create(path);
+        for (MemoryParameter parameter : activeParameters) {
+            recorder.addParameter(parameter);
+        }
+
+        this.recorder = recorder;
+    }
+
+    public void stopRecorder() {
+        DatalogRecorder recorder = this.recorder;
+        this.recorder = null;
+
+        if (recorder != null) {
+            try {
+                recorder.close();
+            } catch (IOException ex) {
+                Log.ui().log(Level.SEVERE, "Problem closing datalog recording", ex);
+            }
+        }
+    }
+
+    private void recordingFailed(IOException ex) {
+        Log.ui().log(Level.SEVERE, "Problem writing datalog recording; recording to disk has stopped", ex);
+        stopRecorder();
+    }
+
+    /**
+     * Loads a recorded datalog into this page. Only the most recent samples that fit in the page are read.
+     * @param reader recording to load
+     */
+    public void load(DatalogReader reader) throws IOException {
+        List<DatalogReader.Parameter> recorded = reader.getParameters();
+        DatalogStore.Column[] columns = new DatalogStore.Column[recorded.size()];
+        for (DatalogReader.Parameter recordedParameter : recorded) {
+            MemoryParameter parameter = getEditor().getProject().getParameters().stream()
+                    .filter(p -> recordedParameter.getName().equals(p.getName()))
+                    .findFirst()
+                    .orElseGet(() -> newRecordedParameter(recordedParameter));
+
+            addParameter(parameter);
+            columns[recordedParameter.getId()] = store.getColumn(parameter);
+        }
+
+        int first = reader.getChunkCount();
+        long samples = 0;
+        while (first > 0 && samples + reader.getChunkSize(first - 1) <= store.getCapacity()) {
+            first --;
+            samples += reader.getChunkSize(first);
+        }
+
+        float[] values = new float[columns.length];
+        for (int index = first; index < reader.getChunkCount(); index ++) {
+            DatalogReader.Chunk chunk = reader.readChunk(index);
+            for (int i = 0; i < chunk.size(); i ++) {
+                for (int id = 0; id < values.length; id ++) {
+                    values[id] = chunk.getValue(id, i);
+                }
+                store.append(chunk.getTime(i), columns, values);
+            }
+        }
+
+        DatalogStore.Snapshot loaded = getSamples();
+        if (!loaded.isEmpty()) {
+            currentInstant = loaded.getInstant(loaded.size() - 1);
+            fitToScreen();
+        }
+    }
+
+    private static MemoryParameter newRecordedParameter(DatalogReader.Parameter recordedParameter) {
+        Unit unit;
+        try {
+            unit = Unit.valueOf(recordedParameter.getUnit());
+        } catch (IllegalArgumentException ex) {
+            unit = Unit.NONE;
+        }
+
+        MemoryParameter parameter = new MemoryParameter();
+        parameter.setName(recordedParameter.getName());
+        parameter.setScale(Scale.builder()
+                .withName(recordedParameter.getName())
+                .withFormat(DataFormat.UBYTE)
+                .withUnit(unit)
+                .build());
+        return parameter;
     }
 
     public Instant getTime(float x) {
@@ -439,22 +610,27 @@ public class DatalogPage extends JPanel implements MouseListener, MouseMotionLis
         return this.paused;
     }
 
-    private Instant getHistoryLeft() {
-        return getRight().minusMillis(maximumHistoryMillis);
-    }
-
     public long getMaximumWindowWidthMillis() {
-        if (frames.size() > 1) {
-            Instant latestInstant = frames.getFirst().getInstant();
-            Instant earliestInstant = frames.getLast().getInstant();
+        DatalogStore.Snapshot samples = getSamples();
+        if (samples.size() > 1) {
+            Instant latestInstant = samples.getInstant(samples.size() - 1);
+            Instant earliestInstant = samples.getInstant(0);
             return Math.max(10_000L, latestInstant.toEpochMilli() - earliestInstant.toEpochMilli());
         } else {
             return 10_000L;
         }
     }
 
-    public List<MemoryFrame> getFrames() {
-        return frames;
+    public DatalogStore.Column getColumn(MemoryParameter parameter) {
+        return store.getColumn(parameter);
+    }
+
+    /**
+     * Gets the samples recorded to this page so far, oldest first
+     * @return snapshot of the recorded samples
+     */
+    public DatalogStore.Snapshot getSamples() {
+        return store.snapshot();
     }
 
     public long getWindowWidthMillis() {
@@ -479,9 +655,10 @@ public class DatalogPage extends JPanel implements MouseListener, MouseMotionLis
     }
 
     public void setCurrentInstant(Instant instant) {
-        if (paused && frames.size() > 1) {
-            Instant latestInstant = frames.getFirst().getInstant();
-            Instant earliestInstant = frames.getLast().getInstant();
+        DatalogStore.Snapshot samples = getSamples();
+        if (paused && samples.size() > 1) {
+            Instant latestInstant = samples.getInstant(samples.size() - 1);
+            Instant earliestInstant = samples.getInstant(0);
             Instant earliestPossibleInstant = earliestInstant.plusMillis(windowWidthMillis);
             if (instant.isAfter(latestInstant)) {
                 instant = latestInstant;
@@ -493,10 +670,11 @@ public class DatalogPage extends JPanel implements MouseListener, MouseMotionLis
     }
 
     public void fitToScreen() {
-        if (frames.size() > 1) {
-            setWindowWidthMillis(frames.getFirst().getInstant().toEpochMilli() -
-                    frames.getLast().getInstant().toEpochMilli());
-            setCurrentInstant(frames.getFirst().getInstant());
+        DatalogStore.Snapshot samples = getSamples();
+        if (samples.size() > 1) {
+            Instant latestInstant = samples.getInstant(samples.size() - 1);
+            setWindowWidthMillis(latestInstant.toEpochMilli() - samples.getInstant(0).toEpochMilli());
+            setCurrentInstant(latestInstant);
         }
     }
 
@@ -531,7 +709,8 @@ public class DatalogPage extends JPanel implements MouseListener, MouseMotionLis
         } else if (e.getKeyCode() == KeyEvent.VK_SPACE) {
             setPaused(false, true);
         } else if (e.getKeyCode() >= KeyEvent.VK_0 || e.getKeyCode() <= KeyEvent.VK_9) {
-            if (frames.size() > 1) {
+            DatalogStore.Snapshot samples = getSamples();
+            if (samples.size() > 1) {
                 setPaused(true, false);
 
                 int nth;
@@ -544,7 +723,7 @@ public class DatalogPage extends JPanel implements MouseListener, MouseMotionLis
                 zoomMillis = setWindowWidthMillis((long) zoomMillis);
                 long leftOffsetMillis = (long) (zoomMillis * nth);
                 long rightOffsetMillis = (long) leftOffsetMillis + (long) zoomMillis;
-                Instant earliestInstant = frames.getLast().getInstant();
+                Instant earliestInstant = samples.getInstant(0);
                 setCurrentInstant(earliestInstant.plusMillis(leftOffsetMillis));
             }
         }
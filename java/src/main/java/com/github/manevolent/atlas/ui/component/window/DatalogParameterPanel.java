@@ -1,6 +1,8 @@
 package com.github.manevolent.atlas.ui.component.window;
 
-import com.github.manevolent.atlas.connection.MemoryFrame;
+import com.github.manevolent.atlas.datalog.DatalogRate;
+import com.github.manevolent.atlas.datalog.DatalogScheduler;
+import com.github.manevolent.atlas.datalog.DatalogStore;
 import com.github.manevolent.atlas.model.MemoryParameter;
 import com.github.manevolent.atlas.ui.util.Colors;
 import com.github.manevolent.atlas.ui.util.Fonts;
@@ -13,7 +15,6 @@ import java.awt.*;
 import java.awt.geom.Path2D;
 import java.awt.geom.Rectangle2D;
 import java.time.Instant;
-import java.time.temporal.ChronoUnit;
 
 /**
  * Represents a single horizontal parameter panel in the datalog viewer.
@@ -54,7 +55,7 @@ public class DatalogParameterPanel extends JPanel {
     private final DatalogPage page;
     private final MemoryParameter parameter;
     private final Color textColor;
-    private JButton delete, moveUp, moveDown;
+    private JButton delete, moveUp, moveDown, rate;
 
     public DatalogParameterPanel(DatalogPage page, MemoryParameter parameter) {
         this.page = page;
@@ -92,9 +93,29 @@ public class DatalogParameterPanel extends JPanel {
             page.moveDown(parameter);
         })));
 
+        add(rate = Inputs.nofocus(Inputs.button(CarbonIcons.TIME, null, "Sample rate", () -> {
+            JPopupMenu menu = new JPopupMenu();
+            ButtonGroup group = new ButtonGroup();
+            for (DatalogRate option : DatalogRate.values()) {
+                JRadioButtonMenuItem item = new JRadioButtonMenuItem(option.toString(), page.getRate(parameter) == option);
+                item.addActionListener(e -> page.setRate(parameter, option));
+                group.add(item);
+                menu.add(item);
+            }
+
+            menu.addSeparator();
+            JCheckBoxMenuItem prioritize = new JCheckBoxMenuItem("Prioritize", page.isPrioritized(parameter));
+            prioritize.setToolTipText("Sample this parameter ahead of other parameters with a slower rate");
+            prioritize.addActionListener(e -> page.setPrioritized(parameter, prioritize.isSelected()));
+            menu.add(prioritize);
+
+            menu.show(this, rate.getX(), rate.getY());
+        })));
+
         delete.setBackground(Colors.withAlpha(delete.getBackground(), 180));
         moveUp.setBackground(Colors.withAlpha(moveUp.getBackground(), 180));
         moveDown.setBackground(Colors.withAlpha(moveDown.getBackground(), 180));
+        rate.setBackground(Colors.withAlpha(rate.getBackground(), 180));
 
         setMinimumSize(new Dimension(256, 100));
         setPreferredSize(new Dimension(256, 100));
@@ -107,7 +128,7 @@ public class DatalogParameterPanel extends JPanel {
 
         setFont(Fonts.VALUE_FONT);
 
-        java.util.List<MemoryFrame> frames = page.getFrames();
+        DatalogStore.Snapshot samples = page.getSamples();
 
         float precision = parameter.getScale().getPrecision();
         boolean isDecimal = precision % 1 != 0;
@@ -148,28 +169,26 @@ public class DatalogParameterPanel extends JPanel {
         Instant right = page.getRight();
         Instant left = page.getLeft();
 
-        // Calculate avg, min, max, etc.
-        float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
-        float sum = 0f;
-        int num = 0;
-        for (int i = 0; i < frames.size(); i ++) {
-            MemoryFrame frame = frames.get(i);
-            Float value = frame.getValue(parameter);
-            if (value == null)
-                continue; // Skip any null values (draw between)
-
-            min = Math.min(min, value);
-            max = Math.max(max, value);
-            sum += value;
-            num ++;
-
-            if (frame.getInstant().isBefore(left)) {
-                break;
-            }
+        // Find the samples in view, plus one either side so the line runs to the edges
+        long leftNanos = DatalogStore.toNanos(left);
+        int from = Math.max(samples.getValidIndex(), samples.indexOf(leftNanos) - 1);
+        int to = Math.min(samples.size(), samples.indexOf(DatalogStore.toNanos(right)) + 1);
+        DatalogStore.Column column = page.getColumn(parameter);
+        if (column == null) {
+            to = from;
         }
 
-        if (min == max) {
-            max = min + 1;
+        // Calculate min and max from the column's pyramid
+        DatalogStore.Statistics statistics = new DatalogStore.Statistics();
+        if (from < to) {
+            samples.getStatistics(column, from, to, statistics);
+        }
+
+        float min = statistics.isEmpty() ? Float.MAX_VALUE : statistics.getMinimum();
+        float max = statistics.isEmpty() ? -Float.MAX_VALUE : statistics.getMaximum();
+        float scaleMin = min, scaleMax = max;
+        if (scaleMin == scaleMax) {
+            scaleMax = scaleMin + 1;
         }
 
         Color color;
@@ -182,36 +201,83 @@ public class DatalogParameterPanel extends JPanel {
 
         // Draw
         Path2D.Float path = new Path2D.Float();
-        float last_x = 0f, last_y = 0f;
         float cursor_y = 0f;
-        float last_value_y = 0f;
         Float value_y = null;
-        for (int i = 0; i < num && i < frames.size(); i ++) {
-            MemoryFrame frame = frames.get(i);
-            Float value = frame.getValue(parameter);
-            if (value == null) continue;
+        float height = (float) bounds.getHeight();
+        long widthNanos = page.getWindowWidthMillis() * 1_000_000L;
+        int width = Math.max(1, bounds.width);
+
+        if (to - from <= width * 2) {
+            // Few enough samples to draw each one
+            float last_x = 0f, last_y = 0f;
+            float last_value_y = 0f;
+            boolean first = true;
+            for (int i = to - 1; i >= from; i --) {
+                float value = samples.getValue(column, i);
+                if (Float.isNaN(value)) continue; // Skip any missing values (draw between)
+
+                float x = ((samples.getTime(i) - leftNanos) / (float) widthNanos) * width;
+                float y = height - (((value - scaleMin) / (scaleMax - scaleMin)) * height);
+
+                if (first) {
+                    path.moveTo(x, y);
+                    first = false;
+                } else {
+                    path.lineTo(x, y);
+                    if (page.getCursorX() != null && page.getCursorX() <= last_x && page.getCursorX() >= x) {
+                        float ratio = (page.getCursorX() - x) / (last_x - x);
+                        value_y = value + ((last_value_y - value) * ratio);
+                        cursor_y = y + ((last_y - y) * ratio);
+                    }
+                }
 
-            float x_ratio = ChronoUnit.MILLIS.between(left, frame.getInstant());
-            x_ratio /= (float)page.getWindowWidthMillis();
-            float y_ratio = (value - min) / (max - min);
+                last_x = x;
+                last_y = y;
+                last_value_y = value;
+            }
+        } else {
+            // Draw the range of the samples under each pixel, so the work done depends on the width and not on
+            // how many samples are in view
+            DatalogStore.Statistics pixel = new DatalogStore.Statistics();
+            boolean first = true;
+            int pixelFrom = Math.max(from, samples.indexOf(leftNanos));
+            for (int x = 0; x < width && pixelFrom < to; x ++) {
+                int pixelTo = Math.min(to, samples.indexOf(leftNanos + (widthNanos * (x + 1)) / width));
+                if (pixelTo <= pixelFrom) {
+                    continue;
+                }
 
-            float x = x_ratio * (float)bounds.getWidth();
-            float y = (float)bounds.getHeight() - ((float) (y_ratio * bounds.getHeight()));
+                pixel.reset();
+                samples.getStatistics(column, pixelFrom, pixelTo, pixel);
+                pixelFrom = pixelTo;
+                if (pixel.isEmpty()) {
+                    continue;
+                }
 
-            if (i == 0) {
-                path.moveTo(x, y);
-            } else {
-                path.lineTo(x, y);
-                if (page.getCursorX() != null && page.getCursorX() <= last_x && page.getCursorX() >= x) {
-                    float ratio = (page.getCursorX() - x) / (last_x - x);
-                    value_y = value + ((last_value_y - value) * ratio);
-                    cursor_y = y + ((last_y - y) * ratio);
+                float y_min = height - (((pixel.getMinimum() - scaleMin) / (scaleMax - scaleMin)) * height);
+                float y_max = height - (((pixel.getMaximum() - scaleMin) / (scaleMax - scaleMin)) * height);
+                if (first) {
+                    path.moveTo(x, y_min);
+                    first = false;
+                } else {
+                    path.lineTo(x, y_min);
                 }
+                path.lineTo(x, y_max);
             }
 
-            last_x = x;
-            last_y = y;
-            last_value_y = value;
+            if (page.getCursorX() != null) {
+                long cursorNanos = leftNanos + (widthNanos * page.getCursorX()) / width;
+                int after = samples.indexOf(cursorNanos);
+                if (after > from && after < to) {
+                    float a = samples.getValue(column, after - 1), b = samples.getValue(column, after);
+                    if (!Float.isNaN(a) && !Float.isNaN(b)) {
+                        long t0 = samples.getTime(after - 1), t1 = samples.getTime(after);
+                        float ratio = t1 == t0 ? 0f : (cursorNanos - t0) / (float) (t1 - t0);
+                        value_y = a + ((b - a) * ratio);
+                        cursor_y = height - (((value_y - scaleMin) / (scaleMax - scaleMin)) * height);
+                    }
+                }
+            }
         }
 
         if (mousePosition != null) {
@@ -233,7 +299,12 @@ public class DatalogParameterPanel extends JPanel {
         }
 
         g2d.setFont(Fonts.bold(Fonts.VALUE_FONT));
-        drawText(bounds, g2d, labelColor, 5, 5, parameter.getName());
+        String name = parameter.getName();
+        DatalogScheduler scheduler = page.getScheduler();
+        if (scheduler != null && scheduler.getFrequency(parameter) > 0D) {
+            name += String.format(" (%.1f Hz)", scheduler.getFrequency(parameter));
+        }
+        drawText(bounds, g2d, labelColor, 5, 5, name);
 
         g2d.setFont(Fonts.VALUE_FONT);
         if (max != -Float.MAX_VALUE) {
@@ -246,6 +317,24 @@ public class DatalogParameterPanel extends JPanel {
                     String.format("Min: " + valueFormat + parameter.getScale().getUnit().getText(), min));
         }
 
+        if (page.isDragging() && page.getDragLeft() != page.getDragRight() && column != null) {
+            float selectionLeft = Math.min(page.getDragLeft(), page.getDragRight());
+            float selectionRight = Math.max(page.getDragLeft(), page.getDragRight());
+            int selectionFrom = Math.max(samples.getValidIndex(),
+                    samples.indexOf(DatalogStore.toNanos(page.getTime(selectionLeft))));
+            int selectionTo = samples.indexOf(DatalogStore.toNanos(page.getTime(selectionRight)));
+            if (selectionFrom < selectionTo) {
+                DatalogStore.Statistics selection = samples.getStatistics(column, selectionFrom, selectionTo);
+                if (!selection.isEmpty()) {
+                    String unit = parameter.getScale().getUnit().getText();
+                    drawText(bounds, g2d, labelColor, selectionLeft + 5, 5, String.format(
+                            "Min: " + valueFormat + unit + "  Avg: " + valueFormat + unit +
+                                    "  Max: " + valueFormat + unit,
+                            selection.getMinimum(), selection.getAverage(), selection.getMaximum()));
+                }
+            }
+        }
+
         g.setColor(getBackground().brighter());
 
         if (page.getActiveParameters().size() > 1) {
@@ -273,6 +362,11 @@ public class DatalogParameterPanel extends JPanel {
                     (int) (getBounds().getHeight() - moveDown.getHeight() - 5));
             g2d.translate(5 + moveUp.getWidth() , 0);
             moveDown.paint(g2d);
+
+            rate.setLocation(moveDown.getX() + moveDown.getWidth() + 5,
+                    (int) (getBounds().getHeight() - rate.getHeight() - 5));
+            g2d.translate(5 + moveDown.getWidth(), 0);
+            rate.paint(g2d);
         }
     }
 }
\ No newline at end of file
@@ -3,6 +3,9 @@ package com.github.manevolent.atlas.ui.component.window;
 import com.github.manevolent.atlas.connection.Connection;
 import com.github.manevolent.atlas.connection.ConnectionMode;
 import com.github.manevolent.atlas.connection.MemoryFrame;
+import com.github.manevolent.atlas.datalog.DatalogReader;
+import com.github.manevolent.atlas.datalog.DatalogScheduler;
+import com.github.manevolent.atlas.datalog.DatalogStore;
 import com.github.manevolent.atlas.logging.Log;
 import com.github.manevolent.atlas.model.MemoryParameter;
 import com.github.manevolent.atlas.settings.Setting;
@@ -13,7 +16,7 @@ import com.github.manevolent.atlas.ui.component.menu.datalog.ViewMenu;
 import com.github.manevolent.atlas.ui.component.toolbar.DatalogToolbar;
 import com.github.manevolent.atlas.ui.util.Icons;
 import com.github.manevolent.atlas.ui.util.Inputs;
-import com.google.common.collect.Lists;
+import com.github.manevolent.atlas.ui.util.Job;
 import org.apache.commons.lang.StringEscapeUtils;
 import org.kordamp.ikonli.carbonicons.CarbonIcons;
 
@@ -31,6 +34,7 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Writer;
+import java.nio.file.FileAlreadyExistsException;
 import java.time.Instant;
 import java.util.*;
 import java.util.List;
@@ -41,6 +45,58 @@ import java.util.logging.Level;
 import static com.github.manevolent.atlas.ui.util.Fonts.getTextColor;
 
 public class DatalogWindow extends Window implements InternalFrameListener, ChangeListener {
+    public static final String RECORDING_EXTENSION = "atlaslog";
+
+    /**
+     * Number of recordings kept in the recording directory unless the retention setting says otherwise; the oldest
+     * are deleted as new ones are started.
+     */
+    public static final int DEFAULT_RETAINED_RECORDINGS = 100;
+
+    public static File getRecordingDirectory() {
+        File directory = new File(Settings.getSettingsDirectory(), "datalogs");
+        directory.mkdirs();
+        return directory;
+    }
+
+    /**
+     * Turns a recording name into a file name that stays inside the recording directory
+     * @param name name given to the recording
+     * @return file name, without an extension
+     */
+    public static String getRecordingFileName(String name) {
+        String fileName = name.trim()
+                .replaceAll("[^\\w .()-]", "_")
+                .replaceFirst("^[. ]+", "");
+        return fileName.isEmpty() ? "datalog" : fileName;
+    }
+
+    /**
+     * Deletes the oldest recordings, leaving room for a new one within the retention setting
+     */
+    private static void pruneRecordings() {
+        Integer setting = Settings.get(Setting.DATALOG_RETAINED_RECORDINGS);
+        int retained = setting == null ? DEFAULT_RETAINED_RECORDINGS : setting;
+        if (retained <= 0) {
+            return;
+        }
+
+        File[] recordings = getRecordingDirectory().listFiles((dir, fileName) ->
+                fileName.endsWith("." + RECORDING_EXTENSION));
+        if (recordings == null || recordings.length < retained) {
+            return;
+        }
+
+        Arrays.sort(recordings, Comparator.comparingLong(File::lastModified));
+        for (int i = 0; i <= recordings.length - retained; i ++) {
+            if (recordings[i].delete()) {
+                Log.ui().log(Level.INFO, "Deleted old datalog recording " + recordings[i].getPath());
+            } else {
+                Log.ui().log(Level.WARNING, "Problem deleting old datalog recording " + recordings[i].getPath());
+            }
+        }
+    }
+
     private JMenuBar menubar;
     private FileMenu fileMenu;
 
@@ -48,11 +104,11 @@ public class DatalogWindow extends Window implements InternalFrameListener, Chan
     private JTabbedPane tabbedPane;
 
     private Timer paintTimer;
-    private Timer datalogTimer;
+    private DatalogScheduler scheduler;
 
     private List<DatalogPage> pages = new ArrayList<>();
     private DatalogPage activePage;
-    private DatalogPage recordingPage;
+    private volatile DatalogPage recordingPage;
 
     public DatalogWindow(Editor editor) {
         super(editor);
@@ -237,51 +293,89 @@ public class DatalogWindow extends Window implements InternalFrameListener, Chan
         DatalogPage page = new DatalogPage(this);
         page.setName(newDatalogName);
         addPage(page);
-        setRecordingPage(page);
 
-        long frequency = Settings.get(Setting.DATALOG_FREQUENCY, 30);
+        pruneRecordings();
+
+        // Recordings are never overwritten; a name that's already taken gets a number on the end
+        String fileName = getRecordingFileName(newDatalogName);
+        File recordingFile = new File(getRecordingDirectory(), fileName + "." + RECORDING_EXTENSION);
+        try {
+            for (int copy = 2; ; copy ++) {
+                try {
+                    page.startRecorder(recordingFile.toPath());
+                    break;
+                } catch (FileAlreadyExistsException ex) {
+                    recordingFile = new File(getRecordingDirectory(),
+                            fileName + " (" + copy + ")." + RECORDING_EXTENSION);
+                }
+            }
 
-        if (datalogTimer == null) { // Which it SHOULD be
-            datalogTimer = new Timer("Datalog");
+            Log.ui().log(Level.INFO, "Recording datalog to " + recordingFile.getPath());
+        } catch (IOException ex) {
+            Log.ui().log(Level.WARNING, "Problem creating datalog recording " + recordingFile.getPath()
+                    + "; this datalog will only be kept in memory", ex);
         }
 
-        datalogTimer.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                DatalogPage recordingPage = getRecordingPage();
-                if (recordingPage == null || recordingPage.isPaused()) {
-                    return;
-                }
+        setRecordingPage(page);
 
-                Collection<MemoryParameter> parameters = recordingPage.getActiveParameters();
+        if (scheduler != null) { // Which it SHOULDN'T be
+            scheduler.stop();
+        }
 
-                try {
-                    MemoryFrame frame = establishConnection().readFrame(parameters);
-                    if (frame != null) {
-                        recordingPage.addFrame(frame);
-                    }
-                } catch (Exception ex) {
-                    Log.ui().log(Level.SEVERE, "Problem getting datalog frame", ex);
-                }
+        // A scheduler still stopping in the background must not sample for, or add to, a later recording
+        scheduler = new DatalogScheduler(parameters -> {
+            if (getRecordingPage() != page || page.isPaused()) {
+                return null;
+            }
+
+            return establishConnection().readFrame(parameters);
+        }, frame -> {
+            if (getRecordingPage() == page) {
+                page.addFrame(frame);
             }
-        }, 1000L, 1000 / frequency);
+        });
+
+        // The frequency setting, when present, caps how fast the ECU is polled
+        Integer frequency = Settings.get(Setting.DATALOG_FREQUENCY);
+        scheduler.setMaximumFrequency(frequency == null ? 0 : frequency);
+
+        page.setScheduler(scheduler);
+        scheduler.start();
+    }
+
+    public DatalogScheduler getScheduler() {
+        return scheduler;
     }
 
     public void stopRecording() {
-        if (datalogTimer != null) {
-            datalogTimer.cancel();
-            datalogTimer.purge();
-            datalogTimer = null;
-        }
+        DatalogScheduler scheduler = this.scheduler;
+        this.scheduler = null;
 
-        if (recordingPage != null) {
-            DatalogPage page = recordingPage;
+        DatalogPage page = recordingPage;
+        if (page != null) {
+            page.setScheduler(null);
             setRecordingPage(null);
             tabbedPane.setSelectedComponent(page);
             page.setPaused(true, true);
 
             updateTitle();
         }
+
+        if (scheduler == null && page == null) {
+            return;
+        }
+
+        // Stopping waits for the sample being read to finish, which can take seconds on a slow or silent bus; the
+        // recording is closed once nothing more can be appended to it
+        Job.fork(() -> {
+            if (scheduler != null) {
+                scheduler.stop();
+            }
+
+            if (page != null) {
+                page.stopRecorder();
+            }
+        });
     }
 
     @Override
@@ -339,6 +433,9 @@ public class DatalogWindow extends Window implements InternalFrameListener, Chan
                     if (DatalogWindow.this.activePage != null) {
                         tabbedPane.repaint();
                     }
+
+                    DatalogScheduler scheduler = DatalogWindow.this.scheduler;
+                    SwingUtilities.invokeLater(() -> toolbar.setRate(scheduler));
                 }
             }, 0L, 1000L / 40L);
         }
@@ -408,6 +505,36 @@ public class DatalogWindow extends Window implements InternalFrameListener, Chan
         writer.write("\r\n");
     }
 
+    public void openDatalog() {
+        JFileChooser fileChooser = new JFileChooser(getRecordingDirectory());
+        FileNameExtensionFilter def = new FileNameExtensionFilter("Datalog recording (*." + RECORDING_EXTENSION + ")",
+                RECORDING_EXTENSION);
+        fileChooser.addChoosableFileFilter(def);
+        fileChooser.setFileFilter(def);
+        fileChooser.setDialogTitle("Open Datalog");
+        if (fileChooser.showOpenDialog(getParent()) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+
+        File file = fileChooser.getSelectedFile();
+        DatalogPage page = new DatalogPage(this);
+        page.setName(file.getName().replaceAll("\\." + RECORDING_EXTENSION + "$", ""));
+
+        try (DatalogReader reader = DatalogReader.open(file.toPath())) {
+            page.load(reader);
+        } catch (IOException ex) {
+            Log.ui().log(Level.SEVERE, "Problem opening datalog " + file.getPath(), ex);
+            JOptionPane.showMessageDialog(getParent(), "Failed to open datalog!\r\n" + ex.getMessage() + "\r\n" +
+                            "See console output (F12) for more details.",
+                    "Open failed",
+                    JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        addPage(page);
+        Log.ui().log(Level.INFO, "Datalog opened from " + file.getPath());
+    }
+
     public void saveDatalog(boolean includeAll) {
         DatalogPage page = getActivePage();
         if (page == null) {
@@ -432,19 +559,23 @@ public class DatalogWindow extends Window implements InternalFrameListener, Chan
                 }
                 writer.write("\r\n");
 
-                for (MemoryFrame frame : Lists.reverse(page.getFrames())) { // Reversed for time order (asc. desired)
-                    boolean inView = frame.getInstant().isAfter(page.getLeft()) &&
-                            frame.getInstant().isBefore(page.getRight());
+                DatalogStore.Snapshot samples = page.getSamples();
+                List<DatalogStore.Column> columns = page.getActiveParameters().stream()
+                        .map(page::getColumn).toList();
+
+                for (int i = 0; i < samples.size(); i ++) {
+                    Instant instant = samples.getInstant(i);
+                    boolean inView = instant.isAfter(page.getLeft()) && instant.isBefore(page.getRight());
 
                     if (!inView && !includeAll) {
                         continue;
                     }
 
-                    writeCell(frame.getInstant().toString(), writer);
-                    for (MemoryParameter parameter : page.getActiveParameters()) {
-                        byte[] data = frame.getData(parameter);
-                        if (data != null) {
-                            writeCell(String.format("%.2f", parameter.getValue(data)), writer);
+                    writeCell(instant.toString(), writer);
+                    for (DatalogStore.Column column : columns) {
+                        float value = column == null ? Float.NaN : samples.getValue(column, i);
+                        if (!Float.isNaN(value)) {
+                            writeCell(String.format("%.2f", value), writer);
                         } else {
                             writeCell("", writer);
                         }
@@ -1,7 +1,10 @@
 package com.github.manevolent.atlas.ui.component.window;
 
+import com.github.manevolent.atlas.connection.MemoryFrame;
+import com.github.manevolent.atlas.datalog.TableTrace;
 import com.github.manevolent.atlas.model.*;
 import com.github.manevolent.atlas.logging.Log;
+import com.github.manevolent.atlas.ui.util.Colors;
 import com.github.manevolent.atlas.ui.dialog.VariableInputDialog;
 import com.github.manevolent.atlas.ui.util.Icons;
 import com.github.manevolent.atlas.ui.util.Fonts;
@@ -23,6 +26,9 @@ import java.awt.Color;
 import java.awt.event.*;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -46,6 +52,12 @@ public class TableEditor extends Window implements
             VK_DOWN, VK_KP_DOWN
     );
 
+    private static final int traceRepaintMillis = 1000 / 30;
+    private static final long traceTrailNanos = TimeUnit.SECONDS.toNanos(2);
+    private static final Color traceHeatColor = new Color(0x30, 0x50, 0x90);
+    private static final Color traceTrailColor = new Color(0x20, 0x90, 0x90);
+    private static final Color traceActiveColor = new Color(0xE0, 0xE0, 0xE0);
+
     private static final int precisionPoints = 2;
     private static final String valueFormat = "%." + precisionPoints + "f";
     private final Table table;
@@ -72,6 +84,11 @@ public class TableEditor extends Window implements
 
     private final boolean readOnly;
 
+    private volatile TableTrace trace;
+    private final Consumer<MemoryFrame> traceListener = this::onMemoryFrame;
+    private final AtomicBoolean traceAwake = new AtomicBoolean();
+    private javax.swing.Timer traceTimer;
+
     public TableEditor(Editor editor, Table table, boolean readOnly) {
         super(editor);
 
@@ -117,6 +134,12 @@ public class TableEditor extends Window implements
     @Override
     protected void initComponent(JInternalFrame window) {
         window.addFocusListener(this);
+        window.addInternalFrameListener(new InternalFrameAdapter() {
+            @Override
+            public void internalFrameClosed(InternalFrameEvent e) {
+                setTracing(false);
+            }
+        });
 
         tableComponent = new JTable() {
             @Override
@@ -264,14 +287,12 @@ public class TableEditor extends Window implements
     public void averageSelection() {
         int[] selectedRows = tableComponent.getSelectedRows();
         int[] selectedColumns = tableComponent.getSelectedColumns();
+        float[] cells = readCells();
+        TableLayout layout = table.getLayout();
         float sum = 0;
         for (int selectedRow : selectedRows) {
             for (int selectedColumn : selectedColumns) {
-                try {
-                    sum += table.getCell(getCalibration(), selectedColumn, selectedRow);
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
+                sum += cells[layout.getIndex(selectedColumn, selectedRow)];
             }
         }
 
@@ -351,14 +372,11 @@ public class TableEditor extends Window implements
             selectedColumns = IntStream.range(0, tableComponent.getColumnCount()).toArray();
         }
 
+        float[] cells = readCells();
+        TableLayout layout = table.getLayout();
         for (int selectedRow : selectedRows) {
             for (int selectedColumn : selectedColumns) {
-                float data;
-                try {
-                    data = table.getCell(getCalibration(), selectedColumn, selectedRow);
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
+                float data = cells[layout.getIndex(selectedColumn, selectedRow)];
                 data = function.apply(data);
 
                 tableComponent.getModel().setValueAt(data, selectedRow, selectedColumn);
@@ -376,13 +394,10 @@ public class TableEditor extends Window implements
 
         Series x = table.getSeries(X);
         if (x != null) {
-            columns = new Object[x.getLength()];
-            for (int i = 0; i < x.getLength(); i ++) {
-                try {
-                    columns[i] = String.format(valueFormat, x.get(getCalibration(), i));
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
+            float[] values = readSeries(x);
+            columns = new Object[values.length];
+            for (int i = 0; i < values.length; i ++) {
+                columns[i] = String.format(valueFormat, values[i]);
             }
         } else {
             columns = new Object[1];
@@ -392,9 +407,8 @@ public class TableEditor extends Window implements
     }
 
     private TableModel generateTableModel() {
-        int x_size = table.getSeries(X) == null ? 1 : table.getSeries(X).getLength();
-        int y_size = table.getSeries(Y) == null ? 1 : table.getSeries(Y).getLength();
-        Object[][] data = new Float[y_size][x_size];
+        TableLayout layout = table.getLayout();
+        Object[][] data = new Float[layout.getLength(Y)][layout.getLength(X)];
         return new DefaultTableModel(data, generateColumns());
     }
 
@@ -420,14 +434,7 @@ public class TableEditor extends Window implements
         // Find the longest string in the columns (X axis)
         Series x = table.getSeries(X);
         if (x != null) {
-            for (int i = 0; i < x.getLength(); i ++) {
-                float data;
-                try {
-                    data = x.get(getCalibration(), i);
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
-
+            for (float data : readSeries(x)) {
                 String formattedString = String.format(valueFormat, data);
                 int width = metrics.stringWidth(formattedString);
                 longestString = Math.max(longestString, width);
@@ -435,14 +442,7 @@ public class TableEditor extends Window implements
         }
 
         // Find the longest string in the cells (table data)
-        for (int i = 0; i < table.getData().getLength(); i ++) {
-            float data;
-            try {
-                data = table.getData().get(getCalibration(), i);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-
+        for (float data : readCells()) {
             String formattedString = String.format(valueFormat, data);
             int width = metrics.stringWidth(formattedString);
             longestString = Math.max(longestString, width);
@@ -510,53 +510,33 @@ public class TableEditor extends Window implements
     }
 
     private void updateData() {
-        Map<Axis, Integer> coordinates = new HashMap<>();
-        int size = 1;
-
-        for (Axis axis : table.getAxes().keySet()) {
-            coordinates.put(axis, 0);
-            size *= table.getSeries(axis).getLength();
+        float[] cells = readCells();
+        TableLayout.Cursor cursor = table.getLayout().cells();
+        while (cursor.next()) {
+            setValue(cursor.getY(), cursor.getX(), cells[cursor.getIndex()]);
         }
 
-        java.util.List<Axis> orderedAxes = Arrays.stream(Axis.values())
-                .filter(coordinates::containsKey).toList();
-        int read = 0;
-        while (read < size) {
-            float value;
-            try {
-                value = table.getCell(getCalibration(), coordinates);
-                setValue(coordinates, value);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-
-            read ++;
-
-            // In the case of 1x1 tables (no axes)
-            if (coordinates.isEmpty()) {
-                break;
-            }
-
-            // Advance
-            boolean carry = true;
-            for (Axis axis : orderedAxes) {
-                int index = coordinates.get(axis);
-
-                if (carry) {
-                    index++;
-                    carry = false;
-                }
-
-                if (table.getSeries(axis).getLength() <= index) {
-                    carry = true;
-                    index = 0;
-                }
+        updateCellWidth();
+    }
 
-                coordinates.put(axis, index);
-            }
+    /**
+     * Reads all of the table's cells in one pass
+     * @return cell values, in the table's data index order
+     */
+    private float[] readCells() {
+        try {
+            return table.getCells(getCalibration());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
         }
+    }
 
-        updateCellWidth();
+    private float[] readSeries(Series series) {
+        try {
+            return series.getAll(getCalibration());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     public String getSeriesHeaderString(Series series) {
@@ -571,15 +551,9 @@ public class TableEditor extends Window implements
     }
 
     private java.util.List<String> generateRowHeaders() {
-        return IntStream.range(0, table.getSeries(Y).getLength())
-                .mapToObj(index -> {
-                    try {
-                        return table.getSeries(Y).get(getCalibration(), index);
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
-                    }
-                })
-                .map(value -> String.format(valueFormat, value))
+        float[] values = readSeries(table.getSeries(Y));
+        return IntStream.range(0, values.length)
+                .mapToObj(index -> String.format(valueFormat, values[index]))
                 .toList();
     }
 
@@ -590,14 +564,11 @@ public class TableEditor extends Window implements
         int[] selectedRow = tableComponent.getSelectedRows();
         int[] selectedColumns = tableComponent.getSelectedColumns();
 
+        float[] cells = selectedRow.length > 0 && selectedColumns.length > 0 ? readCells() : null;
+        TableLayout layout = table.getLayout();
         for (int i = 0; i < selectedRow.length; i++) {
             for (int j = 0; j < selectedColumns.length; j++) {
-                float data;
-                try {
-                    data = table.getCell(getCalibration(), selectedColumns[j], selectedRow[i]);
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
+                float data = cells[layout.getIndex(selectedColumns[j], selectedRow[i])];
                 selMax = Math.max(data, selMax);
                 selMin = Math.min(data, selMin);
             }
@@ -616,14 +587,9 @@ public class TableEditor extends Window implements
         max = -Float.MAX_VALUE;
         min = Float.MAX_VALUE;
 
-        for (int i = 0; i < table.getData().getLength(); i ++) {
-            try {
-                float data = table.getData().get(getCalibration(), i);
-                max = Math.max(data, max);
-                min = Math.min(data, min);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
+        for (float data : readCells()) {
+            max = Math.max(data, max);
+            min = Math.min(data, min);
         }
 
         if (min == -0) {
@@ -759,6 +725,124 @@ public class TableEditor extends Window implements
 
         getComponent().getContentPane().revalidate();
         getComponent().getContentPane().repaint();
+
+        // The axes may have changed under the trace
+        if (isTracing()) {
+            setTracing(false);
+            setTracing(true);
+        }
+    }
+
+    public boolean isTracing() {
+        return trace != null;
+    }
+
+    /**
+     * Starts or stops highlighting the cells the ECU is in as datalog frames arrive
+     * @param tracing true to trace the table
+     * @return true if the table is now being traced as requested
+     */
+    public boolean setTracing(boolean tracing) {
+        if (tracing == isTracing()) {
+            return true;
+        }
+
+        if (!tracing) {
+            getParent().removeMemoryFrameListener(traceListener);
+            trace = null;
+            if (traceTimer != null) {
+                traceTimer.stop();
+                traceTimer = null;
+            }
+            traceAwake.set(false);
+            tableComponent.repaint();
+            return true;
+        }
+
+        Map<Axis, MemoryParameter> parameters = TableTrace.findParameters(table,
+                getParent().getProject().getParameters());
+        try {
+            trace = new TableTrace(table, getCalibration(), parameters, traceTrailNanos);
+        } catch (IllegalArgumentException | IOException ex) {
+            Log.ui().log(Level.WARNING, "Can't trace table \"" + table.getName() + "\"", ex);
+            JOptionPane.showMessageDialog(getParent(), "Can't trace this table's axes with the project's " +
+                    "parameters.\r\n" + ex.getMessage(), "Trace Datalog", JOptionPane.WARNING_MESSAGE);
+            return false;
+        }
+
+        traceTimer = new javax.swing.Timer(traceRepaintMillis, e -> repaintTrace());
+        getParent().addMemoryFrameListener(traceListener);
+        return true;
+    }
+
+    public void clearTrace() {
+        TableTrace trace = this.trace;
+        if (trace != null) {
+            trace.clear();
+            wakeTrace();
+        }
+    }
+
+    /**
+     * Takes a datalog frame, on the thread that read it
+     */
+    private void onMemoryFrame(MemoryFrame frame) {
+        TableTrace trace = this.trace;
+        if (trace == null) {
+            return;
+        }
+
+        trace.accept(frame);
+        wakeTrace();
+    }
+
+    private void wakeTrace() {
+        // Frames coalesce until the next tick, however fast they arrive
+        if (traceAwake.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(() -> {
+                if (traceTimer != null) {
+                    traceTimer.start();
+                } else {
+                    traceAwake.set(false);
+                }
+            });
+        }
+    }
+
+    private void repaintTrace() {
+        TableTrace trace = this.trace;
+        if (trace == null) {
+            return;
+        }
+
+        TableLayout layout = table.getLayout();
+        boolean fading = trace.drain(System.nanoTime(), cell -> {
+            int col = layout.getCoordinate(cell, X), row = layout.getCoordinate(cell, Y);
+            tableComponent.repaint(tableComponent.getCellRect(row, col, false));
+        });
+
+        if (!fading) {
+            // Sleep until the next frame, unless one slipped in while going to sleep
+            traceTimer.stop();
+            traceAwake.set(false);
+            if (trace.isDirty()) {
+                wakeTrace();
+            }
+        }
+    }
+
+    private Color getTraceColor(int row, int col) {
+        TableTrace trace = this.trace;
+        if (trace == null) {
+            return null;
+        }
+
+        int cell = table.getLayout().getIndex(col, row);
+        Color color = tableComponent.getBackground();
+        color = Colors.blend(color, traceHeatColor, trace.getHeat(cell));
+        color = Colors.blend(color, traceTrailColor, trace.getTrail(cell, System.nanoTime()));
+        color = Colors.blend(color, traceActiveColor, trace.getWeight(cell) * 0.6f);
+        return color;
     }
 
     @Override
@@ -960,6 +1044,9 @@ public class TableEditor extends Window implements
         public Component getTableCellRendererComponent(JTable table, Object value,
                                                        boolean isSelected, boolean hasFocus,
                                                        int row, int col) {
+            // Null puts back the table's own background
+            setBackground(getTraceColor(row, col));
+
             Component c = super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, col);
             c.setFont(Fonts.VALUE_FONT);
 
@@ -6,4 +6,20 @@ public class Colors {
     public static Color withAlpha(Color color, int alpha) {
         return new Color(color.getRed(), color.getGreen(), color.getBlue(), alpha);
     }
+
+    /**
+     * Mixes two colors
+     * @param from color at 0
+     * @param to color at 1
+     * @param amount how far towards the second color to go, clamped to [0, 1]
+     * @return mixed color
+     */
+    public static Color blend(Color from, Color to, float amount) {
+        float t = Math.max(0f, Math.min(1f, amount));
+        return new Color(
+                Math.round(from.getRed() + (to.getRed() - from.getRed()) * t),
+                Math.round(from.getGreen() + (to.getGreen() - from.getGreen()) * t),
+                Math.round(from.getBlue() + (to.getBlue() - from.getBlue()) * t)
+        );
+    }
 }
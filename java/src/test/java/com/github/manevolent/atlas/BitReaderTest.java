@@ -4,7 +4,12 @@ import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
 
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 public class BitReaderTest {
 
@@ -56,4 +61,36 @@ public class BitReaderTest {
         assertEquals(0xD, isoTpSize); // Length = 13 (aka 0xD)
     }
 
+    @Test
+    public void testRead_Unaligned() throws IOException {
+        byte[] data = new byte[] { 0x12, 0x34, 0x56, 0x78, (byte) 0x9A, (byte) 0xBC, (byte) 0xDE, (byte) 0xF0, 0x11 };
+        for (BitReader bitReader : new BitReader[] {
+                new BitReader(data), new BitReader(new ByteArrayInputStream(data))
+        }) {
+            assertEquals(0x1, bitReader.read(4));
+            assertEquals(0x23, bitReader.readUByte());
+            assertEquals(0x4567, bitReader.readUShort());
+            assertEquals(44, bitReader.remaining());
+            assertEquals(0x89ABCDEF01L, bitReader.read(40));
+            assertEquals(0x1, bitReader.read(4));
+            assertEquals(0, bitReader.remaining());
+            assertThrows(EOFException.class, bitReader::read);
+        }
+    }
+
+    @Test
+    public void testRead_Bulk() throws IOException {
+        byte[] data = new byte[] { 0x0A, 0x12, 0x34, 0x56, 0x78, (byte) 0x9A };
+
+        BitReader aligned = new BitReader(data, 1);
+        assertEquals(40, aligned.remaining());
+        assertArrayEquals(new byte[] { 0x12, 0x34 }, aligned.readBytes(2));
+        assertEquals(0x56789AL, aligned.read(24));
+        assertThrows(EOFException.class, () -> aligned.readBytes(1));
+
+        BitReader unaligned = new BitReader(data);
+        assertEquals(0x0, unaligned.read(4));
+        assertArrayEquals(new byte[] { (byte) 0xA1, 0x23, 0x45, 0x67, (byte) 0x89 }, unaligned.readRemaining());
+        assertEquals(4, unaligned.remaining());
+    }
 }
@@ -64,4 +64,19 @@ public class BitWriterTest {
 
         assertArrayEquals(symbols, baos.toByteArray());
     }
+
+    @Test
+    public void testWrite_unaligned() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        BitWriter writer = new BitWriter(baos);
+        writer.writeNibble((byte) 0x1);
+        writer.writeShort((short) 0x2345);
+        writer.write(new byte[] { 0x67, (byte) 0x89 });
+        writer.writeLSB(0xA, 4);
+        writer.writeBits(0xBCDE, 16);
+
+        assertArrayEquals(new byte[] {
+                0x12, 0x34, 0x56, 0x78, (byte) 0x9A, (byte) 0xBC, (byte) 0xDE
+        }, baos.toByteArray());
+    }
 }
@@ -0,0 +1,348 @@
+package com.github.manevolent.atlas;
+
+import com.github.manevolent.atlas.connection.MemoryFrame;
+import com.github.manevolent.atlas.datalog.DatalogReader;
+import com.github.manevolent.atlas.datalog.DatalogRecorder;
+import com.github.manevolent.atlas.datalog.DatalogStore;
+import com.github.manevolent.atlas.model.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.manevolent.atlas.TestParameters.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DatalogRecorderTest {
+    @TempDir
+    Path tempDir;
+
+    private static MemoryParameter newParameter(String name, Unit unit) {
+        return TestParameters.newParameter(name, 0, newScale(name, DataFormat.USHORT, unit)
+                .withOperation(ArithmeticOperation.DIVIDE, 4));
+    }
+
+    private static long time(int sample) {
+        // Irregular intervals, to exercise the delta encoding
+        return DatalogStore.toNanos(Instant.ofEpochSecond(1_700_000_000L)) + sample * 33_333_333L + (sample % 7) * 1_001L;
+    }
+
+    private static MemoryFrame newFrame(int sample, MemoryParameter... parameters) {
+        MemoryFrame frame = new MemoryFrame(DatalogStore.toInstant(time(sample)));
+        for (int i = 0; i < parameters.length; i ++) {
+            int raw = sample * 4 + i;
+            frame.setData(parameters[i], new byte[] { (byte) (raw >> 8), (byte) raw });
+        }
+        return frame;
+    }
+
+    private Path record(int samples) throws IOException {
+        MemoryParameter rpm = newParameter("RPM", Unit.RPM);
+        MemoryParameter boost = newParameter("Boost", Unit.PSI);
+        Path path = tempDir.resolve("session.atlaslog");
+        Files.deleteIfExists(path);
+
+        try (DatalogRecorder recorder = new DatalogRecorder(path, 16, 60_000L)) {
+            recorder.addParameter(rpm);
+            for (int i = 0; i < samples; i ++) {
+                if (i == 20) {
+                    recorder.addParameter(boost);
+                }
+                recorder.append(i < 20 ? newFrame(i, rpm) : newFrame(i, rpm, boost));
+            }
+            assertEquals(samples, recorder.getSampleCount());
+        }
+
+        return path;
+    }
+
+    @Test
+    public void testRecord_Reopen() throws IOException {
+        Path path = record(100);
+
+        try (DatalogReader reader = DatalogReader.open(path)) {
+            assertEquals(2, reader.getParameters().size());
+            assertEquals("Boost", reader.getParameters().get(1).getName());
+            assertEquals(Unit.PSI.name(), reader.getParameters().get(1).getUnit());
+            assertEquals(7, reader.getChunkCount());
+            assertEquals(100, reader.getSampleCount());
+            assertEquals(time(0), reader.getStartTime());
+            assertEquals(time(99), reader.getEndTime());
+
+            int index = reader.findChunk(time(50));
+            assertEquals(3, index);
+            DatalogReader.Chunk chunk = reader.readChunk(index);
+            assertEquals(16, chunk.size());
+            assertEquals(time(48), chunk.getTime(0));
+            assertEquals(time(50), chunk.getTime(2));
+            assertEquals(50f, chunk.getValue(0, 2));
+            assertEquals((50 * 4 + 1) / 4f, chunk.getValue(1, 2));
+
+            DatalogReader.Chunk early = reader.readChunk(1);
+            assertEquals(19f, early.getValue(0, 3));
+            assertTrue(Float.isNaN(early.getValue(1, 3)));
+            assertEquals(20f, early.getValue(0, 4));
+            assertEquals(20.25f, early.getValue(1, 4));
+
+            assertEquals(4, reader.getChunkSize(6));
+            assertEquals(7, reader.findChunk(time(100)));
+        }
+    }
+
+    @Test
+    public void testReopen_DiscardsTornChunk() throws IOException {
+        Path path = record(40);
+        long length = path.toFile().length();
+
+        // A crash part way through writing the last chunk
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(length - 3);
+        }
+
+        try (DatalogReader reader = DatalogReader.open(path)) {
+            assertEquals(2, reader.getChunkCount());
+            assertEquals(32, reader.getSampleCount());
+            assertEquals(time(31), reader.getEndTime());
+        }
+
+        // The last chunk is all there, but wasn't written out intact
+        path = record(40);
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.seek(length - 12);
+            int b = file.read();
+            file.seek(length - 12);
+            file.write(b ^ 0xFF);
+        }
+
+        try (DatalogReader reader = DatalogReader.open(path)) {
+            assertEquals(2, reader.getChunkCount());
+            assertTrue(reader.getValidLength() < length);
+        }
+    }
+
+    @Test
+    public void testFlush_WhenSamplingStops() throws Exception {
+        MemoryParameter rpm = newParameter("RPM", Unit.RPM);
+        Path path = tempDir.resolve("stalled.atlaslog");
+
+        try (DatalogRecorder recorder = new DatalogRecorder(path, 16, 100L)) {
+            recorder.addParameter(rpm);
+            for (int i = 0; i < 3; i ++) {
+                recorder.append(newFrame(i, rpm));
+            }
+
+            // No more samples arrive, but the chunk is still written once it has been held for the interval
+            long deadline = System.nanoTime() + 5_000_000_000L;
+            long samples = 0;
+            while (samples < 3 && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+                try (DatalogReader reader = DatalogReader.open(path)) {
+                    samples = reader.getSampleCount();
+                }
+            }
+            assertEquals(3, samples);
+        }
+    }
+
+    @Test
+    public void testClose_CancelsTimedFlush() throws Exception {
+        MemoryParameter rpm = newParameter("RPM", Unit.RPM);
+        Path path = tempDir.resolve("closed.atlaslog");
+
+        DatalogRecorder recorder = new DatalogRecorder(path, 16, 50L);
+        recorder.addParameter(rpm);
+        recorder.append(newFrame(0, rpm));
+        recorder.close();
+        long size = Files.size(path);
+
+        // The flush that was set for the chunk must not touch the file once it's closed
+        Thread.sleep(200);
+        assertEquals(size, Files.size(path));
+        try (DatalogReader reader = DatalogReader.open(path)) {
+            assertEquals(1, reader.getSampleCount());
+        }
+    }
+
+    @Test
+    public void testAddParameter_NoScale() throws IOException {
+        MemoryParameter unscaled = TestParameters.newParameter("Unscaled", 0);
+        MemoryParameter unitless = TestParameters.newParameter("Unitless", 0, Scale.builder().withFormat(DataFormat.UBYTE));
+        Path path = tempDir.resolve("unscaled.atlaslog");
+
+        try (DatalogRecorder recorder = DatalogRecorder.create(path)) {
+            recorder.addParameter(unscaled);
+            recorder.addParameter(unitless);
+        }
+
+        try (DatalogReader reader = DatalogReader.open(path)) {
+            assertEquals(Unit.NONE.name(), reader.getParameters().get(0).getUnit());
+            assertEquals("", reader.getParameters().get(1).getUnit());
+        }
+    }
+
+    @Test
+    public void testCreate_KeepsExistingFile() throws IOException {
+        Path path = record(40);
+        byte[] existing = Files.readAllBytes(path);
+
+        assertThrows(FileAlreadyExistsException.class, () -> DatalogRecorder.create(path));
+        assertArrayEquals(existing, Files.readAllBytes(path));
+    }
+
+    @Test
+    public void testAppend_DoesNotWaitOnDisk() throws Exception {
+        MemoryParameter rpm = newParameter("RPM", Unit.RPM);
+        Path path = tempDir.resolve("slow.atlaslog");
+        CountDownLatch forcing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        SlowChannel channel = new SlowChannel(FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE), forcing, release);
+
+        DatalogRecorder recorder = new DatalogRecorder(channel, 4, 60_000L);
+        try {
+            recorder.addParameter(rpm);
+
+            // The first chunk can't be forced to disk until the end, but sampling carries on regardless
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                for (int i = 0; i < 100; i ++) {
+                    recorder.append(newFrame(i, rpm));
+                }
+            });
+            assertEquals(100, recorder.getSampleCount());
+            assertTrue(forcing.await(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            recorder.close();
+        }
+
+        try (DatalogReader reader = DatalogReader.open(path)) {
+            assertEquals(25, reader.getChunkCount());
+            assertEquals(100, reader.getSampleCount());
+            assertEquals(time(99), reader.getEndTime());
+        }
+    }
+
+    /**
+     * A file channel that holds up the first force until it is released
+     */
+    private static class SlowChannel extends FileChannel {
+        private final FileChannel channel;
+        private final CountDownLatch forcing;
+        private final CountDownLatch release;
+
+        private SlowChannel(FileChannel channel, CountDownLatch forcing, CountDownLatch release) {
+            this.channel = channel;
+            this.forcing = forcing;
+            this.release = release;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            forcing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            channel.force(metaData);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return channel.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return channel.read(dsts, offset, length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return channel.write(src);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return channel.write(srcs, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return channel.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            channel.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return channel.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            channel.truncate(size);
+            return this;
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return channel.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return channel.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return channel.read(dst, position);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            return channel.write(src, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return channel.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return channel.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return channel.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            channel.close();
+        }
+    }
+}
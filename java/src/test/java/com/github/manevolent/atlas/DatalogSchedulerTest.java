@@ -0,0 +1,101 @@
+package com.github.manevolent.atlas;
+
+import com.github.manevolent.atlas.connection.MemoryFrame;
+import com.github.manevolent.atlas.datalog.DatalogRate;
+import com.github.manevolent.atlas.datalog.DatalogScheduler;
+import com.github.manevolent.atlas.model.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.github.manevolent.atlas.TestParameters.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DatalogSchedulerTest {
+    private static MemoryParameter newParameter(String name) {
+        return TestParameters.newParameter(name, 0, newScale(name, DataFormat.UBYTE, Unit.NONE));
+    }
+
+    private static MemoryFrame newFrame(List<MemoryParameter> parameters) {
+        // Stand in for the round trip to the ECU
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(2));
+
+        MemoryFrame frame = new MemoryFrame();
+        parameters.forEach(parameter -> frame.setData(parameter, new byte[1]));
+        return frame;
+    }
+
+    @Test
+    public void testRates() throws InterruptedException {
+        MemoryParameter rpm = newParameter("RPM");
+        MemoryParameter coolant = newParameter("Coolant");
+
+        AtomicInteger rpmCount = new AtomicInteger();
+        AtomicInteger coolantCount = new AtomicInteger();
+        DatalogScheduler scheduler = new DatalogScheduler(DatalogSchedulerTest::newFrame, frame -> {
+            if (frame.getData(rpm) != null) rpmCount.incrementAndGet();
+            if (frame.getData(coolant) != null) coolantCount.incrementAndGet();
+        });
+
+        scheduler.setParameter(rpm, DatalogRate.FULL, 0);
+        scheduler.setParameter(coolant, DatalogRate.HZ_1, 0);
+
+        scheduler.start();
+        Thread.sleep(1500);
+        scheduler.stop();
+
+        assertFalse(scheduler.isRunning());
+        assertTrue(rpmCount.get() > 50, "RPM sampled " + rpmCount.get() + " times");
+        assertTrue(coolantCount.get() >= 1 && coolantCount.get() <= 3, "Coolant sampled " + coolantCount.get() + " times");
+        assertTrue(scheduler.getFrequency() > 0D);
+        assertEquals(0, scheduler.getFailures());
+    }
+
+    @Test
+    public void testPriority() throws InterruptedException {
+        MemoryParameter knock = newParameter("Knock");
+        MemoryParameter coolant = newParameter("Coolant");
+
+        List<List<MemoryParameter>> samples = Collections.synchronizedList(new ArrayList<>());
+        DatalogScheduler scheduler = new DatalogScheduler(parameters -> {
+            samples.add(new ArrayList<>(parameters));
+            return newFrame(parameters);
+        }, frame -> { });
+
+        scheduler.setParameter(coolant, DatalogRate.HZ_1, 0);
+        scheduler.setParameter(knock, DatalogRate.HZ_5, 1);
+
+        scheduler.start();
+        Thread.sleep(300);
+        scheduler.stop();
+
+        // Both groups are due at the start, but only one is read each cycle
+        assertTrue(samples.size() >= 2);
+        assertEquals(List.of(knock), samples.get(0));
+        assertEquals(List.of(coolant), samples.get(1));
+    }
+
+    @Test
+    public void testFailures() throws InterruptedException {
+        MemoryParameter rpm = newParameter("RPM");
+
+        DatalogScheduler scheduler = new DatalogScheduler(parameters -> {
+            throw new IllegalStateException("No response");
+        }, frame -> fail());
+
+        scheduler.setParameter(rpm, DatalogRate.FULL, 0);
+
+        scheduler.start();
+        Thread.sleep(400);
+        scheduler.stop();
+
+        // Failed reads back off rather than spinning
+        assertTrue(scheduler.getFailures() >= 1 && scheduler.getFailures() <= 3);
+        assertEquals(0D, scheduler.getFrequency());
+    }
+}
@@ -0,0 +1,147 @@
+package com.github.manevolent.atlas;
+
+import com.github.manevolent.atlas.connection.MemoryFrame;
+import com.github.manevolent.atlas.datalog.DatalogStore;
+import com.github.manevolent.atlas.model.*;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Random;
+
+import static com.github.manevolent.atlas.TestParameters.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DatalogStoreTest {
+    private static MemoryParameter newParameter(String name) {
+        return TestParameters.newParameter(name, 0, newScale(name, DataFormat.UBYTE, Unit.NONE)
+                .withOperation(ArithmeticOperation.MULTIPLY, 2));
+    }
+
+    private static MemoryFrame newFrame(long millis, MemoryParameter parameter, int value) {
+        MemoryFrame frame = new MemoryFrame(Instant.ofEpochMilli(millis));
+        frame.setData(parameter, new byte[] { (byte) value });
+        return frame;
+    }
+
+    @Test
+    public void testAppend_Wraps() {
+        MemoryParameter rpm = newParameter("RPM");
+        DatalogStore store = new DatalogStore(5);
+        assertEquals(8, store.getCapacity());
+        store.addColumn(rpm);
+
+        DatalogStore.Snapshot before = store.snapshot();
+        for (int i = 0; i < 20; i ++) {
+            store.append(newFrame(1000L + i * 10L, rpm, i));
+        }
+
+        assertTrue(before.isEmpty());
+
+        DatalogStore.Snapshot samples = store.snapshot();
+        assertEquals(8, samples.size());
+        assertEquals(12, samples.getSequence());
+        assertEquals(0, samples.getValidIndex());
+        assertEquals(Instant.ofEpochMilli(1120L), samples.getInstant(0));
+        assertEquals(24f, samples.getValue(rpm, 0));
+        assertEquals(38f, samples.getValue(rpm, 7));
+
+        assertEquals(0, samples.indexOf(0L));
+        assertEquals(3, samples.indexOf(DatalogStore.toNanos(Instant.ofEpochMilli(1145L))));
+        assertEquals(8, samples.indexOf(Long.MAX_VALUE));
+
+        // The writer laps part of the snapshot
+        for (int i = 20; i < 23; i ++) {
+            store.append(newFrame(1000L + i * 10L, rpm, i));
+        }
+        assertEquals(3, samples.getValidIndex());
+        assertEquals(8, samples.size());
+        assertThrows(IndexOutOfBoundsException.class, () -> samples.getTime(8));
+    }
+
+    @Test
+    public void testAddColumn_MissingValues() {
+        MemoryParameter rpm = newParameter("RPM");
+        MemoryParameter load = newParameter("Load");
+        DatalogStore store = new DatalogStore();
+        DatalogStore.Column rpmColumn = store.addColumn(rpm);
+        assertSame(rpmColumn, store.addColumn(rpm));
+
+        store.append(newFrame(0L, rpm, 1));
+        DatalogStore.Column loadColumn = store.addColumn(load);
+        store.append(newFrame(1L, load, 2));
+
+        DatalogStore.Snapshot samples = store.snapshot();
+        assertEquals(2, samples.size());
+        assertEquals(2f, samples.getValue(rpmColumn, 0));
+        assertTrue(Float.isNaN(samples.getValue(loadColumn, 0)));
+        assertTrue(Float.isNaN(samples.getValue(rpmColumn, 1)));
+        assertEquals(4f, samples.getValue(loadColumn, 1));
+    }
+
+    @Test
+    public void testAddColumn_MidStreamStatistics() {
+        MemoryParameter rpm = newParameter("RPM");
+        MemoryParameter load = newParameter("Load");
+        DatalogStore store = new DatalogStore(1024);
+        store.addColumn(rpm);
+
+        DatalogStore.Column loadColumn = null;
+        for (int i = 0; i < 1024; i ++) {
+            if (i == 10) {
+                loadColumn = store.addColumn(load);
+            }
+
+            MemoryFrame frame = newFrame(i, rpm, 1);
+            frame.setData(load, new byte[] { 25 });
+            store.append(frame);
+        }
+
+        // The buckets the column joined partway through must not report values it never had
+        DatalogStore.Statistics statistics = store.snapshot().getStatistics(loadColumn, 0, 1024);
+        assertEquals(1014, statistics.getCount());
+        assertEquals(50f, statistics.getMinimum());
+        assertEquals(50f, statistics.getMaximum());
+        assertEquals(50f, statistics.getAverage());
+    }
+
+    @Test
+    public void testStatistics_MatchesScan() {
+        MemoryParameter rpm = newParameter("RPM");
+        MemoryParameter load = newParameter("Load");
+        DatalogStore store = new DatalogStore(1 << 10);
+        DatalogStore.Column column = store.addColumn(rpm);
+        store.addColumn(load);
+
+        Random random = new Random(0x5747);
+        for (int i = 0; i < 2600; i ++) {
+            // Leave some gaps in the column
+            MemoryFrame frame = random.nextInt(10) == 0 ?
+                    newFrame(i, load, 0) : newFrame(i, rpm, random.nextInt(256));
+            store.append(frame);
+        }
+
+        DatalogStore.Snapshot samples = store.snapshot();
+        assertEquals(1024, samples.size());
+        for (int n = 0; n < 500; n ++) {
+            int from = random.nextInt(samples.size() + 1);
+            int to = from + random.nextInt(samples.size() - from + 1);
+
+            DatalogStore.Statistics expected = new DatalogStore.Statistics();
+            for (int i = from; i < to; i ++) {
+                expected.add(samples.getValue(column, i));
+            }
+
+            DatalogStore.Statistics actual = samples.getStatistics(column, from, to);
+            assertEquals(expected.getCount(), actual.getCount(), from + " to " + to);
+            assertEquals(expected.getMinimum(), actual.getMinimum(), from + " to " + to);
+            assertEquals(expected.getMaximum(), actual.getMaximum(), from + " to " + to);
+            assertEquals(expected.getSum(), actual.getSum(), 1e-3, from + " to " + to);
+        }
+
+        DatalogStore.Statistics all = samples.getStatistics(column, 0, samples.size());
+        assertTrue(all.getCount() > 800);
+        assertEquals(all.getSum() / all.getCount(), all.getAverage(), 1e-3);
+        assertTrue(samples.getStatistics(column, 10, 10).isEmpty());
+        assertTrue(Float.isNaN(samples.getStatistics(column, 10, 10).getMinimum()));
+    }
+}
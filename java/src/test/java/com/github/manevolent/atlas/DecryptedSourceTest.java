@@ -0,0 +1,116 @@
+package com.github.manevolent.atlas;
+
+import com.github.manevolent.atlas.model.MemoryEncryption;
+import com.github.manevolent.atlas.model.Project;
+import com.github.manevolent.atlas.model.source.ArraySource;
+import com.github.manevolent.atlas.model.source.DecryptedSource;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DecryptedSourceTest {
+    private static final long BASE_ADDRESS = 0x10000;
+
+    /**
+     * A trivial block cipher that XORs each byte by its position in its 4-byte block, so misaligned blocks are detected
+     */
+    private static class TestEncryption implements MemoryEncryption {
+        private int decrypts;
+
+        private void apply(byte[] data, int offs, int len) {
+            for (int i = 0; i < len; i ++) {
+                data[offs + i] ^= (byte) (0xA5 + (i % getBlockSize()) * 31);
+            }
+        }
+
+        @Override
+        public void encrypt(byte[] data, int offs, int len) {
+            apply(data, offs, len);
+        }
+
+        @Override
+        public void decrypt(byte[] data, int offs, int len) {
+            decrypts ++;
+            apply(data, offs, len);
+        }
+
+        @Override
+        public int getBlockSize() {
+            return 4;
+        }
+
+        @Override
+        public void setEncryptionKeys(Project project) {
+
+        }
+    }
+
+    private static byte[] randomData(int length) {
+        byte[] data = new byte[length];
+        new Random(0xDEC).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void testRead_MatchesUncached() throws IOException {
+        TestEncryption encryption = new TestEncryption();
+        ArraySource source = new ArraySource(BASE_ADDRESS, randomData(0x4000), 0, 0x4000);
+        DecryptedSource decrypted = new DecryptedSource(source, encryption, 0x100, 8);
+
+        Random random = new Random(1);
+        for (int i = 0; i < 500; i ++) {
+            int len = 1 + random.nextInt(0x180);
+            long address = BASE_ADDRESS + random.nextInt(0x4000 - len - encryption.getBlockSize());
+
+            byte[] expected = new byte[len];
+            encryption.read(source, address, expected, 0, len);
+
+            byte[] actual = new byte[len];
+            decrypted.read(actual, address, 0, len);
+
+            assertArrayEquals(expected, actual, "0x" + Long.toHexString(address) + " len " + len);
+        }
+
+        assertTrue(decrypted.getCachedPageCount() <= 8);
+    }
+
+    @Test
+    public void testRead_DecryptsOncePerPage() throws IOException {
+        TestEncryption encryption = new TestEncryption();
+        ArraySource source = new ArraySource(BASE_ADDRESS, randomData(0x1000), 0, 0x1000);
+        DecryptedSource decrypted = new DecryptedSource(source, encryption, 0x1000, 4);
+
+        byte[] cell = new byte[2];
+        for (int i = 0; i < 0x800; i ++) {
+            decrypted.read(cell, BASE_ADDRESS + (i * 2L), 0, cell.length);
+        }
+
+        assertEquals(1, encryption.decrypts);
+    }
+
+    @Test
+    public void testWrite_FlushAndEvict() throws IOException {
+        TestEncryption encryption = new TestEncryption();
+        byte[] original = randomData(0x2000);
+        ArraySource expected = new ArraySource(BASE_ADDRESS, original.clone(), 0, original.length);
+        ArraySource actual = new ArraySource(BASE_ADDRESS, original.clone(), 0, original.length);
+        DecryptedSource decrypted = new DecryptedSource(actual, encryption, 0x100, 2);
+
+        Random random = new Random(2);
+        for (int i = 0; i < 200; i ++) {
+            byte[] value = new byte[1 + random.nextInt(16)];
+            random.nextBytes(value);
+            long address = BASE_ADDRESS + random.nextInt(0x2000 - value.length - encryption.getBlockSize());
+
+            encryption.write(expected, address, value, 0, value.length);
+            decrypted.write(value, address, 0, value.length);
+        }
+
+        decrypted.flush();
+        assertFalse(decrypted.isDirty());
+        assertArrayEquals(expected.readFully(), actual.readFully());
+    }
+}
@@ -0,0 +1,96 @@
+package com.github.manevolent.atlas;
+
+import com.github.manevolent.atlas.connection.DynamicDIDPacker;
+import com.github.manevolent.atlas.model.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.github.manevolent.atlas.TestParameters.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DynamicDIDPackerTest {
+    private static MemoryParameter newParameter(String name, int offset) {
+        return TestParameters.newParameter(name, offset, newScale(name, DataFormat.USHORT, Unit.NONE));
+    }
+
+    @Test
+    public void testPlan_Packs() {
+        MemoryParameter a = newParameter("A", 0), b = newParameter("B", 4), c = newParameter("C", 8);
+        DynamicDIDPacker packer = new DynamicDIDPacker(0xF300, 4, 4);
+
+        List<DynamicDIDPacker.Change> changes = packer.plan(List.of(a, b, c));
+        assertEquals(2, changes.size());
+        assertTrue(changes.get(0).isClear());
+        assertEquals(0xF300, changes.get(0).getDefinition().getDid());
+        assertEquals(List.of(a, b), changes.get(0).getParameters());
+        assertEquals(List.of(c), changes.get(1).getParameters());
+
+        // Nothing changes for a set that's already defined, or part of it
+        assertTrue(packer.plan(List.of(a, b, c)).isEmpty());
+        assertTrue(packer.plan(List.of(c)).isEmpty());
+        assertEquals(List.of(changes.get(1).getDefinition()), packer.getDefinitions(List.of(c)));
+        assertEquals(2, packer.getDefinitions(List.of(a, b, c)).size());
+    }
+
+    @Test
+    public void testPlan_Appends() {
+        MemoryParameter a = newParameter("A", 0), b = newParameter("B", 4), c = newParameter("C", 8);
+        DynamicDIDPacker packer = new DynamicDIDPacker(0xF300, 1, 6);
+
+        packer.plan(List.of(a, b));
+        List<DynamicDIDPacker.Change> changes = packer.plan(List.of(a, b, c));
+        assertEquals(1, changes.size());
+        assertFalse(changes.getFirst().isClear());
+        assertEquals(List.of(c), changes.getFirst().getParameters());
+        assertEquals(List.of(a, b, c), packer.getDefinition(c).getParameters());
+    }
+
+    @Test
+    public void testPlan_AppendUnsupported() {
+        MemoryParameter a = newParameter("A", 0), b = newParameter("B", 4);
+        DynamicDIDPacker packer = new DynamicDIDPacker(0xF300, 1, 6);
+        packer.setAppendSupported(false);
+
+        packer.plan(List.of(a));
+        List<DynamicDIDPacker.Change> changes = packer.plan(List.of(a, b));
+        assertEquals(1, changes.size());
+        assertTrue(changes.getFirst().isClear());
+        assertEquals(List.of(a, b), changes.getFirst().getParameters());
+    }
+
+    @Test
+    public void testPlan_EvictsIdle() {
+        MemoryParameter a = newParameter("A", 0), b = newParameter("B", 4),
+                c = newParameter("C", 8), d = newParameter("D", 12);
+        DynamicDIDPacker packer = new DynamicDIDPacker(0xF300, 2, 2);
+
+        packer.plan(List.of(a));
+        packer.plan(List.of(b));
+        packer.plan(List.of(b, c));
+
+        // A was read least recently, so C replaced it
+        assertNull(packer.getDefinition(a));
+        assertEquals(packer.getDefinition(c).getDid(), 0xF300);
+
+        // Too many to fit, no matter how they're packed
+        assertThrows(IllegalArgumentException.class, () -> packer.plan(List.of(a, b, c, d)));
+    }
+
+    @Test
+    public void testPlan_Repacks() {
+        MemoryParameter a = newParameter("A", 0), b = newParameter("B", 4), c = newParameter("C", 8),
+                x = newParameter("X", 12), y = newParameter("Y", 16);
+        DynamicDIDPacker packer = new DynamicDIDPacker(0xF300, 2, 4);
+
+        packer.plan(List.of(x, a));
+        packer.plan(List.of(y, b));
+
+        // Both DIDs hold a parameter still being read and are full, so C only fits by starting over
+        List<DynamicDIDPacker.Change> changes = packer.plan(List.of(a, b, c));
+        assertTrue(changes.stream().allMatch(DynamicDIDPacker.Change::isClear));
+        assertEquals(List.of(a, b), changes.get(0).getParameters());
+        assertEquals(List.of(c), changes.get(1).getParameters());
+        assertNull(packer.getDefinition(x));
+    }
+}
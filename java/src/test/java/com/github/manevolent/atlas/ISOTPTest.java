@@ -0,0 +1,208 @@
+package com.github.manevolent.atlas;
+
+import com.github.manevolent.atlas.protocol.can.CANArbitrationId;
+import com.github.manevolent.atlas.protocol.can.CANFrame;
+import com.github.manevolent.atlas.protocol.isotp.*;
+import com.github.manevolent.atlas.protocol.j2534.CANDevice;
+import com.github.manevolent.atlas.protocol.j2534.ISOTPDevice;
+import com.github.manevolent.atlas.protocol.j2534.J2534Device;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ISOTPTest {
+    private static final CANArbitrationId TESTER = CANArbitrationId.id(0x7E0);
+    private static final CANArbitrationId ECU = CANArbitrationId.id(0x7E8);
+
+    private static final J2534Device.ISOTPFilter TESTER_FILTER = new J2534Device.ISOTPFilter(
+            CANArbitrationId.id(0xFFFFFFFF), ECU, TESTER);
+    private static final J2534Device.ISOTPFilter ECU_FILTER = new J2534Device.ISOTPFilter(
+            CANArbitrationId.id(0xFFFFFFFF), TESTER, ECU);
+
+    /**
+     * One end of a CAN bus between two devices
+     */
+    private static class BusDevice implements CANDevice {
+        private final BlockingQueue<CANFrame> incoming = new LinkedBlockingQueue<>();
+        private final AtomicInteger flowControlFrames = new AtomicInteger();
+        private volatile boolean closed;
+        private BusDevice other;
+
+        private static BusDevice[] pair() {
+            BusDevice a = new BusDevice(), b = new BusDevice();
+            a.other = b;
+            b.other = a;
+            return new BusDevice[] { a, b };
+        }
+
+        @Override
+        public FrameReader<CANFrame> reader() {
+            return new FrameReader<>() {
+                @Override
+                public CANFrame read() throws IOException {
+                    try {
+                        CANFrame frame = null;
+                        while (!closed && frame == null) {
+                            frame = incoming.poll(10, TimeUnit.MILLISECONDS);
+                        }
+                        return frame;
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+
+                @Override
+                public void close() {
+                    closed = true;
+                }
+            };
+        }
+
+        @Override
+        public FrameWriter<CANFrame> writer() {
+            return (address, frame) -> {
+                assertEquals(8, frame.getLength());
+                if (((frame.getData()[0] >> 4) & 0xF) == 0x3) {
+                    flowControlFrames.incrementAndGet();
+                }
+                other.incoming.add(new CANFrame(address.toInt(), frame.getData().clone()));
+            };
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private static BlockingQueue<ISOTPFrame> listen(ISOTPDevice device) {
+        BlockingQueue<ISOTPFrame> received = new LinkedBlockingQueue<>();
+        Thread thread = new Thread(() -> {
+            try {
+                ISOTPFrame frame;
+                while ((frame = device.reader().read()) != null) {
+                    received.add(frame);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return received;
+    }
+
+    private static byte[] newMessage(int length) {
+        byte[] message = new byte[length];
+        new Random(length).nextBytes(message);
+        return message;
+    }
+
+    @Test
+    public void testWrite_FlowControl() throws Exception {
+        BusDevice[] bus = BusDevice.pair();
+        ISOTPCANDevice tester = new ISOTPCANDevice(bus[0], TESTER_FILTER);
+        ISOTPCANDevice ecu = new ISOTPCANDevice(bus[1], ECU_FILTER);
+        ecu.setFlowControl(4, 2);
+
+        listen(tester);
+        BlockingQueue<ISOTPFrame> received = listen(ecu);
+
+        try {
+            // 43 frames: a first frame, then 42 consecutive frames in blocks of 4, 2 ms apart within a block
+            byte[] message = newMessage(300);
+            long start = System.nanoTime();
+            tester.writer().write(TESTER, new BasicFrame(message));
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            ISOTPFrame frame = received.poll(1, TimeUnit.SECONDS);
+            assertNotNull(frame);
+            assertEquals(TESTER, frame.getAddress());
+            assertArrayEquals(message, frame.getData());
+
+            assertEquals(11, bus[1].flowControlFrames.get());
+            assertTrue(elapsed >= 31 * 2, "Took " + elapsed + "ms");
+        } finally {
+            tester.close();
+            ecu.close();
+        }
+    }
+
+    @Test
+    public void testWrite_LongMessage() throws Exception {
+        BusDevice[] bus = BusDevice.pair();
+        ISOTPCANDevice tester = new ISOTPCANDevice(bus[0], TESTER_FILTER);
+        ISOTPCANDevice ecu = new ISOTPCANDevice(bus[1], ECU_FILTER);
+
+        listen(tester);
+        BlockingQueue<ISOTPFrame> received = listen(ecu);
+
+        try {
+            // Both sides of the 4095 byte limit of a 12-bit first frame length
+            for (int length : List.of(7, 8, 4095, 4096, 10_000)) {
+                byte[] message = newMessage(length);
+                tester.writer().write(TESTER, new BasicFrame(message));
+
+                ISOTPFrame frame = received.poll(1, TimeUnit.SECONDS);
+                assertNotNull(frame);
+                assertArrayEquals(message, frame.getData(), length + " bytes");
+            }
+        } finally {
+            tester.close();
+            ecu.close();
+        }
+    }
+
+    @Test
+    public void testWrite_NoFlowControl() throws Exception {
+        BusDevice[] bus = BusDevice.pair();
+        ISOTPCANDevice tester = new ISOTPCANDevice(bus[0], TESTER_FILTER);
+        ((ISOTPFrameWriter) tester.writer()).setTimeout(100);
+        listen(tester);
+
+        // Nothing answers, as if the ECU isn't there
+        try {
+            assertThrows(IOException.class, () -> tester.writer().write(TESTER, new BasicFrame(newMessage(100))));
+        } finally {
+            tester.close();
+        }
+    }
+
+    @Test
+    public void testPeer_Overflow() throws Exception {
+        AtomicInteger flag = new AtomicInteger(-1);
+        ISOTPPeer peer = new ISOTPPeer(ECU.getArbitrationId(), (p, f, blockSize, separationTime) -> flag.set(f));
+        peer.setMaximumSize(100);
+
+        assertNull(peer.handleFrame(new byte[] { 0x10, (byte) 0xC8, 1, 2, 3, 4, 5, 6 }, 8));
+        assertEquals(ISOTPFlowControlFrame.FLAG_OVERFLOW, flag.get());
+        assertFalse(peer.isReceiving());
+    }
+
+    @Test
+    public void testPeer_Sequence() throws Exception {
+        ISOTPPeer peer = new ISOTPPeer(ECU.getArbitrationId());
+
+        // Out of sequence frames drop the message
+        assertNull(peer.handleFrame(new byte[] { 0x10, 20, 1, 2, 3, 4, 5, 6 }, 8));
+        assertNull(peer.handleFrame(new byte[] { 0x21, 7, 8, 9, 10, 11, 12, 13 }, 8));
+        assertNull(peer.handleFrame(new byte[] { 0x23, 14, 15, 16, 17, 18, 19, 20 }, 8));
+        assertFalse(peer.isReceiving());
+
+        // A new first frame replaces a message in progress
+        assertNull(peer.handleFrame(new byte[] { 0x10, 20, 9, 9, 9, 9, 9, 9 }, 8));
+        assertNull(peer.handleFrame(new byte[] { 0x10, 20, 1, 2, 3, 4, 5, 6 }, 8));
+        assertNull(peer.handleFrame(new byte[] { 0x21, 7, 8, 9, 10, 11, 12, 13 }, 8));
+        ISOTPFrame frame = peer.handleFrame(new byte[] { 0x22, 14, 15, 16, 17, 18, 19, 20 }, 8);
+        assertNotNull(frame);
+        for (int i = 0; i < 20; i ++) {
+            assertEquals(i + 1, frame.getData()[i]);
+        }
+    }
+}
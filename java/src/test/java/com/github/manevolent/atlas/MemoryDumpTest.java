@@ -0,0 +1,153 @@
+package com.github.manevolent.atlas;
+
+import com.github.manevolent.atlas.connection.DebugConnection;
+import com.github.manevolent.atlas.connection.MemoryDump;
+import com.github.manevolent.atlas.model.*;
+import com.github.manevolent.atlas.model.source.ArraySource;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MemoryDumpTest {
+    private static final long BASE_ADDRESS = 0xFE000000L;
+    private static final int LENGTH = 0x8000;
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * An ECU that rejects reads larger than a limit, and fails every so often
+     */
+    private static class TestConnection extends DebugConnection {
+        private final byte[] memory;
+        private final int limit;
+        private final int failEvery;
+        private final AtomicInteger requests = new AtomicInteger();
+        private final AtomicLong bytesRequested = new AtomicLong();
+
+        private TestConnection(byte[] memory, int limit, int failEvery) {
+            super(null);
+            this.memory = memory;
+            this.limit = limit;
+            this.failEvery = failEvery;
+        }
+
+        @Override
+        public int getMaximumReadSize() {
+            return 0xFF;
+        }
+
+        @Override
+        public CompletableFuture<byte[]> readMemoryAsync(MemoryAddress address, int length) {
+            int request = requests.incrementAndGet();
+            if (length > limit) {
+                return CompletableFuture.failedFuture(new IOException("REQUEST_OUT_OF_RANGE"));
+            } else if (failEvery > 0 && request % failEvery == 0) {
+                return CompletableFuture.failedFuture(new IOException("BUSY_REPEAT_REQUEST"));
+            }
+
+            bytesRequested.addAndGet(length);
+            int offset = (int) (address.getOffset() - BASE_ADDRESS);
+            return CompletableFuture.supplyAsync(() -> Arrays.copyOfRange(memory, offset, offset + length));
+        }
+    }
+
+    private static MemorySection newSection() {
+        return MemorySection.builder()
+                .withName("RAM")
+                .withBaseAddress(BASE_ADDRESS)
+                .withLength(LENGTH)
+                .withByteOrder(MemoryByteOrder.BIG_ENDIAN)
+                .withType(MemoryType.RAM)
+                .build();
+    }
+
+    private static byte[] newMemory() {
+        byte[] memory = new byte[LENGTH];
+        new Random(0xD0).nextBytes(memory);
+        return memory;
+    }
+
+    @Test
+    public void testDump_NegotiatesAndRetries() throws IOException {
+        byte[] memory = newMemory();
+        TestConnection connection = new TestConnection(memory, 0x80, 7);
+        MemorySection section = newSection();
+        Calibration calibration = Calibration.builder()
+                .withName("RAM")
+                .withSection(section)
+                .withSource(new ArraySource(BASE_ADDRESS, new byte[LENGTH], 0, LENGTH))
+                .build();
+
+        MemoryDump dump = MemoryDump.builder()
+                .withConnection(connection)
+                .withSection(section)
+                .withTarget(calibration)
+                .build();
+
+        assertTrue(dump.run());
+        assertArrayEquals(memory, calibration.readFully());
+
+        assertTrue(dump.getBlockSize() <= 0x80 && dump.getBlockSize() > 0x70, "Block size " + dump.getBlockSize());
+        assertTrue(dump.getRetries() > 0);
+        assertEquals(LENGTH, dump.getBytesRead());
+        assertEquals(LENGTH, dump.getCompleted());
+        assertTrue(dump.getBytesPerSecond() > 0);
+    }
+
+    @Test
+    public void testDump_ResumesFromCheckpoint() throws IOException {
+        byte[] memory = newMemory();
+        MemorySection section = newSection();
+        File file = tempDir.resolve("ram.bin").toFile();
+        File checkpoint = tempDir.resolve("ram.bin.checkpoint").toFile();
+
+        // Cancel partway through
+        TestConnection first = new TestConnection(memory, 0x100, 0);
+        AtomicReference<MemoryDump> dump = new AtomicReference<>();
+        MemoryDump canceled = MemoryDump.builder()
+                .withConnection(first)
+                .withSection(section)
+                .withFile(file)
+                .withCheckpoint(checkpoint)
+                .withBlockSize(0x100)
+                .withListener((message, progress) -> {
+                    if (progress >= 0.5f) {
+                        dump.get().cancel();
+                    }
+                })
+                .build();
+        dump.set(canceled);
+        assertFalse(canceled.run());
+        assertTrue(checkpoint.exists());
+        int completed = canceled.getCompleted();
+        assertTrue(completed >= LENGTH / 2 && completed < LENGTH, "Completed " + completed);
+
+        // Only what's left is read the second time
+        TestConnection second = new TestConnection(memory, 0x100, 0);
+        MemoryDump resumed = MemoryDump.builder()
+                .withConnection(second)
+                .withSection(section)
+                .withFile(file)
+                .withCheckpoint(checkpoint)
+                .build();
+        assertTrue(resumed.run());
+        assertEquals(0x100, resumed.getBlockSize());
+        assertEquals(LENGTH - completed, second.bytesRequested.get());
+        assertFalse(checkpoint.exists());
+
+        assertArrayEquals(memory, Files.readAllBytes(file.toPath()));
+    }
+}
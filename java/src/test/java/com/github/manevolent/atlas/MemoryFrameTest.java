@@ -0,0 +1,91 @@
+package com.github.manevolent.atlas;
+
+import com.github.manevolent.atlas.connection.BufferedMemoryFrame;
+import com.github.manevolent.atlas.connection.MemoryFrame;
+import com.github.manevolent.atlas.connection.MemoryFrameLayout;
+import com.github.manevolent.atlas.model.*;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteOrder;
+import java.util.List;
+
+import static com.github.manevolent.atlas.TestParameters.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MemoryFrameTest {
+    private static MemoryParameter newParameter(String name, DataFormat format) {
+        return TestParameters.newParameter(name, 0, newScale(name, format, Unit.NONE)
+                .withOperation(ArithmeticOperation.MULTIPLY, 0.5f));
+    }
+
+    @Test
+    public void testBuffered_MatchesCopied() {
+        MemoryParameter rpm = newParameter("RPM", DataFormat.USHORT);
+        MemoryParameter timing = newParameter("Timing", DataFormat.SBYTE);
+        MemoryParameter boost = newParameter("Boost", DataFormat.SSHORT);
+        MemoryParameter unused = newParameter("Unused", DataFormat.UBYTE);
+
+        // Little endian in the response, with a DID identifier between the first value and the rest
+        byte[] response = new byte[] { 0x34, 0x12, (byte) 0xF3, 0x01, (byte) 0xF6, 0x18, (byte) 0xFC };
+        MemoryFrameLayout layout = MemoryFrameLayout.builder()
+                .withParameter(rpm, 0, ByteOrder.LITTLE_ENDIAN)
+                .withParameter(timing, 4, ByteOrder.LITTLE_ENDIAN)
+                .withParameter(boost, 5, ByteOrder.LITTLE_ENDIAN)
+                .build();
+        assertEquals(7, layout.getLength());
+
+        MemoryFrame copied = new MemoryFrame();
+        copied.setData(rpm, new byte[] { 0x12, 0x34 });
+        copied.setData(timing, new byte[] { (byte) 0xF6 });
+        copied.setData(boost, new byte[] { (byte) 0xFC, 0x18 });
+
+        BufferedMemoryFrame buffered = new BufferedMemoryFrame(copied.getInstant(), layout, response);
+        for (MemoryParameter parameter : new MemoryParameter[] { rpm, timing, boost }) {
+            assertTrue(buffered.contains(parameter));
+            assertEquals(copied.getValue(parameter), buffered.getValue(parameter));
+            assertEquals(copied.getValue(parameter), buffered.getValue(parameter, Float.NaN));
+            assertArrayEquals(copied.getData(parameter), buffered.getData(parameter));
+        }
+
+        assertEquals(0x1234 * 0.5f, buffered.getValue(rpm, Float.NaN));
+        assertEquals(-5f, buffered.getValue(timing, Float.NaN));
+        assertEquals((short) 0xFC18 * 0.5f, buffered.getValue(boost, Float.NaN));
+
+        assertFalse(buffered.contains(unused));
+        assertNull(buffered.getValue(unused));
+        assertNull(buffered.getData(unused));
+        assertTrue(Float.isNaN(buffered.getValue(unused, Float.NaN)));
+    }
+
+    @Test
+    public void testBuffered_SetData() {
+        MemoryParameter rpm = newParameter("RPM", DataFormat.USHORT);
+        MemoryParameter timing = newParameter("Timing", DataFormat.SBYTE);
+        MemoryFrameLayout layout = MemoryFrameLayout.builder()
+                .withParameter(rpm, 0, ByteOrder.BIG_ENDIAN)
+                .build();
+
+        BufferedMemoryFrame frame = new BufferedMemoryFrame(layout, new byte[] { 0x00, 0x10 });
+        assertEquals(List.of(rpm), List.copyOf(frame.getParameters()));
+
+        // Data set on the frame replaces what was read, and adds parameters that weren't
+        frame.setData(rpm, new byte[] { 0x00, 0x20 });
+        frame.setData(timing, new byte[] { (byte) 0xF6 });
+        assertEquals(16f, frame.getValue(rpm));
+        assertEquals(16f, frame.getValue(rpm, Float.NaN));
+        assertArrayEquals(new byte[] { 0x00, 0x20 }, frame.getData(rpm));
+        assertTrue(frame.contains(timing));
+        assertEquals(-5f, frame.getValue(timing, Float.NaN));
+        assertEquals(List.of(rpm, timing), List.copyOf(frame.getParameters()));
+    }
+
+    @Test
+    public void testBuffered_TooShort() {
+        MemoryParameter rpm = newParameter("RPM", DataFormat.USHORT);
+        MemoryFrameLayout layout = MemoryFrameLayout.builder()
+                .withParameter(rpm, 2, ByteOrder.LITTLE_ENDIAN)
+                .build();
+
+        assertThrows(IllegalArgumentException.class, () -> new BufferedMemoryFrame(layout, new byte[3]));
+    }
+}
@@ -0,0 +1,375 @@
+package com.github.manevolent.atlas;
+
+import com.github.manevolent.atlas.protocol.can.CANFrame;
+import com.github.manevolent.atlas.protocol.j2534.CANDevice;
+import com.github.manevolent.atlas.protocol.j2534.J2534Error;
+import com.github.manevolent.atlas.protocol.can.CANFrameWriter;
+import com.github.manevolent.atlas.protocol.j2534.tactrix.OpenPort2CANFrameWriter;
+import com.github.manevolent.atlas.protocol.j2534.tactrix.OpenPort2Decoder;
+import com.github.manevolent.atlas.protocol.j2534.tactrix.OpenPort2IO;
+import com.github.manevolent.atlas.protocol.j2534.tactrix.SerialTactrixOpenPort;
+import com.github.manevolent.atlas.protocol.isotp.ISOTPFrame;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Feeds OpenPort byte streams through the decoder as they would arrive from the device, a few bytes at a time. The
+ * streams are synthetic: they are built here from the device's record format rather than captured from a device.
+ */
+public class OpenPortStreamTest {
+    private static final String HANDSHAKE = "ari main code version : 1.17.4877\r\n" +
+            "aro\r\n" +  // ata
+            "aro\r\n" +  // ato5
+            "arf5 0 0\r\n"; // atf5
+
+    /**
+     * Gives back a stream in reads of at most a given size, the way a serial port gives back what it has
+     */
+    private static class ChunkedInputStream extends InputStream {
+        private final byte[] stream;
+        private final int chunkSize;
+        private int position;
+
+        private ChunkedInputStream(byte[] stream, int chunkSize) {
+            this.stream = stream;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public int read() {
+            return position < stream.length ? stream[position ++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (position >= stream.length) {
+                return -1;
+            }
+
+            int read = Math.min(Math.min(len, chunkSize), stream.length - position);
+            System.arraycopy(stream, position, b, off, read);
+            position += read;
+            return read;
+        }
+    }
+
+    private static void writeText(ByteArrayOutputStream out, String text) {
+        out.writeBytes(text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void writeMessage(ByteArrayOutputStream out, int channel, int arbitrationId, byte[] data) {
+        writeText(out, "ar" + channel);
+        out.write(5 + 4 + data.length);
+        out.writeBytes(new byte[] { 0x00, 0x00, 0x01, 0x02, 0x03 });
+        out.write(arbitrationId >> 24);
+        out.write(arbitrationId >> 16);
+        out.write(arbitrationId >> 8);
+        out.write(arbitrationId);
+        out.writeBytes(data);
+    }
+
+    private static List<CANFrame> newFrames(int count) {
+        Random random = new Random(count);
+        List<CANFrame> frames = new ArrayList<>();
+        for (int i = 0; i < count; i ++) {
+            byte[] data = new byte[8];
+            random.nextBytes(data);
+            // Data that looks like the start of a record
+            if (i % 10 == 0) {
+                data[0] = 'a';
+                data[1] = 'r';
+            }
+            frames.add(new CANFrame(0x7E0 + (i % 16), data));
+        }
+        return frames;
+    }
+
+    private static void assertFrame(CANFrame expected, CANFrame actual) {
+        assertNotNull(actual);
+        assertEquals(expected.getArbitrationId(), actual.getArbitrationId());
+        assertArrayEquals(expected.getData(), actual.getData());
+    }
+
+    @Test
+    public void testChunkedReads() throws Exception {
+        List<CANFrame> frames = newFrames(200);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeText(out, HANDSHAKE);
+        for (CANFrame frame : frames) {
+            writeMessage(out, 5, frame.getArbitrationId(), frame.getData());
+            if (frame.getArbitrationId() == 0x7E3) {
+                writeText(out, "aro\r\n");
+            }
+        }
+
+        for (int chunkSize : new int[] { 1, 2, 3, 7, 13, 64, 4096 }) {
+            SerialTactrixOpenPort device = new SerialTactrixOpenPort(
+                    new ChunkedInputStream(out.toByteArray(), chunkSize), OutputStream.nullOutputStream());
+            CANDevice can = device.openCAN();
+
+            for (CANFrame frame : frames) {
+                assertFrame(frame, can.reader().read());
+            }
+            assertNull(can.reader().read(), chunkSize + " byte reads");
+        }
+    }
+
+    @Test
+    public void testResync() throws Exception {
+        List<CANFrame> frames = newFrames(4);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeText(out, "x7ar");
+        writeMessage(out, 5, frames.get(0).getArbitrationId(), frames.get(0).getData());
+        out.writeBytes(new byte[] { (byte) 0xFF, 0x00, 'a', 'a', 'r', (byte) 0x80 });
+        writeMessage(out, 5, frames.get(1).getArbitrationId(), frames.get(1).getData());
+        writeText(out, "ari" + "z".repeat(300)); // A line that never ends
+        writeMessage(out, 5, frames.get(2).getArbitrationId(), frames.get(2).getData());
+        writeMessage(out, 5, frames.get(3).getArbitrationId(), frames.get(3).getData());
+
+        OpenPort2Decoder decoder = new OpenPort2Decoder(new ChunkedInputStream(out.toByteArray(), 5));
+        for (CANFrame frame : frames) {
+            assertEquals(OpenPort2Decoder.Record.DATA, decoder.next());
+            assertEquals(frame.getArbitrationId(), decoder.getArbitrationId());
+            assertArrayEquals(frame.getData(), decoder.getData());
+        }
+        assertNull(decoder.next());
+        assertTrue(decoder.getSkipped() > 300);
+    }
+
+    @Test
+    public void testPartialRecord() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeMessage(out, 5, 0x7E8, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+        byte[] stream = out.toByteArray();
+
+        // A stream that ends partway through a record gives nothing back
+        OpenPort2Decoder decoder = new OpenPort2Decoder(
+                new ChunkedInputStream(Arrays.copyOf(stream, stream.length - 1), 4));
+        assertNull(decoder.next());
+    }
+
+    @Test
+    public void testIdleStream() throws Exception {
+        AtomicInteger reads = new AtomicInteger();
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+
+        // A port that has nothing to give returns at once, rather than waiting for data
+        InputStream idle = new InputStream() {
+            @Override
+            public int read() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                reads.incrementAndGet();
+                return System.nanoTime() - end < 0 ? 0 : -1;
+            }
+        };
+
+        assertNull(new OpenPort2Decoder(idle).next());
+        assertTrue(reads.get() < 1_000, "Spun on an idle port: " + reads.get() + " reads");
+    }
+
+    @Test
+    public void testRecords() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeText(out, "aro\r\n");
+        writeText(out, "arf6 2 0\r\n");
+        writeText(out, "are6 16\r\n");
+        writeMessage(out, 6, 0x7E8, new byte[0]);
+
+        OpenPort2Decoder decoder = new OpenPort2Decoder(new ChunkedInputStream(out.toByteArray(), 2));
+        assertEquals(OpenPort2Decoder.Record.OK, decoder.next());
+
+        assertEquals(OpenPort2Decoder.Record.FILTER, decoder.next());
+        assertEquals(6, decoder.getChannel());
+        assertEquals(J2534Error.STATUS_NOERROR, decoder.getError());
+
+        assertEquals(OpenPort2Decoder.Record.ERROR, decoder.next());
+        assertEquals(6, decoder.getChannel());
+        assertEquals(J2534Error.ERR_BUFFER_EMPTY, decoder.getError());
+
+        assertEquals(OpenPort2Decoder.Record.DATA, decoder.next());
+        assertEquals(0x7E8, decoder.getArbitrationId());
+        assertEquals(0, decoder.getLength());
+
+        assertNull(decoder.next());
+    }
+
+    @Test
+    public void testISOTP() throws Exception {
+        byte[] message = new byte[300];
+        new Random(300).nextBytes(message);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeText(out, "aro\r\n");
+        writeMessage(out, 6, 0x7E8, new byte[0]);
+        writeMessage(out, 6, 0x7E8, Arrays.copyOf(message, 200));
+        writeText(out, "are6 9\r\n");
+
+        OpenPort2IO io = new OpenPort2IO(new OpenPort2Decoder(new ChunkedInputStream(out.toByteArray(), 16)),
+                OutputStream.nullOutputStream());
+        FrameReader<ISOTPFrame> reader = io.subscribeISOTP();
+        io.start();
+
+        try {
+            ISOTPFrame frame = reader.read();
+            assertNotNull(frame);
+            assertEquals(0x7E8, frame.getAddress().toInt());
+            assertArrayEquals(Arrays.copyOf(message, 200), frame.getData());
+            assertThrows(SocketTimeoutException.class, reader::read);
+        } finally {
+            io.close();
+        }
+    }
+
+    @Test
+    public void testIO_Subscribers() throws Exception {
+        List<CANFrame> frames = newFrames(100);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (CANFrame frame : frames) {
+            writeMessage(out, 5, frame.getArbitrationId(), frame.getData());
+        }
+        writeMessage(out, 6, 0x7E8, new byte[] { 0x7F, 0x22, 0x31 });
+
+        OpenPort2IO io = new OpenPort2IO(new OpenPort2Decoder(new ChunkedInputStream(out.toByteArray(), 64)),
+                OutputStream.nullOutputStream());
+        FrameReader<CANFrame> first = io.subscribeCAN();
+        FrameReader<CANFrame> second = io.subscribeCAN();
+        FrameReader<ISOTPFrame> isotp = io.subscribeISOTP();
+        io.start();
+
+        try {
+            // Every subscriber sees every frame on its channel
+            for (FrameReader<CANFrame> reader : List.of(first, second)) {
+                for (CANFrame frame : frames) {
+                    assertFrame(frame, reader.read());
+                }
+                assertNull(reader.read());
+            }
+
+            ISOTPFrame frame = isotp.read();
+            assertNotNull(frame);
+            assertArrayEquals(new byte[] { 0x7F, 0x22, 0x31 }, frame.getData());
+            assertNull(isotp.read());
+
+            assertEquals(frames.size() + 1, io.getFramesRead());
+            assertEquals(0, io.getFramesDropped());
+        } finally {
+            io.close();
+        }
+    }
+
+    @Test
+    public void testIO_ISOTPOverflow() throws Exception {
+        List<CANFrame> frames = newFrames(10);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (CANFrame frame : frames) {
+            writeMessage(out, 5, frame.getArbitrationId(), frame.getData());
+            writeMessage(out, 6, frame.getArbitrationId(), frame.getData());
+        }
+
+        OpenPort2IO io = new OpenPort2IO(new OpenPort2Decoder(new ChunkedInputStream(out.toByteArray(), 64)),
+                OutputStream.nullOutputStream(), 16, 4);
+        FrameReader<CANFrame> can = io.subscribeCAN();
+        FrameReader<ISOTPFrame> isotp = io.subscribeISOTP();
+        io.start();
+
+        try {
+            long deadline = System.nanoTime() + 5_000_000_000L;
+            while (io.getFramesRead() < frames.size() * 2 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+
+            // CAN keeps the newest frames
+            for (CANFrame frame : frames.subList(frames.size() - 4, frames.size())) {
+                assertFrame(frame, can.read());
+            }
+
+            // ISO-TP gives back what it queued before it overflowed, and then fails rather than skipping ahead
+            for (CANFrame frame : frames.subList(0, 4)) {
+                ISOTPFrame message = isotp.read();
+                assertNotNull(message);
+                assertArrayEquals(frame.getData(), message.getData());
+            }
+            assertThrows(IOException.class, isotp::read);
+            assertThrows(IOException.class, isotp::read);
+
+            assertEquals(12, io.getFramesDropped());
+        } finally {
+            io.close();
+        }
+    }
+
+    @Test
+    public void testIO_Batching() throws Exception {
+        AtomicInteger writes = new AtomicInteger();
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        OutputStream slow = new OutputStream() {
+            @Override
+            public void write(int b) {
+                written.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                writes.incrementAndGet();
+                written.write(b, off, len);
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+        };
+
+        OpenPort2IO io = new OpenPort2IO(new OpenPort2Decoder(InputStream.nullInputStream()), slow);
+        io.start();
+
+        int threads = 4, count = 100;
+        CANFrameWriter writer = new OpenPort2CANFrameWriter(io);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t ++) {
+            futures.add(executor.submit(() -> {
+                for (CANFrame frame : newFrames(count)) {
+                    writer.write(null, frame);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        io.close();
+
+        byte[] command = OpenPort2IO.encodeTransmit(5, 0, 0x7E0, newFrames(count).getFirst().getData(), 8, 8);
+        assertArrayEquals("att5 12 0\r\n".getBytes(StandardCharsets.US_ASCII), Arrays.copyOf(command, 11));
+        assertEquals(threads * count * command.length, written.size());
+        assertEquals(threads * count, io.getCommandsWritten());
+
+        // Frames queued while the device was busy went out together
+        assertEquals(io.getBatchesWritten(), writes.get());
+        assertTrue(writes.get() < threads * count, writes.get() + " writes");
+    }
+}
@@ -0,0 +1,148 @@
+package com.github.manevolent.atlas;
+
+import com.github.manevolent.atlas.model.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ScaleTest {
+
+    private static float interpretForward(Scale scale, float a) {
+        for (ScalingOperation operation : scale.getOperations()) {
+            a = operation.getOperation().forward(a, operation.getCoefficient());
+        }
+        return a;
+    }
+
+    private static float interpretReverse(Scale scale, float a) {
+        List<ScalingOperation> operations = scale.getOperations();
+        ListIterator<ScalingOperation> iterator = operations.listIterator(operations.size());
+        while (iterator.hasPrevious()) {
+            ScalingOperation operation = iterator.previous();
+            a = operation.getOperation().reverse(a, operation.getCoefficient());
+        }
+        return a;
+    }
+
+    private static void assertClose(float expected, float actual, String message) {
+        float tolerance = Math.max(1e-4f, Math.abs(expected) * 1e-5f);
+        assertEquals(expected, actual, tolerance, message);
+    }
+
+    // Float.equals compares bits, so NaN matches NaN but -0 doesn't match 0
+    private static void assertSameFloat(float expected, float actual, String message) {
+        assertEquals(Float.valueOf(expected), Float.valueOf(actual), message);
+    }
+
+    @Test
+    public void testCompiled_MatchesInterpreted() {
+        Random random = new Random(0x5CA1E);
+        ArithmeticOperation[] linear = {
+                ArithmeticOperation.ADD, ArithmeticOperation.SUBTRACT,
+                ArithmeticOperation.MULTIPLY, ArithmeticOperation.DIVIDE,
+                ArithmeticOperation.LSHIFT, ArithmeticOperation.RSHIFT
+        };
+
+        for (int n = 0; n < 200; n ++) {
+            Scale.Builder builder = Scale.builder().withFormat(DataFormat.USHORT).withUnit(Unit.NONE);
+            int count = random.nextInt(5);
+            for (int i = 0; i < count; i ++) {
+                ArithmeticOperation operation = linear[random.nextInt(linear.length)];
+                float coefficient = switch (operation) {
+                    case LSHIFT, RSHIFT -> random.nextInt(4);
+                    default -> 0.01f + random.nextFloat() * 10f;
+                };
+                builder.withOperation(operation, coefficient);
+            }
+
+            Scale scale = builder.build();
+            assertEquals(count, scale.compile().getStageCount(), scale.getOperations().toString());
+
+            for (int i = 0; i < 64; i ++) {
+                float raw = random.nextInt(0xFFFF);
+                assertSameFloat(interpretForward(scale, raw), scale.forward(raw), scale.getOperations().toString());
+                assertSameFloat(interpretReverse(scale, raw), scale.reverse(raw), scale.getOperations().toString());
+            }
+        }
+    }
+
+    @Test
+    public void testCompiled_Exponent() {
+        Scale scale = Scale.builder()
+                .withFormat(DataFormat.UBYTE)
+                .withOperation(ArithmeticOperation.MULTIPLY, 0.5f)
+                .withOperation(ArithmeticOperation.EXPONENT, 2f)
+                .withOperation(ArithmeticOperation.ADD, 3f)
+                .build();
+
+        assertEquals(3, scale.compile().getStageCount());
+        for (int raw = 0; raw <= 0xFF; raw ++) {
+            assertSameFloat(interpretForward(scale, raw), scale.forward(raw), "forward " + raw);
+            assertSameFloat(interpretReverse(scale, raw), scale.reverse(raw), "reverse " + raw);
+            assertClose(raw, scale.reverse(scale.forward(raw)), "reverse " + raw);
+        }
+    }
+
+    @Test
+    public void testCompiled_ReverseFloors() {
+        // Folding this into (x - 0.3) * 100 in double floors thousands of these values to a different integer
+        Scale scale = Scale.builder()
+                .withFormat(DataFormat.USHORT)
+                .withUnit(Unit.NONE)
+                .withOperation(ArithmeticOperation.MULTIPLY, 0.01f)
+                .withOperation(ArithmeticOperation.ADD, 0.3f)
+                .build();
+
+        for (int raw = 0; raw <= 0xFFFF; raw ++) {
+            float value = interpretForward(scale, raw);
+            assertSameFloat(value, scale.forward(raw), "forward " + raw);
+            assertEquals((int) Math.floor(interpretReverse(scale, value)), (int) Math.floor(scale.reverse(value)),
+                    "reverse " + raw);
+        }
+    }
+
+    @Test
+    public void testCompiled_Invalidated() {
+        ScalingOperation multiply = ScalingOperation.from(ArithmeticOperation.MULTIPLY, 2f);
+        Scale scale = Scale.builder().withFormat(DataFormat.UBYTE).withOperation(multiply).build();
+        assertEquals(20f, scale.forward(10f));
+
+        multiply.setCoefficient(4f);
+        assertEquals(40f, scale.forward(10f));
+
+        scale.addOperation(ScalingOperation.from(ArithmeticOperation.ADD, 1f));
+        assertEquals(41f, scale.forward(10f));
+        assertEquals(10f, scale.reverse(41f));
+
+        scale.moveOperationUp(scale.getOperations().get(1));
+        assertEquals(44f, scale.forward(10f));
+    }
+
+    @Test
+    public void testCompiled_Bulk() {
+        Scale scale = Scale.builder()
+                .withFormat(DataFormat.UBYTE)
+                .withOperation(ArithmeticOperation.MULTIPLY, 0.75f)
+                .withOperation(ArithmeticOperation.SUBTRACT, 40)
+                .build();
+
+        float[] values = new float[256];
+        for (int i = 0; i < values.length; i ++) {
+            values[i] = i;
+        }
+
+        scale.compile().forward(values, 0, values.length);
+        for (int i = 0; i < values.length; i ++) {
+            assertEquals(scale.forward(i), values[i]);
+        }
+
+        scale.compile().reverse(values, 0, values.length);
+        for (int i = 0; i < values.length; i ++) {
+            assertSameFloat(interpretReverse(scale, scale.forward(i)), values[i], "reverse " + i);
+        }
+    }
+}
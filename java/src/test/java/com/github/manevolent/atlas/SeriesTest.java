@@ -0,0 +1,92 @@
+package com.github.manevolent.atlas;
+
+import com.github.manevolent.atlas.model.*;
+import com.github.manevolent.atlas.model.source.ArraySource;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SeriesTest {
+    private static final long BASE_ADDRESS = 0x1000;
+
+    private static MemorySection newSection(MemoryByteOrder byteOrder, int length) {
+        return MemorySection.builder()
+                .withName("Test")
+                .withBaseAddress(BASE_ADDRESS)
+                .withLength(length)
+                .withByteOrder(byteOrder)
+                .withType(MemoryType.CODE)
+                .build();
+    }
+
+    private static MemorySource newSource(int length) {
+        byte[] data = new byte[length];
+        new Random(0x5E41E5).nextBytes(data);
+        return new ArraySource(BASE_ADDRESS, data, 0, data.length);
+    }
+
+    @Test
+    public void testBulkRead_MatchesSingleReads() throws IOException {
+        for (MemoryByteOrder byteOrder : MemoryByteOrder.values()) {
+            for (DataFormat format : DataFormat.values()) {
+                MemorySection section = newSection(byteOrder, 0x400);
+                MemorySource source = newSource(0x400);
+
+                Series series = Series.builder()
+                        .withAddress(section, (int) BASE_ADDRESS + 0x10)
+                        .withLength(32)
+                        .withScale(Scale.builder()
+                                .withFormat(format)
+                                .withOperation(ArithmeticOperation.MULTIPLY, 0.5f)
+                                .withOperation(ArithmeticOperation.ADD, 10))
+                        .build();
+
+                float[] bulk = series.getAll(source);
+                for (int i = 0; i < series.getLength(); i ++) {
+                    assertEquals(series.get(source, i), bulk[i], format + " " + byteOrder + " @ " + i);
+                }
+
+                float[] range = new float[8];
+                series.get(source, 4, range, 0, range.length);
+                for (int i = 0; i < range.length; i ++) {
+                    assertEquals(bulk[4 + i], range[i]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBulkWrite_MatchesSingleWrites() throws IOException {
+        for (MemoryByteOrder byteOrder : MemoryByteOrder.values()) {
+            for (DataFormat format : DataFormat.values()) {
+                MemorySection section = newSection(byteOrder, 0x400);
+                MemorySource bulkSource = newSource(0x400);
+                MemorySource singleSource = newSource(0x400);
+
+                Series series = Series.builder()
+                        .withAddress(section, (int) BASE_ADDRESS + 0x20)
+                        .withLength(64)
+                        .withScale(Scale.builder()
+                                .withFormat(format)
+                                .withOperation(ArithmeticOperation.DIVIDE, 4))
+                        .build();
+
+                float[] values = new float[series.getLength()];
+                for (int i = 0; i < values.length; i ++) {
+                    values[i] = (i - 32) * 1.3f;
+                }
+
+                series.setAll(bulkSource, values);
+                for (int i = 0; i < values.length; i ++) {
+                    series.set(singleSource, i, values[i]);
+                }
+
+                assertArrayEquals(singleSource.readFully(), bulkSource.readFully(), format + " " + byteOrder);
+            }
+        }
+    }
+}
@@ -3,11 +3,15 @@ package com.github.manevolent.atlas;
 import com.github.manevolent.atlas.ssm4.SubaruDITFlashEncryption;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.*;
 
 import static com.github.manevolent.atlas.ssm4.SubaruDITFlashEncryption.feistel_decrypt;
 import static com.github.manevolent.atlas.ssm4.SubaruDITFlashEncryption.feistel_encrypt;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 public class SubaruDITMemoryEncryptionTest {
@@ -89,4 +93,41 @@ public class SubaruDITMemoryEncryptionTest {
             );
         }
     }
+
+    @Test
+    public void test_feistel_bulk_matches_stream() throws IOException {
+        byte[] cleartext = new byte[SubaruDITFlashEncryption.PARALLEL_THRESHOLD * 2 + 6];
+        new Random(0xF315731).nextBytes(cleartext);
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        feistel_encrypt(new ByteArrayInputStream(cleartext), expected, SubaruDITFlashEncryption.ENGINE_ECU_KEYS_ENCRYPTION);
+        byte[] expectedCipherText = expected.toByteArray();
+        int symbolBytes = expectedCipherText.length;
+
+        for (boolean parallel : new boolean[] { false, true }) {
+            byte[] data = cleartext.clone();
+            feistel_encrypt(data, 0, data.length, SubaruDITFlashEncryption.ENGINE_ECU_KEYS_ENCRYPTION, parallel);
+            assertArrayEquals(expectedCipherText, Arrays.copyOf(data, symbolBytes), "parallel=" + parallel);
+
+            // The trailing partial symbol is left as-is
+            assertEquals(cleartext[data.length - 1], data[data.length - 1]);
+
+            feistel_decrypt(data, 0, data.length, SubaruDITFlashEncryption.ENGINE_ECU_KEYS_DECRYPTION, parallel);
+            assertArrayEquals(cleartext, data, "parallel=" + parallel);
+        }
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(symbolBytes);
+        direct.put(cleartext, 0, symbolBytes).flip();
+        feistel_encrypt(direct, SubaruDITFlashEncryption.ENGINE_ECU_KEYS_ENCRYPTION);
+        direct.flip();
+        byte[] directCipherText = new byte[symbolBytes];
+        direct.duplicate().get(directCipherText);
+        assertArrayEquals(expectedCipherText, directCipherText);
+
+        feistel_decrypt(direct, SubaruDITFlashEncryption.ENGINE_ECU_KEYS_DECRYPTION);
+        direct.flip();
+        byte[] directClearText = new byte[symbolBytes];
+        direct.get(directClearText);
+        assertArrayEquals(Arrays.copyOf(cleartext, symbolBytes), directClearText);
+    }
 }
@@ -0,0 +1,170 @@
+package com.github.manevolent.atlas;
+
+import com.github.manevolent.atlas.model.*;
+import com.github.manevolent.atlas.model.source.ArraySource;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TableLayoutTest {
+    private static final long BASE_ADDRESS = 0x1000;
+
+    private static final MemorySection SECTION = MemorySection.builder()
+            .withName("Test")
+            .withBaseAddress(BASE_ADDRESS)
+            .withLength(0x400)
+            .withByteOrder(MemoryByteOrder.BIG_ENDIAN)
+            .withType(MemoryType.CODE)
+            .build();
+
+    private static MemorySource newSource() {
+        byte[] data = new byte[0x400];
+        new Random(0x7AB1E).nextBytes(data);
+        return new ArraySource(BASE_ADDRESS, data, 0, data.length);
+    }
+
+    private static Series.Builder newSeries(int offset, int length) {
+        return Series.builder()
+                .withAddress(SECTION, (int) BASE_ADDRESS + offset)
+                .withLength(length)
+                .withScale(Scale.builder().withFormat(DataFormat.UBYTE).withUnit(Unit.NONE));
+    }
+
+    private static Table newTable() {
+        return Table.builder()
+                .withName("Table")
+                .withAxis(Axis.X, newSeries(0x00, 5))
+                .withAxis(Axis.Y, newSeries(0x10, 3))
+                .withData(newSeries(0x20, 0))
+                .build();
+    }
+
+    @Test
+    public void testIndex() throws IOException {
+        Table table = newTable();
+        TableLayout layout = table.getLayout();
+        MemorySource source = newSource();
+
+        assertEquals(15, layout.getSize());
+        assertEquals(15, table.getData().getLength());
+        assertEquals(1, layout.getStride(Axis.X));
+        assertEquals(5, layout.getStride(Axis.Y));
+
+        float[] cells = table.getCells(source);
+        for (int y = 0; y < 3; y ++) {
+            for (int x = 0; x < 5; x ++) {
+                int index = table.getDataIndex(x, y);
+                assertEquals(x + (y * 5), index);
+                assertEquals(index, table.getDataIndex(Map.of(Axis.X, x, Axis.Y, y)));
+                assertEquals(x, layout.getCoordinate(index, Axis.X));
+                assertEquals(y, layout.getCoordinate(index, Axis.Y));
+                assertEquals(cells[index], table.getCell(source, x, y));
+            }
+        }
+
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> table.getCell(source, 5, 0));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> table.getCell(source, 0, 3));
+    }
+
+    @Test
+    public void testIndex_OneAxis() throws IOException {
+        Table table = Table.builder()
+                .withName("Table")
+                .withAxis(Axis.X, newSeries(0x00, 4))
+                .withData(newSeries(0x20, 0))
+                .build();
+        MemorySource source = newSource();
+
+        assertEquals(4, table.getLayout().getSize());
+        assertEquals(1, table.getLayout().getLength(Axis.Y));
+        assertEquals(table.getCell(source, 3), table.getCell(source, 3, 0));
+
+        assertEquals(7f, table.setCell(source, 7f, 2));
+        assertEquals(7f, table.getCell(source, 2, 0));
+    }
+
+    @Test
+    public void testLayout_AxisChanges() {
+        Table table = newTable();
+        assertEquals(5, table.getLayout().getStride(Axis.Y));
+
+        // Resizing an axis is noticed without the table being told
+        table.getSeries(Axis.X).setLength(6);
+        table.updateLength();
+        assertEquals(6, table.getLayout().getStride(Axis.Y));
+        assertEquals(18, table.getData().getLength());
+
+        table.removeAxis(Axis.Y);
+        assertEquals(6, table.getLayout().getSize());
+        assertFalse(table.getLayout().hasAxis(Axis.Y));
+    }
+
+    @Test
+    public void testCursor() {
+        TableLayout layout = newTable().getLayout();
+
+        TableLayout.Cursor all = layout.cells();
+        for (int index = 0; index < layout.getSize(); index ++) {
+            assertTrue(all.next());
+            assertEquals(index, all.getIndex());
+            assertEquals(layout.getIndex(all.getX(), all.getY()), all.getIndex());
+        }
+        assertFalse(all.next());
+
+        TableLayout.Cursor range = layout.cells(1, 4, 1, 3);
+        for (int y = 1; y < 3; y ++) {
+            for (int x = 1; x < 4; x ++) {
+                assertTrue(range.next());
+                assertEquals(x, range.getX());
+                assertEquals(y, range.getY());
+                assertEquals(layout.getIndex(x, y), range.getIndex());
+            }
+        }
+        assertFalse(range.next());
+
+        assertFalse(layout.cells(2, 2, 0, 3).next());
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> layout.cells(0, 6, 0, 1));
+    }
+
+    @Test
+    public void testCopy() throws IOException {
+        Table table = newTable();
+        MemorySource source = newSource();
+
+        Table copy = table.copy();
+        assertNotSame(table.getSeries(Axis.X), copy.getSeries(Axis.X));
+        assertArrayEquals(table.getCells(source), copy.getCells(source));
+
+        copy.getSeries(Axis.Y).setLength(2);
+        copy.updateLength();
+        table.apply(copy);
+        assertEquals(10, table.getLayout().getSize());
+        assertEquals(10, table.getData().getLength());
+    }
+
+    @Test
+    public void testWriteCsv() throws IOException {
+        Table table = newTable();
+        MemorySource source = newSource();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        table.writeCsv(source, out, 0);
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\r\n");
+
+        float[] rows = table.getSeries(Axis.Y).getAll(source);
+        for (int y = 0; y < 3; y ++) {
+            String[] cells = lines[1 + y].split(",");
+            assertEquals(6, cells.length);
+            assertEquals("\"" + String.format("%.0f", rows[y]) + "\"", cells[0]);
+            for (int x = 0; x < 5; x ++) {
+                assertEquals("\"" + String.format("%.0f", table.getCell(source, x, y)) + "\"", cells[1 + x]);
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.github.manevolent.atlas;
+
+import com.github.manevolent.atlas.arduino.Dimension;
+import com.github.manevolent.atlas.arduino.Integration;
+import com.github.manevolent.atlas.arduino.Variable;
+import com.github.manevolent.atlas.model.*;
+import com.github.manevolent.atlas.model.source.ArraySource;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TableLookupTest {
+    private static final float[] RPM = { 1000, 2000, 4000, 6000 };
+    private static final float[] LOAD = { 0.2f, 0.6f, 1.0f };
+
+    // 4 columns of RPM by 3 rows of load
+    private static final float[] TIMING = {
+            10, 20, 30, 40,
+            12, 22, 32, 42,
+            14, 24, 34, 44
+    };
+
+    private static TableLookup newLookup(Integration x, Integration y) {
+        return new TableLookup(new float[][] { RPM, LOAD }, new Integration[] { x, y }, TIMING);
+    }
+
+    @Test
+    public void testLinear() {
+        TableLookup lookup = newLookup(Integration.LINEAR, Integration.LINEAR);
+
+        // On breakpoints
+        assertEquals(10, lookup.get(1000, 0.2f));
+        assertEquals(42, lookup.get(6000, 0.6f));
+        assertEquals(34, lookup.get(4000, 1.0f));
+
+        // Between them
+        assertEquals(15, lookup.get(1500, 0.2f), 0.0001f);
+        assertEquals(11, lookup.get(1000, 0.4f), 0.0001f);
+        assertEquals(16, lookup.get(1500, 0.4f), 0.0001f);
+        assertEquals(28, lookup.get(3000, 0.8f), 0.0001f);
+
+        // Clamped beyond the ends
+        assertEquals(10, lookup.get(0, 0));
+        assertEquals(44, lookup.get(9000, 2));
+        assertEquals(24, lookup.get(2000, 5));
+    }
+
+    @Test
+    public void testFloorCeiling() {
+        TableLookup floor = newLookup(Integration.FLOOR, Integration.FLOOR);
+        assertEquals(10, floor.get(1999, 0.59f));
+        assertEquals(22, floor.get(2000, 0.6f));
+        assertEquals(42, floor.get(9000, 0.7f));
+        assertEquals(10, floor.get(0, 0));
+
+        TableLookup ceiling = newLookup(Integration.CEILING, Integration.CEILING);
+        assertEquals(22, ceiling.get(1001, 0.21f));
+        assertEquals(10, ceiling.get(1000, 0.2f));
+        assertEquals(10, ceiling.get(0, 0));
+        assertEquals(44, ceiling.get(9000, 2));
+
+        // Mixed: linear along RPM, a step along load
+        TableLookup mixed = newLookup(Integration.LINEAR, Integration.FLOOR);
+        assertEquals(27, mixed.get(3000, 0.9f), 0.0001f);
+    }
+
+    @Test
+    public void testGeneric_MatchesBilinear() {
+        Random random = new Random(0x100C);
+        for (Integration integration : Integration.values()) {
+            TableLookup lookup = newLookup(integration, Integration.LINEAR);
+            for (int i = 0; i < 1000; i ++) {
+                float x = random.nextFloat() * 7000, y = random.nextFloat() * 1.2f;
+                assertEquals(lookup.get(x, y), lookup.get(new float[] { x, y }), 0.0001f);
+            }
+        }
+    }
+
+    @Test
+    public void testBatch() {
+        TableLookup lookup = newLookup(Integration.LINEAR, Integration.LINEAR);
+
+        Random random = new Random(0xBA7C);
+        float[] x = new float[500], y = new float[500];
+        for (int i = 0; i < x.length; i ++) {
+            x[i] = random.nextFloat() * 7000;
+            y[i] = random.nextFloat() * 1.2f;
+        }
+
+        float[] results = lookup.get(x, y);
+        for (int i = 0; i < x.length; i ++) {
+            assertEquals(lookup.get(x[i], y[i]), results[i]);
+        }
+    }
+
+    @Test
+    public void testSnapshot() throws IOException {
+        MemorySection section = MemorySection.builder()
+                .withName("Test")
+                .withBaseAddress(0)
+                .withLength(0x100)
+                .withByteOrder(MemoryByteOrder.BIG_ENDIAN)
+                .withType(MemoryType.CODE)
+                .build();
+
+        byte[] memory = new byte[0x100];
+        for (int i = 0; i < RPM.length; i ++) memory[i] = (byte) (RPM[i] / 100);
+        for (int i = 0; i < LOAD.length; i ++) memory[0x10 + i] = (byte) (LOAD[i] * 10);
+        for (int i = 0; i < TIMING.length; i ++) memory[0x20 + i] = (byte) TIMING[i];
+        MemorySource source = new ArraySource(0, memory, 0, memory.length);
+
+        Table table = Table.builder()
+                .withName("Timing")
+                .withAxis(Axis.X, Series.builder().withAddress(section, 0x00).withLength(RPM.length)
+                        .withScale(Scale.builder().withFormat(DataFormat.UBYTE).withUnit(Unit.RPM)
+                                .withOperation(ArithmeticOperation.MULTIPLY, 100)))
+                .withAxis(Axis.Y, Series.builder().withAddress(section, 0x10).withLength(LOAD.length)
+                        .withScale(Scale.builder().withFormat(DataFormat.UBYTE).withUnit(Unit.NONE)
+                                .withOperation(ArithmeticOperation.DIVIDE, 10)))
+                .withData(Series.builder().withAddress(section, 0x20)
+                        .withScale(Scale.builder().withFormat(DataFormat.UBYTE).withUnit(Unit.NONE)))
+                .build();
+
+        TableLookup lookup = TableLookup.of(table, source);
+        TableLookup expected = newLookup(Integration.LINEAR, Integration.LINEAR);
+        assertEquals(expected.get(3000, 0.8f), lookup.get(3000, 0.8f), 0.0001f);
+
+        // The snapshot doesn't follow later edits
+        table.setCell(source, 50, 0, 0);
+        assertEquals(10, lookup.get(1000, 0.2f));
+        assertEquals(50, TableLookup.of(table, source).get(1000, 0.2f));
+    }
+
+    @Test
+    public void testArduinoTable() {
+        com.github.manevolent.atlas.arduino.Table table = new com.github.manevolent.atlas.arduino.Table("Timing",
+                List.of(new Dimension(new Variable("RPM", 3000), null, Integration.LINEAR, RPM),
+                        new Dimension(new Variable("Load", 0.8f), null, Integration.LINEAR, LOAD)),
+                TIMING);
+        assertEquals(28, table.get(), 0.0001f);
+    }
+}
@@ -0,0 +1,167 @@
+package com.github.manevolent.atlas;
+
+import com.github.manevolent.atlas.connection.MemoryFrame;
+import com.github.manevolent.atlas.datalog.TableTrace;
+import com.github.manevolent.atlas.model.*;
+import com.github.manevolent.atlas.model.source.ArraySource;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TableTraceTest {
+    private static final MemorySection SECTION = MemorySection.builder()
+            .withName("Test")
+            .withBaseAddress(0)
+            .withLength(0x100)
+            .withByteOrder(MemoryByteOrder.BIG_ENDIAN)
+            .withType(MemoryType.CODE)
+            .build();
+
+    private static final Scale RPM = Scale.builder().withFormat(DataFormat.UBYTE).withUnit(Unit.RPM)
+            .withOperation(ArithmeticOperation.MULTIPLY, 100).build();
+
+    private static final Scale LOAD = Scale.builder().withFormat(DataFormat.UBYTE).withUnit(Unit.NONE)
+            .withOperation(ArithmeticOperation.DIVIDE, 10).build();
+
+    private static final MemoryParameter ENGINE_SPEED = MemoryParameter.builder()
+            .withName("Engine Speed").withAddress(SECTION, 0x80).withScale(RPM).build();
+
+    private static final MemoryParameter ENGINE_LOAD = MemoryParameter.builder()
+            .withName("Engine Load").withAddress(SECTION, 0x81).withScale(LOAD).build();
+
+    private static final long TRAIL_NANOS = 1_000_000_000L;
+
+    // 4 columns of RPM (1000, 2000, 4000, 6000) by 3 rows of load (0.2, 0.6, 1.0)
+    private static Table newTable() {
+        return Table.builder()
+                .withName("Timing")
+                .withAxis(Axis.X, Series.builder().withName("RPM").withAddress(SECTION, 0x00).withLength(4)
+                        .withScale(RPM))
+                .withAxis(Axis.Y, Series.builder().withName("Engine Load").withAddress(SECTION, 0x10).withLength(3)
+                        .withScale(LOAD))
+                .withData(Series.builder().withAddress(SECTION, 0x20)
+                        .withScale(Scale.builder().withFormat(DataFormat.UBYTE).withUnit(Unit.NONE)))
+                .build();
+    }
+
+    private static MemorySource newSource() {
+        byte[] memory = new byte[0x100];
+        memory[0x00] = 10; memory[0x01] = 20; memory[0x02] = 40; memory[0x03] = 60;
+        memory[0x10] = 2; memory[0x11] = 6; memory[0x12] = 10;
+        return new ArraySource(0, memory, 0, memory.length);
+    }
+
+    private static TableTrace newTrace() throws IOException {
+        Table table = newTable();
+        return new TableTrace(table, newSource(),
+                TableTrace.findParameters(table, List.of(ENGINE_SPEED, ENGINE_LOAD)), TRAIL_NANOS);
+    }
+
+    private static MemoryFrame newFrame(int rpm, int loadTenths) {
+        MemoryFrame frame = new MemoryFrame();
+        frame.setData(ENGINE_SPEED, new byte[] { (byte) (rpm / 100) });
+        frame.setData(ENGINE_LOAD, new byte[] { (byte) loadTenths });
+        return frame;
+    }
+
+    private static Set<Integer> drain(TableTrace trace, long now) {
+        Set<Integer> cells = new TreeSet<>();
+        trace.drain(now, cells::add);
+        return cells;
+    }
+
+    @Test
+    public void testFindParameters() {
+        Table table = newTable();
+
+        // Load by name, RPM by unit
+        Map<Axis, MemoryParameter> found = TableTrace.findParameters(table, List.of(ENGINE_SPEED, ENGINE_LOAD));
+        assertSame(ENGINE_SPEED, found.get(Axis.X));
+        assertSame(ENGINE_LOAD, found.get(Axis.Y));
+
+        // Two parameters in RPM can't be told apart by unit
+        MemoryParameter otherSpeed = MemoryParameter.builder()
+                .withName("Turbo Speed").withAddress(SECTION, 0x82).withScale(RPM).build();
+        Map<Axis, MemoryParameter> ambiguous = TableTrace.findParameters(table, List.of(ENGINE_SPEED, otherSpeed));
+        assertFalse(ambiguous.containsKey(Axis.X));
+        assertFalse(ambiguous.containsKey(Axis.Y));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> new TableTrace(table, newSource(), ambiguous, TRAIL_NANOS));
+    }
+
+    @Test
+    public void testAccept() throws IOException {
+        TableTrace trace = newTrace();
+
+        // 3000 RPM at 0.8 load sits in the middle of cells (1, 1) to (2, 2)
+        trace.accept(newFrame(3000, 8));
+        assertEquals(0.25f, trace.getWeight(1 + 4), 0.0001f);
+        assertEquals(0.25f, trace.getWeight(2 + 4), 0.0001f);
+        assertEquals(0.25f, trace.getWeight(1 + 8), 0.0001f);
+        assertEquals(0.25f, trace.getWeight(2 + 8), 0.0001f);
+        assertEquals(0f, trace.getWeight(0));
+        assertEquals(2 + 8, trace.getCurrent());
+        assertEquals(1, trace.getHits(2 + 8));
+
+        // Right on a breakpoint, only that cell is blended
+        trace.accept(newFrame(1000, 2));
+        assertEquals(1f, trace.getWeight(0));
+        assertEquals(0f, trace.getWeight(2 + 8));
+        assertEquals(0, trace.getCurrent());
+        assertEquals(2, trace.getSamples());
+
+        // A frame without the table's axes is ignored
+        MemoryFrame other = new MemoryFrame();
+        other.setData(ENGINE_SPEED, new byte[] { 30 });
+        trace.accept(other);
+        assertEquals(2, trace.getSamples());
+        assertEquals(0, trace.getCurrent());
+    }
+
+    @Test
+    public void testDrain() throws IOException {
+        TableTrace trace = newTrace();
+        long now = System.nanoTime();
+        assertEquals(Set.of(), drain(trace, now));
+
+        trace.accept(newFrame(1000, 2));
+        assertEquals(Set.of(0), drain(trace, now));
+
+        // Only the cells that changed: the one left behind and the one now visited
+        trace.accept(newFrame(6000, 10));
+        assertTrue(trace.isDirty());
+        Set<Integer> cells = drain(trace, now);
+        assertTrue(cells.contains(0));
+        assertTrue(cells.contains(11));
+        assertFalse(cells.contains(5));
+        assertFalse(trace.isDirty());
+
+        // The trail keeps fading cells coming back until they are gone
+        assertTrue(trace.drain(now, cell -> { }));
+        assertFalse(trace.drain(now + (2 * TRAIL_NANOS), cell -> { }));
+        assertEquals(0f, trace.getTrail(0, now + (2 * TRAIL_NANOS)));
+        assertEquals(Set.of(), drain(trace, now + (2 * TRAIL_NANOS)));
+    }
+
+    @Test
+    public void testHeat() throws IOException {
+        TableTrace trace = newTrace();
+        for (int i = 0; i < 8; i ++) {
+            trace.accept(newFrame(1000, 2));
+        }
+        trace.accept(newFrame(6000, 10));
+
+        assertEquals(1f, trace.getHeat(0));
+        assertEquals(1f / 8, trace.getHeat(11));
+        assertEquals(0f, trace.getHeat(5));
+
+        trace.clear();
+        assertEquals(0f, trace.getHeat(0));
+        assertEquals(-1, trace.getCurrent());
+        assertEquals(Set.of(0, 11), drain(trace, System.nanoTime()));
+    }
+}
@@ -0,0 +1,40 @@
+package com.github.manevolent.atlas;
+
+import com.github.manevolent.atlas.model.*;
+
+/**
+ * Datalog parameters in a small block of big-endian RAM, shared by the datalog and frame tests
+ */
+public class TestParameters {
+    public static final int RAM_BASE = 0xFF000000;
+
+    public static final MemorySection RAM = MemorySection.builder()
+            .withName("RAM")
+            .withBaseAddress(RAM_BASE & 0xFFFFFFFFL)
+            .withLength(0x1000)
+            .withByteOrder(MemoryByteOrder.BIG_ENDIAN)
+            .withType(MemoryType.RAM)
+            .build();
+
+    public static Scale.Builder newScale(String name, DataFormat format, Unit unit) {
+        return Scale.builder()
+                .withName(name)
+                .withFormat(format)
+                .withUnit(unit);
+    }
+
+    public static MemoryParameter newParameter(String name, int offset, Scale.Builder scale) {
+        return MemoryParameter.builder()
+                .withName(name)
+                .withAddress(RAM, RAM_BASE + offset)
+                .withScale(scale)
+                .build();
+    }
+
+    public static MemoryParameter newParameter(String name, int offset) {
+        return MemoryParameter.builder()
+                .withName(name)
+                .withAddress(RAM, RAM_BASE + offset)
+                .build();
+    }
+}
@@ -0,0 +1,189 @@
+package com.github.manevolent.atlas;
+
+import com.github.manevolent.atlas.protocol.can.CANArbitrationId;
+import com.github.manevolent.atlas.protocol.uds.UDSFrame;
+import com.github.manevolent.atlas.protocol.uds.UDSProtocol;
+import com.github.manevolent.atlas.protocol.uds.UDSUnknownBody;
+import com.github.manevolent.atlas.protocol.uds.debug.UDSCaptureStore;
+import com.github.manevolent.atlas.protocol.uds.request.UDSTesterPresentRequest;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UDSCaptureStoreTest {
+    private static UDSFrame newFrame() {
+        return new UDSFrame(UDSProtocol.STANDARD, new UDSTesterPresentRequest());
+    }
+
+    private static UDSFrame newFrame(int flag) {
+        return new UDSFrame(UDSProtocol.STANDARD, new UDSTesterPresentRequest((byte) flag));
+    }
+
+    private static void assertFrame(UDSFrame expected, UDSFrame actual) {
+        assertEquals(expected.getBody().getClass(), actual.getBody().getClass());
+        assertArrayEquals(expected.getData(), actual.getData());
+        assertEquals(expected.getAddress(), actual.getAddress());
+        assertEquals(expected.getDirection(), actual.getDirection());
+    }
+
+    @Test
+    public void testAppend_Chunks() {
+        UDSCaptureStore store = new UDSCaptureStore();
+        int count = (UDSCaptureStore.CHUNK_SIZE * 20) + 7;
+        UDSFrame[] appended = new UDSFrame[count];
+        for (int i = 0; i < count; i ++) {
+            appended[i] = newFrame(i);
+            assertEquals(i, store.append(appended[i], 1_000_000_000L + i));
+        }
+
+        assertEquals(count, store.size());
+        for (int i = 0; i < count; i ++) {
+            assertFrame(appended[i], store.getFrame(i));
+            assertEquals(1_000_000_000L + i, store.getTime(i));
+        }
+
+        assertEquals(Instant.ofEpochSecond(1, 5), store.getInstant(5));
+        assertThrows(IndexOutOfBoundsException.class, () -> store.getFrame(count));
+        assertThrows(IndexOutOfBoundsException.class, () -> store.getFrame(-1));
+    }
+
+    @Test
+    public void testAppend_Time() {
+        UDSCaptureStore store = new UDSCaptureStore();
+        Instant before = Instant.now();
+        store.append(newFrame());
+        store.append(newFrame());
+
+        assertFalse(store.getInstant(0).isBefore(before.minusMillis(1)));
+        assertTrue(store.getTime(1) >= store.getTime(0));
+    }
+
+    @Test
+    public void testGetFrames() {
+        UDSCaptureStore store = new UDSCaptureStore();
+        UDSFrame first = newFrame(1);
+        store.append(first);
+
+        // The view is fixed at the frames captured when it was taken
+        List<UDSFrame> frames = store.getFrames();
+        store.append(newFrame());
+        assertEquals(1, frames.size());
+        assertFrame(first, frames.get(0));
+        assertEquals(2, store.getFrames().size());
+        assertThrows(UnsupportedOperationException.class, () -> frames.add(newFrame()));
+    }
+
+    @Test
+    public void testClear() {
+        UDSCaptureStore store = new UDSCaptureStore();
+        for (int i = 0; i < UDSCaptureStore.CHUNK_SIZE + 1; i ++) {
+            store.append(newFrame());
+        }
+
+        store.clear();
+        assertEquals(0, store.size());
+        assertThrows(IndexOutOfBoundsException.class, () -> store.getFrame(0));
+
+        UDSFrame frame = newFrame(1);
+        assertEquals(0, store.append(frame));
+        assertFrame(frame, store.getFrame(0));
+    }
+
+    @Test
+    public void testClear_KeepsViews() {
+        UDSCaptureStore store = new UDSCaptureStore();
+        int count = UDSCaptureStore.CHUNK_SIZE + 1;
+        for (int i = 0; i < count; i ++) {
+            store.append(newFrame(i));
+        }
+
+        // A reader part way through a view isn't cut off when the capture is cleared under it
+        List<UDSFrame> frames = store.getFrames();
+        assertFrame(newFrame(0), frames.get(0));
+        store.clear();
+        store.append(newFrame(-1));
+
+        assertEquals(count, frames.size());
+        for (int i = 0; i < count; i ++) {
+            assertFrame(newFrame(i), frames.get(i));
+        }
+    }
+
+    @Test
+    public void testAppend_Raw() throws IOException {
+        UDSCaptureStore store = new UDSCaptureStore();
+
+        // Read frames are captured as the bytes they came in as, trailing bytes and all
+        byte[] raw = new byte[] { 0x3E, 0x01, 0x02 };
+        UDSFrame frame = new UDSFrame(UDSProtocol.STANDARD);
+        frame.setAddress(CANArbitrationId.id(0x7E8));
+        frame.setDirection(UDSFrame.Direction.READ);
+        frame.read(new BitReader(raw));
+        frame.setRaw(raw);
+        store.append(frame);
+
+        UDSFrame captured = store.getFrame(0);
+        assertNotSame(frame, captured);
+        assertSame(raw, captured.getRaw());
+        assertFrame(frame, captured);
+        assertEquals(frame.toString(), captured.toString());
+    }
+
+    @Test
+    public void testAppend_KeepsUnencodable() {
+        UDSCaptureStore store = new UDSCaptureStore();
+
+        // Unknown bodies can't be written back out, so the frame is kept as it is
+        UDSFrame frame = new UDSFrame(UDSProtocol.STANDARD, new UDSUnknownBody());
+        store.append(frame);
+        assertSame(frame, store.getFrame(0));
+    }
+
+    @Test
+    public void testAppend_Concurrent() throws InterruptedException {
+        UDSCaptureStore store = new UDSCaptureStore();
+        int perThread = UDSCaptureStore.CHUNK_SIZE * 8;
+        AtomicBoolean failed = new AtomicBoolean();
+
+        // Reads and writes are on separate threads, like the session's reader and writer feeding the UI
+        Thread[] writers = new Thread[2];
+        for (int w = 0; w < writers.length; w ++) {
+            writers[w] = new Thread(() -> {
+                for (int i = 0; i < perThread; i ++) {
+                    store.append(newFrame());
+                }
+            });
+        }
+
+        Thread reader = new Thread(() -> {
+            int seen = 0;
+            while (seen < perThread * writers.length) {
+                int size = store.size();
+                for (int i = seen; i < size; i ++) {
+                    if (store.getFrame(i) == null) {
+                        failed.set(true);
+                    }
+                }
+                seen = size;
+            }
+        });
+
+        reader.start();
+        for (Thread writer : writers) {
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        reader.join(10_000L);
+
+        assertFalse(reader.isAlive());
+        assertFalse(failed.get());
+        assertEquals(perThread * writers.length, store.size());
+    }
+}
@@ -1,18 +1,95 @@
 package com.github.manevolent.atlas;
 
-import com.github.manevolent.atlas.protocol.uds.AsyncUDSSession;
-import com.github.manevolent.atlas.protocol.uds.UDSFrame;
+import com.github.manevolent.atlas.protocol.can.CANArbitrationId;
+import com.github.manevolent.atlas.protocol.isotp.ISOTPFrame;
+import com.github.manevolent.atlas.protocol.j2534.ISOTPDevice;
+import com.github.manevolent.atlas.protocol.uds.*;
 import com.github.manevolent.atlas.protocol.uds.request.UDSReadDataByIDRequest;
+import com.github.manevolent.atlas.protocol.uds.request.UDSReadMemoryByAddressRequest;
+import com.github.manevolent.atlas.protocol.uds.response.UDSReadMemoryByAddressResponse;
 import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.util.concurrent.TimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
 
-import static org.junit.jupiter.api.Assertions.assertArrayEquals;
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static com.github.manevolent.atlas.protocol.can.CANArbitrationId.id;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class UDSTest {
+    private static final UDSComponent ECU_A = newComponent(id(0x7E0), id(0x7E8));
+    private static final UDSComponent ECU_B = newComponent(id(0x7E1), id(0x7E9));
+
+    private static UDSComponent newComponent(CANArbitrationId sendAddress, CANArbitrationId replyAddress) {
+        return new UDSComponent() {
+            @Override
+            public CANArbitrationId getSendAddress() {
+                return sendAddress;
+            }
+
+            @Override
+            public CANArbitrationId getReplyAddress() {
+                return replyAddress;
+            }
+        };
+    }
+
+    /**
+     * An ISO-TP device that records the frames written to it, and reads back whatever frames it is given
+     */
+    private static class LoopbackDevice implements ISOTPDevice {
+        private final BlockingQueue<byte[]> written = new LinkedBlockingQueue<>();
+        private final BlockingQueue<ISOTPFrame> replies = new LinkedBlockingQueue<>();
+        private volatile IOException failure;
+
+        private void reply(UDSComponent component, int... data) {
+            byte[] frame = new byte[data.length];
+            for (int i = 0; i < data.length; i ++) {
+                frame[i] = (byte) data[i];
+            }
+            replies.add(new ISOTPFrame(component.getReplyAddress(), frame));
+        }
+
+        @Override
+        public FrameReader<ISOTPFrame> reader() {
+            return new FrameReader<>() {
+                @Override
+                public ISOTPFrame read() throws IOException {
+                    if (failure != null) {
+                        throw failure;
+                    }
+
+                    try {
+                        return replies.poll(100, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        throw new EOFException();
+                    }
+                }
+
+                @Override
+                public void close() {
+
+                }
+            };
+        }
+
+        @Override
+        public FrameWriter<BasicFrame> writer() {
+            return (address, frame) -> written.add(frame.getData());
+        }
+
+        @Override
+        public void close() {
+
+        }
+    }
+
+    private static UDSReadMemoryByAddressRequest newRead(int address) {
+        return new UDSReadMemoryByAddressRequest(4, address, 1, 1);
+    }
 
     @Test
     public void testWrite() throws IOException, TimeoutException {
@@ -34,4 +111,208 @@ public class UDSTest {
         assertArrayEquals(((UDSReadDataByIDRequest)read.getBody()).getDids(), new int[] { did });
     }
 
+    @Test
+    public void testPipelinedRequests() throws Exception {
+        LoopbackDevice device = new LoopbackDevice();
+        AsyncUDSSession session = new AsyncUDSSession(device, UDSProtocol.STANDARD, 4);
+        session.start();
+
+        try {
+            // The whole window goes out before any response comes back
+            List<CompletableFuture<UDSReadMemoryByAddressResponse>> reads = new ArrayList<>();
+            for (int i = 0; i < 4; i ++) {
+                reads.add(session.requestAsync(ECU_A, newRead(i)));
+            }
+            assertEquals(4, device.written.size());
+            device.written.clear();
+            assertTrue(reads.stream().noneMatch(CompletableFuture::isDone));
+
+            // Another request waits for room in the window
+            CompletableFuture<UDSReadMemoryByAddressResponse> fifth = CompletableFuture
+                    .supplyAsync(() -> session.<UDSReadMemoryByAddressRequest, UDSReadMemoryByAddressResponse>
+                            requestAsync(ECU_A, newRead(4)))
+                    .thenCompose(future -> future);
+            assertNull(device.written.poll(200, TimeUnit.MILLISECONDS));
+
+            // Responses to the same component are matched in the order the requests were sent
+            device.reply(ECU_A, 0x63, 0);
+            assertEquals(0, reads.get(0).get(1, TimeUnit.SECONDS).getData()[0]);
+            assertNotNull(device.written.poll(1, TimeUnit.SECONDS));
+            reads.add(fifth);
+
+            // A response from another component doesn't complete a request to this one
+            CompletableFuture<UDSReadMemoryByAddressResponse> other = session.requestAsync(ECU_B, newRead(0xB));
+            device.reply(ECU_B, 0x63, 0xB);
+            assertEquals(0xB, other.get(1, TimeUnit.SECONDS).getData()[0]);
+            assertFalse(reads.get(1).isDone());
+
+            // A negative response fails the oldest outstanding request
+            device.reply(ECU_A, 0x7F, 0x23, NegativeResponseCode.REQUEST_OUT_OF_RANGE.getCode());
+            ExecutionException rejected = assertThrows(ExecutionException.class,
+                    () -> reads.get(1).get(1, TimeUnit.SECONDS));
+            assertEquals(NegativeResponseCode.REQUEST_OUT_OF_RANGE.name(), rejected.getCause().getMessage());
+            assertEquals(NegativeResponseCode.REQUEST_OUT_OF_RANGE,
+                    assertInstanceOf(UDSNegativeResponseException.class, rejected.getCause()).getResponseCode());
+
+            for (int i = 2; i < 5; i ++) {
+                device.reply(ECU_A, 0x63, i);
+            }
+            for (int i = 2; i < 5; i ++) {
+                assertEquals(i, reads.get(i).get(1, TimeUnit.SECONDS).getData()[0]);
+            }
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    public void testResponsePendingExtendsTimeout() throws Exception {
+        LoopbackDevice device = new LoopbackDevice();
+        AsyncUDSSession session = new AsyncUDSSession(device, UDSProtocol.STANDARD);
+        session.setTimeout(UDSReadMemoryByAddressRequest.class, 300);
+        session.setResponsePendingTimeout(2_000);
+        session.start();
+
+        try {
+            // Without a response, the request times out after its service's timeout, and frees up its window once a
+            // late response could no longer arrive
+            UDSTransaction<UDSReadMemoryByAddressRequest, UDSReadMemoryByAddressResponse> transaction =
+                    session.request(ECU_A.getSendAddress(), ECU_A.getReplyAddress(), newRead(0));
+            long start = System.nanoTime();
+            assertThrows(TimeoutException.class, transaction::get);
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+
+            // Once the server asks for more time, the request outlives its original deadline
+            CompletableFuture<UDSReadMemoryByAddressResponse> read = session.requestAsync(ECU_A, newRead(1));
+            device.reply(ECU_A, 0x7F, 0x23, NegativeResponseCode.RESPONSE_PENDING.getCode());
+            Thread.sleep(600);
+            assertFalse(read.isDone());
+
+            device.reply(ECU_A, 0x63, 1);
+            assertEquals(1, read.get(1, TimeUnit.SECONDS).getData()[0]);
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    public void testTimeoutAbandonsQueuedRequests() throws Exception {
+        LoopbackDevice device = new LoopbackDevice();
+        AsyncUDSSession session = new AsyncUDSSession(device, UDSProtocol.STANDARD, 4);
+        session.setTimeout(UDSReadMemoryByAddressRequest.class, 500);
+        session.start();
+
+        try {
+            CompletableFuture<UDSReadMemoryByAddressResponse> first = session.requestAsync(ECU_A, newRead(0));
+            Thread.sleep(250);
+            CompletableFuture<UDSReadMemoryByAddressResponse> second = session.requestAsync(ECU_A, newRead(1));
+
+            // The request behind the one that timed out fails with it, well before its own deadline
+            ExecutionException timedOut = assertThrows(ExecutionException.class,
+                    () -> first.get(1, TimeUnit.SECONDS));
+            assertInstanceOf(TimeoutException.class, timedOut.getCause());
+            ExecutionException abandoned = assertThrows(ExecutionException.class,
+                    () -> second.get(100, TimeUnit.MILLISECONDS));
+            assertInstanceOf(IOException.class, abandoned.getCause());
+            device.written.clear();
+
+            // Nothing more is sent until the responses to both have arrived
+            CompletableFuture<UDSReadMemoryByAddressResponse> third = CompletableFuture
+                    .supplyAsync(() -> session.<UDSReadMemoryByAddressRequest, UDSReadMemoryByAddressResponse>
+                            requestAsync(ECU_A, newRead(2)))
+                    .thenCompose(future -> future);
+            assertNull(device.written.poll(100, TimeUnit.MILLISECONDS));
+
+            // The late responses are dropped rather than handed to the new request
+            device.reply(ECU_A, 0x63, 0);
+            device.reply(ECU_A, 0x63, 1);
+            assertNotNull(device.written.poll(1, TimeUnit.SECONDS));
+            device.reply(ECU_A, 0x63, 2);
+            assertEquals(2, third.get(1, TimeUnit.SECONDS).getData()[0]);
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    public void testReadFailureFailsOutstandingRequests() throws Exception {
+        LoopbackDevice device = new LoopbackDevice();
+        AsyncUDSSession session = new AsyncUDSSession(device, UDSProtocol.STANDARD, 4);
+        session.setTimeout(UDSReadMemoryByAddressRequest.class, 10_000);
+        session.start();
+
+        try {
+            CompletableFuture<UDSReadMemoryByAddressResponse> first = session.requestAsync(ECU_A, newRead(0));
+            CompletableFuture<UDSReadMemoryByAddressResponse> second = session.requestAsync(ECU_A, newRead(1));
+            device.failure = new IOException("Reader fell behind");
+
+            // Both fail with the reader's error, long before they would time out
+            for (CompletableFuture<UDSReadMemoryByAddressResponse> request : List.of(first, second)) {
+                ExecutionException failed = assertThrows(ExecutionException.class,
+                        () -> request.get(1, TimeUnit.SECONDS));
+                assertSame(device.failure, failed.getCause());
+            }
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    public void testUnaddressedRequestsShareWindow() throws Exception {
+        LoopbackDevice device = new LoopbackDevice();
+        AsyncUDSSession session = new AsyncUDSSession(device, UDSProtocol.STANDARD, 4);
+        session.start();
+
+        try {
+            CompletableFuture<UDSReadMemoryByAddressResponse> addressed = session.requestAsync(ECU_A, newRead(0));
+            assertNotNull(device.written.poll(1, TimeUnit.SECONDS));
+
+            // A request that would accept ECU_A's response waits for ECU_A's request to be answered
+            CompletableFuture<UDSReadMemoryByAddressResponse> unaddressed = CompletableFuture
+                    .supplyAsync(() -> session.<UDSReadMemoryByAddressRequest, UDSReadMemoryByAddressResponse>
+                            requestAsync(ECU_B.getSendAddress(), newRead(1)))
+                    .thenCompose(future -> future);
+            assertNull(device.written.poll(200, TimeUnit.MILLISECONDS));
+
+            device.reply(ECU_A, 0x63, 0);
+            assertEquals(0, addressed.get(1, TimeUnit.SECONDS).getData()[0]);
+            assertNotNull(device.written.poll(1, TimeUnit.SECONDS));
+
+            device.reply(ECU_B, 0x63, 1);
+            assertEquals(1, unaddressed.get(1, TimeUnit.SECONDS).getData()[0]);
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    public void testServiceWindow() throws Exception {
+        LoopbackDevice device = new LoopbackDevice();
+        AsyncUDSSession session = new AsyncUDSSession(device, UDSProtocol.STANDARD, 4);
+        session.setWindow(UDSReadMemoryByAddressRequest.class, 1);
+        session.start();
+
+        try {
+            assertEquals(1, session.getWindow(0x23));
+            assertEquals(4, session.getWindow(0x22));
+
+            CompletableFuture<UDSReadMemoryByAddressResponse> first = session.requestAsync(ECU_A, newRead(0));
+            assertNotNull(device.written.poll(1, TimeUnit.SECONDS));
+
+            // Memory reads go one at a time, even though the session allows more of other requests
+            CompletableFuture<UDSReadMemoryByAddressResponse> second = CompletableFuture
+                    .supplyAsync(() -> session.<UDSReadMemoryByAddressRequest, UDSReadMemoryByAddressResponse>
+                            requestAsync(ECU_A, newRead(1)))
+                    .thenCompose(future -> future);
+            assertNull(device.written.poll(200, TimeUnit.MILLISECONDS));
+
+            device.reply(ECU_A, 0x63, 0);
+            assertEquals(0, first.get(1, TimeUnit.SECONDS).getData()[0]);
+            assertNotNull(device.written.poll(1, TimeUnit.SECONDS));
+            device.reply(ECU_A, 0x63, 1);
+            assertEquals(1, second.get(1, TimeUnit.SECONDS).getData()[0]);
+        } finally {
+            session.close();
+        }
+    }
 }
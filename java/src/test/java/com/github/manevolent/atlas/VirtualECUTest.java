@@ -0,0 +1,287 @@
+package com.github.manevolent.atlas;
+
+import com.github.manevolent.atlas.connection.*;
+import com.github.manevolent.atlas.model.*;
+import com.github.manevolent.atlas.model.source.ArraySource;
+import com.github.manevolent.atlas.model.uds.SecurityAccessProperty;
+import com.github.manevolent.atlas.protocol.can.VirtualCANBus;
+import com.github.manevolent.atlas.protocol.j2534.J2534Device;
+import com.github.manevolent.atlas.protocol.j2534.VirtualJ2534Device;
+import com.github.manevolent.atlas.protocol.subaru.SubaruProtocols;
+import com.github.manevolent.atlas.protocol.subaru.uds.command.SubaruClearFlashCommand;
+import com.github.manevolent.atlas.protocol.uds.AsyncUDSSession;
+import com.github.manevolent.atlas.protocol.uds.debug.VirtualECU;
+import com.github.manevolent.atlas.protocol.uds.request.UDSDownloadRequest;
+import com.github.manevolent.atlas.protocol.uds.request.UDSReadMemoryByAddressRequest;
+import com.github.manevolent.atlas.protocol.uds.request.UDSTransferRequest;
+import com.github.manevolent.atlas.protocol.uds.response.UDSDownloadResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.github.manevolent.atlas.protocol.subaru.SubaruDITComponent.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the Subaru DI connection against a virtual ECU on a simulated 500 kbit/s bus.
+ */
+public class VirtualECUTest {
+    private static final int RAM_BASE = 0x20000000;
+    private static final int RAM_LENGTH = 0x1000;
+    private static final int FLASH_LENGTH = 0x4000;
+
+    private static final int LEVEL = 0x3;
+    private static final byte[] KEY = new byte[] {
+            0x01, 0x23, 0x45, 0x67, (byte) 0x89, (byte) 0xAB, (byte) 0xCD, (byte) 0xEF,
+            0x10, 0x32, 0x54, 0x76, (byte) 0x98, (byte) 0xBA, (byte) 0xDC, (byte) 0xFE
+    };
+
+    private static final MemorySection RAM = MemorySection.builder()
+            .withName("RAM")
+            .withBaseAddress(RAM_BASE)
+            .withLength(RAM_LENGTH)
+            .withByteOrder(MemoryByteOrder.BIG_ENDIAN)
+            .withType(MemoryType.RAM)
+            .build();
+
+    private static final MemorySection FLASH = MemorySection.builder()
+            .withName("Flash")
+            .withBaseAddress(0)
+            .withLength(FLASH_LENGTH)
+            .withByteOrder(MemoryByteOrder.BIG_ENDIAN)
+            .withType(MemoryType.CODE)
+            .build();
+
+    private final byte[] ram = new byte[RAM_LENGTH];
+    private final byte[] flash = new byte[FLASH_LENGTH];
+    private final VirtualCANBus bus = new VirtualCANBus(0xEC0);
+    private VirtualECU ecu;
+    private SubaruDIConnection connection;
+
+    private void start(VirtualECU.Builder builder, byte[] key) {
+        new Random(0xF1A5).nextBytes(flash);
+        bus.setBitrate(500_000);
+
+        ecu = builder
+                .withProtocol(SubaruProtocols.DIT)
+                .withComponents(ENGINE_1, ENGINE_2, CENTRAL_GATEWAY)
+                .withFunctionalAddress(BROADCAST.getSendAddress())
+                .withMemory(RAM_BASE, ram)
+                .withFlash(0, flash)
+                .withSecurityKey(LEVEL, KEY)
+                .build();
+        ecu.start(bus);
+
+        Project.Builder project = Project.builder();
+        for (String mode : List.of("memory_read", "memory_write", "flash_write", "datalog")) {
+            project.withProperty("subaru.dit.securityaccess." + mode, new SecurityAccessProperty(LEVEL, key));
+        }
+
+        connection = new SubaruDIConnection(null) {
+            @Override
+            protected J2534Device findDevice() {
+                return new VirtualJ2534Device(bus);
+            }
+        };
+        connection.setProject(project.build());
+    }
+
+    @AfterEach
+    public void close() throws Exception {
+        if (connection != null) {
+            connection.disconnect();
+        }
+        if (ecu != null) {
+            ecu.close();
+        }
+        bus.close();
+    }
+
+    private static MemoryParameter newParameter(String name, int offset, DataFormat format) {
+        return MemoryParameter.builder()
+                .withName(name)
+                .withAddress(RAM, RAM_BASE + offset)
+                .withScale(Scale.builder().withFormat(format).withUnit(Unit.NONE))
+                .build();
+    }
+
+    @Test
+    public void testReadMemory() throws IOException, TimeoutException {
+        start(VirtualECU.builder(), KEY);
+        connection.changeConnectionMode(ConnectionMode.READ_MEMORY);
+
+        MemoryAddress address = MemoryAddress.builder().withSection(FLASH).withOffset(0x123).build();
+        assertArrayEquals(Arrays.copyOfRange(flash, 0x123, 0x123 + 0x200), connection.readMemory(address, 0x200));
+    }
+
+    @Test
+    public void testDump_Locked() throws IOException {
+        start(VirtualECU.builder().withMaximumReadSize(0x80), KEY);
+
+        byte[] dumped = new byte[FLASH_LENGTH];
+        MemoryDump dump = MemoryDump.builder()
+                .withConnection(connection)
+                .withSection(FLASH)
+                .withTarget(new ArraySource(0, dumped, 0, FLASH_LENGTH))
+                .build();
+
+        assertThrows(IOException.class, dump::run);
+
+        // The ECU needs unlocking before memory can be read
+        assertTrue(ecu.getNegativeResponses() > 0);
+    }
+
+    @Test
+    public void testDump() throws IOException, TimeoutException {
+        start(VirtualECU.builder().withMaximumReadSize(0x80), KEY);
+        connection.changeConnectionMode(ConnectionMode.READ_MEMORY);
+
+        byte[] dumped = new byte[FLASH_LENGTH];
+        MemoryDump dump = MemoryDump.builder()
+                .withConnection(connection)
+                .withSection(FLASH)
+                .withTarget(new ArraySource(0, dumped, 0, FLASH_LENGTH))
+                .build();
+
+        assertTrue(dump.run());
+        assertArrayEquals(flash, dumped);
+        assertTrue(dump.getBlockSize() <= 0x80 && dump.getBlockSize() > 0x70, "Block size " + dump.getBlockSize());
+    }
+
+    @Test
+    public void testDump_LossyBus() throws IOException, TimeoutException {
+        start(VirtualECU.builder(), KEY);
+        bus.setLatency(1, TimeUnit.MILLISECONDS);
+        bus.setJitter(2, TimeUnit.MILLISECONDS);
+        connection.changeConnectionMode(ConnectionMode.READ_MEMORY);
+
+        bus.setLoss(0.02);
+        ((AsyncUDSSession) connection.getSession()).setTimeout(UDSReadMemoryByAddressRequest.class, 250);
+
+        MemorySection section = MemorySection.builder()
+                .withName("Calibration")
+                .withBaseAddress(0x800)
+                .withLength(0x800)
+                .withByteOrder(MemoryByteOrder.BIG_ENDIAN)
+                .withType(MemoryType.CODE)
+                .build();
+
+        byte[] dumped = new byte[0x800];
+        MemoryDump dump = MemoryDump.builder()
+                .withConnection(connection)
+                .withSection(section)
+                .withTarget(new ArraySource(0x800, dumped, 0, dumped.length))
+                .withBlockSize(0x80)
+                .withRetries(10)
+                .build();
+
+        assertTrue(dump.run());
+        assertArrayEquals(Arrays.copyOfRange(flash, 0x800, 0x1000), dumped);
+        assertTrue(bus.getFramesLost() > 0);
+    }
+
+    @Test
+    public void testSecurityAccess_WrongKey() {
+        byte[] wrongKey = KEY.clone();
+        wrongKey[0] ^= 1;
+        start(VirtualECU.builder(), wrongKey);
+
+        assertThrows(Exception.class, () -> connection.changeConnectionMode(ConnectionMode.READ_MEMORY));
+        assertTrue(ecu.getNegativeResponses() > 0);
+    }
+
+    @Test
+    public void testReadFrame() throws IOException, TimeoutException {
+        start(VirtualECU.builder(), KEY);
+        connection.changeConnectionMode(ConnectionMode.DATALOG);
+
+        MemoryParameter rpm = newParameter("RPM", 0x10, DataFormat.USHORT);
+        MemoryParameter load = newParameter("Load", 0x20, DataFormat.UBYTE);
+        MemoryParameter timing = newParameter("Timing", 0x30, DataFormat.SBYTE);
+        List<MemoryParameter> parameters = List.of(rpm, load, timing);
+
+        ram[0x10] = 0x0B; ram[0x11] = (byte) 0xB8;
+        ram[0x20] = 100;
+        ram[0x30] = -5;
+        MemoryFrame frame = connection.readFrame(parameters);
+        assertEquals(3000f, frame.getValue(rpm));
+        assertEquals(100f, frame.getValue(load));
+        assertEquals(-5f, frame.getValue(timing));
+
+        // Values are read live from the ECU's memory
+        ram[0x10] = 0x17; ram[0x11] = 0x70;
+        frame = connection.readFrame(parameters);
+        assertEquals(6000f, frame.getValue(rpm));
+    }
+
+    @Test
+    public void testReadFrame_ManyDIDs() throws IOException, TimeoutException {
+        start(VirtualECU.builder(), KEY);
+        connection.changeConnectionMode(ConnectionMode.DATALOG);
+
+        // More than fits in one DID
+        List<MemoryParameter> parameters = new ArrayList<>();
+        for (int i = 0; i < 100; i ++) {
+            parameters.add(newParameter("Parameter " + i, i * 2, DataFormat.USHORT));
+            ram[i * 2] = (byte) (i >> 8);
+            ram[(i * 2) + 1] = (byte) i;
+        }
+
+        // DIDs still being defined are left out of a frame rather than waited on
+        MemoryFrame frame = connection.readFrame(parameters);
+        for (int read = 0; read < 10 && frame.getValue(parameters.getLast()) == null; read ++) {
+            frame = connection.readFrame(parameters);
+        }
+
+        for (int read = 0; read < 3; read ++) {
+            frame = connection.readFrame(parameters);
+            for (int i = 0; i < parameters.size(); i ++) {
+                assertEquals((float) i, frame.getValue(parameters.get(i)));
+            }
+        }
+    }
+
+    @Test
+    public void testFlash() throws Exception {
+        start(VirtualECU.builder().withTransferLength(0x100), KEY);
+        connection.changeConnectionMode(ConnectionMode.FLASH_ROM);
+        AsyncUDSSession session = (AsyncUDSSession) connection.getSession();
+
+        byte[] image = new byte[0x1000];
+        new Random(0x1A6E).nextBytes(image);
+
+        // Programming without erasing first can only clear bits
+        byte[] expected = new byte[image.length];
+        for (int i = 0; i < image.length; i ++) {
+            expected[i] = (byte) (image[i] & flash[i]);
+        }
+        program(session, image);
+        assertArrayEquals(expected, Arrays.copyOf(flash, image.length));
+
+        new SubaruClearFlashCommand(ENGINE_1, 0, image.length).execute(session);
+        program(session, image);
+        assertArrayEquals(image, Arrays.copyOf(flash, image.length));
+    }
+
+    private static void program(AsyncUDSSession session, byte[] image) throws Exception {
+        UDSDownloadResponse download;
+        try (var transaction = session.request(ENGINE_1.getSendAddress(),
+                new UDSDownloadRequest(0, image.length))) {
+            download = transaction.get();
+        }
+
+        int length = (int) download.getBlockLength() - 6;
+        int index = 1;
+        for (int offset = 0; offset < image.length; offset += length, index ++) {
+            byte[] block = Arrays.copyOfRange(image, offset, Math.min(image.length, offset + length));
+            try (var transaction = session.request(ENGINE_1.getSendAddress(),
+                    new UDSTransferRequest(index & 0xFF, offset, block))) {
+                transaction.get();
+            }
+        }
+    }
+}
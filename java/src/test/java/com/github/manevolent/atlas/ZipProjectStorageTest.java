@@ -0,0 +1,319 @@
+package com.github.manevolent.atlas;
+
+import com.github.manevolent.atlas.model.*;
+import com.github.manevolent.atlas.model.source.ArraySource;
+import com.github.manevolent.atlas.model.source.MappedSource;
+import com.github.manevolent.atlas.model.storage.ZipProjectStorage;
+import com.github.manevolent.atlas.ui.behavior.ProgressListener;
+import net.lingala.zip4j.ZipFile;
+import net.lingala.zip4j.model.FileHeader;
+import net.lingala.zip4j.model.ZipParameters;
+import net.lingala.zip4j.model.enums.CompressionMethod;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ZipProjectStorageTest {
+    private static final long BASE_ADDRESS = 0x10000;
+    private static final int LENGTH = 0x6000;
+
+    @TempDir
+    Path tempDir;
+
+    private static Project newProject(byte[] data) {
+        MemorySection section = MemorySection.builder()
+                .withName("Code")
+                .withBaseAddress(BASE_ADDRESS)
+                .withLength(LENGTH)
+                .withByteOrder(MemoryByteOrder.BIG_ENDIAN)
+                .withType(MemoryType.CODE)
+                .build();
+
+        Calibration calibration = Calibration.builder()
+                .withName("Stock")
+                .withSection(section)
+                .withSource(new ArraySource(BASE_ADDRESS, data, 0, data.length))
+                .build();
+
+        return Project.builder()
+                .withSection(section)
+                .withCalibration(calibration)
+                .build();
+    }
+
+    private static Project newDefinition(int tables) {
+        Project project = newProject(new byte[LENGTH]);
+        MemorySection section = project.getSections().getFirst();
+
+        Scale scale = Scale.builder()
+                .withName("RPM")
+                .withFormat(DataFormat.USHORT)
+                .withUnit(Unit.RPM)
+                .withOperation(ArithmeticOperation.DIVIDE, 4)
+                .build();
+        project.getScales().add(scale);
+
+        for (int i = 0; i < tables; i ++) {
+            project.addTable(Table.builder()
+                    .withName("Table " + i)
+                    .withData(Series.builder()
+                            .withAddress(section, (int) BASE_ADDRESS + i * 16)
+                            .withLength(4)
+                            .withScale(scale))
+                    .withAxis(Axis.X, Series.builder()
+                            .withAddress(section, (int) BASE_ADDRESS + 0x4000)
+                            .withLength(4)
+                            .withScale(scale))
+                    .build());
+        }
+
+        project.addParameter(MemoryParameter.builder()
+                .withName("Engine Speed")
+                .withAddress(section, 0xFF6000)
+                .withScale(scale)
+                .build());
+
+        return project;
+    }
+
+    /**
+     * Finds where the central directory starts, after all of the entries in a ZIP file
+     */
+    private static int getCentralDirectoryOffset(byte[] zip) {
+        ByteBuffer buffer = ByteBuffer.wrap(zip).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = zip.length - 22; i >= 0; i --) {
+            if (buffer.getInt(i) == 0x06054b50) {
+                return buffer.getInt(i + 16);
+            }
+        }
+        throw new IllegalArgumentException("No end of central directory record");
+    }
+
+    private static ZipProjectStorage newStorage() {
+        return new ZipProjectStorage((ProgressListener) (message, progress) -> { });
+    }
+
+    private static ZipProjectStorage newYamlStorage() {
+        return new ZipProjectStorage((message, progress) -> { }, false);
+    }
+
+    @Test
+    public void testLoad_MapsStoredCalibration() throws IOException {
+        byte[] data = new byte[LENGTH];
+        new Random(0x2117).nextBytes(data);
+
+        File file = tempDir.resolve("project.atlas").toFile();
+        Project project = newProject(data.clone());
+        newStorage().save(project, file);
+
+        try (ZipFile zipFile = new ZipFile(file)) {
+            FileHeader header = zipFile.getFileHeader(project.getCalibrations().getFirst().getUuid() + ".bin");
+            assertEquals(CompressionMethod.STORE, header.getCompressionMethod());
+        }
+
+        Project loaded = newStorage().load(file);
+        Calibration calibration = loaded.getCalibrations().getFirst();
+        MappedSource source = assertInstanceOf(MappedSource.class, calibration.getSource());
+        assertArrayEquals(data, calibration.readFully());
+
+        // Edits go to the overlay, not the file
+        byte[] edit = new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 };
+        long address = BASE_ADDRESS + 0x1FFC; // spans two pages
+        calibration.write(edit, address, 0, edit.length);
+        System.arraycopy(edit, 0, data, (int) (address - BASE_ADDRESS), edit.length);
+        assertTrue(source.isDirty());
+        assertArrayEquals(data, calibration.readFully());
+
+        // Saving over the mapped file remaps it
+        newStorage().save(loaded, file);
+        assertFalse(source.isDirty());
+        assertTrue(source.isMapped());
+        assertArrayEquals(data, calibration.readFully());
+
+        assertArrayEquals(data, newStorage().load(file).getCalibrations().getFirst().readFully());
+    }
+
+    @Test
+    public void testSave_AppendsChangedEntries() throws IOException {
+        File file = tempDir.resolve("definition.atlas").toFile();
+        newStorage().save(newDefinition(500), file);
+
+        Project project = newStorage().load(file);
+        assertEquals(500, project.getTables().size());
+        assertEquals(1, project.getParameters().size());
+
+        Table table = project.findTableByName("Table 250");
+        Scale scale = table.getData().getScale();
+        assertTrue(project.getScales().contains(scale));
+        assertSame(scale, table.getSeries(Axis.X).getScale());
+        assertSame(scale, project.getParameters().iterator().next().getScale());
+        assertSame(project.getSections().getFirst(), table.getData().getAddress().getSection());
+
+        // Saving again without changes only writes a new manifest
+        byte[] before = Files.readAllBytes(file.toPath());
+        newStorage().save(project, file);
+        byte[] after = Files.readAllBytes(file.toPath());
+        int offset = getCentralDirectoryOffset(before);
+        assertArrayEquals(Arrays.copyOf(before, offset), Arrays.copyOf(after, offset));
+
+        // Changing one table only appends that table
+        table.setName("Changed");
+        before = after;
+        newStorage().save(project, file);
+        after = Files.readAllBytes(file.toPath());
+        offset = getCentralDirectoryOffset(before);
+        assertArrayEquals(Arrays.copyOf(before, offset), Arrays.copyOf(after, offset));
+
+        int appended = getCentralDirectoryOffset(after) - offset;
+        assertTrue(appended < 16 * 1024, "Appended " + appended + " bytes");
+
+        Project reloaded = newStorage().load(file);
+        assertEquals(500, reloaded.getTables().size());
+        assertNotNull(reloaded.findTableByName("Changed"));
+        assertTrue(reloaded.getTables().stream().noneMatch(t -> t.getName().equals("Table 250")));
+        assertEquals(project.getTables().stream().map(Table::getName).toList(),
+                reloaded.getTables().stream().map(Table::getName).toList());
+    }
+
+    @Test
+    public void testSave_AttachesNewCalibration() throws IOException {
+        byte[] data = new byte[LENGTH];
+        new Random(0xA77AC4).nextBytes(data);
+
+        File file = tempDir.resolve("new.atlas").toFile();
+        Project project = newProject(data.clone());
+        newStorage().save(project, file);
+
+        // The calibration now comes from the file, rather than the array it was created with
+        Calibration calibration = project.getCalibrations().getFirst();
+        assertInstanceOf(MappedSource.class, calibration.getSource());
+        assertArrayEquals(data, calibration.readFully());
+
+        // ...so saving again doesn't rewrite it
+        byte[] before = Files.readAllBytes(file.toPath());
+        newStorage().save(project, file);
+        byte[] after = Files.readAllBytes(file.toPath());
+        int offset = getCentralDirectoryOffset(before);
+        assertArrayEquals(Arrays.copyOf(before, offset), Arrays.copyOf(after, offset));
+    }
+
+    @Test
+    public void testLoad_SingleFileProject() throws IOException {
+        byte[] data = new byte[LENGTH];
+        new Random(0x1E6AC7).nextBytes(data);
+        Project project = newDefinition(3);
+        Calibration calibration = project.getCalibrations().getFirst();
+        calibration.updateSource(data);
+
+        // Write a project the way older versions did
+        File file = tempDir.resolve("legacy.atlas").toFile();
+        try (ZipFile zipFile = new ZipFile(file)) {
+            ZipParameters calibrationParameters = new ZipParameters();
+            calibrationParameters.setFileNameInZip(calibration.getUuid() + ".bin");
+            zipFile.addStream(new ByteArrayInputStream(data), calibrationParameters);
+
+            ZipParameters yamlParameters = new ZipParameters();
+            yamlParameters.setFileNameInZip("project.yaml");
+            byte[] yaml = new Yaml().dump(project).getBytes(StandardCharsets.UTF_16);
+            zipFile.addStream(new ByteArrayInputStream(yaml), yamlParameters);
+        }
+
+        Project loaded = newStorage().load(file);
+        assertEquals(3, loaded.getTables().size());
+        assertArrayEquals(data, loaded.getCalibrations().getFirst().readFully());
+
+        // The next save converts it
+        newStorage().save(loaded, file);
+        try (ZipFile zipFile = new ZipFile(file)) {
+            assertNull(zipFile.getFileHeader("project.yaml"));
+        }
+
+        Project converted = newStorage().load(file);
+        assertEquals(3, converted.getTables().size());
+        assertInstanceOf(MappedSource.class, converted.getCalibrations().getFirst().getSource());
+        assertArrayEquals(data, converted.getCalibrations().getFirst().readFully());
+    }
+
+    @Test
+    public void testLoad_SnapshotMatchesEntries() throws IOException {
+        Project project = newDefinition(20);
+        MemorySection section = project.getSections().getFirst();
+        Scale shared = project.getScales().stream().filter(s -> "RPM".equals(s.getName())).findFirst().orElseThrow();
+
+        // A scale and section that aren't registered with the project
+        MemorySection other = MemorySection.builder()
+                .withName("Other")
+                .withBaseAddress(0xFF0000)
+                .withLength(0x1000)
+                .withByteOrder(MemoryByteOrder.LITTLE_ENDIAN)
+                .withType(MemoryType.RAM)
+                .build();
+        project.addTable(Table.builder()
+                .withName("3D")
+                .withData(Series.builder().withAddress(section, (int) BASE_ADDRESS + 0x5000).withScale(shared))
+                .withAxis(Axis.X, Series.builder().withName("X").withAddress(other, 0xFF0000).withLength(8)
+                        .withScale(Scale.builder().withName("Unregistered").withFormat(DataFormat.SSHORT)
+                                .withUnit(Unit.CELSIUS)))
+                .withAxis(Axis.Y, Series.builder().withName("Y").withAddress(section, (int) BASE_ADDRESS)
+                        .withLength(6).withScale(shared))
+                .build());
+        project.getParameters().iterator().next().setColor(new Color(1, 2, 3));
+
+        File file = tempDir.resolve("snapshot.atlas").toFile();
+        newStorage().save(project, file);
+
+        Project fromSnapshot = newStorage().load(file);
+        Project fromEntries = newYamlStorage().load(file);
+
+        assertEquals(new Yaml().dump(fromEntries.getTables()), new Yaml().dump(fromSnapshot.getTables()));
+        assertEquals(new Yaml().dump(new ArrayList<>(fromEntries.getScales())),
+                new Yaml().dump(new ArrayList<>(fromSnapshot.getScales())));
+        assertEquals(new Yaml().dump(new ArrayList<>(fromEntries.getParameters())),
+                new Yaml().dump(new ArrayList<>(fromSnapshot.getParameters())));
+
+        // Shared objects stay shared
+        Table table = fromSnapshot.findTableByName("3D");
+        assertSame(fromSnapshot.getSections().getFirst(), table.getData().getAddress().getSection());
+        assertSame(table.getData().getScale(), table.getSeries(Axis.Y).getScale());
+        assertTrue(fromSnapshot.getScales().contains(table.getData().getScale()));
+        assertFalse(fromSnapshot.getScales().contains(table.getSeries(Axis.X).getScale()));
+        assertSame(table.getData().getScale(), fromSnapshot.getParameters().iterator().next().getScale());
+    }
+
+    @Test
+    public void testSave_AppendLeavesSnapshot() throws IOException {
+        File file = tempDir.resolve("stale.atlas").toFile();
+        newStorage().save(newDefinition(20), file);
+
+        Project project = newStorage().load(file);
+        project.findTableByName("Table 5").setName("Changed");
+        newStorage().save(project, file);
+
+        // Only the snapshot written with the file remains, and it no longer matches the manifest
+        try (ZipFile zipFile = new ZipFile(file)) {
+            assertEquals(1, zipFile.getFileHeaders().stream()
+                    .filter(header -> header.getFileName().startsWith("snapshot/"))
+                    .count());
+        }
+
+        Project reloaded = newStorage().load(file);
+        assertNotNull(reloaded.findTableByName("Changed"));
+        assertTrue(reloaded.getTables().stream().noneMatch(t -> t.getName().equals("Table 5")));
+        assertEquals(project.getTables().stream().map(Table::getName).toList(),
+                reloaded.getTables().stream().map(Table::getName).toList());
+    }
+}